@@ -0,0 +1,113 @@
+package com.cbfacademy.apiassessment.admission;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AdmissionFilter class rate-limits requests to {@code /api/stocks/**} before they reach the controller.
+ *
+ * <p>Every write rewrites the JSON file, so an unchecked burst of writes saturates the disk and, through the
+ * repository lock and the server threads it ties up, delays reads as well. Writes (POST, PUT, PATCH and DELETE)
+ * and reads are therefore admitted against separate {@link AdmissionLimit}s, each with a global and a per-client
+ * token bucket. Clients are identified by their remote address. A request over its limit either waits briefly
+ * in a bounded queue or is rejected at once with {@code 429 Too Many Requests} and a {@code Retry-After} header.
+ *
+ * <p>Requests are classified by route rather than by method alone: a multi-get ({@code POST /lookup}) and a
+ * stress scenario run ({@code POST /scenarios}) only carry their arguments in a POST body and write nothing,
+ * so they are charged to the read limit.
+ *
+ * <p>Configured under {@code stock.admission}; set {@code stock.admission.enabled=false} to turn it off.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class AdmissionFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(AdmissionFilter.class);
+
+    private static final String PATH_PREFIX = "/api/stocks";
+
+    /**
+     * The routes that are sent as POST but only read.
+     */
+    private static final Set<String> READ_ONLY_POSTS = Set.of(PATH_PREFIX + "/lookup", PATH_PREFIX + "/scenarios");
+
+    private final boolean enabled;
+    private final AdmissionLimit writes;
+    private final AdmissionLimit reads;
+
+    public AdmissionFilter(Environment environment) {
+        this.enabled = environment.getProperty("stock.admission.enabled", Boolean.class, true);
+        this.writes = AdmissionLimit.from(environment, "stock.admission.write", 50, 100, 10, 20, 500, 16);
+        this.reads = AdmissionLimit.from(environment, "stock.admission.read", 2000, 4000, 500, 1000, 50, 64);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !request.getRequestURI().startsWith(request.getContextPath() + PATH_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        AdmissionLimit limit = isWrite(request.getMethod(), path) ? writes : reads;
+        AdmissionLimit.Decision decision = limit.admit(request.getRemoteAddr());
+        if (!decision.admitted()) {
+            reject(request, response, decision.waitNanos());
+            return;
+        }
+        if (decision.waitNanos() > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(decision.waitNanos());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reject(request, response, decision.waitNanos());
+                return;
+            } finally {
+                limit.leaveQueue();
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * Tells whether a request is charged to the write limit.
+     *
+     * @param method the HTTP method
+     * @param path the request path without the context path
+     * @return true for the methods that change data, except the POST routes that only read
+     */
+    static boolean isWrite(String method, String path) {
+        return switch (method) {
+            case "POST" -> !READ_ONLY_POSTS.contains(path);
+            case "PUT", "PATCH", "DELETE" -> true;
+            default -> false;
+        };
+    }
+
+    private static void reject(HttpServletRequest request, HttpServletResponse response, long waitNanos)
+            throws IOException {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999));
+        log.debug("Rejected {} {} from {}, retry after {} s", request.getMethod(), request.getRequestURI(),
+                request.getRemoteAddr(), retryAfterSeconds);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Too many requests, retry after " + retryAfterSeconds + " s\"}");
+    }
+}
@@ -0,0 +1,117 @@
+package com.cbfacademy.apiassessment.admission;
+
+import org.springframework.core.env.Environment;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AdmissionLimit class admits one class of requests, reads or writes, against a global token bucket and a
+ * token bucket per client.
+ *
+ * <p>A request that finds no token may wait for one, but only up to {@code max-wait-ms} and only while fewer
+ * than {@code queue} other requests of its class are already waiting. Otherwise it is rejected straight away
+ * with the time after which a retry could be admitted. Bounding the wait queue bounds the number of server
+ * threads a burst of one class can hold, which keeps the other class responsive.
+ *
+ * <p>The limits are read from {@code <prefix>.rate}, {@code .burst}, {@code .client-rate},
+ * {@code .client-burst}, {@code .max-wait-ms} and {@code .queue}.
+ */
+class AdmissionLimit {
+    /**
+     * The number of client buckets above which idle ones are dropped.
+     */
+    private static final int MAX_CLIENTS = 10_000;
+
+    private final TokenBucket global;
+    private final double clientRate;
+    private final double clientBurst;
+    private final long maxWaitNanos;
+    private final Semaphore queue;
+    private final Map<String, TokenBucket> clients = new ConcurrentHashMap<>();
+
+    /**
+     * The outcome of an admission attempt.
+     *
+     * @param admitted whether the request may proceed
+     * @param waitNanos how long an admitted request must wait first, or how long a rejected client should wait
+     *                  before retrying
+     */
+    record Decision(boolean admitted, long waitNanos) {
+    }
+
+    AdmissionLimit(double rate, double burst, double clientRate, double clientBurst, long maxWaitMillis, int queue) {
+        this.global = new TokenBucket(rate, burst);
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.queue = new Semaphore(queue);
+    }
+
+    /**
+     * Reads a limit from the environment.
+     *
+     * @param environment the environment holding the limits
+     * @param prefix the property prefix, for example {@code stock.admission.write}
+     * @param defaults the default rate, burst, client rate, client burst, maximum wait in milliseconds and queue
+     * @return the limit
+     */
+    static AdmissionLimit from(Environment environment, String prefix, double... defaults) {
+        return new AdmissionLimit(
+                environment.getProperty(prefix + ".rate", Double.class, defaults[0]),
+                environment.getProperty(prefix + ".burst", Double.class, defaults[1]),
+                environment.getProperty(prefix + ".client-rate", Double.class, defaults[2]),
+                environment.getProperty(prefix + ".client-burst", Double.class, defaults[3]),
+                environment.getProperty(prefix + ".max-wait-ms", Long.class, (long) defaults[4]),
+                environment.getProperty(prefix + ".queue", Integer.class, (int) defaults[5]));
+    }
+
+    /**
+     * Decides whether a request from a client may proceed. The client bucket is charged first, so a client
+     * over its own limit does not use up global capacity.
+     *
+     * @param client the id of the client
+     * @return the decision
+     */
+    Decision admit(String client) {
+        long now = System.nanoTime();
+        if (clients.size() > MAX_CLIENTS) {
+            evictIdleClients(now);
+        }
+        TokenBucket bucket = clients.computeIfAbsent(client, unused -> new TokenBucket(clientRate, clientBurst));
+        long clientWait = bucket.reserve(maxWaitNanos, now);
+        if (clientWait < 0) {
+            return new Decision(false, -clientWait);
+        }
+        long globalWait = global.reserve(maxWaitNanos, now);
+        if (globalWait < 0) {
+            bucket.release();
+            return new Decision(false, -globalWait);
+        }
+        long wait = Math.max(clientWait, globalWait);
+        if (wait > 0 && !queue.tryAcquire()) {
+            bucket.release();
+            global.release();
+            return new Decision(false, wait);
+        }
+        return new Decision(true, wait);
+    }
+
+    /**
+     * Frees the wait queue slot taken by an admitted request that had to wait.
+     */
+    void leaveQueue() {
+        queue.release();
+    }
+
+    private void evictIdleClients(long now) {
+        for (Iterator<TokenBucket> buckets = clients.values().iterator(); buckets.hasNext(); ) {
+            if (buckets.next().isFull(now)) {
+                buckets.remove();
+            }
+        }
+    }
+}
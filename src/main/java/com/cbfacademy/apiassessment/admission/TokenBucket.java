@@ -0,0 +1,80 @@
+package com.cbfacademy.apiassessment.admission;
+
+/**
+ * The TokenBucket class is a token bucket that admits a sustained rate of requests with bursts up to its
+ * capacity.
+ *
+ * <p>Tokens are refilled continuously from the elapsed time rather than by a timer. A caller that is willing to
+ * wait can reserve a token that has not been refilled yet: the bucket then goes into debt and the caller is told
+ * how long to wait before proceeding, so that waiting callers are admitted at the refill rate in arrival order.
+ */
+class TokenBucket {
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param ratePerSecond the sustained number of requests admitted per second
+     * @param capacity the largest burst admitted at once
+     */
+    TokenBucket(double ratePerSecond, double capacity) {
+        if (ratePerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Token bucket rate must be positive and capacity at least 1");
+        }
+        this.ratePerNano = ratePerSecond / 1e9;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, waiting for it at most the given time.
+     *
+     * @param maxWaitNanos the longest the caller is prepared to wait
+     * @param now the current {@link System#nanoTime()}
+     * @return 0 if a token was available, the time the caller must wait before proceeding if one was reserved,
+     *         or a negative number if no token will be available in time; its magnitude is then the time until
+     *         one will be
+     */
+    synchronized long reserve(long maxWaitNanos, long now) {
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        long wait = (long) Math.ceil((1 - tokens) / ratePerNano);
+        if (wait > maxWaitNanos) {
+            return -wait;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * Gives back a token reserved by {@link #reserve(long, long)} that was not used.
+     */
+    synchronized void release() {
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    /**
+     * Tells whether the bucket has refilled completely, meaning it has been idle for a while.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return true if the bucket is full
+     */
+    synchronized boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+        }
+    }
+}
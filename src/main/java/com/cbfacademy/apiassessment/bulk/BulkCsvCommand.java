@@ -0,0 +1,84 @@
+package com.cbfacademy.apiassessment.bulk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * The BulkCsvCommand class runs a CSV import or export from the command line and then stops the application:
+ *
+ * <pre>
+ * java -jar api-assessment.jar --import-csv=universe.csv --spring.main.web-application-type=none
+ * java -jar api-assessment.jar --export-csv=stocks.csv --spring.main.web-application-type=none
+ * </pre>
+ *
+ * <p>The import is persisted to {@code json.file.path} as an import over HTTP would be. The export is written to
+ * a temporary file next to the target and moved into place once complete. Without either option the
+ * application starts as usual.
+ */
+@Component
+public class BulkCsvCommand implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(BulkCsvCommand.class);
+
+    private final StockCsvImporter importer;
+    private final StockCsvExporter exporter;
+    private final ConfigurableApplicationContext context;
+
+    public BulkCsvCommand(StockCsvImporter importer, StockCsvExporter exporter,
+                          ConfigurableApplicationContext context) {
+        this.importer = importer;
+        this.exporter = exporter;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> imports = args.getOptionValues("import-csv");
+        List<String> exports = args.getOptionValues("export-csv");
+        if (imports == null && exports == null) {
+            return;
+        }
+        int status = 0;
+        try {
+            if (imports != null) {
+                Path file = Path.of(imports.get(0));
+                try (InputStream in = Files.newInputStream(file)) {
+                    CsvImportResult result = importer.importCsv(in);
+                    System.out.println("Imported " + result.getImported() + " stocks from " + file + " in "
+                            + result.getElapsedMillis() + " ms");
+                }
+            }
+            if (exports != null) {
+                Path file = Path.of(exports.get(0)).toAbsolutePath();
+                Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+                int written;
+                try (OutputStream out = Files.newOutputStream(partial)) {
+                    written = exporter.export(out);
+                }
+                Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("Exported " + written + " stocks to " + file);
+            }
+        } catch (CsvImportException e) {
+            System.out.println(e.getMessage());
+            e.getErrors().forEach(System.out::println);
+            status = 1;
+        } catch (IOException | RuntimeException e) {
+            log.error("Bulk CSV command failed", e);
+            status = 1;
+        }
+        int exitCode = status;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+}
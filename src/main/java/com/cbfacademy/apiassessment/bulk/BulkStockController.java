@@ -0,0 +1,83 @@
+package com.cbfacademy.apiassessment.bulk;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The BulkStockController class moves the whole universe in and out of the system as CSV, for loading a fresh
+ * universe without editing the JSON file or creating stocks one at a time.
+ */
+@RestController
+@RequestMapping("/api/stocks")
+@Tag(name = "Bulk")
+public class BulkStockController {
+
+    static final String TEXT_CSV = "text/csv";
+
+    private final StockCsvImporter importer;
+    private final StockCsvExporter exporter;
+
+    public BulkStockController(StockCsvImporter importer, StockCsvExporter exporter) {
+        this.importer = importer;
+        this.exporter = exporter;
+    }
+
+    /**
+     * Replaces every stock with the stocks in a CSV body, streamed as it arrives.
+     *
+     * @param request the request whose body is the CSV, with a header row
+     * @return ResponseEntity object describing the import or its errors.
+     *         Returns HttpStatus.OK (200) with the number of stocks imported and the new repository version.
+     *         Returns HttpStatus.BAD_REQUEST (400) with the errors, each with its row number, if the CSV is
+     *         malformed, has no stock rows or has invalid rows; nothing is imported then.
+     *         Returns HttpStatus.CONFLICT (409) if another import is running.
+     */
+    @PostMapping(value = "/import", consumes = TEXT_CSV)
+    @Operation(summary = "Import stocks from CSV", description = "Replaces every stock with the stocks in a CSV file, all or nothing",
+            responses = {
+                    @ApiResponse(description = "Stocks imported", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = CsvImportResult.class))),
+                    @ApiResponse(description = "Malformed CSV, no rows or invalid rows; nothing was imported", responseCode = "400"),
+                    @ApiResponse(description = "Another import is running", responseCode = "409")
+            })
+    public ResponseEntity<Object> importStocks(HttpServletRequest request) throws IOException {
+        try {
+            return new ResponseEntity<>(importer.importCsv(request.getInputStream()), HttpStatus.OK);
+        } catch (CsvImportException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage(), "errors", e.getErrors()),
+                    HttpStatus.BAD_REQUEST);
+        } catch (ImportInProgressException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.CONFLICT);
+        }
+    }
+
+    /**
+     * Streams every stock as CSV, from one consistent snapshot.
+     *
+     * @return ResponseEntity object streaming the CSV, as an attachment named {@code stocks.csv}.
+     */
+    @GetMapping(value = "/export", produces = TEXT_CSV)
+    @Operation(summary = "Export stocks as CSV", description = "Streams every stock as CSV, in the layout the import reads")
+    public ResponseEntity<StreamingResponseBody> exportStocks() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(TEXT_CSV + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"stocks.csv\"")
+                .body(exporter::export);
+    }
+}
@@ -0,0 +1,25 @@
+package com.cbfacademy.apiassessment.bulk;
+
+import java.util.List;
+
+/**
+ * The CsvImportException class is thrown when a CSV import is refused because the file is malformed or has
+ * rows that are not valid stocks. Nothing has been imported when it is thrown.
+ */
+public class CsvImportException extends RuntimeException {
+    private final List<String> errors;
+
+    public CsvImportException(String message, List<String> errors) {
+        super(message);
+        this.errors = errors;
+    }
+
+    /**
+     * Returns the errors of the rows that were refused, each with its row number.
+     *
+     * @return the row errors, empty if the file itself is malformed
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,43 @@
+package com.cbfacademy.apiassessment.bulk;
+
+/**
+ * The CsvImportResult class describes a completed CSV import.
+ */
+public class CsvImportResult {
+    private final int imported;
+    private final long version;
+    private final long elapsedMillis;
+
+    public CsvImportResult(int imported, long version, long elapsedMillis) {
+        this.imported = imported;
+        this.version = version;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Returns the number of stocks the repository holds after the import.
+     *
+     * @return the number of stocks imported
+     */
+    public int getImported() {
+        return imported;
+    }
+
+    /**
+     * Returns the repository version at which the imported stocks were published.
+     *
+     * @return the repository version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns how long the import took, from the first byte read to the new universe being persisted.
+     *
+     * @return the duration in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
@@ -0,0 +1,13 @@
+package com.cbfacademy.apiassessment.bulk;
+
+/**
+ * The ImportInProgressException class is thrown when a CSV import is started while another one is still
+ * running. Imports replace the whole universe, so they are run one at a time; nothing has been read or
+ * imported when it is thrown.
+ */
+public class ImportInProgressException extends RuntimeException {
+
+    public ImportInProgressException(String message) {
+        super(message);
+    }
+}
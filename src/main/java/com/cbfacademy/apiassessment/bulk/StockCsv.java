@@ -0,0 +1,255 @@
+package com.cbfacademy.apiassessment.bulk;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The StockCsv class reads and writes stocks as CSV (RFC 4180).
+ *
+ * <p>The first record is a header naming the columns, in any order: {@code ticker}, {@code name},
+ * {@code currencySymbol}, {@code sector}, {@code currentPrice}, {@code quantity} and {@code purchasePrice} are
+ * required. A {@code version} column, as written by the export, is allowed and ignored, since the repository
+ * assigns versions. A field holding a comma, a quote or a line break is quoted, with quotes doubled.
+ */
+final class StockCsv {
+
+    /**
+     * The columns in the order the export writes them.
+     */
+    static final List<String> COLUMNS = List.of("ticker", "name", "currencySymbol", "sector", "currentPrice",
+            "quantity", "purchasePrice", "version");
+
+    private static final int TICKER = 0;
+    private static final int NAME = 1;
+    private static final int CURRENCY = 2;
+    private static final int SECTOR = 3;
+    private static final int CURRENT_PRICE = 4;
+    private static final int QUANTITY = 5;
+    private static final int PURCHASE_PRICE = 6;
+    private static final int REQUIRED = 7;
+
+    /**
+     * The position of each required column in the records, indexed by the constants above.
+     */
+    private final int[] positions;
+
+    /**
+     * The least number of fields a record must have to hold every required column.
+     */
+    private final int width;
+
+    private StockCsv(int[] positions) {
+        this.positions = positions;
+        this.width = Arrays.stream(positions).max().orElse(0) + 1;
+    }
+
+    /**
+     * Reads the layout of the records from the header.
+     *
+     * @param header the header record, or null if the input is empty
+     * @return the layout
+     * @throws IllegalArgumentException if the header is missing, names an unknown column or lacks a required one
+     */
+    static StockCsv fromHeader(String header) {
+        if (header == null) {
+            throw new IllegalArgumentException("The CSV is empty; a header row is required.");
+        }
+        int[] positions = new int[REQUIRED];
+        Arrays.fill(positions, -1);
+        List<String> names = split(header.startsWith("\uFEFF") ? header.substring(1) : header);
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i).trim();
+            int column = COLUMNS.indexOf(name);
+            if (column < 0) {
+                throw new IllegalArgumentException("Unknown CSV column: " + name);
+            }
+            if (column < REQUIRED) {
+                if (positions[column] >= 0) {
+                    throw new IllegalArgumentException("Duplicate CSV column: " + name);
+                }
+                positions[column] = i;
+            }
+        }
+        for (int column = 0; column < REQUIRED; column++) {
+            if (positions[column] < 0) {
+                throw new IllegalArgumentException("Missing CSV column: " + COLUMNS.get(column));
+            }
+        }
+        return new StockCsv(positions);
+    }
+
+    /**
+     * Reads the next record, which spans several lines if a quoted field holds a line break.
+     *
+     * @param reader the CSV text
+     * @return the record without its line terminator, or null at the end of the input
+     * @throws IOException if the input cannot be read
+     * @throws IllegalArgumentException if the input ends inside a quoted field
+     */
+    static String readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null || !hasOpenQuote(line)) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                throw new IllegalArgumentException("The CSV ends inside a quoted field.");
+            }
+            record.append('\n').append(line);
+        } while (hasOpenQuote(record));
+        return record.toString();
+    }
+
+    private static boolean hasOpenQuote(CharSequence text) {
+        boolean open = false;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Splits a record into its fields, unquoting them.
+     *
+     * @param record the record
+     * @return the fields
+     */
+    static List<String> split(String record) {
+        List<String> fields = new ArrayList<>(COLUMNS.size());
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"') {
+                quoted = true;
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Reads a stock from a record, checking it as the API checks a new stock.
+     *
+     * @param record the record
+     * @return the stock, at version 0
+     * @throws IllegalArgumentException if the record is not a valid stock
+     */
+    Stock parse(String record) {
+        List<String> fields = split(record);
+        if (fields.size() < width) {
+            throw new IllegalArgumentException("Expected " + width + " fields but found " + fields.size() + ".");
+        }
+        String ticker = fields.get(positions[TICKER]).trim();
+        String name = fields.get(positions[NAME]).trim();
+        if (ticker.isEmpty()) {
+            throw new IllegalArgumentException("Ticker is required.");
+        }
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Stock name is required.");
+        }
+        return new Stock(ticker, name, fields.get(positions[CURRENCY]).trim(), fields.get(positions[SECTOR]).trim(),
+                number(fields.get(positions[CURRENT_PRICE]), "Current price"),
+                quantity(fields.get(positions[QUANTITY])),
+                number(fields.get(positions[PURCHASE_PRICE]), "Purchase price"));
+    }
+
+    private static double number(String field, String label) {
+        try {
+            double value = Double.parseDouble(field.trim());
+            if (!Double.isFinite(value)) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(label + " is not a number: " + field);
+        }
+    }
+
+    private static int quantity(String field) {
+        try {
+            return Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Quantity is not a whole number: " + field);
+        }
+    }
+
+    /**
+     * Writes the header record.
+     *
+     * @param out the CSV text
+     * @throws IOException if the output cannot be written
+     */
+    static void writeHeader(Writer out) throws IOException {
+        out.write(String.join(",", COLUMNS));
+        out.write("\r\n");
+    }
+
+    /**
+     * Writes a stock as one record, in the order of {@link #COLUMNS}.
+     *
+     * @param stock the stock
+     * @param out the CSV text
+     * @throws IOException if the output cannot be written
+     */
+    static void write(Stock stock, Writer out) throws IOException {
+        writeField(stock.getTicker(), out);
+        out.write(',');
+        writeField(stock.getName(), out);
+        out.write(',');
+        writeField(stock.getCurrencySymbol(), out);
+        out.write(',');
+        writeField(stock.getSector(), out);
+        out.write(',');
+        out.write(Double.toString(stock.getCurrentPrice()));
+        out.write(',');
+        out.write(Integer.toString(stock.getQuantity()));
+        out.write(',');
+        out.write(Double.toString(stock.getPurchasePrice()));
+        out.write(',');
+        out.write(Long.toString(stock.getVersion()));
+        out.write("\r\n");
+    }
+
+    private static void writeField(String value, Writer out) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,59 @@
+package com.cbfacademy.apiassessment.bulk;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockRepository;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The StockCsvExporter class writes every stock as CSV, in the layout the importer reads.
+ *
+ * <p>The export reads one snapshot of the repository, so it is consistent however many writes happen while it
+ * is written, and streams it row by row, so nothing but the snapshot the repository already holds is kept in
+ * memory.
+ */
+@Component
+public class StockCsvExporter {
+
+    private final StockRepository repository;
+
+    public StockCsvExporter(StockRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Writes the current snapshot as CSV.
+     *
+     * @param out the stream to write to, which is flushed but not closed
+     * @return the number of stocks written
+     * @throws IOException if the stream cannot be written
+     */
+    public int export(OutputStream out) throws IOException {
+        return export(repository.snapshot(), out);
+    }
+
+    /**
+     * Writes a snapshot as CSV.
+     *
+     * @param snapshot the snapshot to write
+     * @param out the stream to write to, which is flushed but not closed
+     * @return the number of stocks written
+     * @throws IOException if the stream cannot be written
+     */
+    public int export(StockSnapshot snapshot, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        StockCsv.writeHeader(writer);
+        for (Stock stock : snapshot.getStocks()) {
+            StockCsv.write(stock, writer);
+        }
+        writer.flush();
+        return snapshot.size();
+    }
+}
@@ -0,0 +1,208 @@
+package com.cbfacademy.apiassessment.bulk;
+
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.cbfacademy.apiassessment.stock.Stock;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The StockCsvImporter class replaces the whole universe with the stocks in a CSV file of any size.
+ *
+ * <p>The CSV is read once, as a stream, and cut into chunks of {@code stock.bulk.chunk-rows} records. Each chunk
+ * is parsed and checked on a {@link ForkJoinPool} while the next ones are read. At most two chunks per worker
+ * are in flight: once that many are queued, the reader waits for the oldest and merges its stocks before it
+ * reads on. So besides the imported stocks themselves, which the repository keeps in memory anyway, only a
+ * few chunks of raw text are held at a time, however large the file.
+ *
+ * <p>The import is all or nothing. A row that is not a valid stock, or repeats a ticker, fails the whole import
+ * and is reported with its row number; reading stops after {@value #MAX_ERRORS} errors. Only once every row has
+ * been read is the new universe swapped in, with one call to {@link JsonStockRepository#replaceAll(Map)}.
+ */
+@Component
+public class StockCsvImporter {
+    private static final Logger log = LoggerFactory.getLogger(StockCsvImporter.class);
+
+    /**
+     * The most row errors reported by a failed import.
+     */
+    static final int MAX_ERRORS = 100;
+
+    private final JsonStockRepository repository;
+    private final int chunkRows;
+    private final ForkJoinPool pool;
+    private final int maxInFlight;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Creates the importer.
+     *
+     * @param repository the repository to import into
+     * @param chunkRows the number of records parsed as one task
+     * @param parallelism the number of worker threads, or 0 for one per processor
+     */
+    public StockCsvImporter(JsonStockRepository repository,
+                            @Value("${stock.bulk.chunk-rows:10000}") int chunkRows,
+                            @Value("${stock.bulk.parallelism:0}") int parallelism) {
+        this.repository = repository;
+        this.chunkRows = Math.max(1, chunkRows);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.maxInFlight = pool.getParallelism() * 2;
+    }
+
+    /**
+     * Imports a CSV stream, replacing every stock in the repository.
+     *
+     * @param in the CSV, in UTF-8
+     * @return the number of stocks imported and the version of the repository holding them
+     * @throws CsvImportException if the CSV is malformed, has no stock rows or a row is not a valid stock;
+     *         nothing is imported
+     * @throws ImportInProgressException if another import is running
+     * @throws IOException if the stream cannot be read
+     */
+    public CsvImportResult importCsv(InputStream in) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new ImportInProgressException("Another import is already running");
+        }
+        long start = System.nanoTime();
+        try {
+            Map<String, Stock> stocks = read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+                    1 << 16));
+            long version = repository.replaceAll(stocks);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            log.info("Imported {} stocks at version {} in {} ms", stocks.size(), version, millis);
+            return new CsvImportResult(stocks.size(), version, millis);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Reads and parses every record, keeping at most {@link #maxInFlight} chunks in flight.
+     */
+    private Map<String, Stock> read(BufferedReader reader) throws IOException {
+        StockCsv layout;
+        try {
+            layout = StockCsv.fromHeader(StockCsv.readRecord(reader));
+        } catch (IllegalArgumentException e) {
+            throw new CsvImportException(e.getMessage(), List.of());
+        }
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        List<String> errors = new ArrayList<>();
+        Deque<ForkJoinTask<ParsedChunk>> inFlight = new ArrayDeque<>();
+        // Rows are numbered as in a spreadsheet, the header being row 1
+        long row = 2;
+        try {
+            List<String> records = new ArrayList<>(chunkRows);
+            String record;
+            while (errors.size() < MAX_ERRORS) {
+                try {
+                    record = StockCsv.readRecord(reader);
+                } catch (IllegalArgumentException e) {
+                    errors.add("Row " + (row + records.size()) + ": " + e.getMessage());
+                    break;
+                }
+                if (record != null) {
+                    records.add(record);
+                }
+                if (records.size() == chunkRows || (record == null && !records.isEmpty())) {
+                    List<String> chunk = records;
+                    long firstRow = row;
+                    inFlight.add(pool.submit(() -> ParsedChunk.parse(layout, chunk, firstRow)));
+                    row += chunk.size();
+                    records = new ArrayList<>(chunkRows);
+                    if (inFlight.size() >= maxInFlight) {
+                        merge(inFlight.poll().join(), stocks, errors);
+                    }
+                }
+                if (record == null) {
+                    break;
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                merge(inFlight.poll().join(), stocks, errors);
+            }
+        } finally {
+            inFlight.forEach(task -> task.cancel(false));
+        }
+        if (!errors.isEmpty()) {
+            List<String> reported = errors.subList(0, Math.min(errors.size(), MAX_ERRORS));
+            throw new CsvImportException("The CSV has invalid rows; nothing was imported.", List.copyOf(reported));
+        }
+        if (stocks.isEmpty()) {
+            // A header without rows, such as a truncated upload, would otherwise empty the universe
+            throw new CsvImportException("The CSV has no stock rows; nothing was imported.", List.of());
+        }
+        return stocks;
+    }
+
+    /**
+     * Adds the stocks of a parsed chunk to the new universe, in row order, and collects its errors.
+     */
+    private static void merge(ParsedChunk chunk, Map<String, Stock> stocks, List<String> errors) {
+        errors.addAll(chunk.errors);
+        for (int i = 0; i < chunk.stocks.length; i++) {
+            Stock stock = chunk.stocks[i];
+            if (stock != null && stocks.putIfAbsent(stock.getTicker(), stock) != null) {
+                errors.add("Row " + (chunk.firstRow + i) + ": duplicate ticker " + stock.getTicker() + ".");
+            }
+        }
+    }
+
+    /**
+     * Shuts the worker pool down with the application.
+     */
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * The stocks parsed from one chunk of records, with null in place of each blank record and each record that
+     * was not a valid stock, and the errors for those records.
+     */
+    private static final class ParsedChunk {
+        private final long firstRow;
+        private final Stock[] stocks;
+        private final List<String> errors;
+
+        private ParsedChunk(long firstRow, Stock[] stocks, List<String> errors) {
+            this.firstRow = firstRow;
+            this.stocks = stocks;
+            this.errors = errors;
+        }
+
+        static ParsedChunk parse(StockCsv layout, List<String> records, long firstRow) {
+            Stock[] stocks = new Stock[records.size()];
+            List<String> errors = new ArrayList<>(0);
+            for (int i = 0; i < stocks.length; i++) {
+                if (records.get(i).isBlank()) {
+                    continue;
+                }
+                try {
+                    stocks[i] = layout.parse(records.get(i));
+                } catch (IllegalArgumentException e) {
+                    errors.add("Row " + (firstRow + i) + ": " + e.getMessage());
+                }
+            }
+            return new ParsedChunk(firstRow, stocks, errors);
+        }
+    }
+}
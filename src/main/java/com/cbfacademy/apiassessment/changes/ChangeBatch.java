@@ -0,0 +1,86 @@
+package com.cbfacademy.apiassessment.changes;
+
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+
+import java.util.List;
+
+/**
+ * The ChangeBatch class is one page of the change feed returned to a client.
+ *
+ * <p>A client keeps the {@code epoch} and {@code next} of the last batch it applied and passes them back as
+ * its cursor. When {@code resyncRequired} is set the changes after the cursor are no longer available, or
+ * the cursor belongs to an earlier run of the service; the client must then download the whole universe
+ * and continue from {@code next}, the sequence number current at the time of the reply.
+ */
+public class ChangeBatch {
+    private final String epoch;
+    private final long since;
+    private final long next;
+    private final boolean hasMore;
+    private final boolean resyncRequired;
+    private final List<StockChangeEvent> changes;
+
+    ChangeBatch(String epoch, long since, long next, boolean hasMore, boolean resyncRequired,
+                List<StockChangeEvent> changes) {
+        this.epoch = epoch;
+        this.since = since;
+        this.next = next;
+        this.hasMore = hasMore;
+        this.resyncRequired = resyncRequired;
+        this.changes = changes;
+    }
+
+    /**
+     * Returns the id of the running change log. Sequence numbers are only comparable within one epoch.
+     *
+     * @return the epoch id
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the cursor the batch was requested with.
+     *
+     * @return the sequence number the client had reached
+     */
+    public long getSince() {
+        return since;
+    }
+
+    /**
+     * Returns the cursor to request the following batch with.
+     *
+     * @return the sequence number of the last change in this batch, or the current sequence number
+     */
+    public long getNext() {
+        return next;
+    }
+
+    /**
+     * Tells whether further changes are already available beyond this batch.
+     *
+     * @return true if the client should request again straight away
+     */
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Tells whether the cursor has aged out of the log and the client must reload everything.
+     *
+     * @return true if the client must resynchronise
+     */
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    /**
+     * Returns the changes after the cursor in sequence order, each carrying its sequence number as its version.
+     *
+     * @return the changes, empty when the client is up to date or must resynchronise
+     */
+    public List<StockChangeEvent> getChanges() {
+        return changes;
+    }
+}
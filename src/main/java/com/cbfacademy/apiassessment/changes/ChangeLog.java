@@ -0,0 +1,406 @@
+package com.cbfacademy.apiassessment.changes;
+
+import com.cbfacademy.apiassessment.core.HeapEstimate;
+import com.cbfacademy.apiassessment.core.HeapFootprintSource;
+import com.cbfacademy.apiassessment.core.HeapStructure;
+import com.cbfacademy.apiassessment.core.PersistenceException;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StockJsonModule;
+import com.cbfacademy.apiassessment.stock.StockRepository;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * The ChangeLog class records every repository mutation under a monotonic sequence number so that clients
+ * can fetch only the changes since the last sequence number they saw.
+ *
+ * <p>The sequence number of a change is the repository version it produced. The most recent changes are
+ * kept in memory. Older ones are spilled to append-only JSON Lines segment files, each with a sparse index
+ * from sequence number to file offset, and the oldest segment is deleted once the configured number of
+ * segments is exceeded. A cursor older than everything still retained, or from an earlier run of the
+ * service (a different epoch), gets a resync signal instead of a partial answer.
+ *
+ * <p>Changes are recorded on the write path, under the repository lock; recording costs an append to memory
+ * and, once the memory log is full, a buffered append to the current segment. Reading spilled changes
+ * happens outside the lock. The log is the first listener called, so a listener reacting to a change can
+ * already find it in the log.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ChangeLog implements StockChangeListener, HeapFootprintSource {
+    private static final Logger log = LoggerFactory.getLogger(ChangeLog.class);
+
+    /**
+     * The largest number of changes returned in a single batch.
+     */
+    public static final int MAX_BATCH = 10_000;
+
+    /**
+     * A sparse index entry is kept for every this many changes in a segment.
+     */
+    private static final int INDEX_INTERVAL = 128;
+
+    /**
+     * The estimated size of a change event without its stocks: a header, four references and two longs.
+     */
+    private static final int EVENT_BYTES = 48;
+
+    /**
+     * The estimated size of an open segment without its index: the object and its 8 KB write buffer.
+     */
+    private static final int SEGMENT_BYTES = 8_300;
+
+    /**
+     * The estimated size of one sparse index entry: a skip list node and two boxed longs.
+     */
+    private static final int INDEX_ENTRY_BYTES = 64;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new StockJsonModule());
+    private static final ObjectReader EVENT_READER = MAPPER.readerFor(StockChangeEvent.class);
+    private static final ObjectWriter EVENT_WRITER = MAPPER.writerFor(StockChangeEvent.class);
+
+    private final StockRepository repository;
+    private final int memoryCapacity;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Path spillDirectory;
+    private volatile String epoch = UUID.randomUUID().toString();
+
+    private final ArrayDeque<StockChangeEvent> recent = new ArrayDeque<>();
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private int segmentCounter;
+
+    /**
+     * The sequence number of the newest change recorded, or -1 before the first one.
+     */
+    private long head = -1;
+
+    /**
+     * Every change with a sequence number above the floor is retained, or -1 until it is first known.
+     */
+    private long floor = -1;
+
+    /**
+     * One spilled segment file. Its index is read outside the lock and so is concurrent.
+     */
+    private static final class Segment {
+        private final Path file;
+        private final OutputStream out;
+        private final long firstSeq;
+        private final NavigableMap<Long, Long> offsets = new ConcurrentSkipListMap<>();
+        private long lastSeq;
+        private long position;
+        private int count;
+
+        Segment(Path file, long firstSeq) throws IOException {
+            this.file = file;
+            this.firstSeq = firstSeq;
+            this.out = new BufferedOutputStream(Files.newOutputStream(file));
+        }
+    }
+
+    /**
+     * The part of a segment a reader needs, captured under the lock.
+     */
+    private record SegmentRange(Path file, long startOffset, long lastSeq) {
+    }
+
+    /**
+     * Creates the change log.
+     *
+     * @param repository the repository, used for the current sequence number before any change is recorded
+     * @param memoryCapacity the number of recent changes kept in memory
+     * @param segmentSize the number of changes in each spill segment
+     * @param maxSegments the number of spill segments kept; 0 disables spilling
+     * @param spillDirectory the directory for the segment files; a temporary directory if blank
+     */
+    public ChangeLog(StockRepository repository,
+                     @Value("${stock.changes.memory-capacity:10000}") int memoryCapacity,
+                     @Value("${stock.changes.segment-size:100000}") int segmentSize,
+                     @Value("${stock.changes.max-segments:10}") int maxSegments,
+                     @Value("${stock.changes.spill-dir:}") String spillDirectory) {
+        if (memoryCapacity < 1 || segmentSize < 1 || maxSegments < 0) {
+            throw new IllegalArgumentException("Change log sizes must be positive");
+        }
+        this.repository = repository;
+        this.memoryCapacity = memoryCapacity;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.spillDirectory = openSpillDirectory(spillDirectory);
+    }
+
+    private Path openSpillDirectory(String configured) {
+        if (maxSegments == 0) {
+            return null;
+        }
+        try {
+            if (configured == null || configured.isBlank()) {
+                return Files.createTempDirectory("stock-changes");
+            }
+            return Files.createDirectories(Path.of(configured));
+        } catch (IOException e) {
+            throw new PersistenceException("Failed to create change log directory " + configured, e);
+        }
+    }
+
+    /**
+     * Returns the id of this run of the change log.
+     *
+     * @return the epoch id
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Appends a repository change to the log.
+     *
+     * @param event the change, whose version is its sequence number
+     */
+    @Override
+    public synchronized void onStockChange(StockChangeEvent event) {
+        if (floor < 0) {
+            floor = event.getVersion() - 1;
+        }
+        recent.addLast(event);
+        head = event.getVersion();
+        if (recent.size() > memoryCapacity) {
+            evict(recent.removeFirst());
+        }
+    }
+
+    private void evict(StockChangeEvent event) {
+        if (spillDirectory == null) {
+            floor = event.getVersion();
+            return;
+        }
+        try {
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.count >= segmentSize) {
+                if (segment != null) {
+                    segment.out.close();
+                }
+                segment = new Segment(spillDirectory.resolve(String.format("changes-%06d.jsonl", segmentCounter++)),
+                        event.getVersion());
+                segments.addLast(segment);
+                if (segments.size() > maxSegments) {
+                    Segment expired = segments.removeFirst();
+                    Files.deleteIfExists(expired.file);
+                    floor = segments.getFirst().firstSeq - 1;
+                }
+            }
+            byte[] line = EVENT_WRITER.writeValueAsBytes(event);
+            if (segment.count % INDEX_INTERVAL == 0) {
+                segment.offsets.put(event.getVersion(), segment.position);
+            }
+            segment.out.write(line);
+            segment.out.write('\n');
+            segment.position += line.length + 1;
+            segment.lastSeq = event.getVersion();
+            segment.count++;
+        } catch (IOException e) {
+            // The change is lost from the feed, so clients behind it have to resynchronise
+            log.warn("Failed to spill change {} to disk: {}", event.getVersion(), e.getMessage());
+            floor = event.getVersion();
+        }
+    }
+
+    /**
+     * Starts the log afresh after the repository contents were replaced wholesale. The changes recorded so far
+     * no longer lead to the new contents, so they are discarded and a new epoch is started, which sends every
+     * existing cursor to resync.
+     *
+     * @param snapshot the snapshot that replaced the previous contents
+     */
+    @Override
+    public synchronized void onStockReset(StockSnapshot snapshot) {
+        recent.clear();
+        deleteSegments();
+        epoch = UUID.randomUUID().toString();
+        head = snapshot.getVersion();
+        floor = head;
+    }
+
+    /**
+     * Returns the changes after a cursor, oldest first.
+     *
+     * @param since the sequence number of the last change the client has applied
+     * @param clientEpoch the epoch the cursor belongs to, or null if the client does not know it
+     * @param limit the largest number of changes to return, at most {@link #MAX_BATCH}
+     * @return the batch, which signals a resync if the cursor can no longer be served
+     */
+    public ChangeBatch changesSince(long since, String clientEpoch, int limit) {
+        int max = Math.min(limit, MAX_BATCH);
+        List<SegmentRange> spilled = new ArrayList<>();
+        List<StockChangeEvent> changes = new ArrayList<>();
+        long current;
+        String runEpoch;
+        synchronized (this) {
+            if (head < 0) {
+                // Nothing has changed since the repository was loaded
+                head = repository.snapshot().getVersion();
+                floor = head;
+            }
+            current = head;
+            runEpoch = epoch;
+            if ((clientEpoch != null && !clientEpoch.equals(runEpoch)) || since < floor || since > head) {
+                return new ChangeBatch(runEpoch, since, current, false, true, List.of());
+            }
+            StockChangeEvent oldestInMemory = recent.peekFirst();
+            if (oldestInMemory != null && since >= oldestInMemory.getVersion() - 1) {
+                collect(recent.iterator(), since, max, changes);
+                return batch(runEpoch, since, current, max, changes);
+            }
+            try {
+                for (Segment segment : segments) {
+                    if (segment.lastSeq > since) {
+                        segment.out.flush();
+                        Map.Entry<Long, Long> start = segment.offsets.floorEntry(since + 1);
+                        spilled.add(new SegmentRange(segment.file, start == null ? 0 : start.getValue(),
+                                segment.lastSeq));
+                    }
+                }
+            } catch (IOException e) {
+                throw new PersistenceException("Failed to flush the change log", e);
+            }
+            // Copy the memory log now; it is appended to after the spilled changes are read
+            changes.addAll(recent);
+        }
+
+        List<StockChangeEvent> result = new ArrayList<>();
+        try {
+            for (SegmentRange range : spilled) {
+                if (result.size() >= max) {
+                    break;
+                }
+                readSegment(range, since, max, result);
+            }
+        } catch (NoSuchFileException e) {
+            // The segment aged out while it was being read
+            return new ChangeBatch(runEpoch, since, current, false, true, List.of());
+        } catch (IOException e) {
+            throw new PersistenceException("Failed to read the change log", e);
+        }
+        collect(changes.iterator(), since, max, result);
+        return batch(runEpoch, since, current, max, result);
+    }
+
+    private static ChangeBatch batch(String epoch, long since, long current, int max, List<StockChangeEvent> changes) {
+        long next = changes.isEmpty() ? since : changes.get(changes.size() - 1).getVersion();
+        return new ChangeBatch(epoch, since, next, changes.size() >= max && next < current, false, changes);
+    }
+
+    private static void collect(Iterator<StockChangeEvent> events, long since, int max, List<StockChangeEvent> into) {
+        while (events.hasNext() && into.size() < max) {
+            StockChangeEvent event = events.next();
+            if (event.getVersion() > since) {
+                into.add(event);
+            }
+        }
+    }
+
+    private void readSegment(SegmentRange range, long since, int max, List<StockChangeEvent> into) throws IOException {
+        try (InputStream in = Files.newInputStream(range.file())) {
+            in.skipNBytes(range.startOffset());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while (into.size() < max && (line = reader.readLine()) != null) {
+                StockChangeEvent event = EVENT_READER.readValue(line);
+                if (event.getVersion() > range.lastSeq()) {
+                    break;
+                }
+                if (event.getVersion() > since) {
+                    into.add(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimates the heap held by the changes kept in memory and by the open spill segments. A stock referred to
+     * by a change is counted only if it is no longer the current version of its ticker, since the current one
+     * is held by the repository anyway; a stock shared by two changes is counted once.
+     *
+     * @return the change log, with one entry per change kept in memory
+     */
+    @Override
+    public synchronized List<HeapStructure> heapFootprint() {
+        long bytes = HeapEstimate.referenceArray(recent.size()) + (long) recent.size() * EVENT_BYTES;
+        if (!recent.isEmpty()) {
+            StockSnapshot current = repository.snapshot();
+            Set<Stock> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (StockChangeEvent event : recent) {
+                for (Stock stock : new Stock[] {event.getStock(), event.getPrevious()}) {
+                    if (stock != null && stock != current.get(stock.getTicker()) && counted.add(stock)) {
+                        bytes += StockSnapshot.stockBytes(stock);
+                    }
+                }
+            }
+        }
+        for (Segment segment : segments) {
+            bytes += SEGMENT_BYTES + (long) segment.offsets.size() * INDEX_ENTRY_BYTES;
+        }
+        return List.of(new HeapStructure("change-log", recent.size(), bytes));
+    }
+
+    /**
+     * Closes the current segment and deletes the spill files, which are only meaningful within this epoch.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        deleteSegments();
+    }
+
+    private void deleteSegments() {
+        if (spillDirectory == null) {
+            return;
+        }
+        try {
+            for (Segment segment : segments) {
+                segment.out.close();
+            }
+            segments.clear();
+            try (Stream<Path> files = Files.list(spillDirectory)) {
+                for (Path file : files.filter(path -> path.getFileName().toString().endsWith(".jsonl")).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to clean up change log segments in {}: {}", spillDirectory, e.getMessage());
+        }
+    }
+}
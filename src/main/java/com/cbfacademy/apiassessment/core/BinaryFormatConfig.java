@@ -0,0 +1,41 @@
+package com.cbfacademy.apiassessment.core;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Configures the binary encodings offered alongside JSON on the REST API.
+ *
+ * <p>A client that sends {@code Accept: application/cbor} or {@code Accept: application/x-jackson-smile}
+ * receives the response in that encoding, and a request body is decoded according to its
+ * {@code Content-Type}. Clients that ask for nothing in particular still get JSON, because these converters
+ * take the place of Spring's default CBOR and Smile converters, which come after the JSON converter.
+ *
+ * <p>Both converters are built from Spring Boot's {@link Jackson2ObjectMapperBuilder}, so they carry the
+ * same modules and settings as the JSON converter, including the streaming {@code Stock} codec.
+ *
+ * <p>The server-sent event stream stays text-only, as the event-stream protocol requires. Binary consumers can
+ * page through {@code /api/stocks/changes} instead.
+ */
+@Configuration
+public class BinaryFormatConfig {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        SmileFactory factory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(factory).build());
+    }
+}
@@ -0,0 +1,133 @@
+package com.cbfacademy.apiassessment.core;
+
+/**
+ * The HeapEstimate class estimates the heap retained by common JDK structures, for sizing the heap from the
+ * data held rather than by guesswork.
+ *
+ * <p>The estimates follow the layout of a 64-bit HotSpot JVM with compressed references, the default for heaps
+ * under 32 GB: a 12 byte object header, a 16 byte array header, 4 byte references and every object padded to
+ * a multiple of 8 bytes. They are computed from sizes and lengths alone, never by walking the heap, so they
+ * are cheap but approximate; with larger heaps or other JVMs the real figures are somewhat higher.
+ */
+public final class HeapEstimate {
+    /**
+     * The size of an object header.
+     */
+    public static final int OBJECT_HEADER = 12;
+
+    /**
+     * The size of an array header, including its length.
+     */
+    public static final int ARRAY_HEADER = 16;
+
+    /**
+     * The size of a reference.
+     */
+    public static final int REFERENCE = 4;
+
+    private static final int STRING = 24;
+    private static final int HASH_MAP = 48;
+    private static final int LINKED_HASH_MAP = 56;
+    private static final int HASH_MAP_NODE = 32;
+    private static final int LINKED_HASH_MAP_NODE = 40;
+    private static final int LIST = 24;
+
+    private HeapEstimate() {
+    }
+
+    /**
+     * Pads a size to the 8 byte alignment of objects.
+     *
+     * @param bytes the unpadded size
+     * @return the padded size
+     */
+    public static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Estimates a string with its character array. Strings holding only Latin-1 characters take one byte per
+     * character, others two.
+     *
+     * @param value the string, may be null
+     * @return the estimated bytes, 0 for null
+     */
+    public static long string(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING + align(ARRAY_HEADER + (long) value.length() * bytesPerChar);
+    }
+
+    /**
+     * Estimates an array of references.
+     *
+     * @param length the array length
+     * @return the estimated bytes
+     */
+    public static long referenceArray(long length) {
+        return align(ARRAY_HEADER + length * REFERENCE);
+    }
+
+    /**
+     * Estimates an array of longs.
+     *
+     * @param length the array length
+     * @return the estimated bytes
+     */
+    public static long longArray(long length) {
+        return align(ARRAY_HEADER + length * Long.BYTES);
+    }
+
+    /**
+     * Estimates a list backed by an array, such as an {@code ArrayList} or an unmodifiable copy, without
+     * its elements.
+     *
+     * @param size the number of elements
+     * @return the estimated bytes
+     */
+    public static long list(long size) {
+        return LIST + referenceArray(size);
+    }
+
+    /**
+     * Estimates a {@code HashMap} or {@code ConcurrentHashMap} filled to the default load factor, with its
+     * table and entries but without its keys and values.
+     *
+     * @param size the number of entries
+     * @return the estimated bytes
+     */
+    public static long hashMap(long size) {
+        return HASH_MAP + table(size) + size * HASH_MAP_NODE;
+    }
+
+    /**
+     * Estimates a {@code LinkedHashMap} filled to the default load factor, with its table and entries but
+     * without its keys and values.
+     *
+     * @param size the number of entries
+     * @return the estimated bytes
+     */
+    public static long linkedHashMap(long size) {
+        return LINKED_HASH_MAP + table(size) + size * LINKED_HASH_MAP_NODE;
+    }
+
+    /**
+     * Estimates the table a hash map grows to for the given number of entries: the next power of two that keeps
+     * it within the 0.75 load factor, and no table at all while the map is empty.
+     */
+    private static long table(long size) {
+        if (size == 0) {
+            return 0;
+        }
+        long needed = (long) Math.ceil(size / 0.75);
+        return referenceArray(Math.max(16, Long.highestOneBit(needed - 1) << 1));
+    }
+}
@@ -0,0 +1,22 @@
+package com.cbfacademy.apiassessment.core;
+
+import java.util.List;
+
+/**
+ * The HeapFootprintSource interface is implemented by components that keep data in memory, so that the memory
+ * footprint endpoint can report how much heap each of their structures holds.
+ *
+ * <p>Each source reports the same structures, under the same names, every time it is asked; a structure that
+ * is empty or not built yet is reported with no entries. Estimates should be computed from sizes, with
+ * {@link HeapEstimate}, rather than by copying or walking large structures on every call.
+ */
+public interface HeapFootprintSource {
+
+    /**
+     * Estimates the heap held by each structure of this source. An object shared by several structures is
+     * counted in only one of them.
+     *
+     * @return the structures and their estimated sizes
+     */
+    List<HeapStructure> heapFootprint();
+}
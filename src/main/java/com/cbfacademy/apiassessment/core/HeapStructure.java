@@ -0,0 +1,46 @@
+package com.cbfacademy.apiassessment.core;
+
+/**
+ * The HeapStructure class describes the estimated heap held by one in-memory structure, as reported by a
+ * {@link HeapFootprintSource}.
+ */
+public class HeapStructure {
+    private final String structure;
+    private final long entries;
+    private final long bytes;
+
+    /**
+     * Describes a structure.
+     *
+     * @param structure the name of the structure, unique across sources
+     * @param entries the number of entries it holds
+     * @param bytes the estimated bytes it retains
+     */
+    public HeapStructure(String structure, long entries, long bytes) {
+        this.structure = structure;
+        this.entries = entries;
+        this.bytes = bytes;
+    }
+
+    public String getStructure() {
+        return structure;
+    }
+
+    /**
+     * Returns the number of entries in the structure: stocks, cached results, tickers or changes.
+     *
+     * @return the entry count
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * Returns the estimated heap retained by the structure.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -2,6 +2,7 @@ package com.cbfacademy.apiassessment.core;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The Repository interface defines the basic operations for managing entities in a repository.
@@ -54,4 +55,31 @@ public interface Repository<T, ID extends Serializable> {
      * @return the updated entity
      */
     T update(T entity) throws IllegalArgumentException, PersistenceException;
+
+    /**
+     * Saves the given entity without blocking the caller. The write runs on the repository's I/O executor.
+     *
+     * @param entity the entity to save
+     * @return a future completed with the saved entity, or completed exceptionally with the exception
+     *         {@link #save(Object)} would have thrown
+     */
+    CompletableFuture<T> saveAsync(T entity);
+
+    /**
+     * Updates an existing entity without blocking the caller. The write runs on the repository's I/O executor.
+     *
+     * @param entity the entity to update
+     * @return a future completed with the updated entity, or completed exceptionally with the exception
+     *         {@link #update(Object)} would have thrown
+     */
+    CompletableFuture<T> updateAsync(T entity);
+
+    /**
+     * Deletes an entity without blocking the caller. The write runs on the repository's I/O executor.
+     *
+     * @param id the unique identifier of the entity to delete
+     * @return a future completed when the entity has been deleted, or completed exceptionally with the
+     *         exception {@link #delete(Serializable)} would have thrown
+     */
+    CompletableFuture<Void> deleteAsync(ID id);
 }
@@ -0,0 +1,277 @@
+package com.cbfacademy.apiassessment.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * The SnapshotStore class writes whole-file snapshots crash-safely and recovers the newest valid one.
+ *
+ * <p>A snapshot is first written to a temporary file in the same directory and forced to disk. The live
+ * file is then rotated into a numbered checkpoint ({@code stocks.json.1}, {@code stocks.json.2}, ...) and the
+ * temporary file is atomically renamed over it. Every file has a sidecar ({@code stocks.json.crc}) holding
+ * its length and CRC-32C, renamed into place just before the data file, so a torn or truncated write is
+ * detected on the next start. When no checkpoints are kept the order is reversed: the data file replaces the old
+ * one first and its sidecar follows, since a crash in between must not leave the old data next to the new
+ * checksum with nothing to fall back to.
+ *
+ * <p>{@link #recover(SnapshotDecoder)} tries the live file first and then each checkpoint from newest to
+ * oldest, and returns the first one whose checksum matches and which decodes. A live file without a
+ * sidecar, such as a hand-edited seed file, is accepted if it decodes.
+ */
+public class SnapshotStore {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private static final String CHECKSUM_SUFFIX = ".crc";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path file;
+    private final int retained;
+    private volatile long lastSnapshotBytes;
+    private volatile long lastWriteNanos;
+
+    /**
+     * Creates a store for the given live file.
+     *
+     * @param file the path of the live snapshot file
+     * @param retained the number of previous checkpoints to keep besides the live file
+     */
+    public SnapshotStore(Path file, int retained) {
+        if (retained < 0) {
+            throw new IllegalArgumentException("Retained checkpoints must not be negative");
+        }
+        this.file = file.toAbsolutePath();
+        this.retained = retained;
+    }
+
+    /**
+     * Decodes the bytes of a snapshot, throwing if they are not a valid snapshot.
+     *
+     * @param <T> the type of the decoded snapshot
+     */
+    @FunctionalInterface
+    public interface SnapshotDecoder<T> {
+        T decode(byte[] data) throws IOException;
+    }
+
+    /**
+     * Returns the path of the live snapshot file.
+     *
+     * @return the live file path
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Tells whether there is anything to recover, that is a live file or at least one checkpoint.
+     *
+     * @return true if a snapshot file exists
+     */
+    public boolean exists() {
+        for (int generation = 0; generation <= retained; generation++) {
+            if (Files.exists(generation == 0 ? file : checkpoint(generation))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the size of the last snapshot written or recovered.
+     *
+     * @return the snapshot size in bytes
+     */
+    public long getLastSnapshotBytes() {
+        return lastSnapshotBytes;
+    }
+
+    /**
+     * Returns how long the last snapshot took to write, including the forces and renames.
+     *
+     * @return the last write duration in nanoseconds
+     */
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    /**
+     * Writes a new snapshot and makes it the live file.
+     *
+     * @param data the complete snapshot contents
+     * @throws IOException if the snapshot could not be written; the previous live file is then left intact
+     */
+    public synchronized void write(byte[] data) throws IOException {
+        long start = System.nanoTime();
+        Path temp = sibling(file, TEMP_SUFFIX);
+        Path tempChecksum = sibling(checksumOf(file), TEMP_SUFFIX);
+        writeDurably(temp, data);
+        writeDurably(tempChecksum, checksumRecord(data));
+
+        rotate();
+
+        if (retained == 0) {
+            // The old live file is still in place: a crash before the sidecar follows leaves the new, whole file
+            // without a sidecar, which is accepted
+            move(temp, file);
+            move(tempChecksum, checksumOf(file));
+        } else {
+            // The live file has been rotated away: a crash before the data follows leaves no live file, and the
+            // newest checkpoint is recovered
+            move(tempChecksum, checksumOf(file));
+            move(temp, file);
+        }
+        forceDirectory();
+        lastSnapshotBytes = data.length;
+        lastWriteNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Deletes the live file, the checkpoints and their sidecars, such as once the snapshot has moved to a file
+     * in another format.
+     *
+     * @throws IOException if a file could not be deleted
+     */
+    public synchronized void delete() throws IOException {
+        for (int generation = 0; generation <= retained; generation++) {
+            Path path = generation == 0 ? file : checkpoint(generation);
+            Files.deleteIfExists(checksumOf(path));
+            Files.deleteIfExists(path);
+        }
+        Files.deleteIfExists(sibling(file, TEMP_SUFFIX));
+        Files.deleteIfExists(sibling(checksumOf(file), TEMP_SUFFIX));
+    }
+
+    /**
+     * Recovers the newest valid snapshot.
+     *
+     * @param decoder the decoder used to check that a candidate is a usable snapshot
+     * @param <T> the type of the decoded snapshot
+     * @return the decoded snapshot
+     * @throws IOException if no candidate file holds a valid snapshot
+     */
+    public <T> T recover(SnapshotDecoder<T> decoder) throws IOException {
+        Files.deleteIfExists(sibling(file, TEMP_SUFFIX));
+        Files.deleteIfExists(sibling(checksumOf(file), TEMP_SUFFIX));
+
+        List<String> rejected = new ArrayList<>();
+        for (int generation = 0; generation <= retained; generation++) {
+            Path candidate = generation == 0 ? file : checkpoint(generation);
+            byte[] data;
+            try {
+                data = Files.readAllBytes(candidate);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            String problem = verify(candidate, data, generation == 0);
+            if (problem == null) {
+                try {
+                    T snapshot = decoder.decode(data);
+                    if (generation > 0) {
+                        log.warn("Recovered snapshot from checkpoint {} after rejecting {}", candidate, rejected);
+                    }
+                    lastSnapshotBytes = data.length;
+                    return snapshot;
+                } catch (IOException | RuntimeException e) {
+                    problem = "undecodable: " + e.getMessage();
+                }
+            }
+            rejected.add(candidate.getFileName() + " (" + problem + ")");
+        }
+        throw new IOException("No valid snapshot found for " + file + ", rejected: " + rejected);
+    }
+
+    private String verify(Path candidate, byte[] data, boolean live) throws IOException {
+        String record;
+        try {
+            record = Files.readString(checksumOf(candidate), StandardCharsets.US_ASCII).trim();
+        } catch (NoSuchFileException e) {
+            return live ? null : "missing checksum";
+        }
+        String expected = new String(checksumRecord(data), StandardCharsets.US_ASCII).trim();
+        return expected.equals(record) ? null : "checksum mismatch";
+    }
+
+    private void rotate() throws IOException {
+        if (retained == 0) {
+            // Without checkpoints, drop the sidecar first so a crash before the new one is in place leaves a whole
+            // file without a sidecar rather than one with a stale sidecar
+            Files.deleteIfExists(checksumOf(file));
+            return;
+        }
+        Files.deleteIfExists(checkpoint(retained));
+        Files.deleteIfExists(checksumOf(checkpoint(retained)));
+        for (int generation = retained - 1; generation >= 1; generation--) {
+            moveIfExists(checksumOf(checkpoint(generation)), checksumOf(checkpoint(generation + 1)));
+            moveIfExists(checkpoint(generation), checkpoint(generation + 1));
+        }
+        // The sidecar moves first: a crash in between leaves a live file without a sidecar, which is accepted
+        moveIfExists(checksumOf(file), checksumOf(checkpoint(1)));
+        moveIfExists(file, checkpoint(1));
+    }
+
+    /**
+     * Renames a freshly written file into place, atomically.
+     */
+    void move(Path source, Path target) throws IOException {
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void moveIfExists(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // Nothing to rotate at this generation
+        }
+    }
+
+    private static void writeDurably(Path target, byte[] data) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private void forceDirectory() {
+        try (FileChannel directory = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Not every platform allows a directory to be opened for fsync; the renames are still atomic
+            log.debug("Could not fsync directory {}: {}", file.getParent(), e.getMessage());
+        }
+    }
+
+    private static byte[] checksumRecord(byte[] data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        return (data.length + " " + Long.toHexString(crc.getValue()) + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private Path checkpoint(int generation) {
+        return sibling(file, "." + generation);
+    }
+
+    private static Path checksumOf(Path path) {
+        return sibling(path, CHECKSUM_SUFFIX);
+    }
+
+    private static Path sibling(Path path, String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+}
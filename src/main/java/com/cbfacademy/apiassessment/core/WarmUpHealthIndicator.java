@@ -0,0 +1,29 @@
+package com.cbfacademy.apiassessment.core;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * The WarmUpHealthIndicator class reports the repository warm-up as the {@code warmUp} health component.
+ * It is OUT_OF_SERVICE while the warm-up runs, UP once it has completed and DOWN if it failed. It is part of
+ * the readiness group only, so liveness is reported as soon as the application has started.
+ */
+@Component("warmUp")
+public class WarmUpHealthIndicator implements HealthIndicator {
+    private final WarmUpProgress progress;
+
+    public WarmUpHealthIndicator(WarmUpProgress progress) {
+        this.progress = progress;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = switch (progress.getPhase()) {
+            case READY -> Health.up();
+            case FAILED -> Health.down();
+            default -> Health.outOfService();
+        };
+        return builder.withDetails(progress.details()).build();
+    }
+}
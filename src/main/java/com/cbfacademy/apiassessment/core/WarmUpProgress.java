@@ -0,0 +1,99 @@
+package com.cbfacademy.apiassessment.core;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The WarmUpProgress class tracks the background warm-up of the repository: loading the data and building
+ * its indexes. It is reported through the {@code warmUp} health indicator, which keeps the instance out of
+ * the readiness group until the warm-up has completed.
+ */
+@Component
+public class WarmUpProgress {
+    /**
+     * The phases of the warm-up, in order.
+     */
+    public enum Phase {
+        PENDING, LOADING, INDEXING, READY, FAILED
+    }
+
+    private volatile Phase phase = Phase.PENDING;
+    private volatile long startedAt;
+    private volatile long loadMillis;
+    private volatile long indexMillis;
+    private volatile int stocks;
+    private volatile String error;
+
+    /**
+     * Marks the start of the data load.
+     */
+    public void loading() {
+        startedAt = System.currentTimeMillis();
+        phase = Phase.LOADING;
+    }
+
+    /**
+     * Marks the data as loaded and the start of index construction.
+     *
+     * @param stockCount the number of stocks loaded
+     */
+    public void indexing(int stockCount) {
+        stocks = stockCount;
+        loadMillis = System.currentTimeMillis() - startedAt;
+        phase = Phase.INDEXING;
+    }
+
+    /**
+     * Marks the warm-up as complete.
+     */
+    public void ready() {
+        indexMillis = System.currentTimeMillis() - startedAt - loadMillis;
+        phase = Phase.READY;
+    }
+
+    /**
+     * Marks the warm-up as failed. The instance then never becomes ready.
+     *
+     * @param cause the reason the warm-up failed
+     */
+    public void failed(Throwable cause) {
+        error = cause.getMessage();
+        phase = Phase.FAILED;
+    }
+
+    /**
+     * Returns the current phase.
+     *
+     * @return the warm-up phase
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Returns the progress as health details.
+     *
+     * @return the phase, the number of stocks loaded and the time spent in each completed phase
+     */
+    public Map<String, Object> details() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        Phase current = phase;
+        details.put("phase", current);
+        if (current == Phase.LOADING || current == Phase.INDEXING) {
+            details.put("elapsedMillis", System.currentTimeMillis() - startedAt);
+        }
+        if (current == Phase.INDEXING || current == Phase.READY) {
+            details.put("stocks", stocks);
+            details.put("loadMillis", loadMillis);
+        }
+        if (current == Phase.READY) {
+            details.put("indexMillis", indexMillis);
+        }
+        if (current == Phase.FAILED) {
+            details.put("error", error);
+        }
+        return details;
+    }
+}
@@ -0,0 +1,110 @@
+package com.cbfacademy.apiassessment.footprint;
+
+import com.cbfacademy.apiassessment.core.HeapFootprintSource;
+import com.cbfacademy.apiassessment.core.HeapStructure;
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.cbfacademy.apiassessment.stock.PersistenceStats;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The MemoryFootprint class reports how much heap the service holds for its data, for sizing the heap from the
+ * data rather than by guesswork.
+ *
+ * <p>Every {@link HeapFootprintSource} bean contributes its structures: the repository its stocks, maps, snapshot
+ * and indexes, and the result cache, price history and change log their buffers. The figures are estimates
+ * from sizes, see {@link com.cbfacademy.apiassessment.core.HeapEstimate}, and are reported with the size and
+ * timing of the last persist. The report is served at {@code /actuator/footprint} and published as
+ * {@code stock.memory.*} and {@code stock.persistence.*} gauges, so that capacity planning can follow the growth
+ * of the data over time.
+ */
+@Component
+public class MemoryFootprint implements MeterBinder {
+    /**
+     * How long the gauges reuse a report, so that one scrape reading every gauge estimates the structures once.
+     */
+    private static final long GAUGE_REFRESH_MILLIS = 1_000;
+
+    private final JsonStockRepository repository;
+    private final ObjectProvider<HeapFootprintSource> sources;
+    private volatile MemoryFootprintReport latest;
+
+    public MemoryFootprint(JsonStockRepository repository, ObjectProvider<HeapFootprintSource> sources) {
+        this.repository = repository;
+        this.sources = sources;
+    }
+
+    /**
+     * Estimates the footprint of every structure now.
+     *
+     * @return the report
+     */
+    public MemoryFootprintReport report() {
+        // Taken before the structures, which may then describe a slightly newer state
+        StockSnapshot current = repository.currentSnapshot();
+        List<HeapStructure> structures = new ArrayList<>();
+        sources.orderedStream().forEach(source -> structures.addAll(source.heapFootprint()));
+        MemoryFootprintReport report = new MemoryFootprintReport(System.currentTimeMillis(), current.getVersion(),
+                current.size(), List.copyOf(structures), repository.persistenceStats());
+        latest = report;
+        return report;
+    }
+
+    /**
+     * Returns a report taken within the last {@link #GAUGE_REFRESH_MILLIS}, taking a new one if there is none.
+     */
+    private MemoryFootprintReport recent() {
+        MemoryFootprintReport report = latest;
+        if (report == null || System.currentTimeMillis() - report.getTimestamp() > GAUGE_REFRESH_MILLIS) {
+            report = report();
+        }
+        return report;
+    }
+
+    private double structureBytes(String name) {
+        for (HeapStructure structure : recent().getStructures()) {
+            if (structure.getStructure().equals(name)) {
+                return structure.getBytes();
+            }
+        }
+        return 0;
+    }
+
+    private void persistenceGauge(MeterRegistry registry, String name, String description, String unit,
+                                  ToDoubleFunction<PersistenceStats> value) {
+        Gauge.builder(name, this, footprint -> value.applyAsDouble(footprint.recent().getPersistence()))
+                .description(description).baseUnit(unit).register(registry);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stock.memory.stocks", this, footprint -> footprint.recent().getStocks())
+                .description("Stocks held in memory").register(registry);
+        // Every source reports the same structures each time, so the first report names all of them
+        for (HeapStructure structure : report().getStructures()) {
+            String name = structure.getStructure();
+            Gauge.builder("stock.memory.estimated", this, footprint -> footprint.structureBytes(name))
+                    .tag("structure", name).description("Estimated heap held by an in-memory structure")
+                    .baseUnit("bytes").register(registry);
+        }
+        persistenceGauge(registry, "stock.persistence.snapshot.size",
+                "Size on disk of the last snapshot written or loaded", "bytes",
+                PersistenceStats::getLastSnapshotBytes);
+        persistenceGauge(registry, "stock.persistence.snapshot.duration",
+                "Time taken by the last full snapshot write", "seconds",
+                stats -> stats.getLastSnapshotMillis() / 1000);
+        persistenceGauge(registry, "stock.persistence.duration",
+                "Time taken by the last persist, snapshot or journal", "seconds",
+                stats -> stats.getLastPersistMillis() / 1000);
+        persistenceGauge(registry, "stock.persistence.journal.entries",
+                "Patches journaled since the last snapshot", null, PersistenceStats::getJournalEntries);
+    }
+}
@@ -0,0 +1,29 @@
+package com.cbfacademy.apiassessment.footprint;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * The MemoryFootprintEndpoint class exposes the {@link MemoryFootprint} as {@code /actuator/footprint}.
+ */
+@Component
+@Endpoint(id = "footprint")
+public class MemoryFootprintEndpoint {
+    private final MemoryFootprint memoryFootprint;
+
+    public MemoryFootprintEndpoint(MemoryFootprint memoryFootprint) {
+        this.memoryFootprint = memoryFootprint;
+    }
+
+    /**
+     * Returns the number of stocks, the estimated heap held by each in-memory structure and the size and timing
+     * of the last persist.
+     *
+     * @return the memory footprint report
+     */
+    @ReadOperation
+    public MemoryFootprintReport footprint() {
+        return memoryFootprint.report();
+    }
+}
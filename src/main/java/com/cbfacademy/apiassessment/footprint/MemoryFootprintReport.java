@@ -0,0 +1,85 @@
+package com.cbfacademy.apiassessment.footprint;
+
+import com.cbfacademy.apiassessment.core.HeapStructure;
+import com.cbfacademy.apiassessment.stock.PersistenceStats;
+
+import java.util.List;
+
+/**
+ * The MemoryFootprintReport class describes how much heap the service holds for its data, structure by
+ * structure, and how its data was last persisted.
+ */
+public class MemoryFootprintReport {
+    private final long timestamp;
+    private final long version;
+    private final int stocks;
+    private final long estimatedBytes;
+    private final long estimatedBytesPerStock;
+    private final List<HeapStructure> structures;
+    private final PersistenceStats persistence;
+
+    MemoryFootprintReport(long timestamp, long version, int stocks, List<HeapStructure> structures,
+                          PersistenceStats persistence) {
+        this.timestamp = timestamp;
+        this.version = version;
+        this.stocks = stocks;
+        this.estimatedBytes = structures.stream().mapToLong(HeapStructure::getBytes).sum();
+        this.estimatedBytesPerStock = stocks == 0 ? 0 : estimatedBytes / stocks;
+        this.structures = structures;
+        this.persistence = persistence;
+    }
+
+    /**
+     * Returns when the report was taken.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the repository version the report describes.
+     *
+     * @return the repository version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getStocks() {
+        return stocks;
+    }
+
+    /**
+     * Returns the estimated heap held by every structure together.
+     *
+     * @return the estimated size in bytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Returns the estimated heap held per stock by every structure together, for projecting the heap a larger
+     * universe needs.
+     *
+     * @return the estimated size in bytes per stock, 0 if there are no stocks
+     */
+    public long getEstimatedBytesPerStock() {
+        return estimatedBytesPerStock;
+    }
+
+    /**
+     * Returns the in-memory structures with their entry counts and estimated sizes.
+     *
+     * @return the structures
+     */
+    public List<HeapStructure> getStructures() {
+        return structures;
+    }
+
+    public PersistenceStats getPersistence() {
+        return persistence;
+    }
+}
@@ -0,0 +1,57 @@
+package com.cbfacademy.apiassessment.history;
+
+/**
+ * The OhlcBar class is one open/high/low/close bar of a price history, covering the interval
+ * that starts at {@code start}.
+ */
+public class OhlcBar {
+    private final long start;
+    private final double open;
+    private final double high;
+    private final double low;
+    private final double close;
+    private final int ticks;
+
+    public OhlcBar(long start, double open, double high, double low, double close, int ticks) {
+        this.start = start;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.ticks = ticks;
+    }
+
+    /**
+     * Returns the start of the bar's interval in milliseconds since the epoch.
+     *
+     * @return the interval start
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public double getOpen() {
+        return open;
+    }
+
+    public double getHigh() {
+        return high;
+    }
+
+    public double getLow() {
+        return low;
+    }
+
+    public double getClose() {
+        return close;
+    }
+
+    /**
+     * Returns the number of price ticks aggregated into the bar.
+     *
+     * @return the tick count
+     */
+    public int getTicks() {
+        return ticks;
+    }
+}
@@ -0,0 +1,245 @@
+package com.cbfacademy.apiassessment.history;
+
+import com.cbfacademy.apiassessment.core.HeapEstimate;
+import com.cbfacademy.apiassessment.core.HeapFootprintSource;
+import com.cbfacademy.apiassessment.core.HeapStructure;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The PriceHistory class keeps a bounded history of the current price of every stock.
+ *
+ * <p>Each create or update in the repository records a tick in the ticker's {@link PriceRing}. Memory is
+ * bounded by two settings: {@code stock.history.capacity} is the number of ticks retained per ticker, and
+ * {@code stock.history.max-tickers} is the number of tickers tracked. When a new ticker arrives and the
+ * limit has been reached, the ring of the ticker that was updated least recently is cleared and reused,
+ * so the buffers are allocated once and recycled from then on.
+ *
+ * <p>When the repository contents are replaced wholesale, such as by a CSV import, the history of every ticker
+ * that is gone is dropped, and the tickers that remain record their price in the new universe.
+ */
+@Component
+public class PriceHistory implements StockChangeListener, HeapFootprintSource {
+    private static final Pattern INTERVAL = Pattern.compile("(\\d+)([smhd])");
+
+    private final int capacity;
+    private final int maxTickers;
+    private final Map<String, PriceRing> rings = new ConcurrentHashMap<>();
+
+    public PriceHistory(@Value("${stock.history.capacity:1024}") int capacity,
+                        @Value("${stock.history.max-tickers:10000}") int maxTickers) {
+        if (capacity <= 0 || maxTickers <= 0) {
+            throw new IllegalArgumentException("Price history capacity and max tickers must be positive");
+        }
+        this.capacity = capacity;
+        this.maxTickers = maxTickers;
+    }
+
+    /**
+     * Records the new price of a created or updated stock, and drops the history of a deleted one.
+     *
+     * @param event the repository change
+     */
+    @Override
+    public void onStockChange(StockChangeEvent event) {
+        if (event.getType() == StockChangeEvent.Type.DELETED) {
+            PriceRing ring = rings.remove(event.getTicker());
+            if (ring != null) {
+                ring.clear();
+            }
+            return;
+        }
+        record(event.getTicker(), event.getTimestamp(), event.getStock().getCurrentPriceUnits());
+    }
+
+    /**
+     * Drops the history of the tickers the new contents no longer hold and records the price of the tickers
+     * that remain, as no change events are sent for a wholesale replacement. Tickers without history are not
+     * started here, so a large import does not fill the ticker limit at once.
+     *
+     * @param snapshot the snapshot that replaced the previous contents
+     */
+    @Override
+    public void onStockReset(StockSnapshot snapshot) {
+        long timestamp = System.currentTimeMillis();
+        for (Map.Entry<String, PriceRing> entry : rings.entrySet()) {
+            Stock stock = snapshot.get(entry.getKey());
+            if (stock == null) {
+                if (rings.remove(entry.getKey(), entry.getValue())) {
+                    entry.getValue().clear();
+                }
+            } else {
+                entry.getValue().record(timestamp, stock.getCurrentPriceUnits());
+            }
+        }
+    }
+
+    /**
+     * Records a price tick for a ticker.
+     *
+     * @param ticker the ticker of the stock
+     * @param timestamp the time of the tick in milliseconds since the epoch
+     * @param priceUnits the price in fixed-point units
+     */
+    public void record(String ticker, long timestamp, long priceUnits) {
+        PriceRing ring = rings.get(ticker);
+        if (ring == null) {
+            ring = acquireRing(ticker);
+        }
+        ring.record(timestamp, priceUnits);
+    }
+
+    private synchronized PriceRing acquireRing(String ticker) {
+        PriceRing ring = rings.get(ticker);
+        if (ring != null) {
+            return ring;
+        }
+        if (rings.size() >= maxTickers) {
+            String victim = null;
+            long oldest = Long.MAX_VALUE;
+            for (Map.Entry<String, PriceRing> entry : rings.entrySet()) {
+                if (entry.getValue().lastTimestamp() < oldest) {
+                    oldest = entry.getValue().lastTimestamp();
+                    victim = entry.getKey();
+                }
+            }
+            ring = rings.remove(victim);
+            ring.clear();
+        } else {
+            ring = new PriceRing(capacity);
+        }
+        rings.put(ticker, ring);
+        return ring;
+    }
+
+    /**
+     * Downsamples the recorded history of a ticker into open/high/low/close bars. Bars are aligned to
+     * multiples of the interval and intervals without any ticks are omitted.
+     *
+     * @param ticker the ticker of the stock
+     * @param intervalMillis the width of each bar in milliseconds
+     * @return the bars from oldest to newest, empty if nothing has been recorded
+     */
+    public List<OhlcBar> bars(String ticker, long intervalMillis) {
+        PriceRing ring = rings.get(ticker);
+        if (ring == null) {
+            return Collections.emptyList();
+        }
+        List<OhlcBar> bars = new ArrayList<>();
+        BarBuilder builder = new BarBuilder(intervalMillis, bars);
+        ring.forEach(builder);
+        builder.finish();
+        return bars;
+    }
+
+    /**
+     * Returns the number of tickers with a history.
+     *
+     * @return the tracked ticker count
+     */
+    public int trackedTickers() {
+        return rings.size();
+    }
+
+    /**
+     * Returns the number of ticks retained per ticker.
+     *
+     * @return the ring capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Estimates the heap held by the price rings. Every ring is allocated at full capacity, so the history
+     * grows with the number of tickers tracked, up to {@code stock.history.max-tickers}, and not with the
+     * number of ticks recorded. The tickers are shared with the stocks and not counted.
+     *
+     * @return the price history, with one entry per tracked ticker
+     */
+    @Override
+    public List<HeapStructure> heapFootprint() {
+        int tickers = rings.size();
+        long bytes = HeapEstimate.hashMap(tickers)
+                + tickers * (PriceRing.OBJECT_BYTES + 2 * HeapEstimate.longArray(capacity));
+        return List.of(new HeapStructure("price-history", tickers, bytes));
+    }
+
+    /**
+     * Parses an interval such as {@code 30s}, {@code 1m}, {@code 4h} or {@code 1d}.
+     *
+     * @param interval the interval text
+     * @return the interval in milliseconds
+     * @throws IllegalArgumentException if the interval is not valid
+     */
+    public static long parseInterval(String interval) {
+        Matcher matcher = interval == null ? null : INTERVAL.matcher(interval.trim());
+        if (matcher == null || !matcher.matches()) {
+            throw new IllegalArgumentException("Interval must be a number followed by s, m, h or d, for example 1m");
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        switch (matcher.group(2)) {
+            case "s": return amount * 1_000L;
+            case "m": return amount * 60_000L;
+            case "h": return amount * 3_600_000L;
+            default: return amount * 86_400_000L;
+        }
+    }
+
+    /**
+     * Folds a stream of ticks into bars.
+     */
+    private static final class BarBuilder implements PriceRing.TickVisitor {
+        private final long intervalMillis;
+        private final List<OhlcBar> bars;
+        private long start = Long.MIN_VALUE;
+        private long open;
+        private long high;
+        private long low;
+        private long close;
+        private int ticks;
+
+        BarBuilder(long intervalMillis, List<OhlcBar> bars) {
+            this.intervalMillis = intervalMillis;
+            this.bars = bars;
+        }
+
+        @Override
+        public void visit(long timestamp, long priceUnits) {
+            long bucket = timestamp - Math.floorMod(timestamp, intervalMillis);
+            if (bucket != start) {
+                finish();
+                start = bucket;
+                open = high = low = priceUnits;
+                ticks = 0;
+            }
+            high = Math.max(high, priceUnits);
+            low = Math.min(low, priceUnits);
+            close = priceUnits;
+            ticks++;
+        }
+
+        void finish() {
+            if (ticks > 0) {
+                bars.add(new OhlcBar(start, Stock.fromUnits(open), Stock.fromUnits(high),
+                        Stock.fromUnits(low), Stock.fromUnits(close), ticks));
+                ticks = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.cbfacademy.apiassessment.history;
+
+/**
+ * The PriceRing class is a fixed-capacity ring buffer of price ticks for one ticker.
+ *
+ * <p>Timestamps and prices are kept in two preallocated primitive arrays, so recording a tick never
+ * allocates. When the ring is full the oldest tick is overwritten. All methods synchronize on the
+ * ring; a ring is only ever contended by the writer of its own ticker and history readers.
+ */
+class PriceRing {
+    /**
+     * The estimated size of a ring without its arrays: a header, two references, two ints and a long.
+     */
+    static final int OBJECT_BYTES = 40;
+
+    private final long[] timestamps;
+    private final long[] prices;
+    private int next;
+    private int size;
+    private volatile long lastTimestamp;
+
+    PriceRing(int capacity) {
+        this.timestamps = new long[capacity];
+        this.prices = new long[capacity];
+    }
+
+    /**
+     * Records a tick, overwriting the oldest one if the ring is full.
+     *
+     * @param timestamp the time of the tick in milliseconds since the epoch
+     * @param priceUnits the price in fixed-point units
+     */
+    synchronized void record(long timestamp, long priceUnits) {
+        timestamps[next] = timestamp;
+        prices[next] = priceUnits;
+        next = (next + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Empties the ring so that it can be reused for another ticker.
+     */
+    synchronized void clear() {
+        next = 0;
+        size = 0;
+        lastTimestamp = 0;
+    }
+
+    /**
+     * Returns the time of the most recent tick, or 0 if the ring is empty. Used to pick a ring to evict.
+     *
+     * @return the last tick timestamp
+     */
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    int capacity() {
+        return timestamps.length;
+    }
+
+    /**
+     * Visits the ticks from oldest to newest.
+     *
+     * @param visitor the callback receiving each tick
+     */
+    synchronized void forEach(TickVisitor visitor) {
+        int start = (next - size + timestamps.length) % timestamps.length;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % timestamps.length;
+            visitor.visit(timestamps[index], prices[index]);
+        }
+    }
+
+    /**
+     * Receives the ticks of a ring as primitives.
+     */
+    interface TickVisitor {
+        void visit(long timestamp, long priceUnits);
+    }
+}
@@ -0,0 +1,84 @@
+package com.cbfacademy.apiassessment.metrics;
+
+/**
+ * The RequestTiming class collects the phase timestamps of the request being handled on the current thread.
+ *
+ * <p>{@link RequestTimingFilter} opens a timing when a stock API request arrives and closes it when the
+ * response is complete. In between, the response body advice marks the moment the handler returned and the
+ * body started to be written, and the repository adds the time it spent persisting. Code running outside a
+ * timed request, such as the asynchronous write thread, records nothing.
+ */
+public final class RequestTiming {
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos;
+    private long bodyWriteNanos;
+    private long persistenceNanos;
+
+    private RequestTiming(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Starts timing a request on the current thread.
+     *
+     * @return the new timing
+     */
+    static RequestTiming start() {
+        RequestTiming timing = new RequestTiming(System.nanoTime());
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /**
+     * Stops associating the timing with the current thread.
+     */
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Marks the point at which the handler has returned and its body is about to be serialized.
+     */
+    static void markBodyWrite() {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null && timing.bodyWriteNanos == 0) {
+            timing.bodyWriteNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Adds time spent persisting data to the request being handled on this thread, if any.
+     *
+     * @param nanos the time spent persisting, in nanoseconds
+     */
+    public static void recordPersistence(long nanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.persistenceNanos += nanos;
+        }
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Returns the time from the request arriving to the body starting to be written, or the whole request
+     * if no body was written.
+     */
+    long serviceNanos(long endNanos) {
+        return (bodyWriteNanos == 0 ? endNanos : bodyWriteNanos) - startNanos;
+    }
+
+    /**
+     * Returns the time spent serializing and writing the body, or 0 if no body was written.
+     */
+    long serializationNanos(long endNanos) {
+        return bodyWriteNanos == 0 ? 0 : endNanos - bodyWriteNanos;
+    }
+
+    long getPersistenceNanos() {
+        return persistenceNanos;
+    }
+}
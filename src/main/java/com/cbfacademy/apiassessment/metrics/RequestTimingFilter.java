@@ -0,0 +1,102 @@
+package com.cbfacademy.apiassessment.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RequestTimingFilter class times every request to {@code /api/stocks/**} and records the timings as
+ * latency histograms and in the {@link SlowRequestLog}.
+ *
+ * <p>Each request is recorded in the {@code stock.http.requests} timer, tagged with the method, the route
+ * template, the status code and the phase: {@code total}, {@code service} (until the handler returned),
+ * {@code serialization} (writing the body) and, for requests that wrote to the repository, {@code persistence}.
+ * The timers publish p50, p90, p99 and p99.9, so a p99 regression can be traced to a route and a phase.
+ * Streaming responses that go asynchronous are not timed. The filter runs ahead of admission control, so the
+ * time a request waits to be admitted counts towards its service phase, and rejected requests are recorded too.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestTimingFilter extends OncePerRequestFilter {
+    /**
+     * The name of the timer holding the request latencies.
+     */
+    public static final String METRIC_NAME = "stock.http.requests";
+
+    private static final String PATH_PREFIX = "/api/stocks";
+
+    private final MeterRegistry registry;
+    private final SlowRequestLog slowRequestLog;
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    private record TimerKey(String method, String route, int status, String phase) {
+    }
+
+    public RequestTimingFilter(MeterRegistry registry, SlowRequestLog slowRequestLog) {
+        this.registry = registry;
+        this.slowRequestLog = slowRequestLog;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + PATH_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestTiming timing = RequestTiming.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestTiming.end();
+            if (!request.isAsyncStarted()) {
+                record(request, response, timing, System.nanoTime());
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, RequestTiming timing, long end) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String route = pattern != null ? pattern.toString() : "UNMATCHED";
+        String method = request.getMethod();
+        int status = response.getStatus();
+
+        long total = end - timing.getStartNanos();
+        long service = timing.serviceNanos(end);
+        long serialization = timing.serializationNanos(end);
+        long persistence = timing.getPersistenceNanos();
+        timer(method, route, status, "total").record(total, TimeUnit.NANOSECONDS);
+        timer(method, route, status, "service").record(service, TimeUnit.NANOSECONDS);
+        timer(method, route, status, "serialization").record(serialization, TimeUnit.NANOSECONDS);
+        if (persistence > 0) {
+            timer(method, route, status, "persistence").record(persistence, TimeUnit.NANOSECONDS);
+        }
+        slowRequestLog.offer(new SlowRequest(slowRequestLog.now(), method, route, request.getRequestURI(),
+                request.getQueryString(), status, total, service, serialization, persistence));
+    }
+
+    private Timer timer(String method, String route, int status, String phase) {
+        return timers.computeIfAbsent(new TimerKey(method, route, status, phase), key -> Timer.builder(METRIC_NAME)
+                .description("Latency of stock API requests by route, status and phase")
+                .tag("method", key.method())
+                .tag("route", key.route())
+                .tag("status", Integer.toString(key.status()))
+                .tag("phase", key.phase())
+                .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+                .register(registry));
+    }
+}
@@ -0,0 +1,101 @@
+package com.cbfacademy.apiassessment.metrics;
+
+/**
+ * The SlowRequest class describes one request kept by the {@link SlowRequestLog}.
+ */
+public class SlowRequest {
+    private final long timestamp;
+    private final String method;
+    private final String route;
+    private final String path;
+    private final String query;
+    private final int status;
+    private final double totalMillis;
+    private final double serviceMillis;
+    private final double serializationMillis;
+    private final double persistenceMillis;
+
+    SlowRequest(long timestamp, String method, String route, String path, String query, int status,
+                long totalNanos, long serviceNanos, long serializationNanos, long persistenceNanos) {
+        this.timestamp = timestamp;
+        this.method = method;
+        this.route = route;
+        this.path = path;
+        this.query = query;
+        this.status = status;
+        this.totalMillis = totalNanos / 1e6;
+        this.serviceMillis = serviceNanos / 1e6;
+        this.serializationMillis = serializationNanos / 1e6;
+        this.persistenceMillis = persistenceNanos / 1e6;
+    }
+
+    /**
+     * Returns when the request completed.
+     *
+     * @return the completion time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the route template the request matched, for example {@code /api/stocks/{ticker}}.
+     *
+     * @return the route template
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the query string of the request.
+     *
+     * @return the query string, or null if there was none
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * Returns the time until the handler returned, including request parsing and the service call.
+     *
+     * @return the service time in milliseconds
+     */
+    public double getServiceMillis() {
+        return serviceMillis;
+    }
+
+    /**
+     * Returns the time spent serializing and writing the response body.
+     *
+     * @return the serialization time in milliseconds
+     */
+    public double getSerializationMillis() {
+        return serializationMillis;
+    }
+
+    /**
+     * Returns the part of the service time spent persisting the repository.
+     *
+     * @return the persistence time in milliseconds
+     */
+    public double getPersistenceMillis() {
+        return persistenceMillis;
+    }
+}
@@ -0,0 +1,113 @@
+package com.cbfacademy.apiassessment.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The SlowRequestLog class keeps the slowest recent stock API requests.
+ *
+ * <p>Time is divided into windows of {@code stock.metrics.slow-window-ms}. Within the current window the
+ * {@code stock.metrics.slow-capacity} slowest requests are kept in a min-heap, so memory stays bounded however
+ * busy the service is. When a window ends it replaces the previous one, and readers see the slowest requests
+ * of both, that is of the last one to two windows. Once the heap is full, a request faster than the fastest one
+ * kept is rejected without taking the lock.
+ */
+@Component
+public class SlowRequestLog {
+    private static final Comparator<SlowRequest> BY_TOTAL = Comparator.comparingDouble(SlowRequest::getTotalMillis);
+
+    private final int capacity;
+    private final long windowMillis;
+    private final Clock clock;
+    private PriorityQueue<SlowRequest> current;
+    private List<SlowRequest> previous = List.of();
+    private volatile long windowStart;
+
+    /**
+     * The total time of the fastest request kept once the current window is full, or 0 before that.
+     */
+    private volatile double admissionMillis;
+
+    @Autowired
+    public SlowRequestLog(@Value("${stock.metrics.slow-capacity:50}") int capacity,
+                          @Value("${stock.metrics.slow-window-ms:300000}") long windowMillis) {
+        this(capacity, windowMillis, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a log that reads the time from the given clock, so that tests can move time forward.
+     *
+     * @param capacity the number of requests kept per window
+     * @param windowMillis the length of a window
+     * @param clock the clock the windows are rolled by
+     */
+    SlowRequestLog(int capacity, long windowMillis, Clock clock) {
+        this.capacity = capacity;
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+        this.current = new PriorityQueue<>(capacity + 1, BY_TOTAL);
+        this.windowStart = clock.millis();
+    }
+
+    /**
+     * Returns the current time of the clock the windows are rolled by. Requests offered to the log must be
+     * stamped with it, so that a request is never kept in a window its timestamp does not belong to.
+     *
+     * @return the current time in milliseconds since the epoch
+     */
+    public long now() {
+        return clock.millis();
+    }
+
+    /**
+     * Offers a completed request to the log.
+     *
+     * @param request the request and its timings, stamped with {@link #now()}
+     */
+    public void offer(SlowRequest request) {
+        if (request.getTotalMillis() <= admissionMillis && request.getTimestamp() < windowStart + windowMillis) {
+            return;
+        }
+        synchronized (this) {
+            roll(request.getTimestamp());
+            current.add(request);
+            if (current.size() > capacity) {
+                current.poll();
+            }
+            if (current.size() == capacity) {
+                admissionMillis = current.peek().getTotalMillis();
+            }
+        }
+    }
+
+    /**
+     * Returns the slowest requests of the current and previous windows, slowest first.
+     *
+     * @return at most twice the capacity requests
+     */
+    public synchronized List<SlowRequest> slowest() {
+        roll(clock.millis());
+        List<SlowRequest> slowest = new ArrayList<>(previous);
+        slowest.addAll(current);
+        slowest.sort(BY_TOTAL.reversed());
+        return slowest;
+    }
+
+    private void roll(long now) {
+        if (now < windowStart + windowMillis) {
+            return;
+        }
+        // A window with no traffic in between leaves nothing recent to keep
+        previous = now < windowStart + 2 * windowMillis ? List.copyOf(current) : List.of();
+        current = new PriorityQueue<>(capacity + 1, BY_TOTAL);
+        windowStart = now - (now - windowStart) % windowMillis;
+        admissionMillis = 0;
+    }
+}
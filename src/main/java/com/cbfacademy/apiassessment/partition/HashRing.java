@@ -0,0 +1,154 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The HashRing class assigns tickers to the nodes of a partitioned deployment by consistent hashing.
+ *
+ * <p>Every member is placed on a 64-bit hash ring at {@code virtualNodes} points, and a ticker belongs to the
+ * member owning the first point at or after the ticker's own hash. Spreading each member over many points
+ * keeps the partitions close to equal in size, and when a member joins or leaves only the tickers on the arcs
+ * it gains or loses change owner: about 1/N of the universe, rather than nearly all of it as with
+ * {@code hash % N}.
+ *
+ * <p>A ring is immutable. Membership changes produce a new ring with a higher version, which is how nodes tell
+ * which of two rings is newer. The hash is computed from the UTF-8 bytes of the ticker, so every node and every
+ * JVM agrees on the owner of a ticker.
+ */
+public final class HashRing {
+    private final long version;
+    private final int virtualNodes;
+    private final List<String> members;
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    /**
+     * Creates a ring.
+     *
+     * @param version the version of the membership
+     * @param virtualNodes the number of points each member is placed at
+     * @param members the base URLs of the members
+     * @throws IllegalArgumentException if there are no members or fewer than one point per member
+     */
+    @JsonCreator
+    public HashRing(@JsonProperty("version") long version, @JsonProperty("virtualNodes") int virtualNodes,
+                    @JsonProperty("members") List<String> members) {
+        if (members == null || members.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one member");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Each member needs at least one virtual node");
+        }
+        this.version = version;
+        this.virtualNodes = virtualNodes;
+        this.members = List.copyOf(new TreeSet<>(members));
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On the rare collision the smaller member name wins, the same on every node
+                points.merge(hash(member + "#" + i), member, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    /**
+     * Returns the version of the membership this ring was built from.
+     *
+     * @return the ring version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of points each member is placed at.
+     *
+     * @return the virtual nodes per member
+     */
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * Returns the members of the ring in name order.
+     *
+     * @return an unmodifiable list of member base URLs
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * Returns the member that owns a ticker.
+     *
+     * @param ticker the ticker
+     * @return the base URL of the owning member
+     */
+    public String ownerOf(String ticker) {
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(ticker));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * Tells whether a node is a member of the ring.
+     *
+     * @param node the base URL of the node
+     * @return true if the node is a member
+     */
+    public boolean contains(String node) {
+        return Collections.binarySearch(members, node) >= 0;
+    }
+
+    /**
+     * Returns the next version of this ring with a member added.
+     *
+     * @param node the base URL of the joining node
+     * @return the new ring
+     */
+    public HashRing with(String node) {
+        List<String> next = new ArrayList<>(members);
+        if (!contains(node)) {
+            next.add(node);
+        }
+        return new HashRing(version + 1, virtualNodes, next);
+    }
+
+    /**
+     * Returns the next version of this ring with a member removed.
+     *
+     * @param node the base URL of the leaving node
+     * @return the new ring
+     * @throws IllegalArgumentException if the node is the only member
+     */
+    public HashRing without(String node) {
+        List<String> next = new ArrayList<>(members);
+        next.remove(node);
+        return new HashRing(version + 1, virtualNodes, next);
+    }
+
+    /**
+     * Hashes a key onto the ring with 64-bit FNV-1a, followed by the MurmurHash3 finalizer so that keys that
+     * differ only in their last characters, such as the virtual node labels, still land far apart.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,172 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * The PartialResult class is one partition's part of a scatter-gather read, consumed one stock at a time.
+ *
+ * <p>A part is either this node's own list or the response of another node, which is decoded while it arrives
+ * rather than buffered whole before it is merged. Only the stocks the given predicate accepts are passed on,
+ * normally those the partition owns under the gathering node's ring: once a rebalance is complete a stock is
+ * held by its owner alone, and a copy left behind elsewhere must not appear twice.
+ *
+ * <p>{@link #merge(List, Comparator, List)} combines parts that are each sorted into one sorted list, taking the
+ * smallest head among the parts at every step, and {@link #concat(List, List)} adds unsorted parts one after
+ * another.
+ */
+final class PartialResult implements Closeable {
+    private final Iterator<Stock> local;
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private final Predicate<Stock> owned;
+    private Stock head;
+
+    private PartialResult(Iterator<Stock> local, JsonParser parser, ObjectReader reader, Predicate<Stock> owned)
+            throws IOException {
+        this.local = local;
+        this.parser = parser;
+        this.reader = reader;
+        this.owned = owned;
+        advance();
+    }
+
+    /**
+     * Wraps this node's own part of a read.
+     *
+     * @param stocks the stocks found here
+     * @param owned tells which of them this node owns
+     * @return the part
+     */
+    static PartialResult of(List<Stock> stocks, Predicate<Stock> owned) {
+        try {
+            return new PartialResult(stocks.iterator(), null, null, owned);
+        } catch (IOException e) {
+            // A local part has no body to read
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads another node's part of a read from its response body. A body that is not an array, such as the
+     * message sent when a sector has no stocks, is an empty part.
+     *
+     * @param reader the reader for a single stock in the body's encoding
+     * @param body the response body, which is closed with the part
+     * @param owned tells which stocks the other node owns
+     * @return the part
+     * @throws IOException if the body cannot be read
+     */
+    static PartialResult read(ObjectReader reader, InputStream body, Predicate<Stock> owned) throws IOException {
+        JsonParser parser = reader.createParser(body);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            return new PartialResult(null, null, null, owned);
+        }
+        return new PartialResult(null, parser, reader, owned);
+    }
+
+    /**
+     * Returns the next stock of the part without consuming it.
+     *
+     * @return the next stock, or null when the part is exhausted
+     */
+    Stock peek() {
+        return head;
+    }
+
+    /**
+     * Consumes the next stock of the part.
+     *
+     * @return the stock that was next
+     * @throws IOException if the rest of the body cannot be read
+     */
+    Stock next() throws IOException {
+        Stock current = head;
+        advance();
+        return current;
+    }
+
+    private void advance() throws IOException {
+        head = null;
+        while (true) {
+            Stock candidate;
+            if (local != null) {
+                if (!local.hasNext()) {
+                    return;
+                }
+                candidate = local.next();
+            } else if (parser != null && parser.nextToken() == JsonToken.START_OBJECT) {
+                candidate = reader.readValue(parser);
+            } else {
+                return;
+            }
+            if (owned.test(candidate)) {
+                head = candidate;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (parser != null) {
+            parser.close();
+        }
+    }
+
+    /**
+     * Merges parts that are each sorted in the given order into one sorted stream. Stocks that compare equal
+     * are taken from the earlier part first.
+     *
+     * @param parts the sorted parts
+     * @param order the order every part is sorted in
+     * @param out where the merged stocks are added
+     * @throws IOException if a part cannot be read
+     */
+    static void merge(List<PartialResult> parts, Comparator<Stock> order, List<Stock> out) throws IOException {
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> {
+            int byOrder = order.compare(parts.get(a).peek(), parts.get(b).peek());
+            return byOrder != 0 ? byOrder : Integer.compare(a, b);
+        });
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i).peek() != null) {
+                heads.add(i);
+            }
+        }
+        while (!heads.isEmpty()) {
+            int smallest = heads.poll();
+            out.add(parts.get(smallest).next());
+            if (parts.get(smallest).peek() != null) {
+                heads.add(smallest);
+            }
+        }
+    }
+
+    /**
+     * Adds the parts one after another.
+     *
+     * @param parts the parts
+     * @param out where the stocks are added
+     * @throws IOException if a part cannot be read
+     */
+    static void concat(List<PartialResult> parts, List<Stock> out) throws IOException {
+        for (PartialResult part : parts) {
+            while (part.peek() != null) {
+                out.add(part.next());
+            }
+        }
+    }
+}
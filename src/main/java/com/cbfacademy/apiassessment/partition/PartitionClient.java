@@ -0,0 +1,385 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * The PartitionClient class makes the HTTP calls between the nodes of a partitioned deployment: forwarding a
+ * request to the owner of its ticker, fetching a stock or a partial result for a scatter-gather read, handing
+ * stocks over to their new owner, and spreading ring changes and completed handoffs.
+ *
+ * <p>Every call a node makes on behalf of a client carries the {@value #HOP_HEADER} header, which tells the
+ * receiving node to answer from its own partition rather than route the request again; the node answers with
+ * its ring version, which is passed to the observer registered with {@link #observeRings(ObjLongConsumer)}.
+ * Stock lists travel between nodes as Smile, which is cheaper to encode and decode than JSON.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.partition.enabled", havingValue = "true")
+public class PartitionClient {
+    private static final Logger log = LoggerFactory.getLogger(PartitionClient.class);
+
+    /**
+     * Marks a request sent by another node, with the ring version of the sender as its value.
+     */
+    static final String HOP_HEADER = "X-Stock-Partition-Hop";
+
+    /**
+     * The ring version of the node that answered a request sent by another node.
+     */
+    static final String RING_HEADER = "X-Stock-Partition-Ring";
+
+    static final String SMILE = "application/x-jackson-smile";
+    private static final ObjectMapper JSON_MAPPER = StorageFormat.JSON.documentMapper();
+    private static final ObjectWriter STOCK_LIST_WRITER = StorageFormat.SMILE.documentMapper()
+            .writerFor(new TypeReference<List<Stock>>() {});
+    private static final Map<StorageFormat, ObjectMapper> MAPPERS = new EnumMap<>(StorageFormat.class);
+
+    static {
+        for (StorageFormat format : StorageFormat.values()) {
+            MAPPERS.put(format, format.documentMapper());
+        }
+    }
+
+    /**
+     * The request headers passed on when a request is forwarded to the owner of its ticker.
+     */
+    private static final List<String> FORWARDED_HEADERS = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.ACCEPT,
+            "Prefer", HttpHeaders.IF_MATCH, HttpHeaders.IF_NONE_MATCH);
+
+    private final HttpClient http;
+    private final Duration timeout;
+    private volatile ObjLongConsumer<String> ringObserver = (node, version) -> { };
+
+    /**
+     * Creates the client.
+     *
+     * @param timeoutMillis how long to wait to connect to another node, and for its answer
+     */
+    public PartitionClient(@Value("${stock.partition.timeout-ms:5000}") long timeoutMillis) {
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Registers the observer told the ring version of every node that answers a call made on behalf of a
+     * client, so that this node notices a newer ring.
+     *
+     * @param observer receives the base URL of the node and its ring version
+     */
+    public void observeRings(ObjLongConsumer<String> observer) {
+        this.ringObserver = observer;
+    }
+
+    /**
+     * Tells whether the request being handled on this thread was sent by another node, and must be answered
+     * from this node's own partition.
+     *
+     * @return true for a request carrying {@value #HOP_HEADER}
+     */
+    static boolean isPeerRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes servlet
+                && servlet.getRequest().getHeader(HOP_HEADER) != null;
+    }
+
+    /**
+     * Returns the mapper for the encoding of another node's answer.
+     *
+     * @param answer the answer
+     * @return the mapper for its content type, JSON if it has none
+     */
+    static ObjectMapper mapperFor(HttpResponse<?> answer) {
+        String contentType = answer.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElse("");
+        if (contentType.startsWith(MediaType.APPLICATION_CBOR_VALUE)) {
+            return MAPPERS.get(StorageFormat.CBOR);
+        }
+        return MAPPERS.get(contentType.startsWith(SMILE) ? StorageFormat.SMILE : StorageFormat.JSON);
+    }
+
+    /**
+     * Closes the body of an answer that is no longer wanted once it arrives.
+     *
+     * @param pending the answer
+     */
+    static void discard(CompletableFuture<HttpResponse<InputStream>> pending) {
+        pending.thenAccept(answer -> {
+            try {
+                answer.body().close();
+            } catch (IOException e) {
+                log.debug("Failed to discard a partial result: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Fetches the ring a node is using.
+     *
+     * @param node the base URL of the node
+     * @return the node's ring
+     * @throws IOException if the node cannot be reached or refuses
+     */
+    public HashRing fetchRing(String node) throws IOException {
+        return JSON_MAPPER.readValue(exchange(request(node, "/api/partition/ring").GET().build()), HashRing.class);
+    }
+
+    /**
+     * Asks a member of a cluster to admit a node.
+     *
+     * @param seed the base URL of any member
+     * @param self the base URL of the joining node
+     * @return the ring that includes the joining node
+     * @throws IOException if the member cannot be reached or refuses
+     */
+    public HashRing join(String seed, String self) throws IOException {
+        byte[] body = JSON_MAPPER.writeValueAsBytes(Map.of("node", self));
+        return JSON_MAPPER.readValue(exchange(request(seed, "/api/partition/members")
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build()), HashRing.class);
+    }
+
+    /**
+     * Sends a new ring to a node.
+     *
+     * @param node the base URL of the node
+     * @param ring the ring to install
+     * @throws IOException if the node cannot be reached or refuses
+     */
+    public void pushRing(String node, HashRing ring) throws IOException {
+        exchange(request(node, "/api/partition/ring")
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(JSON_MAPPER.writeValueAsBytes(ring))).build());
+    }
+
+    /**
+     * Hands stocks over to the node that now owns them. The node keeps whichever copy of each has the higher
+     * version, its own or the one handed over.
+     *
+     * @param node the base URL of the new owner
+     * @param stocks the stocks to hand over
+     * @return the version of each stock the node acknowledged holding, keyed by ticker
+     * @throws IOException if the node cannot be reached or refuses
+     */
+    public Map<String, Long> handoff(String node, List<Stock> stocks) throws IOException {
+        byte[] answer = exchange(request(node, "/api/partition/handoff")
+                .header(HttpHeaders.CONTENT_TYPE, SMILE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(STOCK_LIST_WRITER.writeValueAsBytes(stocks))).build());
+        Map<String, Map<String, Long>> receipt = JSON_MAPPER.readValue(answer,
+                new TypeReference<Map<String, Map<String, Long>>>() {});
+        return receipt.getOrDefault("acknowledged", Map.of());
+    }
+
+    /**
+     * Tells a node that a member has handed every stock it does not own under a ring to its owner.
+     *
+     * @param node the base URL of the node to tell
+     * @param member the base URL of the member that completed its handoff
+     * @param ringVersion the ring version the member rebalanced to
+     * @throws IOException if the node cannot be reached or refuses
+     */
+    public void handedOver(String node, String member, long ringVersion) throws IOException {
+        byte[] body = JSON_MAPPER.writeValueAsBytes(Map.of("node", member, "version", ringVersion));
+        exchange(request(node, "/api/partition/handoff/complete")
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build());
+    }
+
+    /**
+     * Fetches a stock from a node's own partition.
+     *
+     * @param node the base URL of the node
+     * @param path the raw path of the stock
+     * @param ringVersion the ring version of this node
+     * @return the stock, or null if the node does not hold it
+     * @throws IOException if the node cannot be reached or fails
+     */
+    public Stock fetchStock(String node, String path, long ringVersion) throws IOException {
+        HttpRequest request = request(node, path)
+                .header(HttpHeaders.ACCEPT, SMILE + ", " + MediaType.APPLICATION_JSON_VALUE)
+                .header(HOP_HEADER, Long.toString(ringVersion))
+                .GET().build();
+        HttpResponse<byte[]> answer;
+        try {
+            answer = observed(http.send(request, HttpResponse.BodyHandlers.ofByteArray()), node);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling " + request.uri());
+        }
+        if (answer.statusCode() == 404) {
+            return null;
+        }
+        if (answer.statusCode() != 200) {
+            throw new IOException(node + " answered " + answer.statusCode());
+        }
+        return mapperFor(answer).readValue(answer.body(), Stock.class);
+    }
+
+    /**
+     * Starts fetching a node's own part of a read, in Smile. The response body is streamed, so the caller can
+     * merge it while it arrives; the caller must close it.
+     *
+     * @param node the base URL of the node
+     * @param pathAndQuery the raw path and query of the read
+     * @param ringVersion the ring version of this node
+     * @return the future response
+     */
+    public CompletableFuture<HttpResponse<InputStream>> fetchPartial(String node, String pathAndQuery,
+                                                                     long ringVersion) {
+        HttpRequest request = request(node, pathAndQuery)
+                .header(HttpHeaders.ACCEPT, SMILE + ", " + MediaType.APPLICATION_JSON_VALUE)
+                .header(HOP_HEADER, Long.toString(ringVersion))
+                .GET().build();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(answer -> observed(answer, node));
+    }
+
+    /**
+     * Starts looking up a node's own tickers of a multi-get, answered in Smile. The caller must close the
+     * response body.
+     *
+     * @param node the base URL of the node
+     * @param path the raw path of the lookup endpoint
+     * @param tickers the tickers the node owns
+     * @param ringVersion the ring version of this node
+     * @return the future response
+     * @throws IOException if the tickers cannot be encoded
+     */
+    public CompletableFuture<HttpResponse<InputStream>> fetchLookup(String node, String path, List<String> tickers,
+                                                                    long ringVersion) throws IOException {
+        HttpRequest request = request(node, path)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ACCEPT, SMILE + ", " + MediaType.APPLICATION_JSON_VALUE)
+                .header(HOP_HEADER, Long.toString(ringVersion))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(JSON_MAPPER.writeValueAsBytes(tickers)))
+                .build();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(answer -> observed(answer, node));
+    }
+
+    /**
+     * Starts running stress scenarios on a node's own partition, answered in Smile. The caller must close the
+     * response body.
+     *
+     * @param node the base URL of the node
+     * @param path the raw path of the scenarios endpoint
+     * @param scenarios the client's request body, already checked to be valid scenarios
+     * @param contentType the content type of the body
+     * @param ringVersion the ring version of this node
+     * @return the future response
+     */
+    public CompletableFuture<HttpResponse<InputStream>> fetchScenarios(String node, String path, byte[] scenarios,
+                                                                       String contentType, long ringVersion) {
+        HttpRequest request = request(node, path)
+                .header(HttpHeaders.CONTENT_TYPE, contentType)
+                .header(HttpHeaders.ACCEPT, SMILE + ", " + MediaType.APPLICATION_JSON_VALUE)
+                .header(HOP_HEADER, Long.toString(ringVersion))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(scenarios))
+                .build();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(answer -> observed(answer, node));
+    }
+
+    /**
+     * Forwards a client request to the node that owns its ticker. The response body is streamed; the caller
+     * must close it.
+     *
+     * @param node the base URL of the owner
+     * @param method the HTTP method
+     * @param pathAndQuery the raw path and query of the request
+     * @param headers the client's request headers, of which the ones that affect the answer are passed on
+     * @param body the request body, empty if there is none
+     * @param ringVersion the ring version of this node
+     * @return the owner's response
+     * @throws IOException if the owner cannot be reached
+     */
+    public HttpResponse<InputStream> forward(String node, String method, String pathAndQuery,
+                                             Map<String, String> headers, byte[] body, long ringVersion)
+            throws IOException {
+        HttpRequest.Builder request = request(node, pathAndQuery)
+                .header(HOP_HEADER, Long.toString(ringVersion))
+                .method(method, body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (String name : FORWARDED_HEADERS) {
+            String value = headers.get(name);
+            if (value != null) {
+                request.header(name, value);
+            }
+        }
+        try {
+            return observed(http.send(request.build(), HttpResponse.BodyHandlers.ofInputStream()), node);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while forwarding to " + node);
+        }
+    }
+
+    /**
+     * Returns the request headers passed on when a request is forwarded.
+     *
+     * @return the header names
+     */
+    static List<String> forwardedHeaders() {
+        return FORWARDED_HEADERS;
+    }
+
+    /**
+     * Passes the ring version a node answered with to the observer.
+     */
+    private <T> HttpResponse<T> observed(HttpResponse<T> answer, String node) {
+        answer.headers().firstValue(RING_HEADER).ifPresent(version -> {
+            try {
+                ringObserver.accept(node, Long.parseLong(version));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring ring version {} from {}", version, node);
+            }
+        });
+        return answer;
+    }
+
+    private HttpRequest.Builder request(String node, String pathAndQuery) {
+        return HttpRequest.newBuilder(URI.create(node + pathAndQuery)).timeout(timeout);
+    }
+
+    private byte[] exchange(HttpRequest request) throws IOException {
+        try {
+            HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException(request.method() + " " + request.uri() + " answered " + response.statusCode());
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling " + request.uri());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PartitionController class handles the requests nodes of a partitioned deployment send each other: reading
+ * and installing the ring, admitting and removing members, taking over stocks that moved to this node, and
+ * learning when a member has finished handing its stocks over.
+ * Operators use the same endpoints to inspect the ring, find the owner of a ticker and remove a failed node.
+ */
+@RestController
+@RequestMapping("/api/partition")
+@Tag(name = "Partitions")
+@ConditionalOnProperty(name = "stock.partition.enabled", havingValue = "true")
+public class PartitionController {
+
+    private final PartitionMembership membership;
+
+    public PartitionController(PartitionMembership membership) {
+        this.membership = membership;
+    }
+
+    /**
+     * Returns the ring this node routes by.
+     *
+     * @return the current ring
+     */
+    @GetMapping("/ring")
+    @Operation(summary = "Get the ring", description = "Returns the members and version of the ring this node routes by")
+    public ResponseEntity<HashRing> getRing() {
+        return new ResponseEntity<>(membership.ring(), HttpStatus.OK);
+    }
+
+    /**
+     * Installs a ring sent by the member that coordinated a membership change. An older ring is ignored.
+     *
+     * @param ring the new ring
+     * @return the ring this node routes by afterwards
+     */
+    @PutMapping("/ring")
+    @Operation(summary = "Install a ring", description = "Installs a newer ring and rebalances to it; older rings are ignored")
+    public ResponseEntity<HashRing> installRing(@RequestBody HashRing ring) {
+        membership.install(ring);
+        return new ResponseEntity<>(membership.ring(), HttpStatus.OK);
+    }
+
+    /**
+     * Admits a node to the cluster.
+     *
+     * @param request the base URL of the joining node, as {@code {"node": "http://host:port"}}
+     * @return the new ring, or an error if no node is given
+     */
+    @PostMapping("/members")
+    @Operation(summary = "Admit a node", description = "Adds a node to the ring and sends the new ring to every member",
+            responses = {
+                    @ApiResponse(description = "Node admitted", responseCode = "200"),
+                    @ApiResponse(description = "No node given", responseCode = "400")
+            })
+    public ResponseEntity<Object> admit(@RequestBody Map<String, String> request) {
+        String node = request.get("node");
+        if (node == null || node.isBlank()) {
+            return new ResponseEntity<>(Map.of("error", "The base URL of the joining node is required"),
+                    HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(membership.admit(node), HttpStatus.OK);
+    }
+
+    /**
+     * Removes a node from the cluster, such as one that has failed.
+     *
+     * @param node the base URL of the node
+     * @return the new ring, or an error if the node is the only member
+     */
+    @DeleteMapping("/members")
+    @Operation(summary = "Remove a node", description = "Removes a node from the ring and sends the new ring to every member",
+            responses = {
+                    @ApiResponse(description = "Node removed", responseCode = "200"),
+                    @ApiResponse(description = "The node is the only member", responseCode = "400")
+            })
+    public ResponseEntity<Object> remove(@RequestParam String node) {
+        try {
+            return new ResponseEntity<>(membership.remove(node), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Returns the member that owns a ticker.
+     *
+     * @param ticker the ticker
+     * @return the owner and whether it is this node
+     */
+    @GetMapping("/owner/{ticker}")
+    @Operation(summary = "Find the owner of a ticker", description = "Returns the member that serves a ticker under this node's ring")
+    public ResponseEntity<Map<String, Object>> getOwner(@PathVariable String ticker) {
+        String owner = membership.ring().ownerOf(ticker);
+        return new ResponseEntity<>(Map.of("ticker", ticker, "owner", owner, "local", owner.equals(membership.self())),
+                HttpStatus.OK);
+    }
+
+    /**
+     * Takes over stocks handed to this node after a ring change, keeping whichever copy of each has the higher
+     * version. The previous owner removes a stock only once it is acknowledged here at the version it sent. A stock
+     * deleted here since is acknowledged without being taken over.
+     *
+     * @param stocks the stocks handed over
+     * @return the version of each stock now held here at that version or a later one, keyed by ticker
+     */
+    @PostMapping("/handoff")
+    @Operation(summary = "Take over stocks", description = "Keeps the newer copy of each stock handed over by its previous owner and acknowledges the versions handed over")
+    public ResponseEntity<Map<String, Map<String, Long>>> handoff(@RequestBody List<Stock> stocks) {
+        return new ResponseEntity<>(Map.of("acknowledged", membership.takeOver(stocks)), HttpStatus.OK);
+    }
+
+    /**
+     * Records that a member has handed over every stock it does not own under a ring. Once every former member
+     * has, this node stops consulting former owners.
+     *
+     * @param request the member and ring version, as {@code {"node": "http://host:port", "version": 3}}
+     * @return no content, or an error if the member or version is missing
+     */
+    @PostMapping("/handoff/complete")
+    @Operation(summary = "Record a completed handoff", description = "Notes that a member holds no stock it does not own under a ring version",
+            responses = {
+                    @ApiResponse(description = "Handoff recorded", responseCode = "204"),
+                    @ApiResponse(description = "No member or version given", responseCode = "400")
+            })
+    public ResponseEntity<Object> handedOver(@RequestBody Map<String, Object> request) {
+        if (!(request.get("node") instanceof String node) || node.isBlank()
+                || !(request.get("version") instanceof Number version)) {
+            return new ResponseEntity<>(Map.of("error", "The member and the ring version it rebalanced to are required"),
+                    HttpStatus.BAD_REQUEST);
+        }
+        membership.handedOver(node, version.longValue());
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+}
@@ -0,0 +1,524 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.cbfacademy.apiassessment.stock.Stock;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The PartitionMembership class keeps track of the nodes of a partitioned deployment and of which tickers
+ * this node owns.
+ *
+ * <p>It runs when {@code stock.partition.enabled=true}. This node is known by {@code stock.partition.self},
+ * the base URL other nodes reach it at. A node started with {@code stock.partition.join} set to the URL of any
+ * member asks that member to admit it once the application is ready; a node started without it forms a new
+ * cluster of its own. The member that admits or removes a node builds the next {@link HashRing} and sends it to
+ * every node concerned. Nodes only ever move to a ring with a higher version, and a node that learns of a newer
+ * ring from another node's answer fetches it from there, so a node that missed a ring change catches up.
+ *
+ * <p>Whenever the ring changes, and once after startup, the node rebalances: every stock it holds but no longer
+ * owns is handed to its new owner in batches. The new owner keeps whichever copy has the higher version, its own
+ * or the one handed over, and acknowledges the version of every stock it was handed once that version or a later
+ * one is persisted there. Only then is the stock removed here, and only if it is still at the acknowledged
+ * version; a stock written again in the meantime stays and is handed over by the next sweep. A node that shuts
+ * down cleanly leaves the ring and hands all its stocks over before the repository closes. A node that fails can
+ * be removed by any member; the stocks it held are unavailable until it is restarted, when its own rebalance
+ * hands them back to their owners.
+ *
+ * <p>Until the handoff to a ring is complete, a stock may still be held only by the node that owned it before.
+ * Each node therefore keeps the rings it has moved away from, and a node that has handed over every stock it no
+ * longer owns tells the other members so. Once every member of those former rings has reported its handoff to the
+ * current ring, the former rings are dropped; until then reads also consult the former owners, see
+ * {@link #formerOwnersOf(String)}, and a write to a stock its owner does not hold yet first takes the stock over
+ * from them. A stock deleted by its owner in the meantime is remembered until the handoff is complete, so that
+ * a copy still on its way from a former owner is acknowledged but not taken over, and the delete holds.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.partition.enabled", havingValue = "true")
+public class PartitionMembership implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(PartitionMembership.class);
+
+    private final JsonStockRepository repository;
+    private final PartitionClient client;
+    private final String self;
+    private final String join;
+    private final int handoffBatch;
+    private final long retryMillis;
+    private final AtomicReference<HashRing> ring;
+
+    /**
+     * The rings this node has moved away from whose handoff is not yet complete, newest first.
+     */
+    private final List<HashRing> formerRings = new ArrayList<>();
+
+    /**
+     * The highest ring version each member has reported handing over every stock it no longer owns for.
+     */
+    private final Map<String, Long> handedOverTo = new ConcurrentHashMap<>();
+
+    /**
+     * The version of every stock deleted here while a handoff is under way, keyed by ticker. A copy handed over at
+     * that version or an earlier one predates the delete.
+     */
+    private final Map<String, Long> deletedDuringHandoff = new ConcurrentHashMap<>();
+    private final AtomicBoolean rebalanceScheduled = new AtomicBoolean();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final LongAdder handedOff = new LongAdder();
+    private final ScheduledExecutorService rebalancer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stock-partition-rebalance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates the membership of this node.
+     *
+     * @param repository the local repository, which holds this node's partition
+     * @param client the client for calls to other nodes
+     * @param self the base URL of this node
+     * @param join the base URL of a member to join, or blank to form a new cluster
+     * @param virtualNodes the number of ring points per member
+     * @param handoffBatch the most stocks handed to a new owner in one call
+     * @param retryMillis how long to wait before retrying a join or a rebalance that failed
+     */
+    public PartitionMembership(JsonStockRepository repository, PartitionClient client,
+                               @Value("${stock.partition.self}") String self,
+                               @Value("${stock.partition.join:}") String join,
+                               @Value("${stock.partition.virtual-nodes:128}") int virtualNodes,
+                               @Value("${stock.partition.handoff-batch:1000}") int handoffBatch,
+                               @Value("${stock.partition.retry-ms:1000}") long retryMillis) {
+        if (repository.isReplica()) {
+            throw new IllegalStateException("A read replica cannot own a partition");
+        }
+        if (handoffBatch < 1) {
+            throw new IllegalArgumentException("Partition handoff batch must be positive");
+        }
+        this.repository = repository;
+        this.client = client;
+        this.self = normalize(self);
+        this.join = join == null || join.isBlank() ? null : normalize(join);
+        this.handoffBatch = handoffBatch;
+        this.retryMillis = retryMillis;
+        this.ring = new AtomicReference<>(new HashRing(0, virtualNodes, List.of(this.self)));
+        client.observeRings((node, version) -> observe(version, node));
+    }
+
+    /**
+     * Returns the base URL of this node.
+     *
+     * @return this node's URL
+     */
+    public String self() {
+        return self;
+    }
+
+    /**
+     * Returns the ring this node routes by.
+     *
+     * @return the current ring
+     */
+    public HashRing ring() {
+        return ring.get();
+    }
+
+    /**
+     * Tells whether this node owns a ticker under the current ring.
+     *
+     * @param ticker the ticker
+     * @return true if requests for the ticker are served here
+     */
+    public boolean isLocal(String ticker) {
+        return self.equals(ring.get().ownerOf(ticker));
+    }
+
+    /**
+     * Returns the nodes that owned a ticker under the rings whose handoff is not yet complete, other than its
+     * owner under the current ring. One of them may still hold the stock if its new owner does not.
+     *
+     * @param ticker the ticker
+     * @return the former owners, most recent first; empty once the handoff is complete
+     */
+    public List<String> formerOwnersOf(String ticker) {
+        String owner = ring.get().ownerOf(ticker);
+        List<String> owners = new ArrayList<>();
+        synchronized (formerRings) {
+            for (HashRing former : formerRings) {
+                String formerOwner = former.ownerOf(ticker);
+                if (!formerOwner.equals(owner) && !owners.contains(formerOwner)) {
+                    owners.add(formerOwner);
+                }
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Returns the members of the rings whose handoff is not yet complete that are not members of the current
+     * ring. They may still hold stocks that have not reached their new owners.
+     *
+     * @return the former members, empty once the handoff is complete
+     */
+    public List<String> formerMembers() {
+        Set<String> members = new LinkedHashSet<>();
+        synchronized (formerRings) {
+            formerRings.forEach(former -> members.addAll(former.getMembers()));
+        }
+        members.removeAll(ring.get().getMembers());
+        return List.copyOf(members);
+    }
+
+    /**
+     * Tells whether stocks may still be moving to their owners under the current ring, so that a stock can be
+     * held by a former owner instead of, or as well as, its owner.
+     *
+     * @return true until every member of the former rings has reported its handoff
+     */
+    public boolean isHandingOff() {
+        synchronized (formerRings) {
+            return !formerRings.isEmpty();
+        }
+    }
+
+    /**
+     * Takes over stocks handed over by, or read from, a former owner, keeping whichever copy of each has the higher
+     * version. A stock deleted here since, at that version or a later one, is acknowledged without being taken
+     * over, so the former owner removes its copy and the delete holds.
+     *
+     * @param stocks the stocks held by a former owner
+     * @return the version of each stock acknowledged, keyed by ticker
+     */
+    public Map<String, Long> takeOver(List<Stock> stocks) {
+        Map<String, Long> acknowledged = new LinkedHashMap<>();
+        List<Stock> taken = new ArrayList<>(stocks.size());
+        for (Stock stock : stocks) {
+            Long deleted = stock == null ? null : deletedDuringHandoff.get(stock.getTicker());
+            if (deleted != null && stock.getVersion() <= deleted) {
+                acknowledged.put(stock.getTicker(), stock.getVersion());
+            } else {
+                taken.add(stock);
+            }
+        }
+        if (!taken.isEmpty()) {
+            acknowledged.putAll(repository.saveNewer(taken));
+        }
+        return acknowledged;
+    }
+
+    /**
+     * Records that a stock is about to be deleted here while a handoff is under way, so that a copy still held by
+     * a former owner is not taken over afterwards. Recording a delete that then fails is harmless, since the copy
+     * kept here is at least as new as any a former owner holds.
+     *
+     * @param ticker the ticker
+     * @param version the version of the stock held here
+     */
+    public void deletingDuringHandoff(String ticker, long version) {
+        if (isHandingOff()) {
+            deletedDuringHandoff.merge(ticker, version, Math::max);
+        }
+    }
+
+    /**
+     * Records that a member has handed every stock it held but does not own under a ring to its owner, and
+     * drops the former rings once every one of their members has.
+     *
+     * @param node the base URL of the member
+     * @param version the ring version the member has rebalanced to
+     */
+    public void handedOver(String node, long version) {
+        handedOverTo.merge(normalize(node), version, Math::max);
+        settle();
+    }
+
+    private void settle() {
+        long current = ring.get().getVersion();
+        synchronized (formerRings) {
+            boolean complete = formerRings.stream()
+                    .flatMap(former -> former.getMembers().stream())
+                    .allMatch(member -> handedOverTo.getOrDefault(member, 0L) >= current);
+            if (complete && !formerRings.isEmpty()) {
+                formerRings.clear();
+                deletedDuringHandoff.clear();
+                log.info("The handoff to ring version {} is complete", current);
+            }
+        }
+    }
+
+    /**
+     * Joins the cluster once the application is ready to serve the ring changes and handoffs that follow, or
+     * forms a new cluster if no member to join is configured.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (join == null || join.equals(self)) {
+            install(new HashRing(1, ring.get().getVirtualNodes(), List.of(self)));
+            log.info("Formed a new partitioned cluster at {}", self);
+        } else {
+            rebalancer.execute(this::joinCluster);
+        }
+    }
+
+    private void joinCluster() {
+        try {
+            HashRing joined = client.join(join, self);
+            install(joined);
+            log.info("Joined the partitioned cluster through {} with {} members", join, joined.getMembers().size());
+        } catch (IOException e) {
+            log.warn("Failed to join the partitioned cluster through {}, retrying: {}", join, e.getMessage());
+            rebalancer.schedule(this::joinCluster, retryMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Adds a node to the cluster, with this node coordinating the change.
+     *
+     * @param node the base URL of the joining node
+     * @return the new ring
+     */
+    public synchronized HashRing admit(String node) {
+        HashRing next = ring.get().with(normalize(node));
+        publish(next, Set.of());
+        log.info("Admitted {} to the partitioned cluster, ring version {}", node, next.getVersion());
+        return next;
+    }
+
+    /**
+     * Removes a node from the cluster, with this node coordinating the change. The removed node is told too,
+     * so if it is still running it hands its stocks over and stops owning any.
+     *
+     * @param node the base URL of the leaving node
+     * @return the new ring
+     * @throws IllegalArgumentException if the node is the only member
+     */
+    public synchronized HashRing remove(String node) {
+        String leaving = normalize(node);
+        HashRing current = ring.get();
+        if (!current.contains(leaving)) {
+            return current;
+        }
+        HashRing next = current.without(leaving);
+        publish(next, Set.of(leaving));
+        log.info("Removed {} from the partitioned cluster, ring version {}", leaving, next.getVersion());
+        return next;
+    }
+
+    /**
+     * Installs a ring if it is newer than the current one, and rebalances to it.
+     *
+     * @param next the ring to install
+     * @return true if the ring was installed
+     */
+    public boolean install(HashRing next) {
+        while (true) {
+            HashRing current = ring.get();
+            if (next.getVersion() <= current.getVersion()) {
+                return false;
+            }
+            if (ring.compareAndSet(current, next)) {
+                log.info("Installed ring version {} with members {}", next.getVersion(), next.getMembers());
+                if (current.getVersion() > 0) {
+                    remember(current);
+                } else if (next.contains(self) && next.getMembers().size() > 1) {
+                    // The ring before this node was admitted, whose owners hold the stocks that now move here
+                    List<String> others = new ArrayList<>(next.getMembers());
+                    others.remove(self);
+                    remember(new HashRing(next.getVersion() - 1, next.getVirtualNodes(), others));
+                }
+                settle();
+                scheduleRebalance(0);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Notes the ring version another node answered with, and fetches that node's ring if it is newer.
+     *
+     * @param version the other node's ring version
+     * @param node the base URL of the other node
+     */
+    public void observe(long version, String node) {
+        if (version <= ring.get().getVersion() || rebalancer.isShutdown() || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        rebalancer.execute(() -> {
+            try {
+                install(client.fetchRing(node));
+            } catch (IOException e) {
+                log.warn("Failed to fetch the newer ring from {}: {}", node, e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private void remember(HashRing former) {
+        synchronized (formerRings) {
+            formerRings.add(0, former);
+        }
+    }
+
+    /**
+     * Installs a ring here and sends it to every other member and to the given former members.
+     */
+    private void publish(HashRing next, Set<String> formerMembers) {
+        install(next);
+        Set<String> targets = new LinkedHashSet<>(next.getMembers());
+        targets.addAll(formerMembers);
+        targets.remove(self);
+        for (String node : targets) {
+            try {
+                client.pushRing(node, next);
+            } catch (IOException e) {
+                // The node picks the ring up from the next answer it gets from a node that has it
+                log.warn("Failed to send ring version {} to {}: {}", next.getVersion(), node, e.getMessage());
+            }
+        }
+    }
+
+    private void scheduleRebalance(long delayMillis) {
+        // After shutdown the node's last rebalance runs on the thread that is leaving the cluster
+        if (!rebalancer.isShutdown() && rebalanceScheduled.compareAndSet(false, true)) {
+            rebalancer.schedule(() -> {
+                rebalanceScheduled.set(false);
+                if (!rebalance()) {
+                    scheduleRebalance(retryMillis);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Hands every stock this node holds but does not own to its owner, until none are left, then tells every
+     * member the handoff is complete. A stock is removed here only at the version its owner acknowledged, so
+     * one written here while its batch was in flight stays, and the sweep repeats until it finds nothing.
+     *
+     * @return false if some owner could not be reached and the rebalance must be retried
+     */
+    private boolean rebalance() {
+        while (true) {
+            HashRing current = ring.get();
+            Map<String, List<Stock>> moving = new LinkedHashMap<>();
+            for (Stock stock : repository.snapshot().getStocks()) {
+                String owner = current.ownerOf(stock.getTicker());
+                if (!owner.equals(self)) {
+                    moving.computeIfAbsent(owner, unused -> new ArrayList<>()).add(stock);
+                }
+            }
+            if (moving.isEmpty()) {
+                reportHandedOver(current);
+                return true;
+            }
+            int moved = 0;
+            for (Map.Entry<String, List<Stock>> partition : moving.entrySet()) {
+                List<Stock> stocks = partition.getValue();
+                for (int from = 0; from < stocks.size(); from += handoffBatch) {
+                    List<Stock> batch = stocks.subList(from, Math.min(stocks.size(), from + handoffBatch));
+                    Map<String, Long> acknowledged;
+                    try {
+                        acknowledged = client.handoff(partition.getKey(), batch);
+                    } catch (IOException e) {
+                        log.warn("Failed to hand {} stocks to {}, retrying: {}", batch.size(), partition.getKey(),
+                                e.getMessage());
+                        return false;
+                    }
+                    Map<String, Long> confirmed = new HashMap<>();
+                    for (Stock stock : batch) {
+                        Long version = acknowledged.get(stock.getTicker());
+                        if (version != null && version == stock.getVersion()) {
+                            confirmed.put(stock.getTicker(), version);
+                        }
+                    }
+                    int removed = repository.deleteAcknowledged(confirmed);
+                    handedOff.add(removed);
+                    moved += removed;
+                }
+            }
+            log.info("Handed {} stocks to their owners under ring version {}", moved, current.getVersion());
+            if (moved == 0) {
+                // Every stock sent was rewritten here meanwhile; try again later rather than spin
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Records that this node holds no stock it does not own under a ring, and tells the members of that ring
+     * and of the former rings. A member that misses the report keeps consulting former owners, which is only
+     * slower, until the next ring change.
+     */
+    private void reportHandedOver(HashRing current) {
+        handedOver(self, current.getVersion());
+        Set<String> targets = new LinkedHashSet<>(current.getMembers());
+        targets.addAll(formerMembers());
+        targets.remove(self);
+        for (String node : targets) {
+            try {
+                client.handedOver(node, self, current.getVersion());
+            } catch (IOException e) {
+                log.warn("Failed to report the handoff to ring version {} to {}: {}", current.getVersion(), node,
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Leaves the cluster and hands every stock held here to its new owner, before the repository shuts down.
+     */
+    @PreDestroy
+    public void leave() throws InterruptedException {
+        rebalancer.shutdownNow();
+        rebalancer.awaitTermination(10, TimeUnit.SECONDS);
+        synchronized (this) {
+            HashRing current = ring.get();
+            if (!current.contains(self) || current.getMembers().size() == 1) {
+                return;
+            }
+            publish(current.without(self), Set.of());
+        }
+        if (!rebalance()) {
+            log.warn("Left the partitioned cluster without handing over every stock");
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stock.partition.members", this, membership -> membership.ring().getMembers().size())
+                .description("Nodes in the partitioned cluster").register(registry);
+        Gauge.builder("stock.partition.ring.version", this, membership -> membership.ring().getVersion())
+                .description("Version of the ring this node routes by").register(registry);
+        FunctionCounter.builder("stock.partition.handoff", handedOff, LongAdder::sum)
+                .description("Stocks handed to another node after a ring change").register(registry);
+    }
+
+    private static String normalize(String url) {
+        String trimmed = url.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+}
@@ -0,0 +1,249 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The PartitionRoutingFilter class sends each write to {@code /api/stocks/**} to the partition that owns its
+ * ticker, when the application runs partitioned ({@code stock.partition.enabled=true}).
+ *
+ * <p>A create, update, patch or delete, and a request for the price history of a ticker, is served here if this
+ * node owns the ticker and otherwise forwarded to the owner, whose answer is passed back unchanged. For a create,
+ * the ticker is taken from the body. Reads go on to the controllers, which gather them from the partitions that
+ * hold the stocks through {@link PartitionedStockService} and {@link PartitionedScenarioRunner}.
+ *
+ * <p>The change feed, the event stream, write operation lookups and the CSV export are served by each node for
+ * its own partition. A CSV import is refused with {@code 409 Conflict}, since it would load the whole universe
+ * into the one node it reaches. Requests from other nodes carry {@link PartitionClient#HOP_HEADER}; they are always
+ * served here, and answered with this node's ring version. The filter runs after admission control, so a client
+ * is limited by the node it calls; a forwarded request is admitted again by its owner, with the forwarding node
+ * as the client.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.partition.enabled", havingValue = "true")
+@Order(Ordered.HIGHEST_PRECEDENCE + 15)
+public class PartitionRoutingFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(PartitionRoutingFilter.class);
+
+    private static final String PATH_PREFIX = "/api/stocks";
+    private static final String QUERY_PLAN_HEADER = "X-Query-Plan";
+
+    /**
+     * The endpoints below {@code /api/stocks} that are not about one ticker, and are served by this node.
+     */
+    private static final Set<String> SERVED_HERE = Set.of("stream", "changes", "operations", "export", "lookup",
+            "scenarios", "sort", "searchBySector", "query", "search");
+
+    /**
+     * The response headers passed back from the owner of a forwarded request.
+     */
+    private static final List<String> RETURNED_HEADERS = List.of(HttpHeaders.CONTENT_TYPE, HttpHeaders.LOCATION,
+            HttpHeaders.ETAG, HttpHeaders.RETRY_AFTER, QUERY_PLAN_HEADER);
+
+    /**
+     * Reads the ticker of a create, whatever encoding the body is in.
+     */
+    private static final ObjectReader STOCK_READER = StorageFormat.detectingReader(new TypeReference<Stock>() {});
+
+    private final PartitionMembership membership;
+    private final PartitionClient client;
+
+    public PartitionRoutingFilter(PartitionMembership membership, PartitionClient client) {
+        this.membership = membership;
+        this.client = client;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + PATH_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        HashRing ring = membership.ring();
+        if (request.getHeader(PartitionClient.HOP_HEADER) != null) {
+            response.setHeader(PartitionClient.RING_HEADER, Long.toString(ring.getVersion()));
+            chain.doFilter(request, response);
+            return;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length() + PATH_PREFIX.length());
+        String[] segments = path.length() <= 1 ? new String[0] : path.substring(1).split("/");
+        if (segments.length == 0) {
+            if ("POST".equals(request.getMethod())) {
+                routeCreate(request, response, chain, ring);
+            } else {
+                chain.doFilter(request, response);
+            }
+        } else if ("import".equals(segments[0])) {
+            response.setStatus(HttpStatus.CONFLICT.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"A CSV import replaces the whole universe and cannot be sent "
+                    + "to a partitioned deployment\"}");
+        } else if (SERVED_HERE.contains(segments[0])
+                || "GET".equals(request.getMethod()) && segments.length == 1) {
+            // A read of one ticker is fetched from its owner, or a former owner, by the stock service
+            chain.doFilter(request, response);
+        } else {
+            route(request, response, chain, ring, decode(segments[0]), null);
+        }
+    }
+
+    /**
+     * Routes a create to the owner of the ticker in its body. A body that cannot be read is left for the
+     * controller to reject.
+     */
+    private void routeCreate(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                             HashRing ring) throws ServletException, IOException {
+        byte[] body = request.getInputStream().readAllBytes();
+        String ticker = null;
+        try {
+            ticker = STOCK_READER.<Stock>readValue(body).getTicker();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Serving a create with an unreadable body locally: {}", e.getMessage());
+        }
+        if (ticker == null) {
+            chain.doFilter(new BufferedBodyRequest(request, body), response);
+        } else {
+            route(new BufferedBodyRequest(request, body), response, chain, ring, ticker, body);
+        }
+    }
+
+    /**
+     * Serves a single-ticker request here if this node owns the ticker, and forwards it to the owner otherwise.
+     *
+     * @param body the request body if it has been read already, or null
+     */
+    private void route(HttpServletRequest request, HttpServletResponse response, FilterChain chain, HashRing ring,
+                       String ticker, byte[] body) throws ServletException, IOException {
+        String owner = ring.ownerOf(ticker);
+        if (owner.equals(membership.self())) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (body == null) {
+            body = request.getInputStream().readAllBytes();
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (String name : PartitionClient.forwardedHeaders()) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        HttpResponse<InputStream> answer;
+        try {
+            answer = client.forward(owner, request.getMethod(), target(request), headers, body, ring.getVersion());
+        } catch (IOException e) {
+            unavailable(response, owner, e);
+            return;
+        }
+        try (InputStream in = answer.body()) {
+            response.setStatus(answer.statusCode());
+            for (String name : RETURNED_HEADERS) {
+                answer.headers().firstValue(name).ifPresent(value -> response.setHeader(name, value));
+            }
+            in.transferTo(response.getOutputStream());
+        }
+    }
+
+    private static String target(HttpServletRequest request) {
+        String query = request.getQueryString();
+        return request.getRequestURI() + (query == null ? "" : "?" + query);
+    }
+
+    private static String decode(String segment) {
+        return UriUtils.decode(segment, StandardCharsets.UTF_8);
+    }
+
+    private static void unavailable(HttpServletResponse response, String member, Exception cause)
+            throws IOException {
+        log.warn("Partition {} is unavailable: {}", member, cause.getMessage());
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Partition " + member + " is unavailable\"}");
+    }
+
+    /**
+     * A request whose body has already been read, replayed to the rest of the chain.
+     */
+    private static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("The request body has already been read");
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding)));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.cbfacademy.apiassessment.partition;
+
+/**
+ * The PartitionUnavailableException class is thrown when a read needs a member of a partitioned deployment that
+ * cannot be reached or fails, so that the read is refused rather than answered with part of the universe, and
+ * when a write during a handoff needs a former owner that cannot be reached, since it may hold the stock.
+ */
+public class PartitionUnavailableException extends RuntimeException {
+    private final String member;
+
+    /**
+     * Creates the exception.
+     *
+     * @param member the base URL of the member that could not answer
+     * @param cause why it could not
+     */
+    public PartitionUnavailableException(String member, Throwable cause) {
+        super("Partition " + member + " is unavailable", cause);
+        this.member = member;
+    }
+
+    /**
+     * Returns the member that could not answer.
+     *
+     * @return the base URL of the member
+     */
+    public String getMember() {
+        return member;
+    }
+}
@@ -0,0 +1,30 @@
+package com.cbfacademy.apiassessment.partition;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * The PartitionUnavailableHandler class answers a read or write that needed an unreachable member with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header, whichever controller served it.
+ */
+@RestControllerAdvice
+@ConditionalOnProperty(name = "stock.partition.enabled", havingValue = "true")
+public class PartitionUnavailableHandler {
+    private static final Logger log = LoggerFactory.getLogger(PartitionUnavailableHandler.class);
+
+    @ExceptionHandler(PartitionUnavailableException.class)
+    public ResponseEntity<Map<String, String>> unavailable(PartitionUnavailableException e) {
+        log.warn("{}: {}", e.getMessage(), e.getCause() == null ? "" : e.getCause().getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
+    }
+}
@@ -0,0 +1,121 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.scenario.ScenarioEngine;
+import com.cbfacademy.apiassessment.scenario.ScenarioReport;
+import com.cbfacademy.apiassessment.scenario.ScenarioRunner;
+import com.cbfacademy.apiassessment.scenario.StressScenario;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The PartitionedScenarioRunner class runs stress scenarios across every partition of a partitioned deployment
+ * ({@code stock.partition.enabled=true}). The scenarios are sent to every other member at once and run on this
+ * node's own partition meanwhile, and the members' results are added up sector by sector. If a member cannot be
+ * reached the run fails with {@link PartitionUnavailableException}. Scenarios sent by another node are run on
+ * this node's own partition.
+ *
+ * <p>While a rebalance is handing stocks over, a stock may be held by both its former and its new owner, and
+ * adding up the members' results would count it twice. The stocks are then gathered instead, one copy of each
+ * ticker at its highest version as {@link PartitionedStockService} reads the universe, and the scenarios are run
+ * against them here.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "stock.partition.enabled", havingValue = "true")
+public class PartitionedScenarioRunner implements ScenarioRunner {
+    private static final ObjectMapper JSON_MAPPER = StorageFormat.JSON.documentMapper();
+
+    private final PartitionMembership membership;
+    private final PartitionClient client;
+    private final ScenarioEngine engine;
+    private final PartitionedStockService stocks;
+    private final String path;
+
+    /**
+     * Creates the runner.
+     *
+     * @param membership the membership of this node
+     * @param client the client for calls to other nodes
+     * @param engine the engine for this node's own partition
+     * @param stocks gathers the stocks of every partition during a handoff
+     * @param contextPath the context path every node serves the API under
+     */
+    public PartitionedScenarioRunner(PartitionMembership membership, PartitionClient client, ScenarioEngine engine,
+                                     PartitionedStockService stocks,
+                                     @Value("${server.servlet.context-path:}") String contextPath) {
+        this.membership = membership;
+        this.client = client;
+        this.engine = engine;
+        this.stocks = stocks;
+        this.path = contextPath + "/api/stocks/scenarios";
+    }
+
+    @Override
+    public ScenarioReport run(List<StressScenario> scenarios) {
+        StressScenario.requireValid(scenarios);
+        if (PartitionClient.isPeerRequest()) {
+            return engine.run(scenarios);
+        }
+        if (membership.isHandingOff()) {
+            return engine.run(scenarios, stocks.getAllStocks());
+        }
+        byte[] body;
+        try {
+            body = JSON_MAPPER.writeValueAsBytes(scenarios);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        HashRing ring = membership.ring();
+        String self = membership.self();
+        Map<String, CompletableFuture<HttpResponse<InputStream>>> pending = new LinkedHashMap<>();
+        for (String member : ring.getMembers()) {
+            if (!member.equals(self)) {
+                pending.put(member, client.fetchScenarios(member, path, body, MediaType.APPLICATION_JSON_VALUE,
+                        ring.getVersion()));
+            }
+        }
+        List<ScenarioReport> parts = new ArrayList<>();
+        try {
+            parts.add(engine.run(scenarios));
+            for (String member : List.copyOf(pending.keySet())) {
+                parts.add(receive(member, pending.remove(member)));
+            }
+        } finally {
+            pending.values().forEach(PartitionClient::discard);
+        }
+        return ScenarioReport.merge(parts);
+    }
+
+    private static ScenarioReport receive(String member, CompletableFuture<HttpResponse<InputStream>> pending) {
+        try {
+            HttpResponse<InputStream> answer = pending.join();
+            try (InputStream in = answer.body()) {
+                if (answer.statusCode() != HttpStatus.OK.value()) {
+                    throw new IOException(member + " answered " + answer.statusCode());
+                }
+                return PartitionClient.mapperFor(answer).readValue(in, ScenarioReport.class);
+            }
+        } catch (CompletionException e) {
+            throw new PartitionUnavailableException(member, e.getCause() == null ? e : e.getCause());
+        } catch (IOException e) {
+            throw new PartitionUnavailableException(member, e);
+        }
+    }
+}
@@ -0,0 +1,582 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.search.FilterParser;
+import com.cbfacademy.apiassessment.stock.DefaultStockService;
+import com.cbfacademy.apiassessment.stock.QueryResult;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockLookup;
+import com.cbfacademy.apiassessment.stock.StockPatch;
+import com.cbfacademy.apiassessment.stock.StockService;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * The PartitionedStockService class answers the stock API across every partition of a partitioned deployment
+ * ({@code stock.partition.enabled=true}). It is the {@link StockService} the controllers use there, so an
+ * endpoint answers the same way whichever members hold the stocks.
+ *
+ * <p>A read of one ticker asks its owner. A multi-get asks each owner for its own tickers, all at once, and
+ * answers in the order the tickers were asked for. Reads across the whole universe are scattered to every member
+ * at once and gathered as the answers arrive: {@code /sort} merges the members' sorted results, which each member
+ * serves from its pre-sorted index, without sorting again; a search by name takes the first member's match in
+ * ring order; the other reads add the members' results one after another.
+ *
+ * <p>While stocks are moving to their owners after a ring change (see {@link PartitionMembership}), a stock may be
+ * held only by its former owner, or by both. A ticker its owner does not hold is then asked of its former owners,
+ * and its owner once more, since the stock may have arrived there in the meantime. Universe reads are also sent
+ * to the former members, accept a stock from its former owners as well as its owner, and keep one copy of each
+ * ticker: the one with the highest version, or the owner's if the versions are equal.
+ *
+ * <p>If a member of the current ring cannot be reached, the read fails with
+ * {@link PartitionUnavailableException} rather than answer with part of the universe. A former member that
+ * cannot be reached is left out, since it may have failed and been removed; its stocks are unavailable until it
+ * is restarted. Requests sent by another node are served from this node's own partition.
+ *
+ * <p>Writes are served from this node's own partition too, since the routing filter has already sent each write to
+ * the owner of its ticker. While a handoff is under way, a stock its owner does not hold yet is first taken over
+ * from its former owners, as if its handoff had arrived, so that an update or delete applies to the stock as last
+ * written and a create of a ticker a former owner still holds is refused as a duplicate. A delete is recorded
+ * with the membership, so the copy a former owner hands over afterwards does not bring the stock back. A former
+ * owner that cannot be reached fails the write with {@link PartitionUnavailableException}, since it may hold the
+ * stock.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "stock.partition.enabled", havingValue = "true")
+public class PartitionedStockService implements StockService {
+    private static final Logger log = LoggerFactory.getLogger(PartitionedStockService.class);
+
+    private static final String PATH_PREFIX = "/api/stocks";
+
+    private final PartitionMembership membership;
+    private final PartitionClient client;
+    private final StockService local;
+    private final String basePath;
+
+    /**
+     * Creates the service.
+     *
+     * @param membership the membership of this node
+     * @param client the client for calls to other nodes
+     * @param local the service for this node's own partition
+     * @param contextPath the context path every node serves the API under
+     */
+    public PartitionedStockService(PartitionMembership membership, PartitionClient client, DefaultStockService local,
+                                   @Value("${server.servlet.context-path:}") String contextPath) {
+        this.membership = membership;
+        this.client = client;
+        this.local = local;
+        this.basePath = contextPath + PATH_PREFIX;
+    }
+
+    @Override
+    public List<Stock> getAllStocks() {
+        if (PartitionClient.isPeerRequest()) {
+            return local.getAllStocks();
+        }
+        return gather(basePath, local::getAllStocks, null);
+    }
+
+    @Override
+    public Stock getStockByTicker(String ticker) {
+        if (PartitionClient.isPeerRequest()) {
+            return local.getStockByTicker(ticker);
+        }
+        HashRing ring = membership.ring();
+        String owner = ring.ownerOf(ticker);
+        Stock stock = fetch(owner, ticker, ring);
+        List<String> formerOwners = membership.formerOwnersOf(ticker);
+        if (stock != null || formerOwners.isEmpty()) {
+            return stock;
+        }
+        for (String formerOwner : formerOwners) {
+            stock = fetch(formerOwner, ticker, ring);
+            if (stock != null) {
+                return stock;
+            }
+        }
+        // The stock may have reached its owner, and left its former owner, while they were asked
+        return fetch(owner, ticker, ring);
+    }
+
+    @Override
+    public StockLookup lookupStocks(List<String> tickers) {
+        StockLookup.requireValid(tickers);
+        if (PartitionClient.isPeerRequest()) {
+            return local.lookupStocks(tickers);
+        }
+        HashRing ring = membership.ring();
+        Map<String, Stock> found = new HashMap<>();
+        lookUp(group(tickers, found, ticker -> List.of(ring.ownerOf(ticker))), ring, found);
+        if (membership.isHandingOff()) {
+            Map<String, List<String>> formerOwners = group(tickers, found, membership::formerOwnersOf);
+            if (!formerOwners.isEmpty()) {
+                lookUp(formerOwners, ring, found);
+                lookUp(group(tickers, found, ticker -> List.of(ring.ownerOf(ticker))), ring, found);
+            }
+        }
+        List<Stock> stocks = new ArrayList<>(tickers.size());
+        for (String ticker : tickers) {
+            stocks.add(found.get(ticker));
+        }
+        return StockLookup.of(tickers, stocks);
+    }
+
+    @Override
+    public Stock saveStock(Stock stock) {
+        takeOverFromFormerOwners(tickerOf(stock));
+        return local.saveStock(stock);
+    }
+
+    @Override
+    public Stock updateStock(Stock updatedStock) {
+        takeOverFromFormerOwners(tickerOf(updatedStock));
+        return local.updateStock(updatedStock);
+    }
+
+    @Override
+    public Stock updateStock(Stock updatedStock, long expectedVersion) {
+        takeOverFromFormerOwners(tickerOf(updatedStock));
+        return local.updateStock(updatedStock, expectedVersion);
+    }
+
+    @Override
+    public Stock patchStock(String ticker, StockPatch patch, long expectedVersion) {
+        takeOverFromFormerOwners(ticker);
+        return local.patchStock(ticker, patch, expectedVersion);
+    }
+
+    @Override
+    public void deleteStock(String ticker) {
+        prepareDelete(ticker);
+        local.deleteStock(ticker);
+    }
+
+    @Override
+    public void deleteStock(String ticker, long expectedVersion) {
+        prepareDelete(ticker);
+        local.deleteStock(ticker, expectedVersion);
+    }
+
+    @Override
+    public List<Stock> sortByAttribute(String attribute) {
+        if (PartitionClient.isPeerRequest()) {
+            return local.sortByAttribute(attribute);
+        }
+        return gather(basePath + "/sort?attribute=" + URLEncoder.encode(attribute, StandardCharsets.UTF_8),
+                () -> local.sortByAttribute(attribute), StockSnapshot.sortOrder(attribute));
+    }
+
+    @Override
+    public Stock searchByName(List<Stock> stocks, String targetName) {
+        if (stocks != null || PartitionClient.isPeerRequest()) {
+            return local.searchByName(stocks, targetName);
+        }
+        HashRing ring = membership.ring();
+        boolean handingOff = membership.isHandingOff();
+        List<PartialResult> parts = scatter(ring, handingOff, basePath + "/search/" + encodeSegment(targetName),
+                () -> {
+                    Stock stock = local.searchByName(null, targetName);
+                    return stock == null ? List.of() : List.of(stock);
+                }, true);
+        try {
+            return parts.stream().map(PartialResult::peek).filter(Objects::nonNull).findFirst().orElse(null);
+        } finally {
+            closeAll(parts);
+        }
+    }
+
+    @Override
+    public List<Stock> searchBySector(String sector) {
+        if (PartitionClient.isPeerRequest()) {
+            return local.searchBySector(sector);
+        }
+        return gather(basePath + "/searchBySector/" + encodeSegment(sector), () -> local.searchBySector(sector),
+                null);
+    }
+
+    @Override
+    public QueryResult queryStocks(String filter) {
+        if (PartitionClient.isPeerRequest()) {
+            return local.queryStocks(filter);
+        }
+        // A malformed filter is refused before any member is asked
+        FilterParser.parse(filter);
+        String[] plan = new String[1];
+        List<Stock> stocks = gather(basePath + "/query?filter=" + URLEncoder.encode(filter, StandardCharsets.UTF_8),
+                () -> {
+                    QueryResult result = local.queryStocks(filter);
+                    plan[0] = result.getPlan();
+                    return result.getStocks();
+                }, null);
+        return new QueryResult(stocks, plan[0]);
+    }
+
+    @Override
+    public CompletableFuture<Stock> saveStockAsync(Stock stock) {
+        takeOverFromFormerOwners(tickerOf(stock));
+        return local.saveStockAsync(stock);
+    }
+
+    @Override
+    public CompletableFuture<Stock> updateStockAsync(Stock updatedStock) {
+        takeOverFromFormerOwners(tickerOf(updatedStock));
+        return local.updateStockAsync(updatedStock);
+    }
+
+    @Override
+    public CompletableFuture<Stock> updateStockAsync(Stock updatedStock, long expectedVersion) {
+        takeOverFromFormerOwners(tickerOf(updatedStock));
+        return local.updateStockAsync(updatedStock, expectedVersion);
+    }
+
+    @Override
+    public CompletableFuture<Stock> patchStockAsync(String ticker, StockPatch patch, long expectedVersion) {
+        takeOverFromFormerOwners(ticker);
+        return local.patchStockAsync(ticker, patch, expectedVersion);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteStockAsync(String ticker) {
+        prepareDelete(ticker);
+        return local.deleteStockAsync(ticker);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteStockAsync(String ticker, long expectedVersion) {
+        prepareDelete(ticker);
+        return local.deleteStockAsync(ticker, expectedVersion);
+    }
+
+    /**
+     * Takes a stock over from its former owners before it is written, if a handoff is under way and this node does
+     * not hold it yet. A former owner that cannot be reached fails the write, since it may hold the stock.
+     */
+    private void takeOverFromFormerOwners(String ticker) {
+        if (ticker == null || !membership.isHandingOff() || local.getStockByTicker(ticker) != null) {
+            return;
+        }
+        HashRing ring = membership.ring();
+        for (String formerOwner : membership.formerOwnersOf(ticker)) {
+            if (formerOwner.equals(membership.self())) {
+                continue;
+            }
+            Stock stock;
+            try {
+                stock = client.fetchStock(formerOwner, basePath + "/" + encodeSegment(ticker), ring.getVersion());
+            } catch (IOException e) {
+                throw new PartitionUnavailableException(formerOwner, e);
+            }
+            if (stock != null) {
+                membership.takeOver(List.of(stock));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Takes a stock over before it is deleted, and records the delete so that a copy handed over afterwards does
+     * not bring it back.
+     */
+    private void prepareDelete(String ticker) {
+        takeOverFromFormerOwners(ticker);
+        if (ticker != null && membership.isHandingOff()) {
+            Stock held = local.getStockByTicker(ticker);
+            if (held != null) {
+                membership.deletingDuringHandoff(ticker, held.getVersion());
+            }
+        }
+    }
+
+    private static String tickerOf(Stock stock) {
+        return stock == null ? null : stock.getTicker();
+    }
+
+    /**
+     * Reads a stock from one node, this one included. A former member that cannot be reached does not hold it.
+     */
+    private Stock fetch(String node, String ticker, HashRing ring) {
+        if (node.equals(membership.self())) {
+            return local.getStockByTicker(ticker);
+        }
+        try {
+            return client.fetchStock(node, basePath + "/" + encodeSegment(ticker), ring.getVersion());
+        } catch (IOException e) {
+            unavailable(node, e, ring);
+            return null;
+        }
+    }
+
+    /**
+     * Groups the tickers not found yet by the nodes to ask for them.
+     */
+    private static Map<String, List<String>> group(List<String> tickers, Map<String, Stock> found,
+                                                   Function<String, List<String>> nodes) {
+        Map<String, LinkedHashSet<String>> grouped = new LinkedHashMap<>();
+        for (String ticker : tickers) {
+            if (!found.containsKey(ticker)) {
+                for (String node : nodes.apply(ticker)) {
+                    grouped.computeIfAbsent(node, unused -> new LinkedHashSet<>()).add(ticker);
+                }
+            }
+        }
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        grouped.forEach((node, group) -> groups.put(node, List.copyOf(group)));
+        return groups;
+    }
+
+    /**
+     * Looks up each node's tickers on that node, this node's own meanwhile, and adds the stocks found. Where two
+     * nodes hold a ticker, the copy with the higher version is kept.
+     */
+    private void lookUp(Map<String, List<String>> tickersByNode, HashRing ring, Map<String, Stock> found) {
+        String self = membership.self();
+        String path = basePath + "/lookup";
+        Map<String, CompletableFuture<HttpResponse<InputStream>>> pending = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, List<String>> node : tickersByNode.entrySet()) {
+                if (!node.getKey().equals(self)) {
+                    pending.put(node.getKey(), client.fetchLookup(node.getKey(), path, node.getValue(),
+                            ring.getVersion()));
+                }
+            }
+            if (tickersByNode.containsKey(self)) {
+                local.lookupStocks(tickersByNode.get(self)).getStocks().forEach(stock -> keepNewest(found, stock));
+            }
+            for (String node : List.copyOf(pending.keySet())) {
+                HttpResponse<InputStream> answer = receive(node, pending.remove(node), ring);
+                if (answer == null) {
+                    continue;
+                }
+                try (InputStream in = answer.body()) {
+                    if (answer.statusCode() != HttpStatus.OK.value()) {
+                        throw new IOException(node + " answered " + answer.statusCode());
+                    }
+                    StockLookup part = PartitionClient.mapperFor(answer).readValue(in, StockLookup.class);
+                    part.getStocks().forEach(stock -> keepNewest(found, stock));
+                } catch (IOException e) {
+                    unavailable(node, e, ring);
+                }
+            }
+        } catch (IOException e) {
+            // Only the tickers of a request can fail to encode, and they have been checked already
+            throw new UncheckedIOException(e);
+        } finally {
+            pending.values().forEach(PartitionClient::discard);
+        }
+    }
+
+    private static void keepNewest(Map<String, Stock> found, Stock stock) {
+        if (stock != null) {
+            found.merge(stock.getTicker(), stock, (held, other) -> other.getVersion() > held.getVersion() ? other : held);
+        }
+    }
+
+    /**
+     * Scatters a read to every member, and to the former members while a handoff is under way, and gathers
+     * their stocks, merged in the given order if there is one and one member after another otherwise.
+     */
+    private List<Stock> gather(String target, Supplier<List<Stock>> localRead, Comparator<Stock> order) {
+        HashRing ring = membership.ring();
+        boolean handingOff = membership.isHandingOff();
+        List<PartialResult> parts = scatter(ring, handingOff, target, localRead, false);
+        try {
+            List<Stock> stocks = new ArrayList<>();
+            if (handingOff) {
+                keepOneCopy(parts, sources(ring, true), ring, stocks);
+                if (order != null) {
+                    stocks.sort(order);
+                }
+            } else if (order != null) {
+                PartialResult.merge(parts, order, stocks);
+            } else {
+                PartialResult.concat(parts, stocks);
+            }
+            return stocks;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read a partial result", e);
+        } finally {
+            closeAll(parts);
+        }
+    }
+
+    /**
+     * Adds one copy of every ticker found in the parts: the one with the highest version, or the owner's if
+     * the versions are equal, in the order the tickers were first found.
+     */
+    private static void keepOneCopy(List<PartialResult> parts, List<String> sources, HashRing ring,
+                                    List<Stock> out) throws IOException {
+        Map<String, Stock> newest = new LinkedHashMap<>();
+        for (int i = 0; i < parts.size(); i++) {
+            String source = sources.get(i);
+            PartialResult part = parts.get(i);
+            while (part.peek() != null) {
+                newest.merge(part.peek().getTicker(), part.next(), (held, other) ->
+                        other.getVersion() > held.getVersion() || other.getVersion() == held.getVersion()
+                                && source.equals(ring.ownerOf(other.getTicker())) ? other : held);
+            }
+        }
+        out.addAll(newest.values());
+    }
+
+    /**
+     * Returns the nodes a universe read is sent to: the members in ring order, then the former members while a
+     * handoff is under way.
+     */
+    private List<String> sources(HashRing ring, boolean handingOff) {
+        List<String> sources = new ArrayList<>(ring.getMembers());
+        if (handingOff) {
+            sources.addAll(membership.formerMembers());
+        }
+        return sources;
+    }
+
+    /**
+     * Tells which stocks a node's part of a read may contribute: those it owns, and while a handoff is under way
+     * those it owned before as well.
+     */
+    private BiPredicate<String, Stock> contributes(HashRing ring, boolean handingOff) {
+        if (!handingOff) {
+            return (node, stock) -> node.equals(ring.ownerOf(stock.getTicker()));
+        }
+        return (node, stock) -> node.equals(ring.ownerOf(stock.getTicker()))
+                || membership.formerOwnersOf(stock.getTicker()).contains(node);
+    }
+
+    /**
+     * Sends the read to every other source, runs it here meanwhile, and opens every source's part in the order
+     * of {@link #sources(HashRing, boolean)}.
+     *
+     * @param single true if each node answers with one stock rather than a list
+     */
+    private List<PartialResult> scatter(HashRing ring, boolean handingOff, String target,
+                                        Supplier<List<Stock>> localRead, boolean single) {
+        String self = membership.self();
+        List<String> sources = sources(ring, handingOff);
+        BiPredicate<String, Stock> contributes = contributes(ring, handingOff);
+        Map<String, CompletableFuture<HttpResponse<InputStream>>> pending = new LinkedHashMap<>();
+        for (String source : sources) {
+            if (!source.equals(self)) {
+                pending.put(source, client.fetchPartial(source, target, ring.getVersion()));
+            }
+        }
+        List<PartialResult> parts = new ArrayList<>();
+        try {
+            List<Stock> mine = sources.contains(self) ? localRead.get() : List.of();
+            for (String source : sources) {
+                Predicate<Stock> contributed = stock -> contributes.test(source, stock);
+                if (source.equals(self)) {
+                    parts.add(PartialResult.of(mine, contributed));
+                } else {
+                    parts.add(open(source, pending.remove(source), ring, contributed, single));
+                }
+            }
+            return parts;
+        } catch (RuntimeException e) {
+            closeAll(parts);
+            throw e;
+        } finally {
+            pending.values().forEach(PartitionClient::discard);
+        }
+    }
+
+    /**
+     * Opens a node's part of a read from its answer. An empty answer, or none from a former member, is an
+     * empty part.
+     */
+    private PartialResult open(String node, CompletableFuture<HttpResponse<InputStream>> pending, HashRing ring,
+                               Predicate<Stock> contributed, boolean single) {
+        HttpResponse<InputStream> answer = receive(node, pending, ring);
+        if (answer == null) {
+            return PartialResult.of(List.of(), contributed);
+        }
+        try {
+            int status = answer.statusCode();
+            if (status == HttpStatus.NO_CONTENT.value() || status == HttpStatus.NOT_FOUND.value()) {
+                answer.body().close();
+                return PartialResult.of(List.of(), contributed);
+            }
+            if (status != HttpStatus.OK.value()) {
+                answer.body().close();
+                throw new IOException(node + " answered " + status);
+            }
+            ObjectReader reader = PartitionClient.mapperFor(answer).readerFor(Stock.class);
+            if (single) {
+                try (InputStream in = answer.body()) {
+                    return PartialResult.of(List.of(reader.<Stock>readValue(in)), contributed);
+                }
+            }
+            return PartialResult.read(reader, answer.body(), contributed);
+        } catch (IOException e) {
+            unavailable(node, e, ring);
+            return PartialResult.of(List.of(), contributed);
+        }
+    }
+
+    /**
+     * Waits for a node's answer. Returns null if a former member failed to answer.
+     */
+    private static HttpResponse<InputStream> receive(String node,
+                                                     CompletableFuture<HttpResponse<InputStream>> pending,
+                                                     HashRing ring) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            unavailable(node, e.getCause() == null ? e : e.getCause(), ring);
+            return null;
+        }
+    }
+
+    /**
+     * Fails the read if a member of the ring could not answer, and leaves out a former member that could not.
+     */
+    private static void unavailable(String node, Throwable cause, HashRing ring) {
+        if (ring.contains(node)) {
+            throw new PartitionUnavailableException(node, cause);
+        }
+        log.warn("Former member {} is unavailable, reading without it: {}", node, cause.getMessage());
+    }
+
+    private static String encodeSegment(String segment) {
+        return UriUtils.encodePathSegment(segment, StandardCharsets.UTF_8);
+    }
+
+    private static void closeAll(List<PartialResult> parts) {
+        for (PartialResult part : parts) {
+            try {
+                part.close();
+            } catch (IOException e) {
+                log.debug("Failed to close a partial result: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.cbfacademy.apiassessment.replication;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * The FollowerWriteFilter class sends writes that reach a read replica on to the leader.
+ *
+ * <p>A replica serves every read of {@code /api/stocks/**} from its own copy of the data, but cannot accept
+ * writes. POST, PUT, PATCH and DELETE requests are answered with {@code 307 Temporary Redirect} to the same
+ * path and query on {@code stock.replication.leader-url}; unlike 301 or 302, a 307 tells the client to repeat
+ * the request with the same method and body. A multi-get sent as {@code POST /api/stocks/lookup} is a read
+ * and is served here, as are stress scenarios sent to {@code POST /api/stocks/scenarios}. Lookups of
+ * asynchronous write operations are redirected too, since only the leader knows them. The filter runs before
+ * admission control, so redirected writes do not use up the replica's write budget.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.replication.role", havingValue = "follower")
+@Order(Ordered.HIGHEST_PRECEDENCE + 5)
+public class FollowerWriteFilter extends OncePerRequestFilter {
+
+    private static final String PATH_PREFIX = "/api/stocks";
+    private static final String OPERATIONS_PREFIX = PATH_PREFIX + "/operations/";
+    private static final String LOOKUP_PATH = PATH_PREFIX + "/lookup";
+    private static final String SCENARIOS_PATH = PATH_PREFIX + "/scenarios";
+
+    private final String leaderUrl;
+
+    public FollowerWriteFilter(@Value("${stock.replication.leader-url}") String leaderUrl) {
+        this.leaderUrl = leaderUrl.endsWith("/") ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(PATH_PREFIX) || path.equals(LOOKUP_PATH) || path.equals(SCENARIOS_PATH)) {
+            return true;
+        }
+        return !isWrite(request.getMethod()) && !path.startsWith(OPERATIONS_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String query = request.getQueryString();
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader(HttpHeaders.LOCATION, leaderUrl + request.getRequestURI() + (query == null ? "" : "?" + query));
+    }
+
+    private static boolean isWrite(String method) {
+        return switch (method) {
+            case "POST", "PUT", "PATCH", "DELETE" -> true;
+            default -> false;
+        };
+    }
+}
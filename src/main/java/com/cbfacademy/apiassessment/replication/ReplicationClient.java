@@ -0,0 +1,210 @@
+package com.cbfacademy.apiassessment.replication;
+
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * The ReplicationClient class keeps a read replica in step with its leader.
+ *
+ * <p>It runs when {@code stock.replication.role=follower}, connects to the {@link ReplicationServer} at
+ * {@code stock.replication.leader-host} and {@code stock.replication.leader-port}, and applies the frames it
+ * receives to the local {@link JsonStockRepository}: a snapshot replaces the contents, and each change is
+ * applied in version order. If the connection drops, or a change does not follow on from the last one
+ * applied, it reconnects with the epoch and version it reached, and the leader sends only what is missing.
+ * A leader that has sent nothing for three heartbeat intervals is treated as lost.
+ *
+ * <p>Replication lag is published as {@code stock.replication.lag.versions}, the number of leader versions not
+ * yet applied as of the last frame, and {@code stock.replication.lag.seconds}. The latter is zero while the
+ * replica is connected and has applied the leader's latest version, and otherwise the time since the leader
+ * wrote the last change the replica applied, so it keeps growing while the replica is cut off.
+ * {@code stock.replication.connected} is 1 while a connection is established.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.replication.role", havingValue = "follower")
+public class ReplicationClient implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationClient.class);
+
+    private final JsonStockRepository repository;
+    private final String leaderHost;
+    private final int leaderPort;
+    private final long heartbeatMillis;
+    private final long reconnectMillis;
+
+    private volatile boolean running = true;
+    private volatile Socket socket;
+    private volatile boolean connected;
+    private volatile String epoch;
+    private volatile long appliedVersion = -1;
+    private volatile long leaderVersion = -1;
+    private volatile long appliedTimestamp;
+
+    /**
+     * Creates the client.
+     *
+     * @param repository the local repository, which must run as a read replica
+     * @param leaderHost the host of the leader's replication port
+     * @param leaderPort the leader's replication port
+     * @param heartbeatMillis the leader's heartbeat interval
+     * @param reconnectMillis how long to wait before reconnecting after a failure
+     */
+    public ReplicationClient(JsonStockRepository repository,
+                             @Value("${stock.replication.leader-host:localhost}") String leaderHost,
+                             @Value("${stock.replication.leader-port:7070}") int leaderPort,
+                             @Value("${stock.replication.heartbeat-ms:1000}") long heartbeatMillis,
+                             @Value("${stock.replication.reconnect-ms:1000}") long reconnectMillis) {
+        if (!repository.isReplica()) {
+            throw new IllegalStateException("The replication client needs the repository to run as a read replica");
+        }
+        this.repository = repository;
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+        this.heartbeatMillis = heartbeatMillis;
+        this.reconnectMillis = reconnectMillis;
+    }
+
+    /**
+     * Starts following the leader on a background thread.
+     */
+    @PostConstruct
+    public void start() {
+        Thread follower = new Thread(this::follow, "stock-replication-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * Stops following the leader and closes the connection.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the replication connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void follow() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(new InetSocketAddress(leaderHost, leaderPort), (int) Math.max(heartbeatMillis, 1000));
+                connection.setSoTimeout((int) (3 * heartbeatMillis));
+                connection.setTcpNoDelay(true);
+                SequenceWriter out = ReplicationProtocol.sender(connection.getOutputStream());
+                out.write(ReplicationFrame.hello(epoch, appliedVersion));
+                MappingIterator<ReplicationFrame> in = ReplicationProtocol.frames(connection.getInputStream());
+                connected = true;
+                log.info("Following leader {}:{} from version {}", leaderHost, leaderPort, appliedVersion);
+                while (running && in.hasNextValue()) {
+                    apply(in.nextValue());
+                }
+            } catch (IOException | IllegalStateException e) {
+                if (running) {
+                    log.warn("Replication from {}:{} interrupted: {}", leaderHost, leaderPort, e.getMessage());
+                }
+            } finally {
+                connected = false;
+            }
+            if (running) {
+                try {
+                    Thread.sleep(reconnectMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void apply(ReplicationFrame frame) {
+        switch (frame.getType()) {
+            case SNAPSHOT -> {
+                repository.installReplica(frame.getVersion(), frame.getStocks());
+                epoch = frame.getEpoch();
+                applied(frame.getVersion(), frame.getTimestamp());
+            }
+            case CHANGE -> {
+                repository.applyReplicated(frame.getChange());
+                applied(frame.getVersion(), frame.getTimestamp());
+            }
+            case HEARTBEAT -> leaderVersion = Math.max(leaderVersion, frame.getVersion());
+            default -> throw new IllegalStateException("Unexpected replication frame " + frame.getType());
+        }
+    }
+
+    private void applied(long version, long timestamp) {
+        appliedVersion = version;
+        appliedTimestamp = timestamp;
+        leaderVersion = Math.max(leaderVersion, version);
+    }
+
+    /**
+     * Returns the last leader version applied to the replica.
+     *
+     * @return the applied version, or -1 before the first snapshot
+     */
+    public long getAppliedVersion() {
+        return appliedVersion;
+    }
+
+    /**
+     * Tells whether the replica is connected to its leader.
+     *
+     * @return true while connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Returns the number of leader versions the replica has not applied yet, as of the last frame received.
+     *
+     * @return the lag in versions
+     */
+    public long lagVersions() {
+        return appliedVersion < 0 ? 0 : Math.max(0, leaderVersion - appliedVersion);
+    }
+
+    /**
+     * Returns how far behind the leader the replica's data may be.
+     *
+     * @return the lag in seconds
+     */
+    public double lagSeconds() {
+        if (appliedVersion < 0 || (connected && lagVersions() == 0)) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - appliedTimestamp) / 1000.0;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stock.replication.lag.versions", this, ReplicationClient::lagVersions)
+                .description("Leader versions not yet applied by this replica").register(registry);
+        Gauge.builder("stock.replication.lag.seconds", this, ReplicationClient::lagSeconds)
+                .description("How far behind the leader this replica's data may be").baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("stock.replication.connected", this, client -> client.isConnected() ? 1 : 0)
+                .description("Whether this replica is connected to its leader").register(registry);
+    }
+}
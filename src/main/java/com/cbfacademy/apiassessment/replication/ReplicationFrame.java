@@ -0,0 +1,121 @@
+package com.cbfacademy.apiassessment.replication;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * The ReplicationFrame class is one message of the replication protocol between a leader and a follower.
+ *
+ * <p>Frames are written as a stream of JSON values over a TCP connection. The follower opens the connection
+ * with a {@link Type#HELLO} giving the leader epoch and version it last applied, if any. The leader answers
+ * with either the changes after that version or a {@link Type#SNAPSHOT} of the whole universe, and from then on
+ * sends every {@link Type#CHANGE} in version order, with a {@link Type#HEARTBEAT} whenever it has been idle for
+ * a while so the follower can tell a quiet leader from a lost one.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReplicationFrame {
+    /**
+     * The kinds of frame.
+     */
+    public enum Type {
+        HELLO, SNAPSHOT, CHANGE, HEARTBEAT
+    }
+
+    private final Type type;
+    private final String epoch;
+    private final long version;
+    private final long timestamp;
+    private final Map<String, Stock> stocks;
+    private final StockChangeEvent change;
+
+    @JsonCreator
+    ReplicationFrame(@JsonProperty("type") Type type, @JsonProperty("epoch") String epoch,
+                     @JsonProperty("version") long version, @JsonProperty("timestamp") long timestamp,
+                     @JsonProperty("stocks") Map<String, Stock> stocks,
+                     @JsonProperty("change") StockChangeEvent change) {
+        this.type = type;
+        this.epoch = epoch;
+        this.version = version;
+        this.timestamp = timestamp;
+        this.stocks = stocks;
+        this.change = change;
+    }
+
+    /**
+     * Creates the frame a follower opens a connection with.
+     *
+     * @param epoch the leader epoch the follower's state belongs to, or null if it has none
+     * @param version the last version the follower applied, or -1 if it has none
+     * @return the hello frame
+     */
+    static ReplicationFrame hello(String epoch, long version) {
+        return new ReplicationFrame(Type.HELLO, epoch, version, System.currentTimeMillis(), null, null);
+    }
+
+    /**
+     * Creates a frame carrying the whole universe.
+     *
+     * @param epoch the leader epoch
+     * @param version the version of the snapshot
+     * @param stocks the stocks keyed by ticker
+     * @return the snapshot frame
+     */
+    static ReplicationFrame snapshot(String epoch, long version, Map<String, Stock> stocks) {
+        return new ReplicationFrame(Type.SNAPSHOT, epoch, version, System.currentTimeMillis(), stocks, null);
+    }
+
+    /**
+     * Creates a frame carrying a single change.
+     *
+     * @param change the change, whose version and timestamp are those of the leader's write
+     * @return the change frame
+     */
+    static ReplicationFrame change(StockChangeEvent change) {
+        return new ReplicationFrame(Type.CHANGE, null, change.getVersion(), change.getTimestamp(), null, change);
+    }
+
+    /**
+     * Creates a frame that tells an idle follower the leader is alive and at which version it is.
+     *
+     * @param version the leader's current version
+     * @return the heartbeat frame
+     */
+    static ReplicationFrame heartbeat(long version) {
+        return new ReplicationFrame(Type.HEARTBEAT, null, version, System.currentTimeMillis(), null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the leader's time for the frame in milliseconds since the epoch: the time of the write for a
+     * change, otherwise the time the frame was sent.
+     *
+     * @return the frame timestamp
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, Stock> getStocks() {
+        return stocks;
+    }
+
+    public StockChangeEvent getChange() {
+        return change;
+    }
+}
@@ -0,0 +1,50 @@
+package com.cbfacademy.apiassessment.replication;
+
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The ReplicationProtocol class opens the frame streams on either end of a replication connection.
+ *
+ * <p>Frames are JSON values separated by newlines, written with the streaming {@code Stock} codec, so a
+ * connection can be inspected with ordinary tools. Every frame is flushed as soon as it is written.
+ */
+final class ReplicationProtocol {
+    private static final ObjectMapper MAPPER = StorageFormat.JSON.documentMapper();
+    private static final ObjectReader READER = MAPPER.readerFor(ReplicationFrame.class);
+    private static final ObjectWriter WRITER = MAPPER.writerFor(ReplicationFrame.class).withRootValueSeparator("\n");
+
+    private ReplicationProtocol() {
+    }
+
+    /**
+     * Opens the stream of frames arriving on a connection.
+     *
+     * @param in the connection's input stream
+     * @return an iterator that blocks for each next frame
+     * @throws IOException if the stream cannot be read
+     */
+    static MappingIterator<ReplicationFrame> frames(InputStream in) throws IOException {
+        return READER.readValues(in);
+    }
+
+    /**
+     * Opens a writer for the frames sent on a connection.
+     *
+     * @param out the connection's output stream
+     * @return a writer that flushes after every frame
+     * @throws IOException if the stream cannot be written
+     */
+    static SequenceWriter sender(OutputStream out) throws IOException {
+        return WRITER.writeValues(new BufferedOutputStream(out, 64 * 1024));
+    }
+}
@@ -0,0 +1,325 @@
+package com.cbfacademy.apiassessment.replication;
+
+import com.cbfacademy.apiassessment.changes.ChangeBatch;
+import com.cbfacademy.apiassessment.changes.ChangeLog;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StockRepository;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ReplicationServer class ships the repository's ordered change stream to read replicas over TCP.
+ *
+ * <p>It runs on the instance that owns the JSON file ({@code stock.replication.role=leader}) and listens on
+ * {@code stock.replication.port}. Each follower connection gets its own sender thread and a bounded queue,
+ * which the write path only appends to, so a slow follower never delays a write. A follower that reconnects
+ * with the epoch and version it last applied is caught up from the {@link ChangeLog}; one that is new, comes
+ * from an earlier run of the leader, or is further behind than the change log reaches is sent a full snapshot
+ * first. A follower whose queue overflows is caught up the same way rather than disconnected.
+ *
+ * <p>A connection that does not say hello within three heartbeats is closed, and at most
+ * {@code stock.replication.max-followers} connections are served at once; any more are closed as soon as they
+ * are accepted, so idle or excess connections cannot pile up sender threads.
+ *
+ * <p>Every change is sent exactly once and in version order: the sender remembers the last version it sent,
+ * drops anything at or below it, and fills any gap from the change log before going on.
+ */
+@Component
+@ConditionalOnProperty(name = "stock.replication.role", havingValue = "leader")
+public class ReplicationServer implements StockChangeListener, MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(ReplicationServer.class);
+
+    private final StockRepository repository;
+    private final ChangeLog changeLog;
+    private final int port;
+    private final int queueCapacity;
+    private final long heartbeatMillis;
+    private final int maxFollowers;
+    // Connections with a sender thread, including those still waiting for the follower's hello
+    private final AtomicInteger links = new AtomicInteger();
+    private final List<FollowerLink> followers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * Creates the server.
+     *
+     * @param repository the repository whose changes are shipped
+     * @param changeLog the change log used to catch followers up
+     * @param port the TCP port to listen on; 0 picks a free port
+     * @param queueCapacity the number of changes queued for a follower before it is caught up from the change log
+     * @param heartbeatMillis how long a connection may stay idle before a heartbeat is sent
+     * @param maxFollowers the most follower connections served at once
+     */
+    public ReplicationServer(StockRepository repository, ChangeLog changeLog,
+                             @Value("${stock.replication.port:7070}") int port,
+                             @Value("${stock.replication.queue-size:10000}") int queueCapacity,
+                             @Value("${stock.replication.heartbeat-ms:1000}") long heartbeatMillis,
+                             @Value("${stock.replication.max-followers:16}") int maxFollowers) {
+        if (queueCapacity < 1 || heartbeatMillis < 1 || maxFollowers < 1) {
+            throw new IllegalArgumentException(
+                    "Replication queue size, heartbeat and follower limit must be positive");
+        }
+        this.maxFollowers = maxFollowers;
+        this.repository = repository;
+        this.changeLog = changeLog;
+        this.port = port;
+        this.queueCapacity = queueCapacity;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Opens the listening socket and starts accepting followers.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        Thread acceptor = new Thread(this::accept, "stock-replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Replication leader listening on port {}", getPort());
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the bound port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of followers currently connected.
+     *
+     * @return the follower count
+     */
+    public int followerCount() {
+        return followers.size();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (links.incrementAndGet() > maxFollowers) {
+                    links.decrementAndGet();
+                    log.warn("Refusing replication connection from {}: {} followers already connected",
+                            socket.getRemoteSocketAddress(), maxFollowers);
+                    socket.close();
+                    continue;
+                }
+                Thread sender = new Thread(new FollowerLink(socket),
+                        "stock-replication-" + connections.incrementAndGet());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Failed to accept a follower: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues a change for every connected follower.
+     *
+     * @param event the change that was applied
+     */
+    @Override
+    public void onStockChange(StockChangeEvent event) {
+        for (FollowerLink follower : followers) {
+            follower.offer(event);
+        }
+    }
+
+    /**
+     * Closes the listening socket and every follower connection.
+     */
+    @PreDestroy
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the replication socket: {}", e.getMessage());
+        }
+        followers.forEach(FollowerLink::close);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stock.replication.followers", this, ReplicationServer::followerCount)
+                .description("Read replicas connected to this leader").register(registry);
+    }
+
+    /**
+     * One follower connection and the changes waiting to be sent on it.
+     */
+    private final class FollowerLink implements Runnable {
+        private final Socket socket;
+        private final BlockingQueue<StockChangeEvent> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private volatile boolean overflowed;
+        private SequenceWriter out;
+        private long lastSent = -1;
+
+        FollowerLink(Socket socket) {
+            this.socket = socket;
+        }
+
+        void offer(StockChangeEvent event) {
+            if (!queue.offer(event)) {
+                overflowed = true;
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Failed to close follower connection: {}", e.getMessage());
+            }
+        }
+
+        @Override
+        public void run() {
+            String follower = String.valueOf(socket.getRemoteSocketAddress());
+            try (socket) {
+                socket.setTcpNoDelay(true);
+                // The hello is the only frame the leader reads, so the timeout only bounds the wait for it
+                socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, 3 * heartbeatMillis));
+                MappingIterator<ReplicationFrame> in = ReplicationProtocol.frames(socket.getInputStream());
+                out = ReplicationProtocol.sender(socket.getOutputStream());
+                ReplicationFrame hello = in.hasNextValue() ? in.nextValue() : null;
+                if (hello == null || hello.getType() != ReplicationFrame.Type.HELLO) {
+                    log.warn("Closing replication connection from {} that did not say hello", follower);
+                    return;
+                }
+                // Register before reading any state, so no change can fall between the state sent and the queue
+                followers.add(this);
+                if (!catchUp(hello.getEpoch(), hello.getVersion())) {
+                    sendSnapshot();
+                }
+                log.info("Follower {} connected at version {}", follower, lastSent);
+                stream();
+            } catch (IOException e) {
+                if (!(e instanceof SocketException) || !socket.isClosed()) {
+                    log.info("Follower {} disconnected: {}", follower, e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("Replication to {} failed", follower, e);
+            } finally {
+                followers.remove(this);
+                links.decrementAndGet();
+            }
+        }
+
+        private void stream() throws IOException, InterruptedException {
+            while (!socket.isClosed()) {
+                StockChangeEvent event = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (overflowed) {
+                    overflowed = false;
+                    queue.clear();
+                    resume();
+                } else if (event == null) {
+                    // Idle: pick up anything the queue missed, then tell the follower where the leader is
+                    if (repository.version() > lastSent) {
+                        resume();
+                    }
+                    out.write(ReplicationFrame.heartbeat(repository.version()));
+                } else if (event.getVersion() == lastSent + 1) {
+                    send(event);
+                } else if (event.getVersion() > lastSent + 1) {
+                    resume();
+                    if (event.getVersion() == lastSent + 1) {
+                        send(event);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Brings the follower up to date from the change log, or with a snapshot if the log cannot.
+         */
+        private void resume() throws IOException {
+            if (!catchUp(changeLog.getEpoch(), lastSent)) {
+                sendSnapshot();
+            }
+        }
+
+        /**
+         * Sends the changes after a version from the change log.
+         *
+         * @return false if the change log cannot serve the version and a snapshot is needed
+         */
+        private boolean catchUp(String epoch, long since) throws IOException {
+            if (epoch == null || since < 0) {
+                return false;
+            }
+            lastSent = since;
+            while (true) {
+                long from = lastSent;
+                ChangeBatch batch = changeLog.changesSince(from, epoch, ChangeLog.MAX_BATCH);
+                if (batch.isResyncRequired()) {
+                    return false;
+                }
+                for (StockChangeEvent change : batch.getChanges()) {
+                    if (change.getVersion() == lastSent + 1) {
+                        send(change);
+                    }
+                }
+                if (!batch.isHasMore() || lastSent == from) {
+                    return true;
+                }
+            }
+        }
+
+        private void sendSnapshot() throws IOException {
+            String epoch = changeLog.getEpoch();
+            StockSnapshot snapshot = repository.snapshot();
+            Map<String, Stock> stocks = new LinkedHashMap<>();
+            for (Stock stock : snapshot.getStocks()) {
+                stocks.put(stock.getTicker(), stock);
+            }
+            out.write(ReplicationFrame.snapshot(epoch, snapshot.getVersion(), stocks));
+            lastSent = snapshot.getVersion();
+        }
+
+        private void send(StockChangeEvent change) throws IOException {
+            out.write(ReplicationFrame.change(change));
+            lastSent = change.getVersion();
+        }
+    }
+}
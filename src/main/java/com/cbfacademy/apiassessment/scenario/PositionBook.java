@@ -0,0 +1,286 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockDictionary;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * The PositionBook class holds the market value and the cost basis of the holdings of one snapshot, summed for
+ * each segment, that is each sector and currency.
+ *
+ * <p>Price shocks are proportional, so the change in value a sector shock causes is the shock times the market
+ * value of the sector, and a ticker shock only corrects that for a single stock. Once the segments are summed, a
+ * scenario therefore costs the number of segments plus the number of ticker shocks, however many stocks there
+ * are. Summing the segments is the only pass over every stock: the prices, purchase prices and quantities are
+ * copied into primitive arrays grouped by segment, and each run of positions is then valued by a
+ * {@link ValuationKernel}, in parallel chunks for a large universe. A book can also be created from segment sums
+ * that were kept up to date write by write, see {@link SegmentTotals}, which costs only the number of segments.
+ */
+final class PositionBook {
+    /**
+     * The positions valued as one task when the segments are summed in parallel.
+     */
+    static final int CHUNK = 1 << 16;
+
+    /**
+     * The order segments are numbered in: by sector name, then by currency name. A segment is keyed by its
+     * sector id and its currency id.
+     */
+    static final Comparator<int[]> SEGMENT_ORDER = Comparator
+            .<int[], String>comparing(key -> StockDictionary.SECTORS.decode(key[0]),
+                    Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(key -> StockDictionary.CURRENCIES.decode(key[1]),
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final WeakReference<StockSnapshot> source;
+    private final long version;
+    private final int size;
+    private final String[] sectors;
+    private final String[] currencies;
+    private final double[] marketValues;
+    private final double[] costBases;
+    private final int[] positions;
+
+    /**
+     * The segment of each sector and currency id, or -1 if no stock has them.
+     */
+    private final int[][] segmentIds;
+
+    /**
+     * The segments of each sector, keyed by the lower-case sector name.
+     */
+    private final Map<String, int[]> sectorSegments;
+
+    private PositionBook(StockSnapshot snapshot, String[] sectors, String[] currencies, double[] marketValues,
+                         double[] costBases, int[] positions, int[][] segmentIds) {
+        this.source = new WeakReference<>(snapshot);
+        this.version = snapshot.getVersion();
+        this.size = snapshot.size();
+        this.sectors = sectors;
+        this.currencies = currencies;
+        this.marketValues = marketValues;
+        this.costBases = costBases;
+        this.positions = positions;
+        this.segmentIds = segmentIds;
+        Map<String, List<Integer>> bySector = new HashMap<>();
+        for (int segment = 0; segment < sectors.length; segment++) {
+            if (sectors[segment] != null) {
+                bySector.computeIfAbsent(sectors[segment].toLowerCase(Locale.ROOT), unused -> new ArrayList<>())
+                        .add(segment);
+            }
+        }
+        this.sectorSegments = new HashMap<>();
+        bySector.forEach((sector, segments) ->
+                sectorSegments.put(sector, segments.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Creates the book of a snapshot from the sums of its segments.
+     *
+     * @param snapshot the snapshot the sums were taken of
+     * @param keys the sector id and the currency id of each segment, in {@link #SEGMENT_ORDER}
+     * @param marketValues the market value of each segment
+     * @param costBases the cost basis of each segment
+     * @param positions the number of stocks in each segment
+     * @return the book
+     */
+    static PositionBook of(StockSnapshot snapshot, List<int[]> keys, double[] marketValues, double[] costBases,
+                           int[] positions) {
+        int sectorCount = 1;
+        int currencyCount = 1;
+        for (int[] key : keys) {
+            sectorCount = Math.max(sectorCount, key[0] + 1);
+            currencyCount = Math.max(currencyCount, key[1] + 1);
+        }
+        int[][] segmentIds = new int[sectorCount][currencyCount];
+        for (int[] row : segmentIds) {
+            Arrays.fill(row, -1);
+        }
+        String[] sectors = new String[keys.size()];
+        String[] currencies = new String[keys.size()];
+        for (int segment = 0; segment < keys.size(); segment++) {
+            int[] key = keys.get(segment);
+            segmentIds[key[0]][key[1]] = segment;
+            sectors[segment] = StockDictionary.SECTORS.decode(key[0]);
+            currencies[segment] = StockDictionary.CURRENCIES.decode(key[1]);
+        }
+        return new PositionBook(snapshot, sectors, currencies, marketValues, costBases, positions, segmentIds);
+    }
+
+    /**
+     * Values the holdings of a snapshot.
+     *
+     * @param snapshot the snapshot
+     * @param kernel values each run of positions
+     * @return the book
+     */
+    static PositionBook build(StockSnapshot snapshot, ValuationKernel kernel) {
+        List<Stock> stocks = snapshot.getStocks();
+        int sectorCount = 1;
+        int currencyCount = 1;
+        for (Stock stock : stocks) {
+            sectorCount = Math.max(sectorCount, stock.getSectorId() + 1);
+            currencyCount = Math.max(currencyCount, stock.getCurrencyId() + 1);
+        }
+        int[][] counts = new int[sectorCount][currencyCount];
+        for (Stock stock : stocks) {
+            counts[stock.getSectorId()][stock.getCurrencyId()]++;
+        }
+
+        // Number the segments in order of sector and currency name
+        List<int[]> keys = new ArrayList<>();
+        for (int sector = 0; sector < sectorCount; sector++) {
+            for (int currency = 0; currency < currencyCount; currency++) {
+                if (counts[sector][currency] > 0) {
+                    keys.add(new int[] {sector, currency});
+                }
+            }
+        }
+        keys.sort(SEGMENT_ORDER);
+        int segmentCount = keys.size();
+        int[][] segmentIds = new int[sectorCount][currencyCount];
+        int[] positions = new int[segmentCount];
+        int[] offsets = new int[segmentCount + 1];
+        for (int segment = 0; segment < segmentCount; segment++) {
+            int[] key = keys.get(segment);
+            segmentIds[key[0]][key[1]] = segment;
+            positions[segment] = counts[key[0]][key[1]];
+            offsets[segment + 1] = offsets[segment] + positions[segment];
+        }
+
+        // Copy the positions into primitive arrays, each segment a contiguous run
+        int size = stocks.size();
+        double[] prices = new double[size];
+        double[] purchasePrices = new double[size];
+        double[] quantities = new double[size];
+        int[] next = Arrays.copyOf(offsets, segmentCount);
+        for (Stock stock : stocks) {
+            int position = next[segmentIds[stock.getSectorId()][stock.getCurrencyId()]]++;
+            prices[position] = stock.getCurrentPrice();
+            purchasePrices[position] = stock.getPurchasePrice();
+            quantities[position] = stock.getQuantity();
+        }
+
+        // Value each segment in chunks, in parallel when there are several
+        List<int[]> chunks = new ArrayList<>();
+        for (int segment = 0; segment < segmentCount; segment++) {
+            for (int from = offsets[segment]; from < offsets[segment + 1]; from += CHUNK) {
+                chunks.add(new int[] {segment, from, Math.min(from + CHUNK, offsets[segment + 1])});
+            }
+        }
+        double[][] chunkSums = new double[chunks.size()][2];
+        IntStream indexes = IntStream.range(0, chunks.size());
+        (chunks.size() > 1 ? indexes.parallel() : indexes).forEach(chunk -> {
+            int[] range = chunks.get(chunk);
+            kernel.sum(prices, purchasePrices, quantities, range[1], range[2], chunkSums[chunk]);
+        });
+        double[] marketValues = new double[segmentCount];
+        double[] costBases = new double[segmentCount];
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            marketValues[chunks.get(chunk)[0]] += chunkSums[chunk][0];
+            costBases[chunks.get(chunk)[0]] += chunkSums[chunk][1];
+        }
+        return of(snapshot, keys, marketValues, costBases, positions);
+    }
+
+    /**
+     * Tells whether this book values the given snapshot. Only a weak reference to the snapshot is kept, so that a
+     * book does not hold on to a snapshot that writes have replaced.
+     *
+     * @param snapshot the snapshot
+     * @return true if the book was built from it
+     */
+    boolean isFor(StockSnapshot snapshot) {
+        return source.get() == snapshot;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Passes the sums of every segment to the given consumer, keyed by sector id and currency id, so that they
+     * can be kept up to date as writes change them.
+     *
+     * @param consumer receives the sector id, the currency id, the market value, the cost basis and the number of
+     *                 stocks of each segment
+     */
+    void forEachSegment(SegmentConsumer consumer) {
+        for (int sector = 0; sector < segmentIds.length; sector++) {
+            for (int currency = 0; currency < segmentIds[sector].length; currency++) {
+                int segment = segmentIds[sector][currency];
+                if (segment >= 0) {
+                    consumer.accept(sector, currency, marketValues[segment], costBases[segment],
+                            positions[segment]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the sums of one segment.
+     */
+    @FunctionalInterface
+    interface SegmentConsumer {
+        void accept(int sector, int currency, double marketValue, double costBasis, int positions);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Computes the impact of a scenario on the holdings of the snapshot this book was built from.
+     *
+     * @param scenario the scenario
+     * @param snapshot the snapshot this book was built from, to look up the stocks shocked by ticker
+     * @return the result
+     */
+    ScenarioResult evaluate(StressScenario scenario, StockSnapshot snapshot) {
+        int segmentCount = sectors.length;
+        double[] shocks = new double[segmentCount];
+        double[] deltas = new double[segmentCount];
+        List<String> unmatchedSectors = new ArrayList<>();
+        for (Map.Entry<String, Double> shock : scenario.getSectors().entrySet()) {
+            int[] segments = sectorSegments.get(shock.getKey().toLowerCase(Locale.ROOT));
+            if (segments == null) {
+                unmatchedSectors.add(shock.getKey());
+                continue;
+            }
+            for (int segment : segments) {
+                shocks[segment] = shock.getValue();
+            }
+        }
+        for (int segment = 0; segment < segmentCount; segment++) {
+            deltas[segment] = marketValues[segment] * shocks[segment] / 100;
+        }
+        List<String> unmatchedTickers = new ArrayList<>();
+        for (Map.Entry<String, Double> shock : scenario.getTickers().entrySet()) {
+            Stock stock = snapshot.get(shock.getKey());
+            if (stock == null) {
+                unmatchedTickers.add(shock.getKey());
+                continue;
+            }
+            // The ticker's own shock replaces the one its sector already applied
+            int segment = segmentIds[stock.getSectorId()][stock.getCurrencyId()];
+            double value = stock.getCurrentPrice() * stock.getQuantity();
+            deltas[segment] += value * (shock.getValue() - shocks[segment]) / 100;
+        }
+        List<ScenarioImpact> impacts = new ArrayList<>(segmentCount);
+        for (int segment = 0; segment < segmentCount; segment++) {
+            impacts.add(new ScenarioImpact(sectors[segment], currencies[segment], marketValues[segment],
+                    costBases[segment], deltas[segment]));
+        }
+        return ScenarioResult.of(scenario.getName(), impacts, unmatchedSectors, unmatchedTickers);
+    }
+}
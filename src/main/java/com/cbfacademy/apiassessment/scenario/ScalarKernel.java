@@ -0,0 +1,25 @@
+package com.cbfacademy.apiassessment.scenario;
+
+/**
+ * The ScalarKernel class values positions one at a time. It is used when the Vector API is not available, that is
+ * when the JVM was started without {@code --add-modules jdk.incubator.vector}, or when it is turned off.
+ */
+final class ScalarKernel implements ValuationKernel {
+
+    @Override
+    public void sum(double[] prices, double[] purchasePrices, double[] quantities, int from, int to, double[] sums) {
+        double value = 0;
+        double cost = 0;
+        for (int i = from; i < to; i++) {
+            value += prices[i] * quantities[i];
+            cost += purchasePrices[i] * quantities[i];
+        }
+        sums[0] = value;
+        sums[1] = cost;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,59 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ScenarioController class runs what-if stress scenarios against the holdings, such as "Technology -15%,
+ * Energy +5%", and reports what each would do to their value and profit and loss.
+ */
+@RestController
+@RequestMapping("/api/stocks")
+@Tag(name = "Scenarios")
+public class ScenarioController {
+
+    private final ScenarioRunner engine;
+
+    public ScenarioController(ScenarioRunner engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Revalues the holdings under each of several stress scenarios, all against the same snapshot.
+     *
+     * @param scenarios The scenarios, as a JSON array; each has a name and price shocks in percent keyed by
+     *                  sector and by ticker.
+     * @return ResponseEntity object containing the result of each scenario, in the order given: the change in
+     *         value and profit and loss of each sector and in total, per currency, and the sectors and tickers
+     *         that matched no stock.
+     *         Returns HttpStatus.OK (200) whether or not every sector and ticker matched.
+     *         Returns HttpStatus.BAD_REQUEST (400) if there are no scenarios, more than
+     *         {@link StressScenario#MAX_SCENARIOS}, or a shock below -100%.
+     */
+    @PostMapping("/scenarios")
+    @Operation(summary = "Run stress scenarios", description = "Applies price shocks by sector and by ticker and reports the change in value and profit and loss per sector",
+            responses = {
+                    @ApiResponse(description = "Scenarios run", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = ScenarioReport.class))),
+                    @ApiResponse(description = "Invalid scenarios", responseCode = "400")
+            })
+    public ResponseEntity<Object> runScenarios(@RequestBody List<StressScenario> scenarios) {
+        try {
+            return new ResponseEntity<>(engine.run(scenarios), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StockRepository;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * The ScenarioEngine class runs stress scenarios against the latest snapshot of the repository.
+ *
+ * <p>The holdings of a snapshot are valued once, into a {@link PositionBook}, and the book is kept until a write
+ * publishes a new snapshot; every scenario run against the same snapshot reuses it. The engine listens to the
+ * repository's writes and keeps the sums of every segment up to date with them, in {@link SegmentTotals}, so the
+ * book of the snapshot a write published is made from those sums without valuing every stock again. The holdings
+ * are only valued in full for the first run, after the repository contents were replaced wholesale, when the
+ * sums fell behind the snapshot being run against, or once {@code stock.scenario.revalue-every} writes have been
+ * applied to the sums, so that their rounding error stays bounded. They are valued with the
+ * {@link VectorKernel} when the {@code jdk.incubator.vector} module was added to the JVM, with
+ * {@code --add-modules jdk.incubator.vector}, and {@code stock.scenario.vector} is on; otherwise with the
+ * {@link ScalarKernel}. A request with at least {@code stock.scenario.parallel-threshold} scenarios has them
+ * evaluated in parallel.
+ */
+@Component
+public class ScenarioEngine implements ScenarioRunner, StockChangeListener {
+    private static final Logger log = LoggerFactory.getLogger(ScenarioEngine.class);
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    static final long DEFAULT_REVALUE_EVERY = 100_000;
+
+    private final StockRepository repository;
+    private final ValuationKernel kernel;
+    private final int parallelThreshold;
+    private final long revalueEvery;
+
+    /**
+     * Held while a run finds or makes its book, so that the holdings are valued by one run at a time.
+     */
+    private final Object building = new Object();
+
+    /**
+     * The book of the latest snapshot run against. Guarded by {@link #building}.
+     */
+    private PositionBook book;
+
+    /**
+     * The segment sums kept up to date with the writes, or null until a book has been valued in full. Guarded by
+     * this engine, which the writes' listener calls lock.
+     */
+    private SegmentTotals totals;
+
+    /**
+     * The writes made while the holdings are being valued in full, to apply to the sums the valuation gives; null
+     * when no valuation is running, or when the contents were replaced during it. Guarded by this engine.
+     */
+    private List<StockChangeEvent> pending;
+
+    /**
+     * Creates the engine.
+     *
+     * @param repository the repository whose stocks are valued
+     * @param vector whether to value the holdings with the Vector API when it is available
+     * @param parallelThreshold the number of scenarios from which a request is evaluated in parallel
+     * @param revalueEvery the number of writes applied to the segment sums before the holdings are valued in full
+     */
+    @Autowired
+    public ScenarioEngine(StockRepository repository,
+                          @Value("${stock.scenario.vector:true}") boolean vector,
+                          @Value("${stock.scenario.parallel-threshold:8}") int parallelThreshold,
+                          @Value("${stock.scenario.revalue-every:100000}") long revalueEvery) {
+        this(repository, selectKernel(vector), parallelThreshold, revalueEvery);
+    }
+
+    ScenarioEngine(StockRepository repository, ValuationKernel kernel, int parallelThreshold) {
+        this(repository, kernel, parallelThreshold, DEFAULT_REVALUE_EVERY);
+    }
+
+    ScenarioEngine(StockRepository repository, ValuationKernel kernel, int parallelThreshold, long revalueEvery) {
+        this.repository = repository;
+        this.kernel = kernel;
+        this.parallelThreshold = Math.max(1, parallelThreshold);
+        this.revalueEvery = Math.max(1, revalueEvery);
+        log.info("Stress scenarios are valued with the {} kernel", kernel.name());
+    }
+
+    /**
+     * Picks the vector kernel if it is wanted and the JVM can load it, the scalar one otherwise.
+     */
+    static ValuationKernel selectKernel(boolean vector) {
+        if (!vector) {
+            return new ScalarKernel();
+        }
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            log.info("The {} module is not available; add it with --add-modules to vectorise scenarios",
+                    VECTOR_MODULE);
+            return new ScalarKernel();
+        }
+        try {
+            return new VectorKernel();
+        } catch (LinkageError e) {
+            log.warn("The vector kernel could not be loaded, falling back to the scalar one", e);
+            return new ScalarKernel();
+        }
+    }
+
+    /**
+     * Runs scenarios against the latest snapshot. Every scenario sees the same snapshot.
+     *
+     * @param scenarios the scenarios
+     * @return the result of each scenario, in the order given
+     * @throws IllegalArgumentException if the scenarios are not valid
+     */
+    @Override
+    public ScenarioReport run(List<StressScenario> scenarios) {
+        StressScenario.requireValid(scenarios);
+        StockSnapshot snapshot = repository.snapshot();
+        return run(scenarios, book(snapshot), snapshot);
+    }
+
+    /**
+     * Runs scenarios against the given stocks rather than the repository's, valuing them in full. Used to run
+     * scenarios against stocks gathered from several partitions. The report carries the version of the
+     * repository's latest snapshot.
+     *
+     * @param scenarios the scenarios
+     * @param stocks the stocks, one per ticker
+     * @return the result of each scenario, in the order given
+     * @throws IllegalArgumentException if the scenarios are not valid
+     */
+    public ScenarioReport run(List<StressScenario> scenarios, List<Stock> stocks) {
+        StressScenario.requireValid(scenarios);
+        Map<String, Stock> contents = new LinkedHashMap<>();
+        for (Stock stock : stocks) {
+            contents.put(stock.getTicker(), stock);
+        }
+        StockSnapshot snapshot = new StockSnapshot(repository.snapshot().getVersion(), contents);
+        return run(scenarios, PositionBook.build(snapshot, kernel), snapshot);
+    }
+
+    private ScenarioReport run(List<StressScenario> scenarios, PositionBook positions, StockSnapshot snapshot) {
+        IntStream indexes = IntStream.range(0, scenarios.size());
+        List<ScenarioResult> results = (scenarios.size() >= parallelThreshold ? indexes.parallel() : indexes)
+                .mapToObj(i -> positions.evaluate(scenarios.get(i), snapshot))
+                .toList();
+        return new ScenarioReport(positions.getVersion(), positions.size(), kernel.name(), results);
+    }
+
+    /**
+     * Returns the book of a snapshot: the current book if it is for that snapshot, one made from the segment sums
+     * if they are at its version, and otherwise one valued in full. The repository is not locked while the
+     * holdings are valued; the writes made meanwhile are collected and applied to the sums afterwards.
+     */
+    private PositionBook book(StockSnapshot snapshot) {
+        synchronized (building) {
+            if (book != null && book.isFor(snapshot)) {
+                return book;
+            }
+            boolean seed;
+            synchronized (this) {
+                if (totals != null && totals.getVersion() == snapshot.getVersion()) {
+                    book = totals.book(snapshot);
+                    return book;
+                }
+                // Sums ahead of an older snapshot are kept; sums behind it are taken again from the valuation
+                seed = totals == null || totals.getVersion() < snapshot.getVersion();
+                if (seed) {
+                    totals = null;
+                    pending = new ArrayList<>();
+                }
+            }
+            long start = System.nanoTime();
+            PositionBook built = PositionBook.build(snapshot, kernel);
+            log.debug("Valued {} stocks at version {} in {} ms", built.size(), built.getVersion(),
+                    (System.nanoTime() - start) / 1_000_000);
+            if (seed) {
+                synchronized (this) {
+                    if (pending != null) {
+                        totals = SegmentTotals.of(built);
+                        pending.forEach(this::apply);
+                        pending = null;
+                    }
+                }
+            }
+            book = built;
+            return book;
+        }
+    }
+
+    /**
+     * Keeps the segment sums up to date with a write.
+     */
+    @Override
+    public synchronized void onStockChange(StockChangeEvent event) {
+        if (pending != null) {
+            pending.add(event);
+        } else {
+            apply(event);
+        }
+    }
+
+    /**
+     * Discards the segment sums, so that the next run values the new contents in full.
+     */
+    @Override
+    public synchronized void onStockReset(StockSnapshot snapshot) {
+        totals = null;
+        pending = null;
+    }
+
+    /**
+     * Applies a write to the segment sums, discarding them if it cannot be applied, or once they have taken
+     * {@link #revalueEvery} writes since they were valued in full. A write the sums already include, because the
+     * snapshot they were valued from was published before its listeners were called, is skipped. Must be called
+     * holding this engine's lock.
+     */
+    private void apply(StockChangeEvent event) {
+        if (totals == null || event.getVersion() <= totals.getVersion()) {
+            return;
+        }
+        if (!totals.apply(event)) {
+            log.debug("Revaluing the holdings in full after the change of {} at version {}", event.getTicker(),
+                    event.getVersion());
+            totals = null;
+        } else if (totals.getApplied() >= revalueEvery) {
+            log.debug("Revaluing the holdings in full after {} writes at version {}", totals.getApplied(),
+                    event.getVersion());
+            totals = null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The ScenarioImpact class describes what a scenario does to a group of holdings in one currency: either the
+ * holdings of one sector, or all holdings in the currency. Amounts in different currencies are never added up.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(value = {"shockedValue", "pnlDeltaPercent", "unrealizedPnl", "shockedUnrealizedPnl"},
+        allowGetters = true)
+public class ScenarioImpact {
+    private final String sector;
+    private final String currency;
+    private final double marketValue;
+    private final double costBasis;
+    private final double pnlDelta;
+
+    @JsonCreator
+    public ScenarioImpact(@JsonProperty("sector") String sector,
+                          @JsonProperty("currency") String currency,
+                          @JsonProperty("marketValue") double marketValue,
+                          @JsonProperty("costBasis") double costBasis,
+                          @JsonProperty("pnlDelta") double pnlDelta) {
+        this.sector = sector;
+        this.currency = currency;
+        this.marketValue = marketValue;
+        this.costBasis = costBasis;
+        this.pnlDelta = pnlDelta;
+    }
+
+    /**
+     * Returns the sector of the holdings, or null for the total of a currency.
+     *
+     * @return the sector
+     */
+    public String getSector() {
+        return sector;
+    }
+
+    /**
+     * Returns the currency symbol the amounts are in.
+     *
+     * @return the currency symbol
+     */
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Returns the value of the holdings at current prices, before the shock.
+     *
+     * @return the market value
+     */
+    public double getMarketValue() {
+        return marketValue;
+    }
+
+    /**
+     * Returns what the holdings cost, at their purchase prices.
+     *
+     * @return the cost basis
+     */
+    public double getCostBasis() {
+        return costBasis;
+    }
+
+    /**
+     * Returns the change in profit and loss the shock causes, which is also the change in market value.
+     *
+     * @return the profit and loss delta
+     */
+    public double getPnlDelta() {
+        return pnlDelta;
+    }
+
+    /**
+     * Returns the value of the holdings after the shock.
+     *
+     * @return the shocked market value
+     */
+    public double getShockedValue() {
+        return marketValue + pnlDelta;
+    }
+
+    /**
+     * Returns the change in profit and loss as a percentage of the market value.
+     *
+     * @return the delta in percent, 0 if the holdings have no value
+     */
+    public double getPnlDeltaPercent() {
+        return marketValue == 0 ? 0 : 100 * pnlDelta / marketValue;
+    }
+
+    /**
+     * Returns the unrealised profit and loss before the shock.
+     *
+     * @return the market value less the cost basis
+     */
+    public double getUnrealizedPnl() {
+        return marketValue - costBasis;
+    }
+
+    /**
+     * Returns the unrealised profit and loss after the shock.
+     *
+     * @return the shocked market value less the cost basis
+     */
+    public double getShockedUnrealizedPnl() {
+        return marketValue + pnlDelta - costBasis;
+    }
+
+    /**
+     * Adds the amounts of another impact on the same sector and currency, such as the part computed by another
+     * node of a partitioned deployment.
+     *
+     * @param other the other impact
+     * @return the combined impact
+     */
+    ScenarioImpact plus(ScenarioImpact other) {
+        return new ScenarioImpact(sector, currency, marketValue + other.marketValue, costBasis + other.costBasis,
+                pnlDelta + other.pnlDelta);
+    }
+}
@@ -0,0 +1,85 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ScenarioReport class describes a run of stress scenarios over one snapshot of the repository: the result of
+ * each scenario, in the order the scenarios were given.
+ */
+public class ScenarioReport {
+    private final long version;
+    private final int stocks;
+    private final String kernel;
+    private final List<ScenarioResult> results;
+
+    @JsonCreator
+    public ScenarioReport(@JsonProperty("version") long version,
+                          @JsonProperty("stocks") int stocks,
+                          @JsonProperty("kernel") String kernel,
+                          @JsonProperty("results") List<ScenarioResult> results) {
+        this.version = version;
+        this.stocks = stocks;
+        this.kernel = kernel;
+        this.results = results == null ? List.of() : results;
+    }
+
+    /**
+     * Returns the repository version the scenarios were run against; for a partitioned deployment, the highest
+     * version of the nodes.
+     *
+     * @return the repository version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of stocks valued.
+     *
+     * @return the stock count
+     */
+    public int getStocks() {
+        return stocks;
+    }
+
+    /**
+     * Returns how the holdings were valued: {@code vector} with the Vector API, or {@code scalar}.
+     *
+     * @return the kernel name
+     */
+    public String getKernel() {
+        return kernel;
+    }
+
+    public List<ScenarioResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Combines the reports of the same scenarios run by every node of a partitioned deployment.
+     *
+     * @param parts the reports, at least one, each with a result for every scenario
+     * @return the combined report
+     */
+    public static ScenarioReport merge(List<ScenarioReport> parts) {
+        long version = 0;
+        int stocks = 0;
+        for (ScenarioReport part : parts) {
+            version = Math.max(version, part.version);
+            stocks += part.stocks;
+        }
+        List<ScenarioResult> results = new ArrayList<>();
+        for (int i = 0; i < parts.get(0).results.size(); i++) {
+            List<ScenarioResult> scenario = new ArrayList<>(parts.size());
+            for (ScenarioReport part : parts) {
+                scenario.add(part.results.get(i));
+            }
+            results.add(ScenarioResult.merge(scenario));
+        }
+        return new ScenarioReport(version, stocks, parts.get(0).kernel, results);
+    }
+}
@@ -0,0 +1,130 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The ScenarioResult class describes the impact of one {@link StressScenario}: in total for each currency, and
+ * for each sector in each currency. Shocked sectors and tickers that matched no stock are reported, so that a
+ * misspelt name does not pass for a scenario without impact.
+ */
+public class ScenarioResult {
+    private static final Comparator<ScenarioImpact> SECTOR_ORDER = Comparator
+            .comparing(ScenarioImpact::getSector, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(ScenarioImpact::getCurrency, Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+
+    private final String name;
+    private final List<ScenarioImpact> totals;
+    private final List<ScenarioImpact> sectors;
+    private final List<String> unmatchedSectors;
+    private final List<String> unmatchedTickers;
+
+    @JsonCreator
+    public ScenarioResult(@JsonProperty("name") String name,
+                          @JsonProperty("totals") List<ScenarioImpact> totals,
+                          @JsonProperty("sectors") List<ScenarioImpact> sectors,
+                          @JsonProperty("unmatchedSectors") List<String> unmatchedSectors,
+                          @JsonProperty("unmatchedTickers") List<String> unmatchedTickers) {
+        this.name = name;
+        this.totals = totals == null ? List.of() : totals;
+        this.sectors = sectors == null ? List.of() : sectors;
+        this.unmatchedSectors = unmatchedSectors == null ? List.of() : unmatchedSectors;
+        this.unmatchedTickers = unmatchedTickers == null ? List.of() : unmatchedTickers;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the impact on all holdings, one entry per currency.
+     *
+     * @return the totals
+     */
+    public List<ScenarioImpact> getTotals() {
+        return totals;
+    }
+
+    /**
+     * Returns the impact on each sector, one entry per sector and currency, in order of sector.
+     *
+     * @return the sector impacts
+     */
+    public List<ScenarioImpact> getSectors() {
+        return sectors;
+    }
+
+    /**
+     * Returns the shocked sectors that hold no stock.
+     *
+     * @return the unmatched sectors
+     */
+    public List<String> getUnmatchedSectors() {
+        return unmatchedSectors;
+    }
+
+    /**
+     * Returns the shocked tickers that are not in the repository.
+     *
+     * @return the unmatched tickers
+     */
+    public List<String> getUnmatchedTickers() {
+        return unmatchedTickers;
+    }
+
+    /**
+     * Builds a result from the impact on each sector and currency, sorting the sectors and adding up the totals
+     * of each currency.
+     *
+     * @param name the name of the scenario
+     * @param sectors the impact on each sector and currency, in any order
+     * @param unmatchedSectors the shocked sectors that hold no stock
+     * @param unmatchedTickers the shocked tickers that are not in the repository
+     * @return the result
+     */
+    static ScenarioResult of(String name, List<ScenarioImpact> sectors, List<String> unmatchedSectors,
+                             List<String> unmatchedTickers) {
+        List<ScenarioImpact> sorted = new ArrayList<>(sectors);
+        sorted.sort(SECTOR_ORDER);
+        Map<String, ScenarioImpact> totals = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        for (ScenarioImpact impact : sorted) {
+            ScenarioImpact total = new ScenarioImpact(null, impact.getCurrency(), impact.getMarketValue(),
+                    impact.getCostBasis(), impact.getPnlDelta());
+            totals.merge(impact.getCurrency(), total, ScenarioImpact::plus);
+        }
+        return new ScenarioResult(name, List.copyOf(totals.values()), List.copyOf(sorted), unmatchedSectors,
+                unmatchedTickers);
+    }
+
+    /**
+     * Combines the results of one scenario computed over disjoint sets of stocks, such as the partitions of a
+     * partitioned deployment: amounts are added up, and a sector or ticker is unmatched only if no part
+     * matched it.
+     *
+     * @param parts the results, at least one
+     * @return the combined result
+     */
+    static ScenarioResult merge(List<ScenarioResult> parts) {
+        Map<String, ScenarioImpact> sectors = new LinkedHashMap<>();
+        Set<String> unmatchedSectors = new LinkedHashSet<>(parts.get(0).unmatchedSectors);
+        Set<String> unmatchedTickers = new LinkedHashSet<>(parts.get(0).unmatchedTickers);
+        for (ScenarioResult part : parts) {
+            for (ScenarioImpact impact : part.sectors) {
+                sectors.merge(impact.getSector() + '\u0000' + impact.getCurrency(), impact, ScenarioImpact::plus);
+            }
+            unmatchedSectors.retainAll(part.unmatchedSectors);
+            unmatchedTickers.retainAll(part.unmatchedTickers);
+        }
+        return of(parts.get(0).name, new ArrayList<>(sectors.values()), List.copyOf(unmatchedSectors),
+                List.copyOf(unmatchedTickers));
+    }
+}
@@ -0,0 +1,19 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import java.util.List;
+
+/**
+ * The ScenarioRunner interface runs stress scenarios against the holdings. {@link ScenarioEngine} runs them on
+ * the stocks of this node; a partitioned deployment runs them across every partition.
+ */
+public interface ScenarioRunner {
+
+    /**
+     * Runs scenarios against the holdings. Every scenario sees the same holdings.
+     *
+     * @param scenarios the scenarios
+     * @return the result of each scenario, in the order given
+     * @throws IllegalArgumentException if the scenarios are not valid
+     */
+    ScenarioReport run(List<StressScenario> scenarios);
+}
@@ -0,0 +1,201 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SegmentTotals class keeps the market value and the cost basis of every segment up to date as writes are
+ * applied, so that the {@link PositionBook} of a new snapshot can be created without another pass over every
+ * stock. A change moves the value of the stock it replaced out of its segment and the value of the new stock in;
+ * a segment left without stocks is dropped, so its sums start again from zero.
+ *
+ * <p>The sums are compensated (Neumaier summation): the rounding error of every addition is kept alongside the sum
+ * and added back when the sum is read, so that moving a large position in and out of a segment does not leave its
+ * rounding error behind in the sums of the smaller ones. What error remains still grows with every change, so the
+ * totals count the changes applied and the {@link ScenarioEngine} discards them, valuing the holdings in full
+ * again, after {@code stock.scenario.revalue-every} changes.
+ *
+ * <p>The totals follow the repository version by version. A change that does not directly follow the version they
+ * are at, or an update whose previous stock is not known, cannot be applied, and the totals must then be
+ * discarded and taken again from a book built from a snapshot. The class is not thread-safe.
+ */
+final class SegmentTotals {
+
+    /**
+     * A sum that keeps the rounding error of every addition, so that it can be added back.
+     */
+    private static final class CompensatedSum {
+        private double sum;
+        private double compensation;
+
+        void add(double value) {
+            double total = sum + value;
+            // Whichever operand is larger in magnitude holds the bits the other one lost
+            compensation += Math.abs(sum) >= Math.abs(value) ? (sum - total) + value : (value - total) + sum;
+            sum = total;
+        }
+
+        double value() {
+            return sum + compensation;
+        }
+    }
+
+    /**
+     * The sums of one segment.
+     */
+    private static final class Segment {
+        final int sector;
+        final int currency;
+        final CompensatedSum marketValue = new CompensatedSum();
+        final CompensatedSum costBasis = new CompensatedSum();
+        int positions;
+
+        Segment(int sector, int currency) {
+            this.sector = sector;
+            this.currency = currency;
+        }
+    }
+
+    private final Map<Long, Segment> segments = new HashMap<>();
+    private long version;
+    private long applied;
+
+    private SegmentTotals(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Takes the totals from a book built from a snapshot.
+     *
+     * @param book the book
+     * @return the totals, at the version of the book
+     */
+    static SegmentTotals of(PositionBook book) {
+        SegmentTotals totals = new SegmentTotals(book.getVersion());
+        book.forEachSegment((sector, currency, marketValue, costBasis, positions) -> {
+            Segment segment = totals.segment(sector, currency);
+            segment.marketValue.add(marketValue);
+            segment.costBasis.add(costBasis);
+            segment.positions = positions;
+        });
+        return totals;
+    }
+
+    /**
+     * Returns the version of the last change applied, or of the book the totals were taken from.
+     *
+     * @return the version
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of changes applied since the totals were taken from a book.
+     *
+     * @return the number of changes
+     */
+    long getApplied() {
+        return applied;
+    }
+
+    /**
+     * Applies a change.
+     *
+     * @param event the change, whose version must be one more than the totals'
+     * @return true if it was applied, false if the totals can no longer be kept up to date and must be discarded
+     */
+    boolean apply(StockChangeEvent event) {
+        if (event.getVersion() != version + 1) {
+            return false;
+        }
+        switch (event.getType()) {
+            case CREATED -> {
+                if (event.getPrevious() != null && !remove(event.getPrevious())) {
+                    return false;
+                }
+                add(event.getStock());
+            }
+            case UPDATED -> {
+                if (event.getPrevious() == null || !remove(event.getPrevious())) {
+                    return false;
+                }
+                add(event.getStock());
+            }
+            case DELETED -> {
+                if (!remove(event.getStock())) {
+                    return false;
+                }
+            }
+        }
+        version = event.getVersion();
+        applied++;
+        return true;
+    }
+
+    /**
+     * Creates the book of a snapshot at the version of the totals.
+     *
+     * @param snapshot the snapshot, at {@link #getVersion()}
+     * @return the book
+     */
+    PositionBook book(StockSnapshot snapshot) {
+        List<Segment> ordered = new ArrayList<>(segments.values());
+        ordered.sort(Comparator.comparing(segment -> new int[] {segment.sector, segment.currency},
+                PositionBook.SEGMENT_ORDER));
+        List<int[]> keys = new ArrayList<>(ordered.size());
+        double[] marketValues = new double[ordered.size()];
+        double[] costBases = new double[ordered.size()];
+        int[] positions = new int[ordered.size()];
+        for (int i = 0; i < ordered.size(); i++) {
+            Segment segment = ordered.get(i);
+            keys.add(new int[] {segment.sector, segment.currency});
+            marketValues[i] = segment.marketValue.value();
+            costBases[i] = segment.costBasis.value();
+            positions[i] = segment.positions;
+        }
+        return PositionBook.of(snapshot, keys, marketValues, costBases, positions);
+    }
+
+    private void add(Stock stock) {
+        Segment segment = segment(stock.getSectorId(), stock.getCurrencyId());
+        segment.marketValue.add(stock.getCurrentPrice() * stock.getQuantity());
+        segment.costBasis.add(stock.getPurchasePrice() * stock.getQuantity());
+        segment.positions++;
+    }
+
+    /**
+     * Moves a stock out of its segment.
+     *
+     * @return false if its segment holds no stocks, so the totals do not match the stocks held
+     */
+    private boolean remove(Stock stock) {
+        long key = key(stock.getSectorId(), stock.getCurrencyId());
+        Segment segment = segments.get(key);
+        if (segment == null) {
+            return false;
+        }
+        if (--segment.positions == 0) {
+            segments.remove(key);
+        } else {
+            segment.marketValue.add(-stock.getCurrentPrice() * stock.getQuantity());
+            segment.costBasis.add(-stock.getPurchasePrice() * stock.getQuantity());
+        }
+        return true;
+    }
+
+    private Segment segment(int sector, int currency) {
+        return segments.computeIfAbsent(key(sector, currency), unused -> new Segment(sector, currency));
+    }
+
+    private static long key(int sector, int currency) {
+        return (long) sector << 32 | currency & 0xFFFFFFFFL;
+    }
+}
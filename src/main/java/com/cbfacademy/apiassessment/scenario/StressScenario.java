@@ -0,0 +1,104 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The StressScenario class describes a what-if scenario: price shocks, in percent, applied to whole sectors and to
+ * single tickers, such as Technology -15% and Energy +5%.
+ *
+ * <p>Sectors are matched ignoring case, as sector searches are, and tickers exactly. A ticker shock replaces the
+ * shock of the ticker's sector for that stock rather than adding to it. Stocks in sectors without a shock keep
+ * their price.
+ */
+public class StressScenario {
+    /**
+     * The most scenarios in one request.
+     */
+    public static final int MAX_SCENARIOS = 1000;
+
+    /**
+     * The most sector and ticker shocks in one scenario.
+     */
+    public static final int MAX_SHOCKS = 10_000;
+
+    private final String name;
+    private final Map<String, Double> sectors;
+    private final Map<String, Double> tickers;
+
+    @JsonCreator
+    public StressScenario(@JsonProperty("name") String name,
+                          @JsonProperty("sectors") Map<String, Double> sectors,
+                          @JsonProperty("tickers") Map<String, Double> tickers) {
+        this.name = name;
+        this.sectors = sectors == null ? Map.of() : new LinkedHashMap<>(sectors);
+        this.tickers = tickers == null ? Map.of() : new LinkedHashMap<>(tickers);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the shocks applied to whole sectors.
+     *
+     * @return the price change in percent, keyed by sector
+     */
+    public Map<String, Double> getSectors() {
+        return sectors;
+    }
+
+    /**
+     * Returns the shocks applied to single tickers, which replace the shock of their sector.
+     *
+     * @return the price change in percent, keyed by ticker
+     */
+    public Map<String, Double> getTickers() {
+        return tickers;
+    }
+
+    /**
+     * Checks that a list of scenarios can be run.
+     *
+     * @param scenarios the scenarios
+     * @throws IllegalArgumentException if there are no scenarios or too many, or a shock is not a number or
+     *                                  would take a price below zero
+     */
+    public static void requireValid(List<StressScenario> scenarios) {
+        if (scenarios == null || scenarios.isEmpty()) {
+            throw new IllegalArgumentException("At least one scenario is required.");
+        }
+        if (scenarios.size() > MAX_SCENARIOS) {
+            throw new IllegalArgumentException("At most " + MAX_SCENARIOS + " scenarios can be run at once.");
+        }
+        for (int i = 0; i < scenarios.size(); i++) {
+            StressScenario scenario = scenarios.get(i);
+            String label = scenario == null || scenario.name == null ? "Scenario " + (i + 1) : scenario.name;
+            if (scenario == null) {
+                throw new IllegalArgumentException(label + " is empty.");
+            }
+            if (scenario.sectors.size() + scenario.tickers.size() > MAX_SHOCKS) {
+                throw new IllegalArgumentException(label + " has more than " + MAX_SHOCKS + " shocks.");
+            }
+            requireValidShocks(label, scenario.sectors);
+            requireValidShocks(label, scenario.tickers);
+        }
+    }
+
+    private static void requireValidShocks(String label, Map<String, Double> shocks) {
+        for (Map.Entry<String, Double> shock : shocks.entrySet()) {
+            Double percent = shock.getValue();
+            if (shock.getKey() == null || shock.getKey().isBlank()) {
+                throw new IllegalArgumentException(label + " has a shock without a sector or ticker.");
+            }
+            if (percent == null || !Double.isFinite(percent) || percent < -100) {
+                throw new IllegalArgumentException(label + " has an invalid shock for " + shock.getKey()
+                        + ": a shock is a percentage of at least -100.");
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.cbfacademy.apiassessment.scenario;
+
+/**
+ * The ValuationKernel interface values a run of positions held in primitive arrays: the market value and the
+ * cost basis of every position in the run, summed.
+ */
+interface ValuationKernel {
+
+    /**
+     * Sums the market value and the cost basis of the positions in {@code [from, to)}.
+     *
+     * @param prices the current price of each position
+     * @param purchasePrices the purchase price of each position
+     * @param quantities the quantity of each position
+     * @param from the first position, inclusive
+     * @param to the last position, exclusive
+     * @param sums receives the summed market value at index 0 and the summed cost basis at index 1
+     */
+    void sum(double[] prices, double[] purchasePrices, double[] quantities, int from, int to, double[] sums);
+
+    /**
+     * Returns the name of the kernel, reported with every scenario run.
+     *
+     * @return {@code vector} or {@code scalar}
+     */
+    String name();
+}
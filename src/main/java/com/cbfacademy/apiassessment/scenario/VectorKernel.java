@@ -0,0 +1,44 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorKernel class values positions several at a time with the Vector API, using the widest vectors the
+ * processor supports: each lane multiplies a price by a quantity and accumulates the product with a fused
+ * multiply-add, and the lanes are added up once at the end. The positions left over after the last full vector
+ * are valued one at a time.
+ *
+ * <p>This class may only be loaded when the {@code jdk.incubator.vector} module is present; see
+ * {@link ScenarioEngine}. Because the lanes add up the products in a different order, the sums can differ from
+ * the {@link ScalarKernel} ones in the last bits.
+ */
+final class VectorKernel implements ValuationKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void sum(double[] prices, double[] purchasePrices, double[] quantities, int from, int to, double[] sums) {
+        DoubleVector values = DoubleVector.zero(SPECIES);
+        DoubleVector costs = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            DoubleVector quantity = DoubleVector.fromArray(SPECIES, quantities, i);
+            values = DoubleVector.fromArray(SPECIES, prices, i).fma(quantity, values);
+            costs = DoubleVector.fromArray(SPECIES, purchasePrices, i).fma(quantity, costs);
+        }
+        double value = values.reduceLanes(VectorOperators.ADD);
+        double cost = costs.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            value += prices[i] * quantities[i];
+            cost += purchasePrices[i] * quantities[i];
+        }
+        sums[0] = value;
+        sums[1] = cost;
+    }
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+}
@@ -0,0 +1,149 @@
+package com.cbfacademy.apiassessment.search;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * The FilterExpression interface is the parsed form of a filter such as
+ * {@code sector == "Technology" && currentPrice > 100}. An expression is compiled once into a
+ * {@link Predicate} and the predicate is then applied to every candidate stock.
+ */
+public interface FilterExpression {
+
+    /**
+     * Compiles this expression into a predicate over stocks.
+     *
+     * @return a predicate that accepts the stocks matching this expression
+     */
+    Predicate<Stock> compile();
+
+    /**
+     * Logical conjunction of two or more expressions.
+     */
+    record And(List<FilterExpression> operands) implements FilterExpression {
+        @Override
+        public Predicate<Stock> compile() {
+            Predicate<Stock> predicate = operands.get(0).compile();
+            for (int i = 1; i < operands.size(); i++) {
+                predicate = predicate.and(operands.get(i).compile());
+            }
+            return predicate;
+        }
+
+        @Override
+        public String toString() {
+            return operands.stream().map(FilterExpression::toString).collect(Collectors.joining(" && "));
+        }
+    }
+
+    /**
+     * Logical disjunction of two or more expressions.
+     */
+    record Or(List<FilterExpression> operands) implements FilterExpression {
+        @Override
+        public Predicate<Stock> compile() {
+            Predicate<Stock> predicate = operands.get(0).compile();
+            for (int i = 1; i < operands.size(); i++) {
+                predicate = predicate.or(operands.get(i).compile());
+            }
+            return predicate;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + operands.stream().map(FilterExpression::toString).collect(Collectors.joining(" || ")) + ")";
+        }
+    }
+
+    /**
+     * Logical negation of an expression.
+     */
+    record Not(FilterExpression operand) implements FilterExpression {
+        @Override
+        public Predicate<Stock> compile() {
+            return operand.compile().negate();
+        }
+
+        @Override
+        public String toString() {
+            return "!(" + operand + ")";
+        }
+    }
+
+    /**
+     * Comparison of a stock field against a literal. The value is a {@link Double} for numeric
+     * fields and a {@link String} for text fields.
+     */
+    record Comparison(StockField field, Operator operator, Object value) implements FilterExpression {
+        @Override
+        public Predicate<Stock> compile() {
+            if (field.isNumeric()) {
+                ToDoubleFunction<Stock> accessor = field.getNumericAccessor();
+                double literal = (Double) value;
+                switch (operator) {
+                    case EQ: return stock -> accessor.applyAsDouble(stock) == literal;
+                    case NE: return stock -> accessor.applyAsDouble(stock) != literal;
+                    case GT: return stock -> accessor.applyAsDouble(stock) > literal;
+                    case GE: return stock -> accessor.applyAsDouble(stock) >= literal;
+                    case LT: return stock -> accessor.applyAsDouble(stock) < literal;
+                    default: return stock -> accessor.applyAsDouble(stock) <= literal;
+                }
+            }
+            Function<Stock, String> accessor = field.getTextAccessor();
+            String literal = (String) value;
+            switch (operator) {
+                case EQ: return stock -> literal.equals(accessor.apply(stock));
+                case NE: return stock -> !literal.equals(accessor.apply(stock));
+                default: return stock -> {
+                    String actual = accessor.apply(stock);
+                    return actual != null && operator.matches(actual.compareTo(literal));
+                };
+            }
+        }
+
+        @Override
+        public String toString() {
+            String literal = field.isNumeric() ? String.valueOf(value) : "\"" + value + "\"";
+            return field.getFieldName() + " " + operator.getSymbol() + " " + literal;
+        }
+    }
+
+    /**
+     * The comparison operators supported by the filter language.
+     */
+    enum Operator {
+        EQ("=="), NE("!="), GT(">"), GE(">="), LT("<"), LE("<=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Tells whether a comparison result satisfies this operator.
+         *
+         * @param comparison the result of comparing the field value to the literal
+         * @return true if the operator accepts the comparison result
+         */
+        public boolean matches(int comparison) {
+            switch (this) {
+                case EQ: return comparison == 0;
+                case NE: return comparison != 0;
+                case GT: return comparison > 0;
+                case GE: return comparison >= 0;
+                case LT: return comparison < 0;
+                default: return comparison <= 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.cbfacademy.apiassessment.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The FilterParser class turns a filter expression string into a {@link FilterExpression} tree.
+ *
+ * <p>The grammar is deliberately small:
+ * <pre>
+ * expression := and ( "||" and )*
+ * and        := unary ( "&amp;&amp;" unary )*
+ * unary      := "!" unary | "(" expression ")" | comparison
+ * comparison := field ( "==" | "!=" | "&gt;" | "&gt;=" | "&lt;" | "&lt;=" ) literal
+ * literal    := number | "double quoted string"
+ * </pre>
+ * Field names are the JSON property names of a stock, matched case-insensitively.
+ */
+public class FilterParser {
+
+    private final String input;
+    private int position;
+
+    private FilterParser(String input) {
+        this.input = input;
+    }
+
+    /**
+     * Parses the given expression.
+     *
+     * @param expression the filter expression to parse
+     * @return the parsed expression tree
+     * @throws FilterSyntaxException if the expression is empty or malformed
+     */
+    public static FilterExpression parse(String expression) {
+        if (expression == null || expression.isBlank()) {
+            throw new FilterSyntaxException("Filter expression must not be empty", 0);
+        }
+        FilterParser parser = new FilterParser(expression);
+        FilterExpression result = parser.parseOr();
+        parser.skipWhitespace();
+        if (parser.position < parser.input.length()) {
+            throw new FilterSyntaxException("Unexpected input '" + parser.input.substring(parser.position) + "'",
+                    parser.position);
+        }
+        return result;
+    }
+
+    private FilterExpression parseOr() {
+        List<FilterExpression> operands = new ArrayList<>();
+        operands.add(parseAnd());
+        while (consume("||")) {
+            operands.add(parseAnd());
+        }
+        return operands.size() == 1 ? operands.get(0) : new FilterExpression.Or(operands);
+    }
+
+    private FilterExpression parseAnd() {
+        List<FilterExpression> operands = new ArrayList<>();
+        operands.add(parseUnary());
+        while (consume("&&")) {
+            FilterExpression operand = parseUnary();
+            // Flatten nested conjunctions so the planner sees every conjunct at the top level
+            if (operand instanceof FilterExpression.And nested) {
+                operands.addAll(nested.operands());
+            } else {
+                operands.add(operand);
+            }
+        }
+        return operands.size() == 1 ? operands.get(0) : new FilterExpression.And(operands);
+    }
+
+    private FilterExpression parseUnary() {
+        if (consume("!")) {
+            return new FilterExpression.Not(parseUnary());
+        }
+        if (consume("(")) {
+            FilterExpression inner = parseOr();
+            if (!consume(")")) {
+                throw new FilterSyntaxException("Expected ')'", position);
+            }
+            return inner;
+        }
+        return parseComparison();
+    }
+
+    private FilterExpression parseComparison() {
+        skipWhitespace();
+        int fieldStart = position;
+        while (position < input.length() && Character.isLetter(input.charAt(position))) {
+            position++;
+        }
+        String fieldName = input.substring(fieldStart, position);
+        if (fieldName.isEmpty()) {
+            throw new FilterSyntaxException("Expected a field name", fieldStart);
+        }
+        StockField field = StockField.fromName(fieldName);
+        if (field == null) {
+            throw new FilterSyntaxException("Unknown field '" + fieldName + "'", fieldStart);
+        }
+        FilterExpression.Operator operator = parseOperator();
+        Object value = parseLiteral(field);
+        return new FilterExpression.Comparison(field, operator, value);
+    }
+
+    private FilterExpression.Operator parseOperator() {
+        // Two character operators are tried first so that ">=" is not read as ">"
+        if (consume("==")) return FilterExpression.Operator.EQ;
+        if (consume("!=")) return FilterExpression.Operator.NE;
+        if (consume(">=")) return FilterExpression.Operator.GE;
+        if (consume("<=")) return FilterExpression.Operator.LE;
+        if (consume(">")) return FilterExpression.Operator.GT;
+        if (consume("<")) return FilterExpression.Operator.LT;
+        throw new FilterSyntaxException("Expected a comparison operator", position);
+    }
+
+    private Object parseLiteral(StockField field) {
+        skipWhitespace();
+        int start = position;
+        if (position < input.length() && input.charAt(position) == '"') {
+            if (field.isNumeric()) {
+                throw new FilterSyntaxException("Field '" + field.getFieldName() + "' expects a number", start);
+            }
+            int end = input.indexOf('"', position + 1);
+            if (end < 0) {
+                throw new FilterSyntaxException("Unterminated string literal", start);
+            }
+            position = end + 1;
+            return input.substring(start + 1, end);
+        }
+        while (position < input.length()
+                && (Character.isDigit(input.charAt(position)) || "+-.eE".indexOf(input.charAt(position)) >= 0)) {
+            position++;
+        }
+        String number = input.substring(start, position);
+        if (number.isEmpty()) {
+            throw new FilterSyntaxException("Expected a literal", start);
+        }
+        if (!field.isNumeric()) {
+            throw new FilterSyntaxException("Field '" + field.getFieldName() + "' expects a quoted string", start);
+        }
+        try {
+            return Double.valueOf(number);
+        } catch (NumberFormatException e) {
+            throw new FilterSyntaxException("Invalid number '" + number + "'", start);
+        }
+    }
+
+    private boolean consume(String token) {
+        skipWhitespace();
+        if (input.startsWith(token, position)) {
+            position += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+            position++;
+        }
+    }
+}
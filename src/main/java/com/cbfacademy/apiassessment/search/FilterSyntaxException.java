@@ -0,0 +1,18 @@
+package com.cbfacademy.apiassessment.search;
+
+/**
+ * The FilterSyntaxException class is a custom RuntimeException that is thrown when a filter
+ * expression cannot be parsed, for example because of an unknown field, a missing operand or
+ * an unbalanced parenthesis.
+ */
+public class FilterSyntaxException extends RuntimeException {
+    /**
+     * Constructs a new FilterSyntaxException describing where parsing failed.
+     *
+     * @param message the detail message
+     * @param position the character offset in the expression where the problem was found
+     */
+    public FilterSyntaxException(String message, int position) {
+        super(message + " at position " + position);
+    }
+}
@@ -0,0 +1,68 @@
+package com.cbfacademy.apiassessment.search;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The StockField enum lists the {@link Stock} attributes that can be referenced from a filter expression.
+ * Each constant carries the accessor used when the expression is compiled, so evaluating a predicate
+ * never has to look a field up by name.
+ */
+public enum StockField {
+    TICKER("ticker", Stock::getTicker),
+    NAME("name", Stock::getName),
+    SECTOR("sector", Stock::getSector),
+    CURRENCY_SYMBOL("currencySymbol", Stock::getCurrencySymbol),
+    CURRENT_PRICE("currentPrice", Stock::getCurrentPrice),
+    QUANTITY("quantity", Stock::getQuantity),
+    PURCHASE_PRICE("purchasePrice", Stock::getPurchasePrice);
+
+    private final String fieldName;
+    private final Function<Stock, String> textAccessor;
+    private final ToDoubleFunction<Stock> numericAccessor;
+
+    StockField(String fieldName, Function<Stock, String> textAccessor) {
+        this.fieldName = fieldName;
+        this.textAccessor = textAccessor;
+        this.numericAccessor = null;
+    }
+
+    StockField(String fieldName, ToDoubleFunction<Stock> numericAccessor) {
+        this.fieldName = fieldName;
+        this.textAccessor = null;
+        this.numericAccessor = numericAccessor;
+    }
+
+    /**
+     * Looks up a field by the name used in the JSON representation of a stock, ignoring case.
+     *
+     * @param name the field name from the expression
+     * @return the matching field, or null if there is none
+     */
+    public static StockField fromName(String name) {
+        for (StockField field : values()) {
+            if (field.fieldName.equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public boolean isNumeric() {
+        return numericAccessor != null;
+    }
+
+    public Function<Stock, String> getTextAccessor() {
+        return textAccessor;
+    }
+
+    public ToDoubleFunction<Stock> getNumericAccessor() {
+        return numericAccessor;
+    }
+}
@@ -1,13 +1,20 @@
 package com.cbfacademy.apiassessment.stock;
 
 import com.cbfacademy.apiassessment.core.PersistenceException;
+import com.cbfacademy.apiassessment.search.FilterParser;
+import com.cbfacademy.apiassessment.search.FilterSyntaxException;
 import com.cbfacademy.apiassessment.search.Search;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 /**
  * The DefaultStockService class implements the StockService interface and provides methods for managing stocks.
@@ -48,17 +55,48 @@ public class DefaultStockService implements StockService {
      */
     private final Search search;
 
+    /**
+     * The queryPlanner evaluates filter expressions, using the repository lookups where it can.
+     */
+    private final StockQueryPlanner queryPlanner;
+
+    /**
+     * The readFlights variable coalesces concurrent identical sort, search and query reads. Requests for the same
+     * operation and argument at the same version share one computation and its result.
+     */
+    private final SingleFlight<ReadKey, Object> readFlights = new SingleFlight<>();
+
+    /**
+     * The resultCache variable holds the results of sort and search reads until a write makes them stale. It is
+     * the cache registered for the repository change events, which keeps sector searches valid across writes
+     * to other sectors.
+     */
+    private final StockResultCache resultCache;
+
+    /**
+     * Identifies a coalescable read.
+     *
+     * @param operation the service operation
+     * @param argument the argument of the operation
+     * @param version the repository or sector version the read is made against
+     */
+    private record ReadKey(String operation, String argument, long version) {
+    }
+
     /**
      * The DefaultStockService class is a implementation of the StockService interface.
      * It provides methods for managing stocks in the system.
      *
      * @param stockRepository The repository for managing stocks.
      * @param search The search interface used for searching stocks.
+     * @param resultCache The cache of sort and search results.
      */
     @Autowired
-    public DefaultStockService(StockRepository stockRepository, Search search) {
+    public DefaultStockService(StockRepository stockRepository, Search search, StockResultCache resultCache) {
         this.stockRepository = stockRepository;
         this.search = search;
+        this.resultCache = resultCache;
+        this.queryPlanner = new StockQueryPlanner(stockRepository);
     }
 
     /**
@@ -97,7 +135,24 @@ public class DefaultStockService implements StockService {
     }
 
     /**
-     * Saves the given Stock object in the repository.
+     * Retrieves several stocks by their tickers in one pass over the repository. A ticker that is not found is
+     * reported as missing rather than as an error.
+     *
+     * @param tickers The tickers of the stocks to retrieve.
+     * @return The stocks in the order of the tickers, with the tickers that were not found.
+     * @throws IllegalArgumentException If there are no tickers, too many, or a blank one.
+     */
+
+    @Override
+    public StockLookup lookupStocks(List<String> tickers) {
+        StockLookup.requireValid(tickers);
+        return StockLookup.of(tickers, stockRepository.findAllById(tickers));
+    }
+
+    /**
+     * Saves the given Stock object in the repository. The lookup beforehand only turns an obvious duplicate away
+     * without taking the repository's write lock; the repository checks again atomically as it inserts, so of two
+     * concurrent requests for the same ticker only one is saved.
      *
      * @param stock The Stock object to create.
      * @return The saved Stock object.
@@ -115,7 +170,7 @@ public class DefaultStockService implements StockService {
                 log.error("Stock with ticker {} already exists", stock.getTicker());
                 throw new DuplicateStockException("Stock with ticker " + stock.getTicker() + " already exists.");
             }
-            // If it doesn't exist, proceed with saving the new stock
+            // If it doesn't exist, proceed with saving the new stock; the repository rejects a racing duplicate
             return stockRepository.save(stock);
         } catch (DuplicateStockException e) {
             // Handle the case where the stock already exists
@@ -129,12 +184,14 @@ public class DefaultStockService implements StockService {
     }
 
     /**
-     * Updates the stock in the system with the provided updatedStock object.
+     * Updates the stock in the system with the provided updatedStock object. If the stock carries a version, the
+     * update only succeeds if the stock is still at that version.
      *
      * @param updatedStock The updated Stock object.
      * @return The updated Stock object.
      * @throws IllegalArgumentException If the updatedStock parameter is null or if the ticker of updatedStock is null.
      * @throws StockNotFoundException If the stock with the specified ticker is not found in the system.
+     * @throws StockVersionConflictException If the stock has been updated since the version it carries.
      * @throws PersistenceException If there is an error while updating the stock in the system.
      */
 
@@ -142,6 +199,24 @@ public class DefaultStockService implements StockService {
 
     @Override
     public Stock updateStock(Stock updatedStock) {
+        return updateStock(updatedStock, StockRepository.ANY_VERSION);
+    }
+
+    /**
+     * Updates the stock if it is still at the expected version. As with {@link #saveStock(Stock)}, the lookup
+     * beforehand only turns a missing or outdated stock away without taking the repository's write lock; the
+     * repository compares the version again atomically as it writes.
+     *
+     * @param updatedStock The updated Stock object.
+     * @param expectedVersion The version the stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return The updated Stock object.
+     * @throws IllegalArgumentException If the updatedStock parameter is null or if the ticker of updatedStock is null.
+     * @throws StockNotFoundException If the stock with the specified ticker is not found in the system.
+     * @throws StockVersionConflictException If the stock is at another version.
+     * @throws PersistenceException If there is an error while updating the stock in the system.
+     */
+    @Override
+    public Stock updateStock(Stock updatedStock, long expectedVersion) {
         if (updatedStock == null || updatedStock.getTicker() == null) {
             log.error("Stock object or ticker is null");
             throw new IllegalArgumentException("Stock and its ticker must not be null");
@@ -151,16 +226,56 @@ public class DefaultStockService implements StockService {
             if (existingStock == null) {
                 throw new StockNotFoundException("Stock with ticker " + updatedStock.getTicker() + " not found");
             }
-            return stockRepository.update(updatedStock);
+            StockVersionConflictException.check(existingStock, updatedStock.getVersion(), expectedVersion);
+            return expectedVersion == StockRepository.ANY_VERSION
+                    ? stockRepository.update(updatedStock)
+                    : stockRepository.update(updatedStock, expectedVersion);
         } catch (StockNotFoundException e) {
             log.error("Failed to update stock because it was not found: {}", e.getMessage());
             throw e; // Re-throw the exception to be handled further up the call stack if necessary
+        } catch (StockVersionConflictException e) {
+            log.warn("Refused a conflicting update: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("Unexpected error updating stock: {}", updatedStock.getTicker(), e);
             throw new PersistenceException("Failed to update stock due to an unexpected error", e);
         }
     }
 
+    /**
+     * Applies a partial update to a stock. Only the fields named in the patch change; increments are applied by
+     * the repository to the stock as it is when the patch is written, so they need no version check to be safe.
+     *
+     * @param ticker The ticker of the stock to patch.
+     * @param patch The fields to set or increment.
+     * @param expectedVersion The version the stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return The patched Stock object.
+     * @throws IllegalArgumentException If the patch would make a field negative or overflow.
+     * @throws StockNotFoundException If the stock with the specified ticker is not found in the system.
+     * @throws StockVersionConflictException If the stock is at another version.
+     * @throws PersistenceException If there is an error while saving the change.
+     */
+    @Override
+    public Stock patchStock(String ticker, StockPatch patch, long expectedVersion) {
+        try {
+            Stock existingStock = stockRepository.findById(ticker);
+            if (existingStock == null) {
+                throw new StockNotFoundException("Stock with ticker " + ticker + " not found");
+            }
+            StockVersionConflictException.check(existingStock, patch.getVersion(), expectedVersion);
+            return stockRepository.patch(ticker, patch, expectedVersion);
+        } catch (StockNotFoundException | IllegalArgumentException e) {
+            log.error("Failed to patch stock {}: {}", ticker, e.getMessage());
+            throw e;
+        } catch (StockVersionConflictException e) {
+            log.warn("Refused a conflicting patch: {}", e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Unexpected error patching stock: {}", ticker, e);
+            throw new PersistenceException("Failed to patch stock due to an unexpected error", e);
+        }
+    }
+
     /**
      * Deletes a stock from the system based on its ticker.
      *
@@ -172,14 +287,35 @@ public class DefaultStockService implements StockService {
 
 
     public void deleteStock(String ticker) {
+        deleteStock(ticker, StockRepository.ANY_VERSION);
+    }
+
+    /**
+     * Deletes a stock if it is still at the expected version.
+     *
+     * @param ticker The ticker of the stock to delete.
+     * @param expectedVersion The version the stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @throws StockNotFoundException If the stock with the specified ticker is not found in the system.
+     * @throws StockVersionConflictException If the stock is at another version.
+     * @throws PersistenceException If there is an error while deleting the stock from the system.
+     */
+    @Override
+    public void deleteStock(String ticker, long expectedVersion) {
         // Check if the stock exists
         List<Stock> stocks = stockRepository.searchByTicker(ticker);
         if (stocks.isEmpty()) {
             throw new StockNotFoundException("Stock not found: " + ticker);
         }
-        // Attempt to delete the stock
+        StockVersionConflictException.check(stocks.get(0), 0, expectedVersion);
+        // Attempt to delete the stock; the repository checks again that it exists and is at the expected version
         try {
-            stockRepository.delete(ticker);
+            if (expectedVersion == StockRepository.ANY_VERSION) {
+                stockRepository.delete(ticker);
+            } else {
+                stockRepository.delete(ticker, expectedVersion);
+            }
+        } catch (StockNotFoundException | StockVersionConflictException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error deleting stock: {}", ticker, e);
             throw new PersistenceException("Failed to delete stock: " + ticker, e);
@@ -197,7 +333,8 @@ public class DefaultStockService implements StockService {
     @Override
     public List<Stock> sortByAttribute(String attribute) {
         try {
-            return stockRepository.sortByAttribute(attribute);
+            return cachedRead("sort", attribute, resultCache.stamp(stockRepository::version),
+                    () -> stockRepository.sortByAttribute(attribute));
         } catch (Exception e) {
             log.error("Error sorting stocks by attribute: {}", attribute, e);
             throw new PersistenceException("Failed to sort stocks", e);
@@ -205,9 +342,10 @@ public class DefaultStockService implements StockService {
     }
 
     /**
-     * Searches for a stock by name in a given list of stocks.
+     * Searches for a stock by name in a given list of stocks. When no list is given the search runs
+     * over every stock in the repository.
      *
-     * @param stocks The list of stocks to search in.
+     * @param stocks The list of stocks to search in, or null to search the whole repository.
      * @param targetName The name of the stock to search for.
      * @return The found stock with the specified name, or null if not found.
      * @throws PersistenceException If there is an error while searching for the stock.
@@ -216,7 +354,17 @@ public class DefaultStockService implements StockService {
     @Override
     public Stock searchByName(List<Stock> stocks, String targetName) {
         try {
-            return search.searchByName(stockRepository.retrieveAll(), targetName);
+            long version = resultCache.stamp(stockRepository::version);
+            List<Stock> universe = stockRepository.retrieveAll();
+            if (stocks != null && stocks != universe) {
+                // Only searches of the whole repository are cached
+                return search.searchByName(stocks, targetName);
+            }
+            List<Stock> found = cachedRead("name", targetName, version, () -> {
+                Stock stock = search.searchByName(universe, targetName);
+                return stock == null ? List.of() : List.of(stock);
+            });
+            return found.isEmpty() ? null : found.get(0);
         } catch (Exception e) {
             log.error("Error searching stock by name: {}", targetName, e);
             throw new PersistenceException("Failed to search stock by name", e);
@@ -233,6 +381,8 @@ public class DefaultStockService implements StockService {
 
     @Override
     public List<Stock> searchBySector(String sector) {
+        // The version must be read before the stocks, so a result is never stamped newer than its data
+        long sectorVersion = resultCache.sectorVersion(sector);
         List<Stock> allStocks;
         try {
             allStocks = getAllStocks();
@@ -241,11 +391,220 @@ public class DefaultStockService implements StockService {
             throw new PersistenceException("Failed to retrieve all stocks", e);
         }
 
-        List<Stock> stocksInSector = search.searchBySector(allStocks, sector);
+        List<Stock> stocksInSector = cachedRead("sector", sector.toLowerCase(Locale.ROOT), sectorVersion,
+                () -> search.searchBySector(allStocks, sector));
         if (stocksInSector.isEmpty()) {
         }
         return stocksInSector;
     }
 
+    /**
+     * Parses the filter expression and evaluates it against the repository.
+     *
+     * @param filter The filter expression to evaluate.
+     * @return The matching stocks together with the query plan that was used.
+     * @throws FilterSyntaxException If the filter expression is malformed.
+     * @throws PersistenceException If there is an error while evaluating the query.
+     */
+
+    @Override
+    public QueryResult queryStocks(String filter) {
+        try {
+            return coalesce("query", filter, stockRepository.version(),
+                    () -> queryPlanner.execute(FilterParser.parse(filter)));
+        } catch (FilterSyntaxException e) {
+            log.debug("Rejected filter expression: {}", e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            log.error("Error querying stocks with filter: {}", filter, e);
+            throw new PersistenceException("Failed to query stocks", e);
+        }
+    }
+
+    /**
+     * Runs a read through the single-flight layer, keyed by the operation, its argument and the version the
+     * read is made against. Callers that share a result must not modify it.
+     *
+     * @param operation the name of the operation
+     * @param argument the argument of the operation
+     * @param version the repository or sector version, read before the read runs
+     * @param read performs the read
+     * @return the result of this read or of an identical one already in flight
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(String operation, String argument, long version, Supplier<T> read) {
+        return (T) readFlights.execute(new ReadKey(operation, argument, version), (Supplier<Object>) read);
+    }
+
+    /**
+     * Serves a read from the result cache, or computes it once for all concurrent callers and caches it.
+     *
+     * @param operation the name of the operation
+     * @param argument the argument of the operation
+     * @param version the repository or sector version, read before the read runs
+     * @param read performs the read
+     * @return the result, shared and unmodifiable
+     */
+    private List<Stock> cachedRead(String operation, String argument, long version, Supplier<List<Stock>> read) {
+        StockResultCache.CacheKey key = new StockResultCache.CacheKey(operation, argument);
+        List<Stock> cached = resultCache.get(key, version);
+        if (cached != null) {
+            return cached;
+        }
+        return coalesce(operation, argument, version, () -> {
+            List<Stock> result = Collections.unmodifiableList(read.get());
+            resultCache.put(key, version, result);
+            return result;
+        });
+    }
+
+    /**
+     * Saves the given Stock object on the repository's I/O executor. The duplicate check runs on the calling
+     * thread, so a duplicate is reported without waiting for the disk.
+     *
+     * @param stock The Stock object to create.
+     * @return A future completed with the saved Stock, or completed exceptionally with a
+     *         {@link DuplicateStockException} or {@link PersistenceException}.
+     */
+
+    @Override
+    public CompletableFuture<Stock> saveStockAsync(Stock stock) {
+        if (stockRepository.findById(stock.getTicker()) != null) {
+            log.error("Stock with ticker {} already exists", stock.getTicker());
+            return CompletableFuture.failedFuture(
+                    new DuplicateStockException("Stock with ticker " + stock.getTicker() + " already exists."));
+        }
+        return translateFailures(stockRepository.saveAsync(stock), "Failed to save stock", stock.getTicker());
+    }
+
+    /**
+     * Updates the stock on the repository's I/O executor.
+     *
+     * @param updatedStock The updated Stock object.
+     * @return A future completed with the updated Stock, or completed exceptionally with a
+     *         {@link StockNotFoundException} or {@link PersistenceException}.
+     * @throws IllegalArgumentException If the updatedStock parameter is null or if its ticker is null.
+     */
+
+    @Override
+    public CompletableFuture<Stock> updateStockAsync(Stock updatedStock) {
+        return updateStockAsync(updatedStock, StockRepository.ANY_VERSION);
+    }
+
+    /**
+     * Updates the stock on the repository's I/O executor if it is still at the expected version.
+     *
+     * @param updatedStock The updated Stock object.
+     * @param expectedVersion The version the stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return A future completed with the updated Stock, or completed exceptionally with a
+     *         {@link StockNotFoundException}, {@link StockVersionConflictException} or {@link PersistenceException}.
+     * @throws IllegalArgumentException If the updatedStock parameter is null or if its ticker is null.
+     */
+
+    @Override
+    public CompletableFuture<Stock> updateStockAsync(Stock updatedStock, long expectedVersion) {
+        if (updatedStock == null || updatedStock.getTicker() == null) {
+            log.error("Stock object or ticker is null");
+            throw new IllegalArgumentException("Stock and its ticker must not be null");
+        }
+        Stock existingStock = stockRepository.findById(updatedStock.getTicker());
+        if (existingStock == null) {
+            return CompletableFuture.failedFuture(
+                    new StockNotFoundException("Stock with ticker " + updatedStock.getTicker() + " not found"));
+        }
+        try {
+            StockVersionConflictException.check(existingStock, updatedStock.getVersion(), expectedVersion);
+        } catch (StockVersionConflictException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return translateFailures(stockRepository.updateAsync(updatedStock, expectedVersion),
+                "Failed to update stock due to an unexpected error", updatedStock.getTicker());
+    }
+
+    /**
+     * Applies a partial update to a stock on the repository's I/O executor.
+     *
+     * @param ticker The ticker of the stock to patch.
+     * @param patch The fields to set or increment.
+     * @param expectedVersion The version the stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return A future completed with the patched Stock, or completed exceptionally with an
+     *         {@link IllegalArgumentException}, {@link StockNotFoundException},
+     *         {@link StockVersionConflictException} or {@link PersistenceException}.
+     */
+
+    @Override
+    public CompletableFuture<Stock> patchStockAsync(String ticker, StockPatch patch, long expectedVersion) {
+        Stock existingStock = stockRepository.findById(ticker);
+        if (existingStock == null) {
+            return CompletableFuture.failedFuture(
+                    new StockNotFoundException("Stock with ticker " + ticker + " not found"));
+        }
+        try {
+            StockVersionConflictException.check(existingStock, patch.getVersion(), expectedVersion);
+        } catch (StockVersionConflictException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return translateFailures(stockRepository.patchAsync(ticker, patch, expectedVersion),
+                "Failed to patch stock due to an unexpected error", ticker);
+    }
+
+    /**
+     * Deletes a stock on the repository's I/O executor.
+     *
+     * @param ticker The ticker of the stock to delete.
+     * @return A future completed once the stock has been deleted, or completed exceptionally with a
+     *         {@link StockNotFoundException} or {@link PersistenceException}.
+     */
+
+    @Override
+    public CompletableFuture<Void> deleteStockAsync(String ticker) {
+        return deleteStockAsync(ticker, StockRepository.ANY_VERSION);
+    }
+
+    /**
+     * Deletes a stock on the repository's I/O executor if it is still at the expected version.
+     *
+     * @param ticker The ticker of the stock to delete.
+     * @param expectedVersion The version the stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return A future completed once the stock has been deleted, or completed exceptionally with a
+     *         {@link StockNotFoundException}, {@link StockVersionConflictException} or {@link PersistenceException}.
+     */
+
+    @Override
+    public CompletableFuture<Void> deleteStockAsync(String ticker, long expectedVersion) {
+        Stock existingStock = stockRepository.findById(ticker);
+        if (existingStock == null) {
+            return CompletableFuture.failedFuture(new StockNotFoundException("Stock not found: " + ticker));
+        }
+        try {
+            StockVersionConflictException.check(existingStock, 0, expectedVersion);
+        } catch (StockVersionConflictException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return translateFailures(stockRepository.deleteAsync(ticker, expectedVersion),
+                "Failed to delete stock: " + ticker, ticker);
+    }
+
+    /**
+     * Maps the failures of an asynchronous write the same way the synchronous methods do: domain exceptions
+     * are passed through and anything else becomes a {@link PersistenceException}.
+     */
+    private <T> CompletableFuture<T> translateFailures(CompletableFuture<T> write, String message, String ticker) {
+        return write.handle((result, error) -> {
+            if (error == null) {
+                return result;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            if (cause instanceof DuplicateStockException || cause instanceof StockNotFoundException
+                    || cause instanceof StockVersionConflictException || cause instanceof IllegalArgumentException) {
+                throw (RuntimeException) cause;
+            }
+            log.error("Asynchronous write failed for stock: {}", ticker, cause);
+            throw new PersistenceException(message, cause);
+        });
+    }
+
 
 }
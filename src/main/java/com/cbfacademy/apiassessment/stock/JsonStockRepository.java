@@ -1,17 +1,37 @@
 package com.cbfacademy.apiassessment.stock;
 
+import com.cbfacademy.apiassessment.core.HeapEstimate;
+import com.cbfacademy.apiassessment.core.HeapFootprintSource;
+import com.cbfacademy.apiassessment.core.HeapStructure;
 import com.cbfacademy.apiassessment.core.PersistenceException;
+import com.cbfacademy.apiassessment.core.SnapshotStore;
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import com.cbfacademy.apiassessment.metrics.RequestTiming;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Repository;
-import java.util.stream.Collectors;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * The JsonStockRepository class is an implementation of the StockRepository interface
@@ -19,7 +39,15 @@ import java.util.*;
  * for JSON serialization and deserialization.
  */
 @Repository
-public class JsonStockRepository implements StockRepository {
+public class JsonStockRepository implements StockRepository, HeapFootprintSource {
+    private static final Logger log = LoggerFactory.getLogger(JsonStockRepository.class);
+    private static final TypeReference<Map<String, Stock>> STOCK_MAP = new TypeReference<>() {};
+
+    /**
+     * The most asynchronous writes waiting to be persisted when no bound is configured.
+     */
+    static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 1000;
+
     /**
      * The filepath variable represents the file path of the JSON file used for persistence in the JsonStockRepository class.
      * It is a private final String type variable.
@@ -36,13 +64,24 @@ public class JsonStockRepository implements StockRepository {
      *
      */
     private final ObjectMapper objectMapper;
+    /**
+     * The format snapshots are written in, from {@code json.storage.format}. Snapshots in any format are read.
+     */
+    private final StorageFormat storageFormat;
+    /**
+     * The reader and writer for the whole stock map. They are built once, so every load and save reuses the
+     * same codecs. The writer comes from {@link #objectMapper} and the reader detects the format of the file.
+     */
+    private final ObjectReader stockMapReader;
+    private final ObjectWriter stockMapWriter;
     /**
      * The database variable is a private final Map object that holds stocks.
      * The key is a String representing the ticker of the stock,
      * and the value is an instance of the Stock class.
      * It is used to store and retrieve stock information in the system.
+     * It is assigned once by the background warm-up and only used after {@link #loaded} has completed.
      */
-    private final Map<String, Stock> database;
+    private Map<String, Stock> database;
     /**
      * The resourceLoader variable represents a resource loader that is used to load resources from the classpath or file system.
      * It is an instance of the ResourceLoader interface.
@@ -65,22 +104,658 @@ public class JsonStockRepository implements StockRepository {
      */
     private final ResourceLoader resourceLoader;
 
+    /**
+     * The snapshot variable holds the immutable view of the database that all reads are served from.
+     * It is replaced, never modified, after every write, so readers need neither a lock nor a copy.
+     */
+    private volatile StockSnapshot snapshot = StockSnapshot.EMPTY;
+
+    /**
+     * The changeListeners variable provides the components notified after every write. They are
+     * resolved on the first write rather than in the constructor, so listeners may depend on the repository.
+     */
+    private final ObjectProvider<StockChangeListener> changeListeners;
+
+    /**
+     * The resolved listeners, cached after the first write.
+     */
+    private List<StockChangeListener> resolvedListeners;
+
+    /**
+     * The snapshotStore variable writes the JSON file crash-safely, keeping a rolling set of checkpoints,
+     * and recovers the newest valid one at startup. Binary formats are stored next to it under their own
+     * extension, see {@link StorageFormat#resolve(Path)}. It is null when the resource is not a file, in which
+     * case the data is read-only.
+     */
+    private final SnapshotStore snapshotStore;
+
+    /**
+     * The otherFormatStores variable holds the stores the snapshot would have in the other formats. When the
+     * format has been changed, the universe is loaded from one of them, written in the new format and the
+     * old files are removed. It is empty when the resource is not a file.
+     */
+    private final List<SnapshotStore> otherFormatStores;
+
+    /**
+     * The shardedStorage variable is set when the repository runs in sharded mode ({@code json.storage.shards}
+     * greater than 1). Stocks are then persisted in hash-partitioned shard files, and a write only rewrites the
+     * shard that owns the changed ticker. It is null in the default single-file mode.
+     */
+    private final ShardedJsonStorage shardedStorage;
+
+    /**
+     * The journal variable holds the deltas of partial updates written since the snapshot was last written in
+     * full, so that a patch appends a line instead of rewriting the file or shard. It is null when journaling is
+     * disabled ({@code json.journal.compact-after=0}), on a replica and when the JSON resource is not a file.
+     */
+    private final StockJournal journal;
+
+    /**
+     * The persistLock variable serialises the writes to disk, which happen after the repository lock has been
+     * released. A write publishes its change in memory under the repository lock, which takes no I/O, and then
+     * waits here until a snapshot at least as new as its own is on disk. Whoever holds this lock writes the
+     * latest snapshot, so writes that arrive while the disk is busy are made durable together by one file write
+     * instead of queueing behind each other's writes. The lock is always taken before the repository lock.
+     */
+    private final Object persistLock = new Object();
+
+    /**
+     * The version of the newest snapshot written to disk. Written while holding {@link #persistLock}, and
+     * volatile so that it can be reported without waiting for a persist in progress.
+     */
+    private volatile long persistedVersion;
+
+    /**
+     * Timings and counts of the persists since startup, written while holding the persist lock and read by the
+     * memory footprint endpoint.
+     */
+    private volatile long lastPersistNanos;
+    private volatile long lastSnapshotNanos;
+    private volatile long lastPersistedAt;
+    private volatile long persistCount;
+    private volatile long snapshotCount;
+
+    /**
+     * The tickers changed since they were last staged in their shards, in sharded mode. Guarded by the
+     * repository lock.
+     */
+    private final Set<String> unstaged = new HashSet<>();
+
+    /**
+     * The deltas of the patches not yet appended to the journal. Guarded by the repository lock.
+     */
+    private final List<ObjectNode> unjournaled = new ArrayList<>();
+
+    /**
+     * True when a write other than a patch has been made since the snapshot was last written in full, so the
+     * next persist must rewrite it rather than append to the journal. Guarded by the repository lock.
+     */
+    private boolean snapshotStale;
+
+    /**
+     * True when the contents have been replaced wholesale since the snapshot was last written in full, so every
+     * shard must be rewritten rather than only those of the changed tickers. Guarded by the repository lock.
+     */
+    private boolean replacedWholesale;
+
+    /**
+     * The ioExecutor variable is the dedicated thread that persists the asynchronous writes. An asynchronous write
+     * is applied and published on the caller's thread, under the repository lock, so writes keep their submission
+     * order; only making it durable is queued here. A persist covers every write published before it, so the
+     * writes that queued up while the disk was busy are made durable together and the persists behind them find
+     * nothing left to write. The queue is bounded, and a write that finds it full is refused before it is applied.
+     */
+    private final ThreadPoolExecutor ioExecutor;
+    /**
+     * The replica variable is true when the instance runs as a read replica ({@code stock.replication.role=follower}).
+     * A replica does not read or write the JSON file: its contents are installed and advanced by the replication
+     * client from the leader's change stream, and it rejects writes of its own.
+     */
+    private final boolean replica;
+
+    /**
+     * The warmUpProgress variable receives the progress of the background warm-up, reported through actuator.
+     */
+    private final WarmUpProgress warmUpProgress;
+
+    /**
+     * The loaded variable completes when the background warm-up has loaded the data and built the snapshot
+     * indexes. Every read and write waits for it, so a request that arrives before the instance reports ready
+     * is delayed rather than served from an empty repository.
+     */
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
 
     /**
      * The JsonStockRepository class is responsible for managing stock data using JSON files as the data source.
      * It implements the StockRepository interface and provides methods for retrieving, saving, updating, and deleting
      * stock records. The filepath is injected from application properties.
      */
-    public JsonStockRepository(@Value("${json.file.path}") String filepath, ResourceLoader resourceLoader) {
+    public JsonStockRepository(String filepath, int retainedCheckpoints, int shardCount, int journalCompactAfter,
+                               String storageFormat, String replicationRole, ResourceLoader resourceLoader,
+                               ObjectProvider<StockChangeListener> changeListeners, WarmUpProgress warmUpProgress) {
+        this(filepath, retainedCheckpoints, shardCount, journalCompactAfter, storageFormat, replicationRole,
+                DEFAULT_ASYNC_QUEUE_CAPACITY, resourceLoader, changeListeners, warmUpProgress);
+    }
+
+    /**
+     * Creates the repository with a bound on the asynchronous writes waiting to be persisted.
+     *
+     * @param asyncQueueCapacity the most asynchronous writes waiting to be persisted, at most
+     *                           {@link WriteOperationRegistry#MAX_TRACKED} so that every pending write can be
+     *                           tracked
+     */
+    @Autowired
+    public JsonStockRepository(@Value("${json.file.path}") String filepath,
+                               @Value("${json.snapshot.retained:3}") int retainedCheckpoints,
+                               @Value("${json.storage.shards:0}") int shardCount,
+                               @Value("${json.journal.compact-after:1000}") int journalCompactAfter,
+                               @Value("${json.storage.format:json}") String storageFormat,
+                               @Value("${stock.replication.role:standalone}") String replicationRole,
+                               @Value("${stock.async.queue-capacity:1000}") int asyncQueueCapacity,
+                               ResourceLoader resourceLoader,
+                               ObjectProvider<StockChangeListener> changeListeners,
+                               WarmUpProgress warmUpProgress) {
+        this.ioExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, Math.min(asyncQueueCapacity, WriteOperationRegistry.MAX_TRACKED))),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "stock-io");
+                    thread.setDaemon(true);
+                    return thread;
+                });
         this.filepath = filepath;
         System.out.println("Filepath for JSON Respository: " + filepath);
-        this.objectMapper = new ObjectMapper();
+        this.storageFormat = StorageFormat.of(storageFormat);
+        this.objectMapper = this.storageFormat.documentMapper();
+        this.stockMapReader = StorageFormat.detectingReader(STOCK_MAP);
+        this.stockMapWriter = objectMapper.writerFor(STOCK_MAP);
         this.resourceLoader = resourceLoader;
-        this.database = loadDataFromJson();
+        this.changeListeners = changeListeners;
+        this.replica = "follower".equalsIgnoreCase(replicationRole.trim());
+        Path dataFile = replica ? null : resolveDataFile();
+        this.snapshotStore = dataFile == null
+                ? null
+                : new SnapshotStore(this.storageFormat.resolve(dataFile), retainedCheckpoints);
+        this.otherFormatStores = dataFile == null
+                ? List.of()
+                : Arrays.stream(StorageFormat.values())
+                        .filter(format -> format != this.storageFormat)
+                        .map(format -> new SnapshotStore(format.resolve(dataFile), retainedCheckpoints))
+                        .toList();
+        this.shardedStorage = replica ? null : openShardedStorage(dataFile, shardCount, retainedCheckpoints);
+        // The journal holds JSON lines whatever the format, so it stays next to the configured file
+        this.journal = dataFile == null || journalCompactAfter <= 0
+                ? null
+                : new StockJournal(dataFile, journalCompactAfter);
+        this.warmUpProgress = warmUpProgress;
+    }
+
+    /**
+     * Starts loading the data and building the snapshot indexes on a background thread, so that startup is not
+     * held up by the size of the universe. Readiness is reported by the {@code warmUp} health indicator.
+     */
+    @PostConstruct
+    public void startWarmUp() {
+        if (replica) {
+            // The first snapshot from the leader completes the warm-up
+            warmUpProgress.loading();
+            System.out.println("Waiting for the first snapshot from the replication leader");
+            return;
+        }
+        Thread warmUp = new Thread(this::warmUp, "stock-warmup");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    private void warmUp() {
+        try {
+            warmUpProgress.loading();
+            Map<String, Stock> contents = shardedStorage != null
+                    ? shardedStorage.load(this::loadDataFromJson)
+                    : loadDataFromJson();
+            // Stocks saved before versions were recorded start at version 1
+            for (Stock stock : contents.values()) {
+                if (stock.getVersion() == 0) {
+                    stock.setVersion(1);
+                }
+            }
+            if (journal != null && !journal.isEmpty()) {
+                // Fold the patches journaled before the last shutdown into the snapshot, so the journal starts empty
+                Set<String> replayed = journal.replay(contents);
+                writeSnapshot(contents, replayed);
+                journal.clear();
+                System.out.println("Replayed " + replayed.size() + " journaled changes for JSON Repository");
+            }
+            warmUpProgress.indexing(contents.size());
+            StockSnapshot initial = new StockSnapshot(snapshot.getVersion() + 1, contents);
+            initial.buildIndexes();
+            database = contents;
+            snapshot = initial;
+            synchronized (persistLock) {
+                persistedVersion = initial.getVersion();
+            }
+            warmUpProgress.ready();
+            System.out.println("Loaded " + contents.size() + " stocks for JSON Repository");
+            loaded.complete(null);
+        } catch (RuntimeException e) {
+            System.out.println("Failed to load JSON Repository: " + e.getMessage());
+            warmUpProgress.failed(e);
+            loaded.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Waits for the background warm-up to complete.
+     *
+     * @throws PersistenceException if the data could not be loaded
+     */
+    private void awaitLoaded() {
+        try {
+            loaded.join();
+        } catch (CompletionException e) {
+            throw new PersistenceException("Stock data could not be loaded", e.getCause());
+        }
+    }
+
+    /**
+     * Publishes a new snapshot of the database after a change to one stock. Must be called while holding the
+     * repository lock, after every change to the database. The new snapshot shares the contents of the previous
+     * one rather than copying the database.
+     *
+     * @param ticker the ticker of the stock that was created, updated or removed
+     */
+    private void publishSnapshot(String ticker) {
+        snapshot = snapshot.withChanges(snapshot.getVersion() + 1, database, List.of(ticker));
     }
 
     /**
-     * Loads data from a JSON file and returns the data as a map of stock objects.
+     * Notifies the change listeners of a write. Must be called while holding the repository lock,
+     * after the snapshot for the write has been published. A failing listener is reported and skipped
+     * so that it cannot fail the write.
+     *
+     * @param type the kind of mutation
+     * @param ticker the ticker of the stock that changed
+     * @param stock the stock after the change, or the removed stock for a delete
+     * @param previous the stock an update replaced, or null
+     */
+    private void fireChange(StockChangeEvent.Type type, String ticker, Stock stock, Stock previous) {
+        fireChange(type, ticker, stock, previous, System.currentTimeMillis());
+    }
+
+    private void fireChange(StockChangeEvent.Type type, String ticker, Stock stock, Stock previous, long timestamp) {
+        fireChange(type, ticker, stock, previous, snapshot.getVersion(), timestamp);
+    }
+
+    private void fireChange(StockChangeEvent.Type type, String ticker, Stock stock, Stock previous, long version,
+                            long timestamp) {
+        List<StockChangeListener> listeners = listeners();
+        if (listeners.isEmpty()) {
+            return;
+        }
+        StockChangeEvent event = new StockChangeEvent(type, ticker, stock, previous, version, timestamp);
+        for (StockChangeListener listener : listeners) {
+            try {
+                listener.onStockChange(event);
+            } catch (RuntimeException e) {
+                log.warn("Stock change listener {} failed on the change of {} at version {}",
+                        listener.getClass().getSimpleName(), ticker, version, e);
+            }
+        }
+    }
+
+    private List<StockChangeListener> listeners() {
+        if (resolvedListeners == null) {
+            resolvedListeners = changeListeners.orderedStream().toList();
+        }
+        return resolvedListeners;
+    }
+
+    /**
+     * Throws if this instance is a read replica, whose contents may only change through replication.
+     */
+    private void checkWritable() {
+        if (replica) {
+            throw new IllegalStateException("This instance is a read replica; writes must be sent to the leader");
+        }
+    }
+
+    /**
+     * Tells whether this instance is a read replica.
+     *
+     * @return true in follower mode
+     */
+    public boolean isReplica() {
+        return replica;
+    }
+
+    /**
+     * Replaces the contents of a read replica with a full snapshot from the leader. The first snapshot
+     * completes the warm-up; a later one resynchronises a replica that could not be caught up change by change,
+     * and the change listeners are told to discard what they derived from the previous contents.
+     *
+     * @param version the leader's version of the snapshot
+     * @param contents the stocks keyed by ticker
+     * @throws IllegalStateException if this instance is not a read replica
+     */
+    public synchronized void installReplica(long version, Map<String, Stock> contents) {
+        if (!replica) {
+            throw new IllegalStateException("Only a read replica can install a snapshot from the leader");
+        }
+        warmUpProgress.indexing(contents.size());
+        StockSnapshot installed = new StockSnapshot(version, contents);
+        installed.buildIndexes();
+        database = new LinkedHashMap<>(contents);
+        snapshot = installed;
+        if (!loaded.isDone()) {
+            warmUpProgress.ready();
+            System.out.println("Installed " + contents.size() + " stocks at version " + version + " from the leader");
+            loaded.complete(null);
+            return;
+        }
+        fireReset(installed);
+    }
+
+    /**
+     * Tells the change listeners that the contents were replaced wholesale. Must be called while holding the
+     * repository lock, after the new snapshot has been published.
+     *
+     * @param replaced the snapshot that replaced the previous contents
+     */
+    private void fireReset(StockSnapshot replaced) {
+        for (StockChangeListener listener : listeners()) {
+            try {
+                listener.onStockReset(replaced);
+            } catch (RuntimeException e) {
+                log.warn("Stock change listener {} failed on the reset to version {}",
+                        listener.getClass().getSimpleName(), replaced.getVersion(), e);
+            }
+        }
+    }
+
+    /**
+     * Applies one change shipped by the leader to a read replica. Changes must arrive in version order with
+     * no gaps, so that the replica passes through exactly the leader's versions; the change listeners of the
+     * replica are notified as for a local write, with the leader's timestamp.
+     *
+     * @param event the leader's change, whose version must be one more than the replica's
+     * @throws IllegalStateException if this instance is not a read replica, has no snapshot yet, or the change
+     *                               does not directly follow the current version
+     */
+    public synchronized void applyReplicated(StockChangeEvent event) {
+        if (!replica || !loaded.isDone()) {
+            throw new IllegalStateException("Only a read replica with a snapshot can apply replicated changes");
+        }
+        long expected = snapshot.getVersion() + 1;
+        if (event.getVersion() != expected) {
+            throw new IllegalStateException("Expected change " + expected + " but received " + event.getVersion());
+        }
+        Stock previous = event.getType() == StockChangeEvent.Type.DELETED
+                ? database.remove(event.getTicker())
+                : database.put(event.getTicker(), event.getStock());
+        publishSnapshot(event.getTicker());
+        fireChange(event.getType(), event.getTicker(), event.getStock(), previous, event.getTimestamp());
+    }
+
+    /**
+     * Returns the current immutable snapshot of the repository.
+     *
+     * @return the latest published snapshot
+     */
+    @Override
+    public StockSnapshot snapshot() {
+        awaitLoaded();
+        return snapshot;
+    }
+
+    /**
+     * Returns the latest published snapshot without waiting for the warm-up, for monitoring that must not
+     * block while the data loads.
+     *
+     * @return the latest published snapshot, empty until the data has been loaded
+     */
+    public StockSnapshot currentSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the version of the current snapshot.
+     *
+     * @return the current repository version
+     */
+    @Override
+    public long version() {
+        return snapshot().getVersion();
+    }
+
+    /**
+     * Estimates the heap held by the stocks and by every in-memory structure of the repository. The stocks are
+     * counted once, under {@code stocks}; the maps, lists and indexes that refer to them are counted without
+     * them. Nothing is reported as held until the warm-up has loaded the data.
+     *
+     * @return the repository structures and their estimated sizes
+     */
+    @Override
+    public List<HeapStructure> heapFootprint() {
+        StockSnapshot current = currentSnapshot();
+        int size = current.size();
+        List<HeapStructure> structures = new ArrayList<>();
+        structures.add(new HeapStructure("stocks", size, current.estimateStockBytes()));
+        structures.add(new HeapStructure("database", size, size == 0 ? 0 : HeapEstimate.linkedHashMap(size)));
+        structures.add(new HeapStructure("snapshot", size, size == 0 ? 0 : current.estimateBytes()));
+        structures.add(new HeapStructure("sector-index", current.sectorIndexSize(),
+                current.estimateSectorIndexBytes()));
+        structures.add(new HeapStructure("sorted-views", current.sortedViewCount(),
+                current.estimateSortedViewBytes()));
+        if (shardedStorage != null) {
+            structures.add(new HeapStructure("storage-shards", size, shardedStorage.estimateBytes()));
+        }
+        structures.add(new HeapStructure("dictionaries",
+                StockDictionary.SECTORS.size() + StockDictionary.CURRENCIES.size(),
+                StockDictionary.SECTORS.estimateBytes() + StockDictionary.CURRENCIES.estimateBytes()));
+        return structures;
+    }
+
+    /**
+     * Describes how the data was last persisted: the size of the snapshot on disk and the time taken to write
+     * it, with counts of the persists since startup.
+     *
+     * @return the persistence statistics
+     */
+    public PersistenceStats persistenceStats() {
+        String mode;
+        long snapshotBytes;
+        if (shardedStorage != null) {
+            mode = "sharded";
+            snapshotBytes = shardedStorage.getSnapshotBytes();
+        } else if (snapshotStore != null) {
+            mode = "file";
+            snapshotBytes = snapshotStore.getLastSnapshotBytes();
+        } else {
+            mode = "none";
+            snapshotBytes = 0;
+        }
+        return new PersistenceStats(mode, persistedVersion, snapshotBytes, lastSnapshotNanos, lastPersistNanos,
+                lastPersistedAt, persistCount, snapshotCount, journal == null ? 0 : journal.size());
+    }
+
+    /**
+     * Resolves the configured JSON file when the resource is backed by a file.
+     *
+     * @return the path of the file, or null if the resource is not a file
+     */
+    private Path resolveDataFile() {
+        try {
+            Resource resource = resourceLoader.getResource(filepath);
+            return resource.isFile() ? resource.getFile().toPath() : null;
+        } catch (IOException e) {
+            throw new PersistenceException("Cannot resolve JSON file: " + filepath, e);
+        }
+    }
+
+    /**
+     * Creates the sharded storage when more than one shard is configured.
+     *
+     * @param dataFile the configured JSON file, next to which the shard directory lives
+     * @param shardCount the number of shard files, 0 or 1 for the single-file mode
+     * @param retainedCheckpoints the number of previous snapshots to keep for every shard
+     * @return the sharded storage, or null in single-file mode
+     * @throws PersistenceException if sharding is requested for a resource that is not a file
+     */
+    private ShardedJsonStorage openShardedStorage(Path dataFile, int shardCount, int retainedCheckpoints) {
+        if (shardCount <= 1) {
+            return null;
+        }
+        if (dataFile == null) {
+            throw new PersistenceException("Sharded storage requires a file resource: " + filepath);
+        }
+        System.out.println("Using " + shardCount + " storage shards for JSON Repository");
+        return new ShardedJsonStorage(dataFile, shardCount, retainedCheckpoints, storageFormat);
+    }
+
+    /**
+     * Records that a ticker has changed and must be written on the next persist. Must be called while holding
+     * the repository lock.
+     *
+     * @param ticker the ticker that changed
+     */
+    private void markChanged(String ticker) {
+        if (shardedStorage != null) {
+            unstaged.add(ticker);
+        }
+        snapshotStale = true;
+    }
+
+    /**
+     * Records that a ticker has been patched, so that the next persist can append the delta to the journal. The
+     * ticker is still restaged in sharded mode the next time the shards are written. Must be called while
+     * holding the repository lock.
+     *
+     * @param ticker the ticker that was patched
+     * @param delta the fields the patch changed, from {@link StockPatch#delta(Stock)}
+     */
+    private void markPatched(String ticker, ObjectNode delta) {
+        if (journal == null) {
+            markChanged(ticker);
+            return;
+        }
+        if (shardedStorage != null) {
+            unstaged.add(ticker);
+        }
+        unjournaled.add(delta);
+    }
+
+    /**
+     * Makes every write up to a version durable. Must be called without holding the repository lock. If another
+     * thread has already persisted a version that includes the caller's, nothing is written. If every write since
+     * the snapshot was last written in full is a patch, and the journal has room, their deltas are appended to the
+     * journal. Otherwise the latest snapshot is written, covering every write published so far, and the journal
+     * is emptied: in sharded mode only the shards owning the changed tickers are rewritten, otherwise the whole
+     * snapshot is saved to the JSON file. The time taken, including any wait for a write already in progress, is
+     * added to the timing of the current request.
+     *
+     * @param version the version of the caller's write
+     * @throws PersistenceException if there is an issue with saving the data
+     */
+    private void persistUpTo(long version) {
+        long start = System.nanoTime();
+        try {
+            synchronized (persistLock) {
+                if (persistedVersion >= version) {
+                    return;
+                }
+                StockSnapshot latest;
+                List<String> changed = List.of();
+                List<ObjectNode> deltas;
+                boolean full;
+                boolean wholesale = false;
+                synchronized (this) {
+                    latest = snapshot;
+                    deltas = new ArrayList<>(unjournaled);
+                    unjournaled.clear();
+                    full = journal == null || snapshotStale || journal.isFull(deltas.size());
+                    if (full) {
+                        changed = new ArrayList<>(unstaged);
+                        unstaged.clear();
+                        wholesale = replacedWholesale;
+                        snapshotStale = false;
+                        replacedWholesale = false;
+                    }
+                }
+                long writeStart = System.nanoTime();
+                try {
+                    if (wholesale && shardedStorage != null) {
+                        shardedStorage.replaceAll(latest.asMap());
+                    }
+                    if (full) {
+                        writeSnapshot(latest.asMap(), changed);
+                        if (journal != null) {
+                            journal.clear();
+                        }
+                    } else {
+                        journal.append(deltas);
+                    }
+                } catch (RuntimeException e) {
+                    // The next persist rewrites the snapshot, which covers whatever this one failed to write
+                    synchronized (this) {
+                        snapshotStale = true;
+                    }
+                    throw e;
+                }
+                persistedVersion = latest.getVersion();
+                lastPersistNanos = System.nanoTime() - writeStart;
+                lastPersistedAt = System.currentTimeMillis();
+                persistCount++;
+                if (full) {
+                    lastSnapshotNanos = lastPersistNanos;
+                    snapshotCount++;
+                }
+            }
+        } finally {
+            RequestTiming.recordPersistence(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes a snapshot in full: in sharded mode the shards owning the changed tickers are rewritten, otherwise
+     * the whole snapshot is saved to the JSON file.
+     *
+     * @param contents the stocks keyed by ticker
+     * @param changed the tickers changed since the shards were last written, used in sharded mode
+     * @throws PersistenceException if there is an issue with saving the data
+     */
+    private void writeSnapshot(Map<String, Stock> contents, Collection<String> changed) {
+        if (shardedStorage != null) {
+            for (String ticker : changed) {
+                shardedStorage.stage(ticker, contents.get(ticker));
+            }
+            // A shard that fails to write stays dirty and is written by the next persist
+            shardedStorage.flush();
+        } else {
+            saveDataToJson(contents);
+        }
+    }
+
+    /**
+     * Moves the snapshot to the file of the configured format: the universe is read from the file of the
+     * previous format, written in the new one, and the previous files are removed only once that write is
+     * on disk.
+     *
+     * @param previous the store of the format the snapshot was last written in
+     * @return the stocks keyed by ticker
+     * @throws IOException if the snapshot cannot be read, written or the old files removed
+     */
+    private Map<String, Stock> migrate(SnapshotStore previous) throws IOException {
+        Map<String, Stock> contents = previous.recover(data -> stockMapReader.readValue(data));
+        snapshotStore.write(stockMapWriter.writeValueAsBytes(contents));
+        previous.delete();
+        log.info("Moved the stock snapshot from {} to {}", previous.getFile(), snapshotStore.getFile());
+        return contents;
+    }
+
+    /**
+     * Loads data from a JSON file and returns the data as a map of stock objects. When the file is on disk
+     * the newest snapshot that passes its checksum is used, falling back to older checkpoints if the live
+     * file was left damaged by an unclean shutdown.
      *
      * @return a map of stock objects loaded from the JSON file
      * @throws PersistenceException if there is an issue with loading the data from the JSON file
@@ -88,9 +763,19 @@ public class JsonStockRepository implements StockRepository {
 
     private Map<String, Stock> loadDataFromJson() {
         try {
+            if (snapshotStore != null) {
+                if (!snapshotStore.exists()) {
+                    for (SnapshotStore previous : otherFormatStores) {
+                        if (previous.exists()) {
+                            return migrate(previous);
+                        }
+                    }
+                }
+                return snapshotStore.recover(data -> stockMapReader.readValue(data));
+            }
             Resource resource = resourceLoader.getResource(filepath);
             if (resource.exists()) {
-                return objectMapper.readValue(resource.getInputStream(), new TypeReference<>() {});
+                return stockMapReader.readValue(resource.getInputStream());
             } else {
                 throw new PersistenceException("JSON file not found: " + filepath);
             }
@@ -100,18 +785,18 @@ public class JsonStockRepository implements StockRepository {
     }
 
     /**
-     * Saves the data to a JSON file.
+     * Saves the data to a JSON file. The file is replaced atomically, so a failed write leaves the previous
+     * snapshot in place.
      *
+     * @param contents the stocks to save, keyed by ticker
      * @throws PersistenceException if there is an issue with saving the data to the JSON file
      */
 
-    private void saveDataToJson() {
+    private void saveDataToJson(Map<String, Stock> contents) {
         try {
-            Resource resource = resourceLoader.getResource(filepath);
-            if (resource.isFile()) {
-                File file = resource.getFile();
-                System.out.println("Saving data to JSON file at: " + file.getAbsolutePath());
-                objectMapper.writeValue(resource.getFile(), database);
+            if (snapshotStore != null) {
+                System.out.println("Saving data to JSON file at: " + snapshotStore.getFile());
+                snapshotStore.write(stockMapWriter.writeValueAsBytes(contents));
                 System.out.println("Data successfully saved to JSON file.");
             } else {
                 System.out.println("Cannot save to source: " +filepath);
@@ -124,7 +809,8 @@ public class JsonStockRepository implements StockRepository {
     }
 
     /**
-     * Retrieves all stocks from the JSONobject.
+     * Retrieves all stocks from the current snapshot. The returned list is unmodifiable and is
+     * shared between callers, so no copy is made.
      *
      * @return a list of all stocks in the JSONobject
      * @throws PersistenceException if there is an issue retrieving the stocks from the JSONobject
@@ -132,7 +818,7 @@ public class JsonStockRepository implements StockRepository {
 
     @Override
     public List<Stock> retrieveAll() throws PersistenceException {
-        return new ArrayList<>(database.values());
+        return snapshot().getStocks();
     }
 
     /**
@@ -145,20 +831,47 @@ public class JsonStockRepository implements StockRepository {
 
     @Override
     public Stock findById(String ticker) throws PersistenceException {
-        return database.get(ticker);
+        return snapshot().get(ticker);
     }
 
     /**
-     * Saves the given stock to the JSON file.
+     * Looks up several stocks in one pass over the current snapshot, so that they are all read at the same
+     * version however many writes happen meanwhile.
+     *
+     * @param tickers the tickers, in any order and possibly repeated
+     * @return the stock for each ticker in the same order, with null for each ticker that is not found
+     */
+    @Override
+    public List<Stock> findAllById(List<String> tickers) {
+        StockSnapshot current = snapshot();
+        List<Stock> stocks = new ArrayList<>(tickers.size());
+        for (String ticker : tickers) {
+            stocks.add(current.get(ticker));
+        }
+        return stocks;
+    }
+
+    /**
+     * Saves the given stock to the JSON file, if no stock with its ticker exists yet. The check and the insert
+     * are atomic, so of two clients creating the same ticker only one succeeds. The saved stock is at version 1.
      *
      * @param stock the entity to save
      * @return the saved stock
      * @throws IllegalArgumentException if the stock is null or if any of its properties are invalid
+     * @throws DuplicateStockException if a stock with the same ticker already exists
      * @throws PersistenceException if there is an issue with saving the data to the JSON file
      */
 
     @Override
     public Stock save(Stock stock) throws IllegalArgumentException, PersistenceException {
+        checkWritable();
+        awaitLoaded();
+        Applied<Stock> applied = applySave(stock);
+        persistUpTo(applied.version()); // Save the change to the JSON file
+        return applied.result(); // Return the saved stock
+    }
+
+    private Applied<Stock> applySave(Stock stock) {
         if (stock == null) {
             throw new IllegalArgumentException("Stock must not be null");
         }
@@ -179,9 +892,17 @@ public class JsonStockRepository implements StockRepository {
             throw new IllegalArgumentException("Stock quantity must not be negative");
         }
 
-        database.put(stock.getTicker(), stock);
-        saveDataToJson(); // Save the updated database to the JSON file
-        return stock; // Return the saved stock
+        synchronized (this) {
+            if (database.containsKey(stock.getTicker())) {
+                throw new DuplicateStockException("Stock with ticker " + stock.getTicker() + " already exists.");
+            }
+            stock.setVersion(1);
+            database.put(stock.getTicker(), stock);
+            publishSnapshot(stock.getTicker());
+            fireChange(StockChangeEvent.Type.CREATED, stock.getTicker(), stock, null);
+            markChanged(stock.getTicker());
+            return new Applied<>(stock, snapshot.getVersion());
+        }
     }
 
 
@@ -189,7 +910,7 @@ public class JsonStockRepository implements StockRepository {
      * Deletes the entity with the specified ticker from the JSON file.
      *
      * @param ticker the unique identifier of the entity to delete
-     * @throws IllegalArgumentException if the specified ticker is null or empty
+     * @throws StockNotFoundException if there is no stock with the ticker
      * @throws PersistenceException if there is an issue with deleting the entity from the JSON file
      */
 
@@ -197,29 +918,400 @@ public class JsonStockRepository implements StockRepository {
 
     @Override
     public void delete(String ticker) throws IllegalArgumentException, PersistenceException {
-        if (database.remove(ticker) == null) {
-            throw new IllegalArgumentException("Stock not found: " + ticker);
+        delete(ticker, ANY_VERSION);
+    }
+
+    /**
+     * Deletes the stock with the specified ticker if it is still at the expected version.
+     *
+     * @param ticker the ticker of the stock
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @throws StockNotFoundException if there is no stock with the ticker
+     * @throws StockVersionConflictException if the stock is at another version
+     * @throws PersistenceException if there is an issue with deleting the entity from the JSON file
+     */
+    @Override
+    public void delete(String ticker, long expectedVersion) {
+        checkWritable();
+        awaitLoaded();
+        persistUpTo(applyDelete(ticker, expectedVersion).version());
+    }
+
+    private synchronized Applied<Void> applyDelete(String ticker, long expectedVersion) {
+        Stock removed = database.get(ticker);
+        if (removed == null) {
+            throw new StockNotFoundException("Stock not found: " + ticker);
         }
-        saveDataToJson();
+        StockVersionConflictException.check(removed, 0, expectedVersion);
+        database.remove(ticker);
+        publishSnapshot(ticker);
+        fireChange(StockChangeEvent.Type.DELETED, ticker, removed, null);
+        markChanged(ticker);
+        return new Applied<>(null, snapshot.getVersion());
     }
 
     /**
-     * Updates the stock entity in the JSON file. If the stock with the specified ticker does not exist, an exception is thrown.
+     * Updates the stock entity in the JSON file. If the stock with the specified ticker does not exist, an exception
+     * is thrown. If the stock carries a version other than 0, it must be the version currently stored.
      *
      * @param stock the entity to update
      * @return the updated stock entity
-     * @throws IllegalArgumentException if the stock is null or if it does not exist in the JSON file
+     * @throws StockNotFoundException if the stock does not exist in the JSON file
+     * @throws StockVersionConflictException if the stock has been updated since the version it carries
      * @throws PersistenceException if there is an issue with updating the stock in the JSON file
      */
 
     @Override
     public Stock update(Stock stock) throws IllegalArgumentException, PersistenceException {
-        if (!database.containsKey(stock.getTicker())) {
-            throw new IllegalArgumentException("Stock not found: " + stock.getTicker());
+        return update(stock, ANY_VERSION);
+    }
+
+    /**
+     * Updates the stock entity in the JSON file if it is still at the expected version. The stored stock gets
+     * the next version.
+     *
+     * @param stock the entity to update
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return the updated stock entity
+     * @throws StockNotFoundException if the stock does not exist in the JSON file
+     * @throws StockVersionConflictException if the stock is at another version
+     * @throws PersistenceException if there is an issue with updating the stock in the JSON file
+     */
+    @Override
+    public Stock update(Stock stock, long expectedVersion) {
+        checkWritable();
+        awaitLoaded();
+        Applied<Stock> applied = applyUpdate(stock, expectedVersion);
+        persistUpTo(applied.version());
+        return applied.result();
+    }
+
+    private synchronized Applied<Stock> applyUpdate(Stock stock, long expectedVersion) {
+        Stock previous = database.get(stock.getTicker());
+        if (previous == null) {
+            throw new StockNotFoundException("Stock with ticker " + stock.getTicker() + " not found");
         }
+        StockVersionConflictException.check(previous, stock.getVersion(), expectedVersion);
+        stock.setVersion(previous.getVersion() + 1);
         database.put(stock.getTicker(), stock);
-        saveDataToJson();
-        return stock;
+        publishSnapshot(stock.getTicker());
+        fireChange(StockChangeEvent.Type.UPDATED, stock.getTicker(), stock, previous);
+        markChanged(stock.getTicker());
+        return new Applied<>(stock, snapshot.getVersion());
+    }
+
+    /**
+     * Applies a partial update to a stock if it is still at the expected version. Only the one stock is copied
+     * and changed: the stock itself is left alone, since published snapshots share it. Increments are applied to
+     * the stock as it is under the repository lock, so concurrent increments all count. The patched stock gets
+     * the next version, and only the fields the patch touched are persisted, as a delta in the journal.
+     *
+     * @param ticker the ticker of the stock
+     * @param patch the partial update
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return the patched stock, or the stock unchanged if the patch is empty
+     * @throws StockNotFoundException if there is no stock with the ticker
+     * @throws StockVersionConflictException if the stock is at another version
+     * @throws IllegalArgumentException if an increment would make a field negative or overflow
+     * @throws PersistenceException if there is an issue with saving the change
+     */
+    @Override
+    public Stock patch(String ticker, StockPatch patch, long expectedVersion) {
+        checkWritable();
+        awaitLoaded();
+        Applied<Stock> applied = applyPatch(ticker, patch, expectedVersion);
+        persistUpTo(applied.version());
+        return applied.result();
+    }
+
+    private synchronized Applied<Stock> applyPatch(String ticker, StockPatch patch, long expectedVersion) {
+        Stock previous = database.get(ticker);
+        if (previous == null) {
+            throw new StockNotFoundException("Stock with ticker " + ticker + " not found");
+        }
+        StockVersionConflictException.check(previous, patch.getVersion(), expectedVersion);
+        if (patch.isEmpty()) {
+            // Nothing to persist: version 0 is always persisted
+            return new Applied<>(previous, 0);
+        }
+        Stock patched = patch.applyTo(previous);
+        patched.setVersion(previous.getVersion() + 1);
+        database.put(ticker, patched);
+        publishSnapshot(ticker);
+        fireChange(StockChangeEvent.Type.UPDATED, ticker, patched, previous);
+        markPatched(ticker, patch.delta(patched));
+        return new Applied<>(patched, snapshot.getVersion());
+    }
+
+    /**
+     * Keeps the newer copy of each of the given stocks: a stock is added if its ticker is not in the repository
+     * yet, replaces the copy held here if that has a lower version, and is ignored otherwise. The batch is
+     * applied under one lock and persisted with one write; every stored stock still gets its own snapshot
+     * version and change event, so the change feed is the same as for separate saves.
+     *
+     * <p>Used to take over the stocks of a partition that has moved to this node. A copy written here under the
+     * new ring, or handed over earlier at a later version, wins over the one being handed over; a copy the old
+     * owner wrote again after handing it over replaces an older one. Copies with the same version are taken to
+     * be the same write and the one held here is kept.
+     *
+     * @param stocks the stocks handed over
+     * @return the version of each stock handed over, keyed by ticker, now that this repository durably holds
+     *         that version or a later one
+     * @throws PersistenceException if there is an issue with saving the data
+     */
+    public Map<String, Long> saveNewer(Collection<Stock> stocks) throws PersistenceException {
+        checkWritable();
+        awaitLoaded();
+        Map<String, Long> acknowledged = new LinkedHashMap<>();
+        List<Stock> stored = new ArrayList<>();
+        List<Stock> replaced = new ArrayList<>();
+        long version;
+        synchronized (this) {
+            for (Stock stock : stocks) {
+                if (stock == null || stock.getTicker() == null) {
+                    continue;
+                }
+                acknowledged.put(stock.getTicker(), stock.getVersion());
+                Stock held = database.get(stock.getTicker());
+                if (held == null || held.getVersion() < stock.getVersion()) {
+                    database.put(stock.getTicker(), stock);
+                    stored.add(stock);
+                    replaced.add(held);
+                }
+            }
+            if (stored.isEmpty()) {
+                return acknowledged;
+            }
+            version = snapshot.getVersion();
+            snapshot = snapshot.withChanges(version + stored.size(), database,
+                    stored.stream().map(Stock::getTicker).toList());
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < stored.size(); i++) {
+                Stock stock = stored.get(i);
+                Stock previous = replaced.get(i);
+                fireChange(previous == null ? StockChangeEvent.Type.CREATED : StockChangeEvent.Type.UPDATED,
+                        stock.getTicker(), stock, previous, ++version, timestamp);
+                markChanged(stock.getTicker());
+            }
+        }
+        persistUpTo(version);
+        return acknowledged;
+    }
+
+    /**
+     * Replaces the whole contents of the repository with the given stocks, as one write. Readers see either the
+     * old universe or the new one, never a mix. Each stock gets version 1, or the next version of the stock it
+     * replaces, so that a precondition taken on the old contents fails. The change is published as one new
+     * snapshot version, and the change listeners are told to start afresh rather than sent a change per stock.
+     * The snapshot is written in full, every shard in sharded mode.
+     *
+     * <p>Used by the bulk CSV import, which parses the new universe before calling this, so the repository is
+     * only locked for the swap itself.
+     *
+     * @param contents the new stocks keyed by ticker; the repository takes ownership of the map
+     * @return the version of the snapshot holding the new contents
+     * @throws IllegalStateException if this instance is a read replica
+     * @throws PersistenceException if there is an issue with saving the data
+     */
+    public long replaceAll(Map<String, Stock> contents) throws PersistenceException {
+        checkWritable();
+        awaitLoaded();
+        long version;
+        synchronized (this) {
+            for (Map.Entry<String, Stock> entry : contents.entrySet()) {
+                Stock previous = database.get(entry.getKey());
+                entry.getValue().setVersion(previous == null ? 1 : previous.getVersion() + 1);
+            }
+            database = contents;
+            snapshot = new StockSnapshot(snapshot.getVersion() + 1, database);
+            unstaged.clear();
+            unjournaled.clear();
+            snapshotStale = true;
+            replacedWholesale = true;
+            fireReset(snapshot);
+            version = snapshot.getVersion();
+        }
+        System.out.println("Replaced the JSON Repository with " + contents.size() + " stocks at version " + version);
+        persistUpTo(version);
+        return version;
+    }
+
+    /**
+     * Removes the given stocks, but only those the repository still holds at the given version: a stock that
+     * was written again since that version was read is kept. Like {@link #saveNewer(Collection)}, the batch is
+     * persisted with one write and every removal gets its own version and change event.
+     *
+     * <p>Used to drop the stocks of a partition once their new owner has acknowledged holding them, without
+     * losing a write that arrived while the handover was in flight: such a stock has moved on to a version the
+     * new owner has not acknowledged, and is handed over again.
+     *
+     * @param acknowledged the version of each stock to remove, keyed by ticker
+     * @return the number of stocks removed
+     * @throws PersistenceException if there is an issue with saving the data
+     */
+    public int deleteAcknowledged(Map<String, Long> acknowledged) throws PersistenceException {
+        checkWritable();
+        awaitLoaded();
+        List<Stock> removed = new ArrayList<>();
+        long version;
+        synchronized (this) {
+            for (Map.Entry<String, Long> entry : acknowledged.entrySet()) {
+                Stock held = database.get(entry.getKey());
+                if (held != null && held.getVersion() == entry.getValue()) {
+                    database.remove(entry.getKey());
+                    removed.add(held);
+                }
+            }
+            if (removed.isEmpty()) {
+                return 0;
+            }
+            version = snapshot.getVersion();
+            snapshot = snapshot.withChanges(version + removed.size(), database,
+                    removed.stream().map(Stock::getTicker).toList());
+            long timestamp = System.currentTimeMillis();
+            for (Stock stock : removed) {
+                fireChange(StockChangeEvent.Type.DELETED, stock.getTicker(), stock, null, ++version, timestamp);
+                markChanged(stock.getTicker());
+            }
+        }
+        persistUpTo(version);
+        return removed.size();
+    }
+
+    /**
+     * Saves the given stock, and persists the change on the I/O executor.
+     *
+     * @param stock the entity to save
+     * @return a future completed with the saved stock
+     */
+
+    @Override
+    public CompletableFuture<Stock> saveAsync(Stock stock) {
+        return writeAsync(() -> applySave(stock));
+    }
+
+    /**
+     * Updates the given stock, and persists the change on the I/O executor.
+     *
+     * @param stock the entity to update
+     * @return a future completed with the updated stock
+     */
+
+    @Override
+    public CompletableFuture<Stock> updateAsync(Stock stock) {
+        return updateAsync(stock, ANY_VERSION);
+    }
+
+    /**
+     * Updates the given stock if it is still at the expected version, and persists the change on the I/O
+     * executor.
+     *
+     * @param stock the entity to update
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return a future completed with the updated stock
+     */
+
+    @Override
+    public CompletableFuture<Stock> updateAsync(Stock stock, long expectedVersion) {
+        return writeAsync(() -> applyUpdate(stock, expectedVersion));
+    }
+
+    /**
+     * Applies a partial update to a stock, and persists the change on the I/O executor.
+     *
+     * @param ticker the ticker of the stock
+     * @param patch the partial update
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return a future completed with the patched stock
+     */
+
+    @Override
+    public CompletableFuture<Stock> patchAsync(String ticker, StockPatch patch, long expectedVersion) {
+        return writeAsync(() -> applyPatch(ticker, patch, expectedVersion));
+    }
+
+    /**
+     * Deletes the stock with the given ticker, and persists the change on the I/O executor.
+     *
+     * @param ticker the unique identifier of the entity to delete
+     * @return a future completed once the stock has been deleted
+     */
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String ticker) {
+        return deleteAsync(ticker, ANY_VERSION);
+    }
+
+    /**
+     * Deletes the stock with the given ticker if it is still at the expected version, and persists the change on
+     * the I/O executor.
+     *
+     * @param ticker the unique identifier of the entity to delete
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return a future completed once the stock has been deleted
+     */
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String ticker, long expectedVersion) {
+        return writeAsync(() -> applyDelete(ticker, expectedVersion));
+    }
+
+    /**
+     * The result of a write applied under the repository lock, and the version that must be persisted before the
+     * write is acknowledged.
+     */
+    private record Applied<T>(T result, long version) {
+    }
+
+    /**
+     * Applies a write on the calling thread and queues making it durable on the I/O executor. The write is
+     * published before this returns, in the order writes are submitted; the future completes once it is on disk.
+     *
+     * @param write applies the write, under the repository lock
+     * @return a future completed with the result of the write once it is persisted, or exceptionally with the
+     *         exception the write or the persist threw
+     * @throws WriteQueueFullException if as many writes as the queue holds are waiting to be persisted; the write
+     *                                 is then not applied
+     */
+    private <T> CompletableFuture<T> writeAsync(Supplier<Applied<T>> write) {
+        checkWritable();
+        awaitLoaded();
+        CompletableFuture<T> persisted = new CompletableFuture<>();
+        // Writes are only queued under the repository lock, so the room checked for cannot be taken by another
+        synchronized (this) {
+            if (ioExecutor.isShutdown()) {
+                throw new IllegalStateException("The repository is shutting down");
+            }
+            if (ioExecutor.getQueue().remainingCapacity() == 0) {
+                throw new WriteQueueFullException("Too many writes are waiting to be persisted; try again shortly");
+            }
+            Applied<T> applied;
+            try {
+                applied = write.get();
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            ioExecutor.execute(() -> {
+                try {
+                    persistUpTo(applied.version());
+                    persisted.complete(applied.result());
+                } catch (RuntimeException e) {
+                    persisted.completeExceptionally(e);
+                }
+            });
+        }
+        return persisted;
+    }
+
+    /**
+     * Lets the writes already queued on the I/O executor finish before the application shuts down.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        ioExecutor.shutdown();
+        if (!ioExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+            System.out.println("Pending stock writes did not finish before shutdown");
+        }
     }
 
     /**
@@ -231,12 +1323,8 @@ public class JsonStockRepository implements StockRepository {
 
     @Override
     public List<Stock> searchByTicker(String ticker) {
-        if (ticker == null || database == null) {
-            return Collections.emptyList(); // or throw an exception, based on your use case
-        }
-        return database.values().stream()
-                .filter(stock -> ticker.equals(stock.getTicker())) // handles null ticker in stock
-                .collect(Collectors.toList());
+        Stock stock = snapshot().get(ticker);
+        return stock == null ? Collections.emptyList() : List.of(stock);
     }
 
     /**
@@ -244,17 +1332,15 @@ public class JsonStockRepository implements StockRepository {
      *
      * @param sector the name of the sector of the stock
      * @return a list of Stocks that match the sector name
-     * currently using the linear search algorithm to provide this feature
+     * served from the sector index of the current snapshot
      */
 
     @Override
-    public List<Stock> searchBySector(String sector) { //review this
-        if (sector == null || database == null) {
+    public List<Stock> searchBySector(String sector) {
+        if (sector == null) {
             return Collections.emptyList(); // or throw an exception, based on your use case
         }
-        return database.values().stream()
-                .filter(stock -> sector.equals(stock.getSector())) // handles null sector in stock
-                .collect(Collectors.toList());
+        return snapshot().bySector(sector);
     }
 
     /**
@@ -268,31 +1354,6 @@ public class JsonStockRepository implements StockRepository {
 
     @Override
     public List<Stock> sortByAttribute(String attribute) {
-        List<Stock> sortedStocks = new ArrayList<>(database.values());
-
-        switch (attribute.toLowerCase()) {
-            case "name":
-                sortedStocks.sort(Comparator.comparing(Stock::getName));
-                break;
-            case "currentprice":
-                sortedStocks.sort(Comparator.comparing(Stock::getCurrentPrice));
-                break;
-            case "sector":
-                sortedStocks.sort(Comparator.comparing(Stock::getSector));
-                break;
-            case "quantity":
-                sortedStocks.sort(Comparator.comparing(Stock::getQuantity));
-                break;
-            case "purchaseprice":
-                sortedStocks.sort(Comparator.comparing(Stock::getPurchasePrice));
-                break;
-            default:
-                throw new IllegalArgumentException("Unknown attribute for sorting: " + attribute);
-        }
-
-        return sortedStocks;
-}
-
-
-
+        return new ArrayList<>(snapshot().sortedBy(attribute));
+    }
 }
@@ -0,0 +1,114 @@
+package com.cbfacademy.apiassessment.stock;
+
+/**
+ * The PersistenceStats class describes how the repository last persisted its data: the size of the snapshot on
+ * disk and how long writing it took.
+ */
+public class PersistenceStats {
+    private final String mode;
+    private final long persistedVersion;
+    private final long lastSnapshotBytes;
+    private final double lastSnapshotMillis;
+    private final double lastPersistMillis;
+    private final long lastPersistedAt;
+    private final long persists;
+    private final long snapshots;
+    private final int journalEntries;
+
+    PersistenceStats(String mode, long persistedVersion, long lastSnapshotBytes, long lastSnapshotNanos,
+                     long lastPersistNanos, long lastPersistedAt, long persists, long snapshots,
+                     int journalEntries) {
+        this.mode = mode;
+        this.persistedVersion = persistedVersion;
+        this.lastSnapshotBytes = lastSnapshotBytes;
+        this.lastSnapshotMillis = lastSnapshotNanos / 1e6;
+        this.lastPersistMillis = lastPersistNanos / 1e6;
+        this.lastPersistedAt = lastPersistedAt;
+        this.persists = persists;
+        this.snapshots = snapshots;
+        this.journalEntries = journalEntries;
+    }
+
+    /**
+     * Returns how the data is persisted: {@code file}, {@code sharded}, or {@code none} for a replica or a
+     * read-only resource.
+     *
+     * @return the persistence mode
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the newest repository version that has been persisted.
+     *
+     * @return the persisted version
+     */
+    public long getPersistedVersion() {
+        return persistedVersion;
+    }
+
+    /**
+     * Returns the size on disk of the snapshot most recently written or loaded; in sharded mode the total of
+     * every shard.
+     *
+     * @return the snapshot size in bytes
+     */
+    public long getLastSnapshotBytes() {
+        return lastSnapshotBytes;
+    }
+
+    /**
+     * Returns how long the most recent full snapshot write took.
+     *
+     * @return the duration in milliseconds, 0 if no snapshot has been written since startup
+     */
+    public double getLastSnapshotMillis() {
+        return lastSnapshotMillis;
+    }
+
+    /**
+     * Returns how long the most recent persist took, whether it wrote a snapshot or appended to the journal.
+     *
+     * @return the duration in milliseconds, 0 if nothing has been persisted since startup
+     */
+    public double getLastPersistMillis() {
+        return lastPersistMillis;
+    }
+
+    /**
+     * Returns when the most recent persist completed.
+     *
+     * @return the time in milliseconds since the epoch, 0 if nothing has been persisted since startup
+     */
+    public long getLastPersistedAt() {
+        return lastPersistedAt;
+    }
+
+    /**
+     * Returns the number of persists since startup.
+     *
+     * @return the persist count
+     */
+    public long getPersists() {
+        return persists;
+    }
+
+    /**
+     * Returns the number of persists since startup that wrote a full snapshot rather than journal entries.
+     *
+     * @return the snapshot count
+     */
+    public long getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Returns the number of patches in the journal, waiting to be folded into the next snapshot.
+     *
+     * @return the journal entry count
+     */
+    public int getJournalEntries() {
+        return journalEntries;
+    }
+}
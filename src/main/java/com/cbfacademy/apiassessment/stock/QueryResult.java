@@ -0,0 +1,25 @@
+package com.cbfacademy.apiassessment.stock;
+
+import java.util.List;
+
+/**
+ * The QueryResult class holds the stocks matched by a filter query together with a readable
+ * description of the plan that was used to find them.
+ */
+public class QueryResult {
+    private final List<Stock> stocks;
+    private final String plan;
+
+    public QueryResult(List<Stock> stocks, String plan) {
+        this.stocks = stocks;
+        this.plan = plan;
+    }
+
+    public List<Stock> getStocks() {
+        return stocks;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+}
@@ -0,0 +1,281 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.HeapEstimate;
+import com.cbfacademy.apiassessment.core.PersistenceException;
+import com.cbfacademy.apiassessment.core.SnapshotStore;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The ShardedJsonStorage class persists the stock universe as N JSON files instead of one.
+ *
+ * <p>Tickers are assigned to shards by hash, and each shard keeps its own map of the stocks it owns
+ * and a dirty flag. A write only marks the shard of the affected ticker dirty, and a flush rewrites the
+ * dirty shards alone, so a single-ticker update rewrites about 1/N of the universe. Every shard file is
+ * written through its own {@link SnapshotStore} and so keeps the same crash-safety and checkpoints as the
+ * single-file mode. Shards are loaded in parallel at startup.
+ *
+ * <p>The shards live in a directory next to the JSON file ({@code stocks.json.shards/shard-000.json}, ...),
+ * with the extension of the storage format ({@code shard-000.cbor}, ...). If the directory does not exist
+ * yet, the universe is seeded from the single JSON file and written out as shards. If the shard count has
+ * changed since the last run, misplaced stocks are moved and every shard is rewritten; if the format has
+ * changed, shards are read from the files of the previous format, rewritten and the old files removed.
+ */
+class ShardedJsonStorage {
+    private static final TypeReference<Map<String, Stock>> STOCK_MAP = new TypeReference<>() {};
+    private static final String SHARD_FILE = "shard-\\d{3}\\.(json|cbor|smile)";
+
+    private final Path directory;
+    private final StorageFormat format;
+    private final int retainedCheckpoints;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final Shard[] shards;
+
+    /**
+     * One shard file and the stocks it holds.
+     */
+    private static final class Shard {
+        private final SnapshotStore store;
+        private final Map<String, Stock> stocks = new HashMap<>();
+        private boolean dirty;
+
+        Shard(SnapshotStore store) {
+            this.store = store;
+        }
+    }
+
+    /**
+     * Creates the storage.
+     *
+     * @param file the single JSON file, used to place the shard directory and to seed the first run
+     * @param shardCount the number of shard files
+     * @param retainedCheckpoints the number of previous snapshots kept for every shard
+     * @param format the format shard files are written in; files in any format are read
+     */
+    ShardedJsonStorage(Path file, int shardCount, int retainedCheckpoints, StorageFormat format) {
+        this.directory = file.resolveSibling(file.getFileName() + ".shards");
+        this.format = format;
+        this.retainedCheckpoints = retainedCheckpoints;
+        this.reader = StorageFormat.detectingReader(STOCK_MAP);
+        this.writer = format.documentMapper().writerFor(STOCK_MAP);
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(shardStore(i, format));
+        }
+    }
+
+    private SnapshotStore shardStore(int index, StorageFormat shardFormat) {
+        return new SnapshotStore(directory.resolve(String.format("shard-%03d.%s", index, shardFormat.extension())),
+                retainedCheckpoints);
+    }
+
+    /**
+     * Returns the shard that owns a ticker.
+     *
+     * @param ticker the ticker
+     * @return the shard index
+     */
+    int shardOf(String ticker) {
+        return Math.floorMod(ticker.hashCode(), shards.length);
+    }
+
+    /**
+     * Loads every shard in parallel and returns the combined universe.
+     *
+     * @param seed supplies the universe from the single JSON file when no shards have been written yet
+     * @return the stocks keyed by ticker
+     * @throws PersistenceException if a shard cannot be loaded
+     */
+    synchronized Map<String, Stock> load(Supplier<Map<String, Stock>> seed) {
+        if (!Files.isDirectory(directory)) {
+            Map<String, Stock> universe = seed.get();
+            universe.forEach((ticker, stock) -> stage(ticker, stock));
+            flush();
+            return new LinkedHashMap<>(universe);
+        }
+
+        List<Map<String, Stock>> loaded = loadShardFiles();
+        Map<String, Stock> universe = new LinkedHashMap<>();
+        for (Map<String, Stock> contents : loaded) {
+            for (Map.Entry<String, Stock> entry : contents.entrySet()) {
+                universe.put(entry.getKey(), entry.getValue());
+                shards[shardOf(entry.getKey())].stocks.put(entry.getKey(), entry.getValue());
+            }
+        }
+        // A shard is clean only if it was read back holding exactly the tickers it owns under the current count
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].dirty |= !loaded.get(i).keySet().equals(shards[i].stocks.keySet());
+        }
+        flush();
+        deleteStaleShards(loaded.size());
+        deleteOtherFormats();
+        return universe;
+    }
+
+    /**
+     * Records a change to a ticker in its shard and marks the shard dirty.
+     *
+     * @param ticker the ticker that changed
+     * @param stock the stock after the change, or null if it was deleted
+     */
+    synchronized void stage(String ticker, Stock stock) {
+        Shard shard = shards[shardOf(ticker)];
+        if (stock == null) {
+            shard.stocks.remove(ticker);
+        } else {
+            shard.stocks.put(ticker, stock);
+        }
+        shard.dirty = true;
+    }
+
+    /**
+     * Replaces the contents of every shard with a new universe and marks every shard dirty.
+     *
+     * @param universe the stocks keyed by ticker
+     */
+    synchronized void replaceAll(Map<String, Stock> universe) {
+        for (Shard shard : shards) {
+            shard.stocks.clear();
+            shard.dirty = true;
+        }
+        universe.forEach((ticker, stock) -> shards[shardOf(ticker)].stocks.put(ticker, stock));
+    }
+
+    /**
+     * Rewrites every dirty shard. A shard that fails to write stays dirty and is retried on the next flush.
+     *
+     * @throws PersistenceException if a shard cannot be written
+     */
+    synchronized void flush() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new PersistenceException("Failed to create shard directory " + directory, e);
+        }
+        for (Shard shard : shards) {
+            if (!shard.dirty) {
+                continue;
+            }
+            try {
+                shard.store.write(writer.writeValueAsBytes(shard.stocks));
+                shard.dirty = false;
+            } catch (IOException e) {
+                throw new PersistenceException("Failed to write shard " + shard.store.getFile(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the directory holding the shard files.
+     *
+     * @return the shard directory
+     */
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the total size of the shard files most recently written or loaded.
+     *
+     * @return the size of all shards in bytes
+     */
+    long getSnapshotBytes() {
+        long total = 0;
+        for (Shard shard : shards) {
+            total += shard.store.getLastSnapshotBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Estimates the heap held by the maps of the shards, without the stocks, which are shared with the
+     * repository.
+     *
+     * @return the estimated bytes
+     */
+    synchronized long estimateBytes() {
+        long bytes = HeapEstimate.referenceArray(shards.length);
+        for (Shard shard : shards) {
+            bytes += HeapEstimate.hashMap(shard.stocks.size());
+        }
+        return bytes;
+    }
+
+    private List<Map<String, Stock>> loadShardFiles() {
+        int present;
+        try (Stream<Path> files = Files.list(directory)) {
+            present = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches(SHARD_FILE))
+                    .mapToInt(name -> Integer.parseInt(name.substring(6, 9)) + 1)
+                    .max()
+                    .orElse(0);
+        } catch (IOException e) {
+            throw new PersistenceException("Failed to list shards in " + directory, e);
+        }
+        int count = Math.max(present, shards.length);
+        return IntStream.range(0, count).parallel().mapToObj(i -> {
+            SnapshotStore store = i < shards.length ? shards[i].store : shardStore(i, format);
+            if (!store.exists()) {
+                // A shard last written in another format is read from that file and rewritten in this one
+                store = null;
+                for (StorageFormat previous : StorageFormat.values()) {
+                    SnapshotStore candidate = shardStore(i, previous);
+                    if (previous != format && candidate.exists()) {
+                        store = candidate;
+                        break;
+                    }
+                }
+                if (store == null) {
+                    return new HashMap<String, Stock>();
+                }
+                if (i < shards.length) {
+                    shards[i].dirty = true;
+                }
+            }
+            try {
+                return store.<Map<String, Stock>>recover(data -> reader.readValue(data));
+            } catch (IOException e) {
+                throw new PersistenceException("Failed to load shard " + store.getFile(), e);
+            }
+        }).toList();
+    }
+
+    private void deleteStaleShards(int loadedCount) {
+        for (int i = shards.length; i < loadedCount; i++) {
+            String glob = String.format("shard-%03d.*", i);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, glob)) {
+                for (Path path : stale) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                throw new PersistenceException("Failed to delete stale shard files " + glob, e);
+            }
+        }
+    }
+
+    private void deleteOtherFormats() {
+        String extension = "." + format.extension();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.filter(path -> path.getFileName().toString().matches(SHARD_FILE)
+                    && !path.getFileName().toString().endsWith(extension)).toList()) {
+                new SnapshotStore(path, retainedCheckpoints).delete();
+            }
+        } catch (IOException e) {
+            throw new PersistenceException("Failed to delete shards of other formats in " + directory, e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.cbfacademy.apiassessment.stock;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The SingleFlight class coalesces concurrent identical computations.
+ *
+ * <p>The first caller for a key runs the computation; callers that arrive with the same key while it is still
+ * running wait for it and receive the same result, or the same exception. Nothing is cached: once the
+ * computation finishes the key is forgotten, and the next caller computes afresh. Keys should therefore
+ * include whatever makes two results differ, such as the repository version.
+ *
+ * @param <K> the type of the keys identifying a computation
+ * @param <V> the type of the results
+ */
+final class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Runs the computation for a key, or joins the run already in flight for it.
+     *
+     * @param key the key identifying the computation
+     * @param computation computes the result
+     * @return the result of this or the in-flight computation
+     */
+    V execute(K key, Supplier<V> computation) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            shared.incrementAndGet();
+            return join(running);
+        }
+        try {
+            V result = computation.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Returns how many callers received the result of a computation started by another caller.
+     *
+     * @return the number of coalesced calls
+     */
+    long getShared() {
+        return shared.get();
+    }
+
+    private static <V> V join(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -1,10 +1,20 @@
 package com.cbfacademy.apiassessment.stock;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
  * The Stock class represents a stock in the system.
+ *
+ * <p>Internally the sector and currency symbol are stored as {@link StockDictionary} ids and prices are
+ * stored as fixed-point {@code long} values in units of 1/{@value #PRICE_SCALE} of the currency. The public
+ * getters and setters convert at the API boundary, so the JSON representation is unchanged.
  */
 public class Stock {
+    /**
+     * The number of price units in one unit of currency. Four decimal places keep sub-cent prices exact.
+     */
+    public static final long PRICE_SCALE = 10_000L;
+
     /**
      * The ticker variable represents the ticker symbol of a stock. It is a private field in the Stock class
      * and is immutable since it serves as a unique identifier for the stock
@@ -31,21 +41,24 @@ public class Stock {
      *
      * <p>Note: The currency symbol does not include any currency-related formatting such as currency codes
      * or punctuation. It is solely the symbol used to represent the currency.
+     *
+     * <p>The symbol is held as its id in {@link StockDictionary#CURRENCIES}.
      */
-    private String currencySymbol;
+    private int currencyId;
 
     /**
      * Represents the sector of a stock.
      *
-     * The sector represents the industry or category that a stock belongs to.
+     * The sector represents the industry or category that a stock belongs to. It is held as its id
+     * in {@link StockDictionary#SECTORS}.
      */
-    private String sector;
+    private int sectorId;
 
     /**
-     * Represents the current market price of a stock.
+     * Represents the current market price of a stock, in units of 1/{@value #PRICE_SCALE} of the currency.
      * This variable is private, accessible only within the containing class.
      */
-    private double currentPrice;
+    private long currentPriceUnits;
 
     /**
      * Represents the number of shares owned.
@@ -61,9 +74,17 @@ public class Stock {
     private int quantity;
 
     /**
-     * Represents the average purchase price of a stock.
+     * Represents the average purchase price of a stock, in units of 1/{@value #PRICE_SCALE} of the currency.
      */
-    private double purchasePrice;
+    private long purchasePriceUnits;
+
+    /**
+     * The version of the stock, used for optimistic concurrency control. The repository sets it to 1 when the
+     * stock is created and adds one on every update. A client sends back the version it read, in the body or as
+     * an {@code If-Match} entity tag, and the write is refused if the stock has been changed since. A version of
+     * 0 in a request body means the client did not say which version it read.
+     */
+    private long version;
 
     // No-argument constructor for Jackson
 
@@ -91,11 +112,47 @@ public class Stock {
         }
         this.ticker = ticker;
         this.name = name;
-        this.currencySymbol = currencySymbol;
-        this.sector = sector;
-        this.currentPrice = currentPrice;
+        this.currencyId = StockDictionary.CURRENCIES.encode(currencySymbol);
+        this.sectorId = StockDictionary.SECTORS.encode(sector);
+        this.currentPriceUnits = toUnits(currentPrice);
         this.quantity = quantity;
-        this.purchasePrice = purchasePrice;
+        this.purchasePriceUnits = toUnits(purchasePrice);
+    }
+
+    /**
+     * Creates a copy of a stock, version included.
+     *
+     * @param other the stock to copy
+     */
+    public Stock(Stock other) {
+        this.ticker = other.ticker;
+        this.name = other.name;
+        this.currencyId = other.currencyId;
+        this.sectorId = other.sectorId;
+        this.currentPriceUnits = other.currentPriceUnits;
+        this.quantity = other.quantity;
+        this.purchasePriceUnits = other.purchasePriceUnits;
+        this.version = other.version;
+    }
+
+    /**
+     * Converts a decimal price to fixed-point units, rounding to the nearest unit.
+     *
+     * @param price the price in currency units
+     * @return the price in units of 1/{@value #PRICE_SCALE}
+     */
+    public static long toUnits(double price) {
+        return Math.round(price * PRICE_SCALE);
+    }
+
+    /**
+     * Converts a fixed-point price back to a decimal price.
+     *
+     * @param units the price in units of 1/{@value #PRICE_SCALE}
+     * @return the price in currency units
+     */
+    public static double fromUnits(long units) {
+        return (double) units / PRICE_SCALE;
     }
 
     // Getters
@@ -108,15 +165,15 @@ public class Stock {
     }
 
     public String getCurrencySymbol() {
-        return currencySymbol;
+        return StockDictionary.CURRENCIES.decode(currencyId);
     }
 
     public double getCurrentPrice() {
-        return currentPrice;
+        return fromUnits(currentPriceUnits);
     }
 
     public String getSector() {
-        return sector;
+        return StockDictionary.SECTORS.decode(sectorId);
     }
 
     public int getQuantity() {
@@ -124,7 +181,37 @@ public class Stock {
     }
 
     public double getPurchasePrice() {
-        return purchasePrice;
+        return fromUnits(purchasePriceUnits);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Compact accessors, not part of the JSON representation
+    @JsonIgnore
+    public int getSectorId() {
+        return sectorId;
+    }
+
+    @JsonIgnore
+    public int getCurrencyId() {
+        return currencyId;
+    }
+
+    @JsonIgnore
+    public long getCurrentPriceUnits() {
+        return currentPriceUnits;
+    }
+
+    @JsonIgnore
+    public long getPurchasePriceUnits() {
+        return purchasePriceUnits;
+    }
+
+    // The ticker is only assigned when a stock is decoded by StockJsonModule
+    void setTicker(String ticker) {
+        this.ticker = ticker;
     }
 
     // Setters for mutable fields
@@ -133,15 +220,15 @@ public class Stock {
     }
 
     public void setCurrencySymbol(String currencySymbol) {
-        this.currencySymbol = currencySymbol;
+        this.currencyId = StockDictionary.CURRENCIES.encode(currencySymbol);
     }
 
     public void setSector(String sector) {
-        this.sector = sector;
+        this.sectorId = StockDictionary.SECTORS.encode(sector);
     }
 
     public void setCurrentPrice(double currentPrice) {
-        this.currentPrice = currentPrice;
+        this.currentPriceUnits = toUnits(currentPrice);
     }
 
     public void setQuantity(int quantity) {
@@ -149,6 +236,20 @@ public class Stock {
     }
 
     public void setPurchasePrice(double purchasePrice) {
-        this.purchasePrice = purchasePrice;
+        this.purchasePriceUnits = toUnits(purchasePrice);
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @JsonIgnore
+    public void setCurrentPriceUnits(long currentPriceUnits) {
+        this.currentPriceUnits = currentPriceUnits;
+    }
+
+    @JsonIgnore
+    public void setPurchasePriceUnits(long purchasePriceUnits) {
+        this.purchasePriceUnits = purchasePriceUnits;
     }
 }
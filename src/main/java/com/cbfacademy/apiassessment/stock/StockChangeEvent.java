@@ -0,0 +1,97 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The StockChangeEvent class describes a single mutation applied to the stock repository.
+ * Events are published in the order the writes were applied, and each carries the version of
+ * the snapshot that the write produced.
+ */
+public class StockChangeEvent {
+    /**
+     * The kind of mutation that produced an event.
+     */
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final Type type;
+    private final String ticker;
+    private final Stock stock;
+    private final Stock previous;
+    private final long version;
+    private final long timestamp;
+
+    /**
+     * Creates a change event.
+     *
+     * @param type the kind of mutation
+     * @param ticker the ticker of the stock that changed
+     * @param stock the stock after the change, or the stock as it was before a delete
+     * @param previous the stock a create or update replaced, or null if there was none
+     * @param version the version of the snapshot produced by the change
+     * @param timestamp the time of the change in milliseconds since the epoch
+     */
+    public StockChangeEvent(Type type, String ticker, Stock stock, Stock previous, long version, long timestamp) {
+        this.type = type;
+        this.ticker = ticker;
+        this.stock = stock;
+        this.previous = previous;
+        this.version = version;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Creates a change event without the previous state of the stock, as read back from a change log.
+     *
+     * @param type the kind of mutation
+     * @param ticker the ticker of the stock that changed
+     * @param stock the stock after the change, or the stock as it was before a delete
+     * @param version the version of the snapshot produced by the change
+     * @param timestamp the time of the change in milliseconds since the epoch
+     */
+    @JsonCreator
+    public StockChangeEvent(@JsonProperty("type") Type type, @JsonProperty("ticker") String ticker,
+                            @JsonProperty("stock") Stock stock, @JsonProperty("version") long version,
+                            @JsonProperty("timestamp") long timestamp) {
+        this(type, ticker, stock, null, version, timestamp);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Returns the stock after the change. For a delete this is the stock as it was before it was removed.
+     *
+     * @return the stock
+     */
+    public Stock getStock() {
+        return stock;
+    }
+
+    /**
+     * Returns the stock that an update replaced. It is only available to in-process listeners and is not
+     * serialized.
+     *
+     * @return the previous stock, or null for a create, a delete or an event read back from a change log
+     */
+    @JsonIgnore
+    public Stock getPrevious() {
+        return previous;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,28 @@
+package com.cbfacademy.apiassessment.stock;
+
+/**
+ * The StockChangeListener interface is implemented by components that react to repository writes.
+ *
+ * <p>Listeners are called on the writing thread, in write order, while the repository still holds its
+ * write lock. Implementations must therefore be quick and must not call back into the repository;
+ * anything slow should be handed off to another thread.
+ */
+public interface StockChangeListener {
+
+    /**
+     * Called after a write has been applied and its snapshot published.
+     *
+     * @param event the change that was applied
+     */
+    void onStockChange(StockChangeEvent event);
+
+    /**
+     * Called when the repository contents have been replaced wholesale rather than changed by individual
+     * writes, as when a read replica resynchronises from its leader. Listeners that hold state derived from
+     * earlier changes should discard it. Called under the same conditions as {@link #onStockChange}.
+     *
+     * @param snapshot the snapshot that replaced the previous contents
+     */
+    default void onStockReset(StockSnapshot snapshot) {
+    }
+}
@@ -1,21 +1,35 @@
 package com.cbfacademy.apiassessment.stock;
 
+import com.cbfacademy.apiassessment.changes.ChangeBatch;
+import com.cbfacademy.apiassessment.changes.ChangeLog;
+import com.cbfacademy.apiassessment.core.PersistenceException;
+import com.cbfacademy.apiassessment.history.OhlcBar;
+import com.cbfacademy.apiassessment.history.PriceHistory;
+import com.cbfacademy.apiassessment.search.FilterSyntaxException;
+import com.cbfacademy.apiassessment.stream.StockChangeStream;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.micrometer.common.util.StringUtils;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * The StockController class handles HTTP requests related to stocks.
@@ -31,13 +45,176 @@ public class StockController {
 
     private final StockService stockService;
 
+    /**
+     * The priceHistory variable holds the recent price ticks of every stock, used for the history endpoint.
+     */
+    private final PriceHistory priceHistory;
+
+    /**
+     * The writeOperations variable tracks writes accepted with 202 Accepted until clients have collected them.
+     */
+    private final WriteOperationRegistry writeOperations;
+
+    /**
+     * The changeStream variable fans stock changes out to clients of the Server-Sent Events endpoint.
+     */
+    private final StockChangeStream changeStream;
+
+    /**
+     * The changeLog variable holds the sequenced record of recent changes, used for the incremental change feed.
+     */
+    private final ChangeLog changeLog;
+
+    /**
+     * The response header carrying the plan chosen for a filter query.
+     */
+    static final String QUERY_PLAN_HEADER = "X-Query-Plan";
+
+    /**
+     * The attributes stocks can be sorted by through the sort endpoint.
+     */
+    public static final List<String> SORT_ATTRIBUTES = List.of("name", "currentPrice", "purchasePrice", "quantity");
+
     /**
      * The StockController class is responsible for handling HTTP requests related to managing stocks.
      */
 
     @Autowired
-    public StockController(StockService stockService) {
+    public StockController(StockService stockService, PriceHistory priceHistory,
+                           WriteOperationRegistry writeOperations, StockChangeStream changeStream,
+                           ChangeLog changeLog) {
         this.stockService = stockService;
+        this.priceHistory = priceHistory;
+        this.writeOperations = writeOperations;
+        this.changeStream = changeStream;
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * Tells whether the client asked for the write to be acknowledged before it is persisted, using the
+     * {@code Prefer: respond-async} request header (RFC 7240).
+     *
+     * @param prefer the value of the Prefer header, may be null
+     * @return true if the write should be answered with 202 Accepted
+     */
+    private static boolean respondAsync(String prefer) {
+        return prefer != null && prefer.toLowerCase().contains("respond-async");
+    }
+
+    /**
+     * Builds the 202 Accepted response for an asynchronous write. The Location header points at the
+     * operation resource that reports when the write has completed.
+     *
+     * @param write submits the write and returns its future
+     * @return the 202 Accepted response, or 503 Service Unavailable with Retry-After if the write was refused
+     *         because too many writes are waiting to be persisted
+     */
+    private ResponseEntity<Object> accepted(Supplier<CompletableFuture<?>> write) {
+        return accepted(write, HttpStatus.OK);
+    }
+
+    /**
+     * Builds the 202 Accepted response for an asynchronous write whose operation reports the given status
+     * once the write succeeds, such as 201 Created for a new stock.
+     *
+     * @param write submits the write and returns its future
+     * @param successStatus the status of the completed write
+     * @return the 202 Accepted response, or 503 Service Unavailable with Retry-After if the write was refused
+     *         because too many writes are waiting to be persisted
+     */
+    private ResponseEntity<Object> accepted(Supplier<CompletableFuture<?>> write, HttpStatus successStatus) {
+        CompletableFuture<?> submitted;
+        try {
+            submitted = write.get();
+        } catch (WriteQueueFullException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(Map.of("error", e.getMessage()));
+        }
+        WriteOperation operation = writeOperations.track(submitted, successStatus.value());
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/api/stocks/operations/{id}").buildAndExpand(operation.getId()).toUri())
+                .body(operation);
+    }
+
+    /**
+     * Formats the version of a stock as the strong entity tag sent in the ETag header, such as {@code "3"}.
+     *
+     * @param stock the stock
+     * @return the entity tag
+     */
+    static String entityTag(Stock stock) {
+        return "\"" + stock.getVersion() + "\"";
+    }
+
+    /**
+     * Reads the version a client requires from an {@code If-Match} header (RFC 9110). Versions are compared
+     * strongly, so the header must hold a single strong entity tag as sent in the ETag header, or {@code *}.
+     *
+     * @param ifMatch the value of the If-Match header, may be null
+     * @return the required version, {@link StockRepository#ANY_VERSION} if there is no header or it is {@code *},
+     *         or null if the header cannot name a version of a stock
+     */
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return StockRepository.ANY_VERSION;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return null;
+        }
+        try {
+            long version = Long.parseLong(tag.substring(1, tag.length() - 1));
+            return version < 0 ? null : version;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether an {@code If-None-Match} header matches the current version of a stock. Entity tags are
+     * compared weakly, as RFC 9110 requires for this header.
+     *
+     * @param ifNoneMatch the value of the If-None-Match header, may be null
+     * @param stock the stock
+     * @return true if the client already holds the current version
+     */
+    private static boolean matchesAny(String ifNoneMatch, Stock stock) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String current = entityTag(stock);
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the response for a write refused because the stock has been changed since the client read it:
+     * 412 Precondition Failed if the version came from If-Match, 409 Conflict if it came from the body.
+     *
+     * @param e the conflict
+     * @return the error response, carrying the current version
+     */
+    private static ResponseEntity<Object> conflict(StockVersionConflictException e) {
+        return new ResponseEntity<>(Map.of("error", e.getMessage(), "currentVersion", e.getCurrentVersion()),
+                e.isPrecondition() ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT);
+    }
+
+    /**
+     * The response to an If-Match header that cannot name a version of a stock.
+     */
+    private static ResponseEntity<Object> malformedPrecondition() {
+        return new ResponseEntity<>(Map.of("error", "If-Match must be * or a single entity tag such as \"3\""),
+                HttpStatus.PRECONDITION_FAILED);
     }
 
     /**
@@ -66,7 +243,7 @@ public class StockController {
                     return new ResponseEntity<>(HttpStatus.NO_CONTENT);
                 }
                 return new ResponseEntity<>(stocks, HttpStatus.OK);
-            } catch (Exception e) {
+            } catch (PersistenceException e) {
                 return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
             }
 
@@ -76,8 +253,10 @@ public class StockController {
      * Retrieves a stock by its ticker symbol.
      *
      * @param ticker The ticker symbol of the stock to retrieve.
-     * @return ResponseEntity object containing the retrieved stock.
+     * @param ifNoneMatch The entity tags of the versions the client already holds, if any.
+     * @return ResponseEntity object containing the retrieved stock, with its version as the ETag header.
      *         Returns HttpStatus.OK (200) upon successful retrieval.
+     *         Returns HttpStatus.NOT_MODIFIED (304) if the client already holds the current version.
      *         Returns HttpStatus.NOT_FOUND (404) if the stock is not found.
      */
 
@@ -87,15 +266,69 @@ public class StockController {
             responses = {
                     @ApiResponse(description = "Successful retrieval", responseCode = "200",
                             content = @Content(schema = @Schema(implementation = Stock.class))),
+                    @ApiResponse(description = "The client holds the current version", responseCode = "304"),
                     @ApiResponse(description = "Stock not found", responseCode = "404")
             })
-    public ResponseEntity<Stock> getStockByTicker(@PathVariable String ticker) {
+    public ResponseEntity<Stock> getStockByTicker(@PathVariable String ticker,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                  String ifNoneMatch) {
         Stock stock = stockService.getStockByTicker(ticker);
         //check if stock is in system
         if (stock == null) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
-        return new ResponseEntity<>(stock, HttpStatus.OK);
+        if (matchesAny(ifNoneMatch, stock)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(entityTag(stock)).build();
+        }
+        return ResponseEntity.ok().eTag(entityTag(stock)).body(stock);
+    }
+
+    /**
+     * Retrieves several stocks by their tickers in one request, for views that show many stocks at once.
+     *
+     * @param tickers The tickers separated by commas, for example {@code AAPL,MSFT}.
+     * @return ResponseEntity object containing the stocks in the order of the tickers, with null in place of
+     *         each ticker that was not found, and the list of those tickers.
+     *         Returns HttpStatus.OK (200) whether or not every stock was found.
+     *         Returns HttpStatus.BAD_REQUEST (400) if there are no tickers, more than
+     *         {@link StockLookup#MAX_TICKERS}, or a blank one.
+     */
+
+    @GetMapping(params = "tickers")
+    @Operation(summary = "Retrieve several stocks", description = "Retrieves the stocks for a comma-separated list of tickers, in the same order",
+            responses = {
+                    @ApiResponse(description = "Successful retrieval, with the tickers not found", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = StockLookup.class))),
+                    @ApiResponse(description = "Invalid list of tickers", responseCode = "400")
+            })
+    public ResponseEntity<Object> getStocksByTickers(@RequestParam String tickers) {
+        return lookup(StockLookup.parseTickers(tickers));
+    }
+
+    /**
+     * Retrieves several stocks by their tickers, for lists too long to fit in a query string.
+     *
+     * @param tickers The tickers, as a JSON array.
+     * @return ResponseEntity object as for {@link #getStocksByTickers(String)}.
+     */
+
+    @PostMapping("/lookup")
+    @Operation(summary = "Retrieve several stocks", description = "Retrieves the stocks for a JSON array of tickers, in the same order",
+            responses = {
+                    @ApiResponse(description = "Successful retrieval, with the tickers not found", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = StockLookup.class))),
+                    @ApiResponse(description = "Invalid list of tickers", responseCode = "400")
+            })
+    public ResponseEntity<Object> lookupStocks(@RequestBody List<String> tickers) {
+        return lookup(tickers);
+    }
+
+    private ResponseEntity<Object> lookup(List<String> tickers) {
+        try {
+            return new ResponseEntity<>(stockService.lookupStocks(tickers), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
     }
 
     /**
@@ -103,7 +336,9 @@ public class StockController {
      *
      * @param stock The stock or stocks to be saved.
      * @return ResponseEntity object containing the saved stock or an error message.
-     *         Returns HttpStatus.CREATED (201) if the stock is successfully saved.
+     *         Returns HttpStatus.CREATED (201) if the stock is successfully saved, with its version as the ETag.
+     *         Returns HttpStatus.ACCEPTED (202) with an operation handle if the request carries
+     *         {@code Prefer: respond-async}; the stock is then persisted in the background.
      *         Returns HttpStatus.BAD_REQUEST (400) if the stock with the same ticker already exists
      *         or if there are validation errors in the stock data.
      *         Returns HttpStatus.NOT_FOUND (404) if there is an error adding the stock.
@@ -115,13 +350,18 @@ public class StockController {
             responses = {
                     @ApiResponse(description = "Successful creation of a stock", responseCode = "201",
                             content = @Content(schema = @Schema(implementation = Stock.class))),
+                    @ApiResponse(description = "Creation accepted, sent with Prefer: respond-async", responseCode = "202",
+                            content = @Content(schema = @Schema(implementation = WriteOperation.class))),
+                    @ApiResponse(description = "Too many asynchronous writes waiting to be persisted",
+                            responseCode = "503"),
                     @ApiResponse(description = "Validation error", responseCode = "400"),
                     @ApiResponse(description = "Error adding stock", responseCode = "404"),
                     @ApiResponse(description = "Internal server error", responseCode = "500")
 
             })
 
-    public ResponseEntity<Object> saveStock(@RequestBody Stock stock) {
+    public ResponseEntity<Object> saveStock(@RequestBody Stock stock,
+                                            @RequestHeader(value = "Prefer", required = false) String prefer) {
         if (stockService.getStockByTicker(stock.getTicker()) != null) {
             return new ResponseEntity<>(Map.of("error", "Stock with ticker " + stock.getTicker() +
                     " already exists."), HttpStatus.BAD_REQUEST);
@@ -130,9 +370,15 @@ public class StockController {
         if (!validationErrors.isEmpty()) {
             return new ResponseEntity<>(Map.of("errors", validationErrors), HttpStatus.BAD_REQUEST);
         }
+        if (respondAsync(prefer)) {
+            return accepted(() -> stockService.saveStockAsync(stock), HttpStatus.CREATED);
+        }
         try {
             Stock savedStock = stockService.saveStock(stock);
-            return new ResponseEntity<>(savedStock, HttpStatus.CREATED);
+            return ResponseEntity.status(HttpStatus.CREATED).eTag(entityTag(savedStock)).body(savedStock);
+        } catch (DuplicateStockException e) {
+            // Another request created the ticker after the check above
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
         } catch (StockNotFoundException e) {
             return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.NOT_FOUND);
         } catch (Exception e) {
@@ -170,11 +416,20 @@ public class StockController {
     /**
      * Updates the information of an existing stock in the system.
      *
+     * <p>Updates are optimistic: a client that sends back the version it read, either as the {@code version}
+     * field of the body or as an {@code If-Match} entity tag, only overwrites the stock if nobody has written it
+     * since. Without either, the update is unconditional.
+     *
      * @param stock The Stock object containing the updated information.
+     * @param ifMatch The entity tag of the version the client read, if any.
      * @return ResponseEntity object containing the updated stock or an error message.
-     *         Returns HttpStatus.OK (200) if the stock is successfully updated.
+     *         Returns HttpStatus.OK (200) if the stock is successfully updated, with its new version as the ETag.
+     *         Returns HttpStatus.ACCEPTED (202) with an operation handle if the request carries
+     *         {@code Prefer: respond-async}; the update is then persisted in the background.
      *         Returns HttpStatus.NOT_FOUND (404) if the stock is not found.
      *         Returns HttpStatus.BAD_REQUEST (400) if the stock or its ticker is null.
+     *         Returns HttpStatus.CONFLICT (409) if the stock is no longer at the version in the body.
+     *         Returns HttpStatus.PRECONDITION_FAILED (412) if the stock is no longer at the If-Match version.
      *         Returns HttpStatus.INTERNAL_SERVER_ERROR (500) if an unexpected error occurs.
      */
 
@@ -183,34 +438,132 @@ public class StockController {
             responses = {
                     @ApiResponse(description = "Successful update", responseCode = "200",
                             content = @Content(schema = @Schema(implementation = Stock.class))),
-                    @ApiResponse(description = "Error updating stock", responseCode = "404")
+                    @ApiResponse(description = "Update accepted, sent with Prefer: respond-async", responseCode = "202",
+                            content = @Content(schema = @Schema(implementation = WriteOperation.class))),
+                    @ApiResponse(description = "Too many asynchronous writes waiting to be persisted",
+                            responseCode = "503"),
+                    @ApiResponse(description = "Error updating stock", responseCode = "404"),
+                    @ApiResponse(description = "The stock was changed since the version in the body", responseCode = "409"),
+                    @ApiResponse(description = "The stock was changed since the If-Match version", responseCode = "412")
             })
-    public ResponseEntity<Stock> updateStock(@RequestBody Stock stock) {
+    public ResponseEntity<Object> updateStock(@RequestBody Stock stock,
+                                              @RequestHeader(value = "Prefer", required = false) String prefer,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                              String ifMatch) {
 
         if (stock == null || stock.getTicker() == null) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
+        Long expectedVersion = expectedVersion(ifMatch);
+        if (expectedVersion == null) {
+            return malformedPrecondition();
+        }
+        if (respondAsync(prefer)) {
+            return accepted(() -> stockService.updateStockAsync(stock, expectedVersion));
+        }
         try {
-            Stock updatedStock = stockService.updateStock(stock);
+            Stock updatedStock = stockService.updateStock(stock, expectedVersion);
             if (updatedStock == null) {
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
-            return new ResponseEntity<>(updatedStock, HttpStatus.OK);
+            return ResponseEntity.ok().eTag(entityTag(updatedStock)).body(updatedStock);
         } catch (StockNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (StockVersionConflictException e) {
+            return conflict(e);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
 
     }
 
+    /**
+     * Applies a partial update to an existing stock.
+     *
+     * <p>The body is a JSON Merge Patch ({@code application/merge-patch+json}, or plain JSON): the fields it
+     * names are set and the others are left as they are. A numeric field may instead be given as
+     * {@code {"$inc": n}} to add {@code n} to it atomically, so that {@code {"quantity": {"$inc": 5}}} from
+     * several clients at once adds up without any of them sending a version. Only the touched fields are
+     * persisted. As with PUT, a {@code version} in the body or an {@code If-Match} tag makes the patch
+     * conditional.
+     *
+     * @param ticker The ticker of the stock to patch.
+     * @param document The merge patch document.
+     * @param ifMatch The entity tag of the version the client read, if any.
+     * @return ResponseEntity object containing the patched stock or an error message.
+     *         Returns HttpStatus.OK (200) if the stock is patched, with its new version as the ETag.
+     *         Returns HttpStatus.ACCEPTED (202) with an operation handle if the request carries
+     *         {@code Prefer: respond-async}; the patch is then persisted in the background.
+     *         Returns HttpStatus.BAD_REQUEST (400) if the patch is malformed, tries to change the ticker, or
+     *         would make a field negative.
+     *         Returns HttpStatus.NOT_FOUND (404) if the stock is not found.
+     *         Returns HttpStatus.CONFLICT (409) if the stock is no longer at the version in the body.
+     *         Returns HttpStatus.PRECONDITION_FAILED (412) if the stock is no longer at the If-Match version.
+     *         Returns HttpStatus.INTERNAL_SERVER_ERROR (500) if an unexpected error occurs.
+     */
+
+    @PatchMapping("/{ticker}")
+    @Operation(summary = "Patch a stock", description = "Set or increment some fields of an existing stock with a JSON Merge Patch",
+            responses = {
+                    @ApiResponse(description = "Successful patch", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = Stock.class))),
+                    @ApiResponse(description = "Patch accepted, sent with Prefer: respond-async", responseCode = "202",
+                            content = @Content(schema = @Schema(implementation = WriteOperation.class))),
+                    @ApiResponse(description = "Too many asynchronous writes waiting to be persisted",
+                            responseCode = "503"),
+                    @ApiResponse(description = "Invalid patch", responseCode = "400"),
+                    @ApiResponse(description = "Stock not found", responseCode = "404"),
+                    @ApiResponse(description = "The stock was changed since the version in the body", responseCode = "409"),
+                    @ApiResponse(description = "The stock was changed since the If-Match version", responseCode = "412")
+            })
+    public ResponseEntity<Object> patchStock(@PathVariable String ticker,
+                                             @RequestBody JsonNode document,
+                                             @RequestHeader(value = "Prefer", required = false) String prefer,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                             String ifMatch) {
+        StockPatch patch;
+        try {
+            patch = StockPatch.parse(document);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+        if (patch.getTicker() != null && !patch.getTicker().equals(ticker)) {
+            return new ResponseEntity<>(Map.of("error", "The ticker of a stock cannot be changed."),
+                    HttpStatus.BAD_REQUEST);
+        }
+        Long expectedVersion = expectedVersion(ifMatch);
+        if (expectedVersion == null) {
+            return malformedPrecondition();
+        }
+        if (respondAsync(prefer)) {
+            return accepted(() -> stockService.patchStockAsync(ticker, patch, expectedVersion));
+        }
+        try {
+            Stock patchedStock = stockService.patchStock(ticker, patch, expectedVersion);
+            return ResponseEntity.ok().eTag(entityTag(patchedStock)).body(patchedStock);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        } catch (StockNotFoundException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.NOT_FOUND);
+        } catch (StockVersionConflictException e) {
+            return conflict(e);
+        } catch (Exception e) {
+            return new ResponseEntity<>(Map.of("error", "Internal server error"), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     /**
      * Deletes a stock from the system based on the given ticker symbol.
      *
      * @param ticker The ticker symbol of the stock to be deleted.
+     * @param ifMatch The entity tag of the version the client read, if any; the stock is then only deleted if
+     *                nobody has written it since.
      * @return A ResponseEntity object.
      *         Returns HttpStatus.NO_CONTENT (204) upon successful deletion.
+     *         Returns HttpStatus.ACCEPTED (202) with an operation handle if the request carries
+     *         {@code Prefer: respond-async}; the deletion is then persisted in the background.
      *         Returns HttpStatus.NOT_FOUND (404) if the stock to be deleted does not exist.
+     *         Returns HttpStatus.PRECONDITION_FAILED (412) if the stock is no longer at the If-Match version.
      *         Returns HttpStatus.INTERNAL_SERVER_ERROR (500) if an unexpected error occurs.
      */
 
@@ -219,16 +572,33 @@ public class StockController {
             responses = {
                     @ApiResponse(description = "Successful deletion", responseCode = "204",
                             content = @Content(schema = @Schema(implementation = Stock.class))),
-                    @ApiResponse(description = "Error deleting stock", responseCode = "404")
+                    @ApiResponse(description = "Deletion accepted, sent with Prefer: respond-async", responseCode = "202",
+                            content = @Content(schema = @Schema(implementation = WriteOperation.class))),
+                    @ApiResponse(description = "Too many asynchronous writes waiting to be persisted",
+                            responseCode = "503"),
+                    @ApiResponse(description = "Error deleting stock", responseCode = "404"),
+                    @ApiResponse(description = "The stock was changed since the If-Match version", responseCode = "412")
             })
-    public ResponseEntity<?> deleteStock(@PathVariable String ticker) {
+    public ResponseEntity<?> deleteStock(@PathVariable String ticker,
+                                         @RequestHeader(value = "Prefer", required = false) String prefer,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false)
+                                         String ifMatch) {
+        Long expectedVersion = expectedVersion(ifMatch);
+        if (expectedVersion == null) {
+            return malformedPrecondition();
+        }
+        if (respondAsync(prefer)) {
+            return accepted(() -> stockService.deleteStockAsync(ticker, expectedVersion));
+        }
         try {
-            stockService.deleteStock(ticker);
+            stockService.deleteStock(ticker, expectedVersion);
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
 
         } catch(StockNotFoundException e) {
             // Handle the case where the stock to be deleted does not exist
             return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.NOT_FOUND);
+        } catch (StockVersionConflictException e) {
+            return conflict(e);
         } catch (Exception e) {
             // Handle other unexpected exceptions
             return new ResponseEntity<>(Map.of("error", "Internal server error"), HttpStatus.INTERNAL_SERVER_ERROR);
@@ -257,9 +627,7 @@ public class StockController {
                     @ApiResponse(description = "Error sorting by attribute", responseCode = "404")
             })
     public ResponseEntity<Object> sortStocks(@RequestParam String attribute) {
-        // List of valid attributes that you can sort by
-        List<String> validAttributes = Arrays.asList("name", "currentPrice", "purchasePrice", "quantity");
-        if (!validAttributes.contains(attribute)) {
+        if (!SORT_ATTRIBUTES.contains(attribute)) {
             return new ResponseEntity<>("Attribute not valid, stocks can be sorted by either: name, currentPrice, purchasePrice or quantity", HttpStatus.BAD_REQUEST);
         }
         try {
@@ -290,7 +658,7 @@ public class StockController {
                     @ApiResponse(description = "Filter unsuccessful", responseCode = "404")
             })
     public ResponseEntity<Stock> searchStockByName(@PathVariable String name) {
-        Stock stock = stockService.searchByName(stockService.getAllStocks(), name);
+        Stock stock = stockService.searchByName(null, name);
         if (stock != null) {
             return ResponseEntity.ok(stock);
         } else {
@@ -324,6 +692,167 @@ public class StockController {
         return ResponseEntity.ok(stocks);
     }
 
+    /**
+     * Finds the stocks matching a filter expression.
+     *
+     * @param filter The filter expression, for example
+     *               {@code sector == "Technology" && currentPrice > 100 && quantity >= 10}.
+     * @return A ResponseEntity object containing the matching stocks, with the query plan in the
+     *         {@code X-Query-Plan} header.
+     *         Returns HttpStatus.OK (200) if the query is evaluated, even when no stocks match.
+     *         Returns HttpStatus.BAD_REQUEST (400) if the filter expression is malformed.
+     */
+
+    @GetMapping("/query")
+    @Operation(summary = "Query stocks with a filter expression", description = "Evaluates an expression such as" +
+            " sector == \"Technology\" && currentPrice > 100 && quantity >= 10. Fields are compared with" +
+            " ==, !=, >, >=, < and <=, and combined with &&, || and !. The plan used to evaluate the query is" +
+            " returned in the X-Query-Plan header.",
+            responses = {
+                    @ApiResponse(description = "Query successful", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = Stock.class))),
+                    @ApiResponse(description = "Filter expression not valid", responseCode = "400")
+            })
+    public ResponseEntity<Object> queryStocks(@RequestParam String filter) {
+        try {
+            QueryResult result = stockService.queryStocks(filter);
+            return ResponseEntity.ok()
+                    .header(QUERY_PLAN_HEADER, result.getPlan())
+                    .body(result.getStocks());
+        } catch (FilterSyntaxException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Retrieves the recent price history of a stock as open/high/low/close bars.
+     *
+     * @param ticker The ticker symbol of the stock.
+     * @param interval The width of each bar, for example 30s, 1m, 1h or 1d.
+     * @return A ResponseEntity object containing the bars from oldest to newest.
+     *         Returns HttpStatus.OK (200) with the bars, which may be empty if no prices have been recorded.
+     *         Returns HttpStatus.BAD_REQUEST (400) if the interval is not valid.
+     *         Returns HttpStatus.NOT_FOUND (404) if the stock is not found.
+     */
+
+    @GetMapping("/{ticker}/history")
+    @Operation(summary = "Retrieve the price history of a stock", description = "Returns the recorded price" +
+            " changes of a stock downsampled into open/high/low/close bars of the requested interval.",
+            responses = {
+                    @ApiResponse(description = "Successful retrieval", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = OhlcBar.class))),
+                    @ApiResponse(description = "Interval not valid", responseCode = "400"),
+                    @ApiResponse(description = "Stock not found", responseCode = "404")
+            })
+    public ResponseEntity<Object> getPriceHistory(@PathVariable String ticker,
+                                                  @RequestParam(defaultValue = "1m") String interval) {
+        long intervalMillis;
+        try {
+            intervalMillis = PriceHistory.parseInterval(interval);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(Map.of("error", e.getMessage()), HttpStatus.BAD_REQUEST);
+        }
+        if (stockService.getStockByTicker(ticker) == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        List<OhlcBar> bars = priceHistory.bars(ticker, intervalMillis);
+        return new ResponseEntity<>(bars, HttpStatus.OK);
+    }
+
+    /**
+     * Opens a Server-Sent Events stream of stock changes.
+     *
+     * @param tickers Optional comma-separated tickers to receive changes for; all tickers if omitted.
+     * @param sector Optional sector to receive changes for; all sectors if omitted.
+     * @return A ResponseEntity object holding the event stream. Each event is named created, updated or
+     *         deleted, has the repository version as its id and the change as its data. Changes to the same
+     *         ticker that a slow client has not yet received are coalesced into the latest one, and an
+     *         overflow event reports how many changes were dropped when the client fell too far behind.
+     *         Returns HttpStatus.OK (200) with the stream.
+     *         Returns HttpStatus.SERVICE_UNAVAILABLE (503) if too many clients are already subscribed.
+     */
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream stock changes", description = "Pushes every create, update and delete as a" +
+            " Server-Sent Event, optionally filtered by ticker or sector. A client that falls behind receives" +
+            " only the latest change of each stock.",
+            responses = {
+                    @ApiResponse(description = "Stream opened", responseCode = "200"),
+                    @ApiResponse(description = "Too many subscribers", responseCode = "503")
+            })
+    public ResponseEntity<SseEmitter> streamChanges(@RequestParam(required = false) List<String> tickers,
+                                                    @RequestParam(required = false) String sector) {
+        Set<String> tickerFilter = tickers == null ? Set.of() : Set.copyOf(tickers);
+        try {
+            return new ResponseEntity<>(changeStream.subscribe(tickerFilter, sector), HttpStatus.OK);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+    }
+
+    /**
+     * Retrieves the changes made since a sequence number, for clients that keep their own copy of the stocks.
+     *
+     * @param since The sequence number of the last change the client has applied, as returned in {@code next}.
+     * @param epoch Optional epoch returned with the previous batch; a cursor from another epoch is not valid.
+     * @param limit The largest number of changes to return.
+     * @return A ResponseEntity object containing the batch of changes in sequence order.
+     *         Returns HttpStatus.OK (200) with the changes, which may be empty if the client is up to date.
+     *         Returns HttpStatus.BAD_REQUEST (400) if the limit is not positive.
+     *         Returns HttpStatus.GONE (410) with resyncRequired set if the cursor has aged out of the change log;
+     *         the client must then reload all stocks and continue from the returned {@code next}.
+     */
+
+    @GetMapping("/changes")
+    @Operation(summary = "Retrieve changes since a sequence number", description = "Returns the creates, updates" +
+            " and deletes made after the given sequence number, oldest first. Pass the returned next and epoch back" +
+            " to fetch the following batch.",
+            responses = {
+                    @ApiResponse(description = "Changes retrieved", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = ChangeBatch.class))),
+                    @ApiResponse(description = "Limit not valid", responseCode = "400"),
+                    @ApiResponse(description = "Cursor too old, full resync required", responseCode = "410",
+                            content = @Content(schema = @Schema(implementation = ChangeBatch.class)))
+            })
+    public ResponseEntity<Object> getChanges(@RequestParam long since,
+                                             @RequestParam(required = false) String epoch,
+                                             @RequestParam(defaultValue = "1000") int limit) {
+        if (limit < 1) {
+            return new ResponseEntity<>(Map.of("error", "Limit must be positive"), HttpStatus.BAD_REQUEST);
+        }
+        ChangeBatch batch = changeLog.changesSince(since, epoch, limit);
+        return new ResponseEntity<>(batch, batch.isResyncRequired() ? HttpStatus.GONE : HttpStatus.OK);
+    }
+
+    /**
+     * Reports the progress of a write that was accepted with 202 Accepted.
+     *
+     * @param id The id of the operation, as returned in the Location header of the 202 response.
+     * @return A ResponseEntity object containing the operation state and, once complete, its result or error.
+     *         Returns HttpStatus.OK (200) if the operation is known.
+     *         Returns HttpStatus.NOT_FOUND (404) if the operation is unknown or has been forgotten.
+     */
+
+    @GetMapping("/operations/{id}")
+    @Operation(summary = "Check an accepted write", description = "Returns whether a write that was sent with" +
+            " Prefer: respond-async is still pending, has succeeded or has failed.",
+            responses = {
+                    @ApiResponse(description = "Operation found", responseCode = "200",
+                            content = @Content(schema = @Schema(implementation = WriteOperation.class))),
+                    @ApiResponse(description = "Too many asynchronous writes waiting to be persisted",
+                            responseCode = "503"),
+                    @ApiResponse(description = "Operation not found", responseCode = "404")
+            })
+    public ResponseEntity<WriteOperation> getWriteOperation(@PathVariable String id) {
+        WriteOperation operation = writeOperations.find(id);
+        if (operation == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(operation, HttpStatus.OK);
+    }
+
 
 
 }
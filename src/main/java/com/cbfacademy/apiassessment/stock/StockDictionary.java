@@ -0,0 +1,128 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.HeapEstimate;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The StockDictionary class dictionary-encodes low-cardinality string attributes of a {@link Stock}.
+ *
+ * <p>Sectors and currency symbols only take a handful of distinct values, yet every stock read from
+ * JSON would otherwise hold its own copy of each string. A stock stores the integer id handed out
+ * here instead, and the string is looked up again when the stock is serialized. Id 0 is reserved
+ * for null. Lookups by id are lock-free; registering a new value takes a lock, and the decoding table doubles
+ * when it is full, so registering n values copies O(n) slots in all.
+ *
+ * <p>Values are never forgotten, since any stock may still hold their id. So that a stream of distinct values
+ * cannot grow a dictionary without bound, each holds at most {@value #MAX_VALUES} values, far more than there
+ * are sectors or currencies; a value beyond that is rejected.
+ */
+public final class StockDictionary {
+    /**
+     * The most distinct values a dictionary holds.
+     */
+    public static final int MAX_VALUES = 10_000;
+
+    /**
+     * The dictionary of sector names.
+     */
+    public static final StockDictionary SECTORS = new StockDictionary("sector", MAX_VALUES);
+
+    /**
+     * The dictionary of currency symbols.
+     */
+    public static final StockDictionary CURRENCIES = new StockDictionary("currency", MAX_VALUES);
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String name;
+    private final int maxValues;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[INITIAL_CAPACITY];
+
+    /**
+     * The number of ids handed out, including 0 for null.
+     */
+    private volatile int count = 1;
+
+    StockDictionary(String name, int maxValues) {
+        this.name = name;
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * Returns the id for the given value, registering it if it has not been seen before.
+     *
+     * @param value the string to encode, may be null
+     * @return the id of the value
+     * @throws IllegalArgumentException if the value is new and the dictionary is full
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = ids.get(value);
+        return id != null ? id : register(value);
+    }
+
+    /**
+     * Returns the string registered under the given id.
+     *
+     * @param id an id previously returned by {@link #encode(String)}
+     * @return the decoded string, or null for id 0
+     */
+    public String decode(int id) {
+        return values[id];
+    }
+
+    /**
+     * Returns the number of distinct values registered, not counting null.
+     *
+     * @return the dictionary size
+     */
+    public int size() {
+        return count - 1;
+    }
+
+    /**
+     * Estimates the heap held by the dictionary: every registered string, its entry in the lookup map and its
+     * slot in the decoding table.
+     *
+     * @return the estimated bytes
+     */
+    public long estimateBytes() {
+        int used = count;
+        String[] table = values;
+        // Each entry also boxes its id as an Integer of 16 bytes
+        long bytes = HeapEstimate.referenceArray(table.length) + HeapEstimate.hashMap(used - 1)
+                + 16L * (used - 1);
+        for (int id = 1; id < used; id++) {
+            bytes += HeapEstimate.string(table[id]);
+        }
+        return bytes;
+    }
+
+    private synchronized int register(String value) {
+        Integer existing = ids.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int id = count;
+        if (id > maxValues) {
+            throw new IllegalArgumentException("Too many distinct " + name + " values: at most " + maxValues
+                    + " are supported");
+        }
+        String[] table = values;
+        if (id == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[id] = value;
+        // Publish the table and count before the id so a reader holding the id can always decode it
+        values = table;
+        count = id + 1;
+        ids.put(value, id);
+        return id;
+    }
+}
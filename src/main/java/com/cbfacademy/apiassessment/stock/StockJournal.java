@@ -0,0 +1,183 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.PersistenceException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The StockJournal class persists partial updates as deltas appended to a journal file, instead of rewriting
+ * the stocks they touched.
+ *
+ * <p>The journal lives next to the JSON file ({@code stocks.json.journal}) and holds one JSON object per line:
+ * the ticker, the version the patch produced and the new values of the fields it touched, as given by
+ * {@link StockPatch#delta(Stock)}. Appends are forced to disk before they are acknowledged. The journal only
+ * ever holds the changes made since the snapshot was last written in full: once it reaches
+ * {@code json.journal.compact-after} entries, or as soon as a write that is not a patch needs the snapshot
+ * rewritten anyway, the repository writes the snapshot and the journal is emptied.
+ *
+ * <p>At startup the journal is replayed onto the loaded snapshot. A delta is applied only to a stock at an older
+ * version, so deltas that already reached the snapshot before a crash are skipped, and a torn last line left
+ * by a crash ends the replay.
+ */
+class StockJournal {
+    private final Path file;
+    private final int compactAfter;
+    private final ObjectMapper mapper = StorageFormat.JSON.documentMapper();
+    private int entries;
+
+    /**
+     * Creates the journal of a JSON file.
+     *
+     * @param jsonFile the JSON file, next to which the journal is kept
+     * @param compactAfter the number of entries after which the snapshot is rewritten and the journal emptied
+     */
+    StockJournal(Path jsonFile, int compactAfter) {
+        this.file = jsonFile.resolveSibling(jsonFile.getFileName() + ".journal");
+        this.compactAfter = compactAfter;
+    }
+
+    /**
+     * Returns the path of the journal file.
+     *
+     * @return the journal file
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Tells whether appending some more entries would take the journal past its size limit, in which case the
+     * snapshot should be rewritten instead.
+     *
+     * @param more the number of entries to append
+     * @return true if the journal should be compacted
+     */
+    synchronized boolean isFull(int more) {
+        return entries + more > compactAfter;
+    }
+
+    /**
+     * Returns the number of deltas in the journal.
+     *
+     * @return the entry count
+     */
+    synchronized int size() {
+        return entries;
+    }
+
+    /**
+     * Tells whether the journal holds nothing, not even an incomplete entry.
+     *
+     * @return true if the journal is empty or does not exist
+     */
+    synchronized boolean isEmpty() {
+        try {
+            return entries == 0 && (!Files.exists(file) || Files.size(file) == 0);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replays the journal onto the stocks loaded from the snapshot.
+     *
+     * @param contents the stocks keyed by ticker, updated in place
+     * @return the tickers of the stocks that were changed
+     * @throws PersistenceException if the journal cannot be read
+     */
+    synchronized Set<String> replay(Map<String, Stock> contents) {
+        Set<String> changed = new LinkedHashSet<>();
+        if (!Files.exists(file)) {
+            return changed;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                ObjectNode delta;
+                try {
+                    delta = (ObjectNode) mapper.readTree(line);
+                } catch (IOException | ClassCastException e) {
+                    // The last append was torn by a crash and was never acknowledged
+                    System.out.println("Ignoring an incomplete entry at the end of " + file);
+                    break;
+                }
+                entries++;
+                String ticker = delta.remove("ticker").asText();
+                long version = delta.remove("version").asLong();
+                Stock current = contents.get(ticker);
+                if (current == null || current.getVersion() >= version) {
+                    continue;
+                }
+                Stock patched = StockPatch.parse(delta).applyTo(current);
+                patched.setVersion(version);
+                contents.put(ticker, patched);
+                changed.add(ticker);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new PersistenceException("Failed to replay journal " + file, e);
+        }
+        return changed;
+    }
+
+    /**
+     * Appends deltas to the journal and forces them to disk.
+     *
+     * @param deltas the deltas, in the order they were made
+     * @throws PersistenceException if the journal cannot be written
+     */
+    synchronized void append(List<ObjectNode> deltas) {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        try {
+            for (ObjectNode delta : deltas) {
+                lines.write(mapper.writeValueAsBytes(delta));
+                lines.write('\n');
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            entries += deltas.size();
+        } catch (IOException e) {
+            throw new PersistenceException("Failed to append to journal " + file, e);
+        }
+    }
+
+    /**
+     * Empties the journal, once the snapshot holds every change in it.
+     *
+     * @throws PersistenceException if the journal cannot be truncated
+     */
+    synchronized void clear() {
+        if (entries == 0 && !Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+            channel.force(true);
+            entries = 0;
+        } catch (IOException e) {
+            throw new PersistenceException("Failed to empty journal " + file, e);
+        }
+    }
+}
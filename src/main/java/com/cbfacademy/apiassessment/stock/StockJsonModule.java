@@ -0,0 +1,134 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * The StockJsonModule class registers hand-written streaming codecs for {@link Stock} with Jackson.
+ *
+ * <p>By default Jackson introspects {@link Stock} and reads and writes it through reflective bean property
+ * accessors. The codecs here instead write the fields straight to a {@link JsonGenerator} with pre-encoded
+ * field names, and read them token by token from a {@link JsonParser} into the setters. The JSON they produce
+ * is identical to the reflective representation, field order included, so existing files and clients are
+ * unaffected. {@code Map<String, Stock>} needs no codec of its own: Jackson's map support delegates every
+ * value to the {@link Stock} codec.
+ *
+ * <p>The module is a Spring bean, so Spring Boot adds it to the mappers used for HTTP request and response
+ * bodies, in JSON and in the binary formats. The repository reads and writes its files through
+ * {@link StorageFormat#documentMapper()} and the change log registers the module on its own mapper, so
+ * persistence and HTTP share the same codec.
+ */
+@Component
+public class StockJsonModule extends SimpleModule {
+
+    private static final SerializedString TICKER = new SerializedString("ticker");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString QUANTITY = new SerializedString("quantity");
+    private static final SerializedString VERSION = new SerializedString("version");
+    private static final SerializedString CURRENCY_SYMBOL = new SerializedString("currencySymbol");
+    private static final SerializedString CURRENT_PRICE = new SerializedString("currentPrice");
+    private static final SerializedString SECTOR = new SerializedString("sector");
+    private static final SerializedString PURCHASE_PRICE = new SerializedString("purchasePrice");
+
+    public StockJsonModule() {
+        super("StockJsonModule");
+        addSerializer(Stock.class, new StockSerializer());
+        addDeserializer(Stock.class, new StockDeserializer());
+    }
+
+    /**
+     * Writes a {@link Stock} as a JSON object in the same field order as the reflective serializer.
+     */
+    static final class StockSerializer extends StdSerializer<Stock> {
+
+        StockSerializer() {
+            super(Stock.class);
+        }
+
+        @Override
+        public void serialize(Stock stock, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(stock);
+            gen.writeFieldName(TICKER);
+            gen.writeString(stock.getTicker());
+            gen.writeFieldName(NAME);
+            gen.writeString(stock.getName());
+            gen.writeFieldName(QUANTITY);
+            gen.writeNumber(stock.getQuantity());
+            gen.writeFieldName(VERSION);
+            gen.writeNumber(stock.getVersion());
+            gen.writeFieldName(CURRENCY_SYMBOL);
+            gen.writeString(stock.getCurrencySymbol());
+            gen.writeFieldName(CURRENT_PRICE);
+            gen.writeNumber(stock.getCurrentPrice());
+            gen.writeFieldName(SECTOR);
+            gen.writeString(stock.getSector());
+            gen.writeFieldName(PURCHASE_PRICE);
+            gen.writeNumber(stock.getPurchasePrice());
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Reads a {@link Stock} from a JSON object. Fields may appear in any order and missing fields keep their
+     * defaults, as with the reflective deserializer. Unknown fields are skipped or rejected according to
+     * {@link com.fasterxml.jackson.databind.DeserializationFeature#FAIL_ON_UNKNOWN_PROPERTIES}, and scalar
+     * coercions follow the mapper's configuration.
+     */
+    static final class StockDeserializer extends StdDeserializer<Stock> {
+
+        StockDeserializer() {
+            super(Stock.class);
+        }
+
+        @Override
+        public Stock deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken token = p.currentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = p.nextToken();
+            } else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+                return (Stock) ctxt.handleUnexpectedToken(Stock.class, p);
+            }
+            Stock stock = new Stock();
+            for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "ticker" -> stock.setTicker(text(p, ctxt));
+                    case "name" -> stock.setName(text(p, ctxt));
+                    case "quantity" -> stock.setQuantity(_parseIntPrimitive(p, ctxt));
+                    case "version" -> stock.setVersion(_parseLongPrimitive(p, ctxt));
+                    case "currencySymbol" -> stock.setCurrencySymbol(text(p, ctxt));
+                    case "currentPrice" -> stock.setCurrentPrice(_parseDoublePrimitive(p, ctxt));
+                    case "sector" -> stock.setSector(text(p, ctxt));
+                    case "purchasePrice" -> stock.setPurchasePrice(_parseDoublePrimitive(p, ctxt));
+                    default -> handleUnknownProperty(p, ctxt, stock, field);
+                }
+            }
+            return stock;
+        }
+
+        private static String text(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken token = p.currentToken();
+            if (token == JsonToken.VALUE_STRING) {
+                return p.getText();
+            }
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (token.isScalarValue()) {
+                return p.getValueAsString();
+            }
+            return (String) ctxt.handleUnexpectedToken(String.class, p);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The StockLookup class holds the answer to a multi-get: the stocks for a list of tickers, in the order the
+ * tickers were asked for, with null in place of each ticker that was not found, and the tickers that were not
+ * found. A miss is part of the answer rather than an error, so one lookup answers a whole portfolio page.
+ */
+public class StockLookup {
+
+    /**
+     * The most tickers one lookup may ask for.
+     */
+    public static final int MAX_TICKERS = 1000;
+
+    private final List<Stock> stocks;
+    private final List<String> missing;
+
+    @JsonCreator
+    public StockLookup(@JsonProperty("stocks") List<Stock> stocks, @JsonProperty("missing") List<String> missing) {
+        this.stocks = stocks;
+        this.missing = missing;
+    }
+
+    /**
+     * Builds the answer to a lookup from the stocks found for its tickers.
+     *
+     * @param tickers the tickers asked for
+     * @param stocks the stock for each ticker in the same order, null where there is none
+     * @return the lookup
+     */
+    public static StockLookup of(List<String> tickers, List<Stock> stocks) {
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < tickers.size(); i++) {
+            if (stocks.get(i) == null) {
+                missing.add(tickers.get(i));
+            }
+        }
+        return new StockLookup(Collections.unmodifiableList(stocks), missing);
+    }
+
+    /**
+     * Splits a comma-separated list of tickers, as given in {@code GET /api/stocks?tickers=}.
+     *
+     * @param list the tickers separated by commas
+     * @return the trimmed tickers, in order
+     */
+    public static List<String> parseTickers(String list) {
+        return Arrays.stream(list.split(",", -1)).map(String::trim).toList();
+    }
+
+    /**
+     * Checks the tickers of a lookup.
+     *
+     * @param tickers the tickers asked for
+     * @throws IllegalArgumentException if there are none, too many, or a blank one
+     */
+    public static void requireValid(List<String> tickers) {
+        if (tickers == null || tickers.isEmpty()) {
+            throw new IllegalArgumentException("At least one ticker is required.");
+        }
+        if (tickers.size() > MAX_TICKERS) {
+            throw new IllegalArgumentException("At most " + MAX_TICKERS + " tickers can be looked up at once.");
+        }
+        for (String ticker : tickers) {
+            if (ticker == null || ticker.isBlank()) {
+                throw new IllegalArgumentException("Tickers cannot be blank.");
+            }
+        }
+    }
+
+    public List<Stock> getStocks() {
+        return stocks;
+    }
+
+    public List<String> getMissing() {
+        return missing;
+    }
+}
@@ -0,0 +1,260 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The StockPatch class is a partial update of a stock, read from a JSON Merge Patch document (RFC 7396).
+ *
+ * <p>Every member of the patch sets the field of the same name, and fields that are left out keep their value.
+ * A stock has no optional fields, so a member cannot be null. The numeric fields also accept an increment,
+ * written as {@code {"quantity": {"$inc": 5}}}, which is applied to the value the stock has when the patch is
+ * applied rather than the value the client last read, so concurrent increments are never lost. The
+ * {@code version} member is the version the client read, checked like the version in a PUT body, and
+ * {@code ticker}, if present, must name the stock being patched.
+ *
+ * <p>A patch is applied to a copy of the stock, because the stock itself is shared with the published
+ * snapshots. {@link #delta(Stock)} gives the fields the patch touched, with their new values, which is all the
+ * repository needs to persist.
+ */
+public final class StockPatch {
+    private static final String INCREMENT = "$inc";
+
+    private String ticker;
+    private long version;
+    private String name;
+    private String currencySymbol;
+    private String sector;
+    private Long currentPriceUnits;
+    private Long currentPriceIncrement;
+    private Integer quantity;
+    private Long quantityIncrement;
+    private Long purchasePriceUnits;
+    private Long purchasePriceIncrement;
+
+    private StockPatch() {
+    }
+
+    /**
+     * Reads a patch from a merge patch document.
+     *
+     * @param document the document, which must be a JSON object
+     * @return the patch
+     * @throws IllegalArgumentException if the document is not a valid patch of a stock
+     */
+    public static StockPatch parse(JsonNode document) {
+        if (document == null || !document.isObject()) {
+            throw new IllegalArgumentException("A stock patch must be a JSON object");
+        }
+        StockPatch patch = new StockPatch();
+        Iterator<Map.Entry<String, JsonNode>> members = document.fields();
+        while (members.hasNext()) {
+            Map.Entry<String, JsonNode> member = members.next();
+            String field = member.getKey();
+            JsonNode value = member.getValue();
+            if (value.isNull()) {
+                throw new IllegalArgumentException("The " + field + " of a stock cannot be removed.");
+            }
+            switch (field) {
+                case "ticker" -> patch.ticker = text(field, value);
+                case "version" -> {
+                    if (!value.canConvertToExactIntegral() || value.asLong() < 0) {
+                        throw new IllegalArgumentException("Version must be a non-negative whole number.");
+                    }
+                    patch.version = value.asLong();
+                }
+                case "name" -> {
+                    patch.name = text(field, value);
+                    if (patch.name.isBlank()) {
+                        throw new IllegalArgumentException("Stock name is required.");
+                    }
+                }
+                case "currencySymbol" -> patch.currencySymbol = text(field, value);
+                case "sector" -> patch.sector = text(field, value);
+                case "currentPrice" -> {
+                    if (isIncrement(value)) {
+                        patch.currentPriceIncrement = Stock.toUnits(number(field, value.get(INCREMENT)));
+                    } else {
+                        patch.currentPriceUnits = Stock.toUnits(price(field, value, "Current price"));
+                    }
+                }
+                case "purchasePrice" -> {
+                    if (isIncrement(value)) {
+                        patch.purchasePriceIncrement = Stock.toUnits(number(field, value.get(INCREMENT)));
+                    } else {
+                        patch.purchasePriceUnits = Stock.toUnits(price(field, value, "Purchase price"));
+                    }
+                }
+                case "quantity" -> {
+                    if (isIncrement(value)) {
+                        patch.quantityIncrement = wholeNumber(field, value.get(INCREMENT));
+                    } else {
+                        long quantity = wholeNumber(field, value);
+                        if (quantity < 0 || quantity > Integer.MAX_VALUE) {
+                            throw new IllegalArgumentException("Quantity cannot be negative.");
+                        }
+                        patch.quantity = (int) quantity;
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown stock field: " + field);
+            }
+        }
+        return patch;
+    }
+
+    private static boolean isIncrement(JsonNode value) {
+        return value.isObject() && value.size() == 1 && value.has(INCREMENT);
+    }
+
+    private static String text(String field, JsonNode value) {
+        if (!value.isTextual()) {
+            throw new IllegalArgumentException("The " + field + " of a stock must be a string.");
+        }
+        return value.textValue();
+    }
+
+    private static double number(String field, JsonNode value) {
+        if (value == null || !value.isNumber()) {
+            throw new IllegalArgumentException("The " + field + " of a stock must be a number or {\"" + INCREMENT
+                    + "\": number}.");
+        }
+        return value.doubleValue();
+    }
+
+    private static double price(String field, JsonNode value, String label) {
+        double price = number(field, value);
+        if (price < 0) {
+            throw new IllegalArgumentException(label + " cannot be negative.");
+        }
+        return price;
+    }
+
+    private static long wholeNumber(String field, JsonNode value) {
+        if (value == null || !value.isNumber() || !value.canConvertToExactIntegral() || !value.canConvertToLong()) {
+            throw new IllegalArgumentException("The " + field + " of a stock must be a whole number or {\""
+                    + INCREMENT + "\": whole number}.");
+        }
+        return value.asLong();
+    }
+
+    /**
+     * Returns the ticker named in the patch.
+     *
+     * @return the ticker, or null if the patch does not name one
+     */
+    public String getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Returns the version of the stock the client read.
+     *
+     * @return the version, or 0 if the patch does not name one
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Tells whether the patch changes nothing.
+     *
+     * @return true if no field is set or incremented
+     */
+    public boolean isEmpty() {
+        return name == null && currencySymbol == null && sector == null && currentPriceUnits == null
+                && currentPriceIncrement == null && quantity == null && quantityIncrement == null
+                && purchasePriceUnits == null && purchasePriceIncrement == null;
+    }
+
+    /**
+     * Applies the patch to a copy of a stock. The copy keeps the version of the stock.
+     *
+     * @param current the stock as it is now
+     * @return the patched copy
+     * @throws IllegalArgumentException if an increment would make a field negative or overflow
+     */
+    public Stock applyTo(Stock current) {
+        Stock patched = new Stock(current);
+        if (name != null) {
+            patched.setName(name);
+        }
+        if (currencySymbol != null) {
+            patched.setCurrencySymbol(currencySymbol);
+        }
+        if (sector != null) {
+            patched.setSector(sector);
+        }
+        if (currentPriceUnits != null) {
+            patched.setCurrentPriceUnits(currentPriceUnits);
+        } else if (currentPriceIncrement != null) {
+            patched.setCurrentPriceUnits(increment(current.getCurrentPriceUnits(), currentPriceIncrement,
+                    "Current price"));
+        }
+        if (purchasePriceUnits != null) {
+            patched.setPurchasePriceUnits(purchasePriceUnits);
+        } else if (purchasePriceIncrement != null) {
+            patched.setPurchasePriceUnits(increment(current.getPurchasePriceUnits(), purchasePriceIncrement,
+                    "Purchase price"));
+        }
+        if (quantity != null) {
+            patched.setQuantity(quantity);
+        } else if (quantityIncrement != null) {
+            long result = increment(current.getQuantity(), quantityIncrement, "Quantity");
+            if (result > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Quantity is too large.");
+            }
+            patched.setQuantity((int) result);
+        }
+        return patched;
+    }
+
+    private static long increment(long value, long increment, String label) {
+        long result;
+        try {
+            result = Math.addExact(value, increment);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(label + " is too large.");
+        }
+        if (result < 0) {
+            throw new IllegalArgumentException(label + " cannot be negative.");
+        }
+        return result;
+    }
+
+    /**
+     * Returns the fields the patch touched, with their values in the patched stock, together with the ticker
+     * and the new version. Increments are resolved to the values they produced, so the delta can be replayed
+     * onto the stock more than once with the same result.
+     *
+     * @param patched the stock the patch produced
+     * @return the delta as a JSON object
+     */
+    public ObjectNode delta(Stock patched) {
+        ObjectNode delta = JsonNodeFactory.instance.objectNode();
+        delta.put("ticker", patched.getTicker());
+        delta.put("version", patched.getVersion());
+        if (name != null) {
+            delta.put("name", patched.getName());
+        }
+        if (quantity != null || quantityIncrement != null) {
+            delta.put("quantity", patched.getQuantity());
+        }
+        if (currencySymbol != null) {
+            delta.put("currencySymbol", patched.getCurrencySymbol());
+        }
+        if (currentPriceUnits != null || currentPriceIncrement != null) {
+            delta.put("currentPrice", patched.getCurrentPrice());
+        }
+        if (sector != null) {
+            delta.put("sector", patched.getSector());
+        }
+        if (purchasePriceUnits != null || purchasePriceIncrement != null) {
+            delta.put("purchasePrice", patched.getPurchasePrice());
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,96 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.search.FilterExpression;
+import com.cbfacademy.apiassessment.search.StockField;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * The StockQueryPlanner class chooses how to evaluate a {@link FilterExpression} against a
+ * {@link StockRepository}.
+ *
+ * <p>When the expression is a conjunction containing {@code ticker == "..."} the stock is fetched
+ * with a point lookup, and when it contains {@code sector == "..."} the repository's sector search is
+ * used as the access path. The remaining conjuncts are compiled into a residual predicate. Any other
+ * expression falls back to a full scan, which runs as a parallel stream once the universe is large
+ * enough for the fork/join overhead to pay off.
+ */
+public class StockQueryPlanner {
+    /**
+     * The number of stocks from which a full scan is evaluated with a parallel stream.
+     */
+    static final int PARALLEL_SCAN_THRESHOLD = 10_000;
+
+    private final StockRepository stockRepository;
+
+    public StockQueryPlanner(StockRepository stockRepository) {
+        this.stockRepository = stockRepository;
+    }
+
+    /**
+     * Evaluates the expression and returns the matching stocks with the plan that produced them.
+     *
+     * @param expression the parsed filter expression
+     * @return the matching stocks and the query plan
+     */
+    public QueryResult execute(FilterExpression expression) {
+        List<FilterExpression> conjuncts = expression instanceof FilterExpression.And and
+                ? and.operands()
+                : List.of(expression);
+
+        FilterExpression.Comparison accessPath = findEquality(conjuncts, StockField.TICKER);
+        if (accessPath == null) {
+            accessPath = findEquality(conjuncts, StockField.SECTOR);
+        }
+
+        if (accessPath != null) {
+            List<FilterExpression> residual = new ArrayList<>(conjuncts);
+            residual.remove(accessPath);
+            List<Stock> candidates;
+            String scan;
+            if (accessPath.field() == StockField.TICKER) {
+                Stock stock = stockRepository.findById((String) accessPath.value());
+                candidates = stock == null ? Collections.emptyList() : List.of(stock);
+                scan = "PointLookup(" + accessPath + ")";
+            } else {
+                candidates = stockRepository.searchBySector((String) accessPath.value());
+                scan = "IndexLookup(" + accessPath + ")";
+            }
+            if (residual.isEmpty()) {
+                return new QueryResult(candidates, scan + " rows=" + candidates.size());
+            }
+            FilterExpression residualExpression = residual.size() == 1
+                    ? residual.get(0)
+                    : new FilterExpression.And(residual);
+            List<Stock> matches = candidates.stream()
+                    .filter(residualExpression.compile())
+                    .collect(Collectors.toList());
+            return new QueryResult(matches,
+                    scan + " -> Filter(" + residualExpression + ") rows=" + matches.size());
+        }
+
+        List<Stock> all = stockRepository.retrieveAll();
+        Predicate<Stock> predicate = expression.compile();
+        boolean parallel = all.size() >= PARALLEL_SCAN_THRESHOLD;
+        List<Stock> matches = (parallel ? all.parallelStream() : all.stream())
+                .filter(predicate)
+                .collect(Collectors.toList());
+        String scan = (parallel ? "ParallelScan" : "Scan") + "(universe=" + all.size() + ")";
+        return new QueryResult(matches, scan + " -> Filter(" + expression + ") rows=" + matches.size());
+    }
+
+    private FilterExpression.Comparison findEquality(List<FilterExpression> conjuncts, StockField field) {
+        for (FilterExpression conjunct : conjuncts) {
+            if (conjunct instanceof FilterExpression.Comparison comparison
+                    && comparison.field() == field
+                    && comparison.operator() == FilterExpression.Operator.EQ) {
+                return comparison;
+            }
+        }
+        return null;
+    }
+}
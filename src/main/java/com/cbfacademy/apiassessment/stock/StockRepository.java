@@ -3,12 +3,18 @@ package com.cbfacademy.apiassessment.stock;
 import com.cbfacademy.apiassessment.core.Repository;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 /**
  * The StockRepository interface defines the operations for managing Stocks in the system.
  * It provides methods for retrieving, saving, updating, and deleting Stock records.
  */
 public interface StockRepository extends Repository<Stock,String > {
 
+    /**
+     * The expected version that matches any version of a stock, for writes without a precondition.
+     */
+    long ANY_VERSION = -1;
+
     /**
      * Searches for the Stock where the ticker matches the provided string.
      *
@@ -17,6 +23,14 @@ public interface StockRepository extends Repository<Stock,String > {
      */
     List<Stock> searchByTicker(String ticker);
 
+    /**
+     * Looks up several stocks at once, all from the same snapshot.
+     *
+     * @param tickers the tickers, in any order and possibly repeated
+     * @return the stock for each ticker in the same order, with null for each ticker that is not found
+     */
+    List<Stock> findAllById(List<String> tickers);
+
     /**
      * Searches for Stocks where the sector name matches the provided string.
      *
@@ -33,6 +47,88 @@ public interface StockRepository extends Repository<Stock,String > {
      */
     List<Stock> sortByAttribute(String attribute);
 
+    /**
+     * Returns an immutable, versioned view of every stock in the repository. The snapshot stays
+     * consistent however many writes happen after it was taken.
+     *
+     * @return the latest published snapshot
+     */
+    StockSnapshot snapshot();
+
+    /**
+     * Returns the version of the latest snapshot. The version changes with every write, so two reads made at
+     * the same version see the same stocks.
+     *
+     * @return the current repository version
+     */
+    long version();
+
+    /**
+     * Replaces a stock if it is still at the expected version. The check and the write are atomic, so of two
+     * writers that read the same version only the first succeeds. As with {@link #update(Object)}, a non-zero
+     * version in the stock itself must match as well, and the stored stock gets the next version.
+     *
+     * @param stock the stock to write
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return the stored stock
+     * @throws StockNotFoundException if there is no stock with the ticker
+     * @throws StockVersionConflictException if the stock is at another version
+     */
+    Stock update(Stock stock, long expectedVersion);
+
+    /**
+     * Applies a partial update to a stock if it is still at the expected version. The check and the update are
+     * atomic, and increments are applied to the stock as it is at that moment.
+     *
+     * @param ticker the ticker of the stock
+     * @param patch the partial update
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return the patched stock
+     * @throws StockNotFoundException if there is no stock with the ticker
+     * @throws StockVersionConflictException if the stock is at another version
+     * @throws IllegalArgumentException if the patch would leave the stock invalid
+     */
+    Stock patch(String ticker, StockPatch patch, long expectedVersion);
+
+    /**
+     * Runs {@link #patch(String, StockPatch, long)} without blocking the caller.
+     *
+     * @param ticker the ticker of the stock
+     * @param patch the partial update
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return a future completed with the patched stock, or exceptionally as
+     *         {@link #patch(String, StockPatch, long)} throws
+     * @throws WriteQueueFullException if too many writes are waiting to be persisted; the write is not applied
+     */
+    CompletableFuture<Stock> patchAsync(String ticker, StockPatch patch, long expectedVersion);
+
+    /**
+     * Deletes a stock if it is still at the expected version. The check and the delete are atomic.
+     *
+     * @param ticker the ticker of the stock
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @throws StockNotFoundException if there is no stock with the ticker
+     * @throws StockVersionConflictException if the stock is at another version
+     */
+    void delete(String ticker, long expectedVersion);
 
+    /**
+     * Runs {@link #update(Stock, long)} without blocking the caller.
+     *
+     * @param stock the stock to write
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return a future completed with the stored stock, or exceptionally as {@link #update(Stock, long)} throws
+     * @throws WriteQueueFullException if too many writes are waiting to be persisted; the write is not applied
+     */
+    CompletableFuture<Stock> updateAsync(Stock stock, long expectedVersion);
 
+    /**
+     * Runs {@link #delete(String, long)} without blocking the caller.
+     *
+     * @param ticker the ticker of the stock
+     * @param expectedVersion the version the stock must be at, or {@link #ANY_VERSION}
+     * @return a future completed once the stock is deleted, or exceptionally as {@link #delete(String, long)} throws
+     * @throws WriteQueueFullException if too many writes are waiting to be persisted; the write is not applied
+     */
+    CompletableFuture<Void> deleteAsync(String ticker, long expectedVersion);
 }
@@ -0,0 +1,224 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.HeapEstimate;
+import com.cbfacademy.apiassessment.core.HeapFootprintSource;
+import com.cbfacademy.apiassessment.core.HeapStructure;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The StockResultCache class caches the results of sort and search reads in the service layer.
+ *
+ * <p>Every entry is stamped with the version its result was computed against, and a lookup only hits if that
+ * stamp is still current, so a write never has to find and evict the entries it makes stale. Sector searches
+ * are stamped with a version kept per sector, which this cache advances from the repository change events for
+ * the sectors a write touched; a write to one sector therefore leaves the cached searches of other sectors
+ * valid. Other reads are stamped with the repository version. Both kinds of stamp also carry a reset epoch,
+ * which advances whenever the repository contents are replaced wholesale, so no stamp taken before a reset
+ * matches one taken after it, whether or not the cache had seen the sector or the version before.
+ *
+ * <p>The cache is bounded by weight rather than by entry count: an entry weighs the number of stocks in its
+ * result, and the least recently used entries are evicted once the total exceeds
+ * {@code stock.cache.max-weight}. Hits, misses, evictions, size and weight are published as
+ * {@code stock.cache.*} metrics.
+ */
+@Component
+public class StockResultCache implements StockChangeListener, MeterBinder, HeapFootprintSource {
+    /**
+     * The number of low bits of a stamp that hold the repository or sector version; the reset epoch is kept
+     * in the bits above.
+     */
+    static final int EPOCH_SHIFT = 40;
+
+    private final long maxWeight;
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, AtomicLong> sectorVersions = new ConcurrentHashMap<>();
+    private final AtomicLong resetEpoch = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long weight;
+
+    /**
+     * Identifies a cached read.
+     *
+     * @param operation the service operation
+     * @param argument the argument of the operation
+     */
+    record CacheKey(String operation, String argument) {
+    }
+
+    private record Entry(long stamp, List<Stock> result, long weight) {
+    }
+
+    public StockResultCache(@Value("${stock.cache.max-weight:1000000}") long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the current version of a sector, which changes whenever a stock enters, leaves or changes
+     * within the sector, or the repository is reset. Sector names are compared ignoring case, as sector
+     * searches are.
+     *
+     * @param sector the sector name
+     * @return the sector version, including the reset epoch
+     */
+    long sectorVersion(String sector) {
+        long epoch = resetEpoch.get();
+        AtomicLong version = sectorVersions.get(sector.toLowerCase(Locale.ROOT));
+        return (epoch << EPOCH_SHIFT) + (version == null ? 0 : version.get());
+    }
+
+    /**
+     * Returns the stamp of a read made against the repository version. The reset epoch is read before the
+     * version, so a reset in between yields a stamp no later read will match.
+     *
+     * @param repositoryVersion reads the repository version
+     * @return the stamp, including the reset epoch
+     */
+    long stamp(LongSupplier repositoryVersion) {
+        long epoch = resetEpoch.get();
+        return (epoch << EPOCH_SHIFT) + repositoryVersion.getAsLong();
+    }
+
+    /**
+     * Looks up a cached result.
+     *
+     * @param key the read
+     * @param stamp the version the result must have been computed against
+     * @return the cached result, or null if there is none for this stamp
+     */
+    synchronized List<Stock> get(CacheKey key, long stamp) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.stamp() == stamp) {
+            hits.incrementAndGet();
+            return entry.result();
+        }
+        if (entry != null) {
+            entries.remove(key);
+            weight -= entry.weight();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches a result. Results heavier than the whole cache are not kept.
+     *
+     * @param key the read
+     * @param stamp the version read before the result was computed
+     * @param result the result, which must not be modified afterwards
+     */
+    synchronized void put(CacheKey key, long stamp, List<Stock> result) {
+        long entryWeight = result.size() + 1L;
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        Entry replaced = entries.put(key, new Entry(stamp, result, entryWeight));
+        weight += entryWeight - (replaced == null ? 0 : replaced.weight());
+        for (Iterator<Entry> eldest = entries.values().iterator(); weight > maxWeight && eldest.hasNext(); ) {
+            weight -= eldest.next().weight();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Advances the versions of the sectors a write touched: the sector of the stock after the change and, for
+     * an update that moved the stock, its previous sector.
+     *
+     * @param event the change
+     */
+    @Override
+    public void onStockChange(StockChangeEvent event) {
+        advance(event.getStock());
+        advance(event.getPrevious());
+    }
+
+    /**
+     * Advances the reset epoch and drops every cached result after the repository contents were replaced
+     * wholesale. Versions of a resynchronised replica may repeat ones seen before, so versions alone no longer
+     * tell stale entries apart.
+     *
+     * @param snapshot the snapshot that replaced the previous contents
+     */
+    @Override
+    public synchronized void onStockReset(StockSnapshot snapshot) {
+        resetEpoch.incrementAndGet();
+        entries.clear();
+        weight = 0;
+    }
+
+    private void advance(Stock stock) {
+        if (stock != null && stock.getSector() != null) {
+            sectorVersions.computeIfAbsent(stock.getSector().toLowerCase(Locale.ROOT), unused -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return the entry count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total weight of the cached results, that is the number of stock references they hold.
+     *
+     * @return the cache weight
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * Estimates the heap held by the cached results and the sector versions. A result list is counted as if
+     * only the cache held it, although a result may share its stocks' order with a snapshot view.
+     *
+     * @return the cache, with one entry per cached result
+     */
+    @Override
+    public synchronized List<HeapStructure> heapFootprint() {
+        // An entry holds its key and an Entry record of 32 bytes each, besides the key strings and the result
+        long bytes = HeapEstimate.linkedHashMap(entries.size()) + HeapEstimate.hashMap(sectorVersions.size());
+        for (Map.Entry<CacheKey, Entry> entry : entries.entrySet()) {
+            CacheKey key = entry.getKey();
+            bytes += 64 + HeapEstimate.string(key.operation()) + HeapEstimate.string(key.argument())
+                    + HeapEstimate.list(entry.getValue().result().size());
+        }
+        for (String sector : sectorVersions.keySet()) {
+            // The AtomicLong of each sector takes 24 bytes
+            bytes += HeapEstimate.string(sector) + 24;
+        }
+        return List.of(new HeapStructure("result-cache", entries.size(), bytes));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("stock.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit").description("Result cache lookups").register(registry);
+        FunctionCounter.builder("stock.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss").description("Result cache lookups").register(registry);
+        FunctionCounter.builder("stock.cache.evictions", evictions, AtomicLong::get)
+                .description("Results evicted to stay within the cache weight").register(registry);
+        Gauge.builder("stock.cache.size", this, StockResultCache::size)
+                .description("Cached results").register(registry);
+        Gauge.builder("stock.cache.weight", this, StockResultCache::weight)
+                .description("Stock references held by cached results").register(registry);
+    }
+}
@@ -1,6 +1,7 @@
 package com.cbfacademy.apiassessment.stock;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The StockService interface provides methods for managing stocks.
@@ -21,6 +22,14 @@ public interface StockService {
      */
    Stock getStockByTicker(String ticker);
 
+    /**
+     * Retrieve several Stocks by their tickers at once.
+     *
+     * @param tickers The tickers of the Stocks to retrieve.
+     * @return The Stocks in the order of the tickers, with the tickers that were not found.
+     */
+    StockLookup lookupStocks(List<String> tickers);
+
     /**
      * Create a new Stock.
      *
@@ -37,6 +46,25 @@ public interface StockService {
      */
     Stock updateStock(Stock updatedStock);
 
+    /**
+     * Update an existing Stock if it is still at the version the client read.
+     *
+     * @param updatedStock The updated Stock object.
+     * @param expectedVersion The version the Stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return The updated Stock.
+     */
+    Stock updateStock(Stock updatedStock, long expectedVersion);
+
+    /**
+     * Apply a partial update to a Stock, optionally at the version the client read.
+     *
+     * @param ticker The ticker of the Stock to patch.
+     * @param patch The fields to set or increment.
+     * @param expectedVersion The version the Stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return The patched Stock.
+     */
+    Stock patchStock(String ticker, StockPatch patch, long expectedVersion);
+
     /**
      * Delete an Stock by its ticker.
      *
@@ -44,6 +72,14 @@ public interface StockService {
      */
     void deleteStock(String ticker);
 
+    /**
+     * Delete a Stock by its ticker if it is still at the version the client read.
+     *
+     * @param ticker The ticker of the Stock to delete.
+     * @param expectedVersion The version the Stock must be at, or {@link StockRepository#ANY_VERSION}.
+     */
+    void deleteStock(String ticker, long expectedVersion);
+
     /**
      * Sorts the stocks based on a specified attribute.
      *
@@ -55,7 +91,7 @@ public interface StockService {
     /**
      * Retrieves a stock by its name from the given list of stocks.
      *
-     * @param stocks The list of stocks to search.
+     * @param stocks The list of stocks to search, or null to search every stock.
      * @param targetName The name of the stock to search for.
      * @return The stock with the specified name, or null if not found.
      */
@@ -69,6 +105,67 @@ public interface StockService {
      */
     List<Stock> searchBySector(String sector);
 
+    /**
+     * Finds the stocks matching a filter expression such as
+     * {@code sector == "Technology" && currentPrice > 100}.
+     *
+     * @param filter The filter expression to evaluate.
+     * @return The matching stocks together with the query plan that was used.
+     */
+    QueryResult queryStocks(String filter);
+
+    /**
+     * Create a new Stock without blocking the caller while it is persisted.
+     *
+     * @param stock The Stock object to create.
+     * @return A future completed with the created Stock.
+     */
+    CompletableFuture<Stock> saveStockAsync(Stock stock);
+
+    /**
+     * Update an existing Stock without blocking the caller while it is persisted.
+     *
+     * @param updatedStock The updated Stock object.
+     * @return A future completed with the updated Stock.
+     */
+    CompletableFuture<Stock> updateStockAsync(Stock updatedStock);
+
+    /**
+     * Update an existing Stock at the version the client read, without blocking the caller while it is persisted.
+     *
+     * @param updatedStock The updated Stock object.
+     * @param expectedVersion The version the Stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return A future completed with the updated Stock.
+     */
+    CompletableFuture<Stock> updateStockAsync(Stock updatedStock, long expectedVersion);
+
+    /**
+     * Apply a partial update to a Stock without blocking the caller while it is persisted.
+     *
+     * @param ticker The ticker of the Stock to patch.
+     * @param patch The fields to set or increment.
+     * @param expectedVersion The version the Stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return A future completed with the patched Stock.
+     */
+    CompletableFuture<Stock> patchStockAsync(String ticker, StockPatch patch, long expectedVersion);
+
+    /**
+     * Delete a Stock by its ticker without blocking the caller while the deletion is persisted.
+     *
+     * @param ticker The ticker of the Stock to delete.
+     * @return A future completed once the Stock has been deleted.
+     */
+    CompletableFuture<Void> deleteStockAsync(String ticker);
+
+    /**
+     * Delete a Stock at the version the client read, without blocking the caller while the deletion is persisted.
+     *
+     * @param ticker The ticker of the Stock to delete.
+     * @param expectedVersion The version the Stock must be at, or {@link StockRepository#ANY_VERSION}.
+     * @return A future completed once the Stock has been deleted.
+     */
+    CompletableFuture<Void> deleteStockAsync(String ticker, long expectedVersion);
+
 
 
 
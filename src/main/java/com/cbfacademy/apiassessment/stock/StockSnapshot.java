@@ -0,0 +1,387 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.HeapEstimate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * The StockSnapshot class is an immutable, versioned view of the repository contents.
+ *
+ * <p>A new snapshot is built and published by the repository after every write. Readers take the
+ * current snapshot and work on it without copying or locking; the {@link Stock} objects themselves are
+ * shared with the repository rather than cloned. Two reads of the same snapshot always see the same
+ * stocks, and a higher version always means a later state.
+ *
+ * <p>A write does not copy the universe. The new snapshot shares the contents of the one before and only
+ * records the stocks the write changed, in a small overlay that point lookups consult first. The overlay is
+ * copied by each write, so once it holds more than {@link #maxOverlay(int)} changes, about the square root of the
+ * universe, the contents are copied afresh into a new shared base and the overlay starts empty. A write therefore
+ * costs O(&radic;N) on average rather than O(N). The list of every stock, which most reads need, is assembled
+ * from the base and the overlay on first use and then shared by every reader of the snapshot, so a burst of
+ * writes with no reads in between pays for it at most once.
+ *
+ * <p>A snapshot also carries indexes derived from its contents: the stocks grouped by sector and the stocks
+ * pre-sorted by each sortable attribute. They are built on first use and then shared by every reader of the
+ * snapshot, or all at once and in parallel by {@link #buildIndexes()} when the repository warms up.
+ */
+public final class StockSnapshot {
+    /**
+     * The snapshot that a repository publishes before anything has been loaded.
+     */
+    static final StockSnapshot EMPTY = new StockSnapshot(0, Collections.emptyMap());
+
+    /**
+     * The attributes stocks can be sorted by, keyed by their lower-case name.
+     */
+    static final Map<String, Comparator<Stock>> SORT_ORDERS = Map.of(
+            "name", Comparator.comparing(Stock::getName),
+            "currentprice", Comparator.comparingDouble(Stock::getCurrentPrice),
+            "sector", Comparator.comparing(Stock::getSector),
+            "quantity", Comparator.comparingInt(Stock::getQuantity),
+            "purchaseprice", Comparator.comparingDouble(Stock::getPurchasePrice));
+
+    /**
+     * The estimated size of a {@link Stock} object without its strings: a header, two references, three ints
+     * and three longs.
+     */
+    private static final int STOCK_OBJECT = 56;
+
+    /**
+     * The fewest changes the overlay may hold before the contents are copied into a new base.
+     */
+    static final int MIN_OVERLAY = 64;
+
+    private final long version;
+    private final int size;
+
+    /**
+     * The contents shared with the snapshots before and after this one, in insertion order.
+     */
+    private final Map<String, Stock> base;
+
+    /**
+     * The changes made to the base, in the order they were first made. Never modified once published.
+     */
+    private final Map<String, Change> overlay;
+
+    private volatile Map<String, Stock> byTicker;
+    private volatile List<Stock> stocks;
+    private volatile Map<String, List<Stock>> bySector;
+    private final Map<String, List<Stock>> sorted = new ConcurrentHashMap<>();
+    private volatile long estimatedStockBytes = -1;
+
+    /**
+     * Builds a snapshot from the given contents. The map is copied, so later changes to it are not
+     * visible through the snapshot.
+     *
+     * @param version the version number of this snapshot
+     * @param contents the stocks keyed by ticker
+     */
+    public StockSnapshot(long version, Map<String, Stock> contents) {
+        this.version = version;
+        this.base = Collections.unmodifiableMap(new LinkedHashMap<>(contents));
+        this.overlay = Collections.emptyMap();
+        this.size = base.size();
+        this.byTicker = base;
+    }
+
+    private StockSnapshot(long version, Map<String, Stock> base, Map<String, Change> overlay, int size) {
+        this.version = version;
+        this.base = base;
+        this.overlay = overlay;
+        this.size = size;
+    }
+
+    /**
+     * Builds the snapshot that follows this one after some stocks changed, sharing the contents of this one.
+     * Must be called while the contents cannot change.
+     *
+     * @param version the version number of the new snapshot
+     * @param contents the repository's stocks after the change, keyed by ticker
+     * @param tickers the tickers of the stocks that were created, updated or removed since this snapshot
+     * @return the new snapshot
+     */
+    StockSnapshot withChanges(long version, Map<String, Stock> contents, Collection<String> tickers) {
+        if (overlay.size() + tickers.size() > maxOverlay(base.size())) {
+            return new StockSnapshot(version, contents);
+        }
+        Map<String, Change> changes = new LinkedHashMap<>(overlay);
+        int count = size;
+        for (String ticker : tickers) {
+            Change previous = changes.get(ticker);
+            boolean inBase = base.containsKey(ticker);
+            boolean present = previous != null ? previous.stock() != null : inBase;
+            Stock stock = contents.get(ticker);
+            if (stock == null) {
+                if (inBase) {
+                    changes.put(ticker, new Change(null, false));
+                } else {
+                    changes.remove(ticker);
+                }
+            } else if (present) {
+                // An update keeps the stock's place
+                changes.put(ticker, new Change(stock, previous != null && previous.appended()));
+            } else {
+                // A stock created, or removed and created again, goes after the others, as in the repository's map
+                changes.remove(ticker);
+                changes.put(ticker, new Change(stock, true));
+            }
+            count += (stock != null ? 1 : 0) - (present ? 1 : 0);
+        }
+        return new StockSnapshot(version, base, changes, count);
+    }
+
+    /**
+     * Returns the most changes the overlay of a snapshot may hold over a base of the given size: about the
+     * square root of the size, so that the copies of the overlay and the occasional copy of the whole contents
+     * cost about the same over a run of writes.
+     *
+     * @param baseSize the number of stocks in the base
+     * @return the overlay limit
+     */
+    static int maxOverlay(int baseSize) {
+        return Math.max(MIN_OVERLAY, (int) Math.sqrt(baseSize));
+    }
+
+    /**
+     * Returns the version of this snapshot. Versions increase by one for every write.
+     *
+     * @return the snapshot version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns every stock in the snapshot as an unmodifiable list.
+     *
+     * @return the stocks in this snapshot
+     */
+    public List<Stock> getStocks() {
+        List<Stock> all = stocks;
+        if (all == null) {
+            // Concurrent first readers may both assemble the list; either result is correct
+            all = overlay.isEmpty() ? List.copyOf(base.values()) : List.copyOf(asMap().values());
+            stocks = all;
+        }
+        return all;
+    }
+
+    /**
+     * Finds a stock in the snapshot by its ticker.
+     *
+     * @param ticker the ticker of the stock
+     * @return the stock, or null if the snapshot does not contain it
+     */
+    public Stock get(String ticker) {
+        if (ticker == null) {
+            return null;
+        }
+        Change change = overlay.get(ticker);
+        return change != null ? change.stock() : base.get(ticker);
+    }
+
+    /**
+     * Returns the stocks in the snapshot keyed by ticker, as an unmodifiable map.
+     *
+     * @return the contents of this snapshot
+     */
+    Map<String, Stock> asMap() {
+        Map<String, Stock> map = byTicker;
+        if (map == null) {
+            Map<String, Stock> merged = new LinkedHashMap<>();
+            for (Map.Entry<String, Stock> entry : base.entrySet()) {
+                Change change = overlay.get(entry.getKey());
+                if (change == null) {
+                    merged.put(entry.getKey(), entry.getValue());
+                } else if (change.stock() != null && !change.appended()) {
+                    merged.put(entry.getKey(), change.stock());
+                }
+            }
+            for (Map.Entry<String, Change> entry : overlay.entrySet()) {
+                if (entry.getValue().stock() != null && entry.getValue().appended()) {
+                    merged.put(entry.getKey(), entry.getValue().stock());
+                }
+            }
+            map = Collections.unmodifiableMap(merged);
+            byTicker = map;
+        }
+        return map;
+    }
+
+    /**
+     * Returns the number of stocks in the snapshot.
+     *
+     * @return the number of stocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the stocks in a sector, using the sector index of this snapshot.
+     *
+     * @param sector the exact name of the sector
+     * @return an unmodifiable list of the stocks in the sector, in snapshot order
+     */
+    public List<Stock> bySector(String sector) {
+        Map<String, List<Stock>> index = bySector;
+        if (index == null) {
+            // Concurrent first readers may both build the index; either result is correct
+            index = getStocks().stream()
+                    .filter(stock -> stock.getSector() != null)
+                    .collect(Collectors.groupingBy(Stock::getSector, Collectors.collectingAndThen(
+                            Collectors.toList(), Collections::unmodifiableList)));
+            bySector = index;
+        }
+        return index.getOrDefault(sector, Collections.emptyList());
+    }
+
+    /**
+     * Returns the stocks sorted by an attribute, using the pre-sorted view of this snapshot.
+     *
+     * @param attribute one of "name", "currentprice", "sector", "quantity" or "purchaseprice", in any case
+     * @return an unmodifiable list of every stock in ascending order of the attribute
+     * @throws IllegalArgumentException if the attribute is unknown
+     */
+    public List<Stock> sortedBy(String attribute) {
+        Comparator<Stock> order = sortOrder(attribute);
+        return sorted.computeIfAbsent(attribute.toLowerCase(), unused -> {
+            List<Stock> view = new ArrayList<>(getStocks());
+            view.sort(order);
+            return Collections.unmodifiableList(view);
+        });
+    }
+
+    /**
+     * Returns the order {@link #sortedBy(String)} sorts stocks in, for callers that merge sorted lists.
+     *
+     * @param attribute one of "name", "currentprice", "sector", "quantity" or "purchaseprice", in any case
+     * @return the comparator for the attribute
+     * @throws IllegalArgumentException if the attribute is unknown
+     */
+    public static Comparator<Stock> sortOrder(String attribute) {
+        Comparator<Stock> order = SORT_ORDERS.get(attribute.toLowerCase());
+        if (order == null) {
+            throw new IllegalArgumentException("Unknown attribute for sorting: " + attribute);
+        }
+        return order;
+    }
+
+    /**
+     * Builds every index of the snapshot in parallel, so the first reads after startup do not pay for them.
+     */
+    void buildIndexes() {
+        List<Runnable> builders = new ArrayList<>();
+        builders.add(() -> bySector(""));
+        SORT_ORDERS.keySet().forEach(attribute -> builders.add(() -> sortedBy(attribute)));
+        builders.parallelStream().forEach(Runnable::run);
+    }
+
+    /**
+     * Estimates the heap held by the stocks of this snapshot, with their ticker and name strings. Sector and
+     * currency strings are held once by the dictionaries and not counted here. The estimate walks every stock
+     * once and is then kept for the life of the snapshot.
+     *
+     * @return the estimated bytes
+     */
+    long estimateStockBytes() {
+        long bytes = estimatedStockBytes;
+        if (bytes < 0) {
+            bytes = 0;
+            for (Stock stock : getStocks()) {
+                bytes += stockBytes(stock);
+            }
+            estimatedStockBytes = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the heap held by one stock with its ticker and name strings.
+     *
+     * @param stock the stock, may be null
+     * @return the estimated bytes, 0 for null
+     */
+    public static long stockBytes(Stock stock) {
+        return stock == null
+                ? 0
+                : STOCK_OBJECT + HeapEstimate.string(stock.getTicker()) + HeapEstimate.string(stock.getName());
+    }
+
+    /**
+     * Estimates the heap held by the snapshot itself: its base, overlay, merged map and list, but not the stocks.
+     * The base is usually shared with the snapshots before and after this one.
+     *
+     * @return the estimated bytes
+     */
+    long estimateBytes() {
+        long bytes = HeapEstimate.linkedHashMap(base.size()) + HeapEstimate.linkedHashMap(overlay.size())
+                + overlay.size() * HeapEstimate.align(HeapEstimate.OBJECT_HEADER + HeapEstimate.REFERENCE + 1);
+        Map<String, Stock> map = byTicker;
+        if (map != null && map != base) {
+            bytes += HeapEstimate.linkedHashMap(map.size());
+        }
+        return stocks == null ? bytes : bytes + HeapEstimate.list(size);
+    }
+
+    /**
+     * Returns the number of sectors in the sector index, or 0 if it has not been built.
+     *
+     * @return the sector count
+     */
+    int sectorIndexSize() {
+        Map<String, List<Stock>> index = bySector;
+        return index == null ? 0 : index.size();
+    }
+
+    /**
+     * Estimates the heap held by the sector index, or 0 if it has not been built.
+     *
+     * @return the estimated bytes
+     */
+    long estimateSectorIndexBytes() {
+        Map<String, List<Stock>> index = bySector;
+        if (index == null) {
+            return 0;
+        }
+        long bytes = HeapEstimate.hashMap(index.size());
+        for (List<Stock> sector : index.values()) {
+            bytes += HeapEstimate.list(sector.size());
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of pre-sorted views built so far.
+     *
+     * @return the sorted view count
+     */
+    int sortedViewCount() {
+        return sorted.size();
+    }
+
+    /**
+     * Estimates the heap held by the pre-sorted views built so far.
+     *
+     * @return the estimated bytes
+     */
+    long estimateSortedViewBytes() {
+        return sorted.size() * HeapEstimate.list(size);
+    }
+
+    /**
+     * A change recorded in the overlay: the stock as it now is, or null if it was removed, and whether it comes
+     * after the base in insertion order because it is new or was removed and created again.
+     */
+    private record Change(Stock stock, boolean appended) {
+    }
+}
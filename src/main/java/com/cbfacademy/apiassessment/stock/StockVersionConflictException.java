@@ -0,0 +1,63 @@
+package com.cbfacademy.apiassessment.stock;
+
+/**
+ * The StockVersionConflictException class is thrown when a write names the version of a stock it was based on,
+ * and the stock has been written by someone else since.
+ *
+ * <p>The expected version comes either from the {@code version} field of the request body or from an
+ * {@code If-Match} precondition. The API answers the first with 409 Conflict and the second with 412
+ * Precondition Failed, so the exception records which of the two was violated.
+ */
+public class StockVersionConflictException extends RuntimeException {
+    private final String ticker;
+    private final long expectedVersion;
+    private final long currentVersion;
+    private final boolean precondition;
+
+    public StockVersionConflictException(String ticker, long expectedVersion, long currentVersion,
+                                         boolean precondition) {
+        super("Stock " + ticker + " is at version " + currentVersion + ", not " + expectedVersion);
+        this.ticker = ticker;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+        this.precondition = precondition;
+    }
+
+    /**
+     * Checks a write against the stock it would replace.
+     *
+     * @param current the stock as it is now
+     * @param bodyVersion the version sent in the request body, checked unless it is 0
+     * @param expectedVersion the version required by a precondition, or {@link StockRepository#ANY_VERSION}
+     * @throws StockVersionConflictException if either version does not match the current one
+     */
+    static void check(Stock current, long bodyVersion, long expectedVersion) {
+        if (expectedVersion != StockRepository.ANY_VERSION && expectedVersion != current.getVersion()) {
+            throw new StockVersionConflictException(current.getTicker(), expectedVersion, current.getVersion(), true);
+        }
+        if (bodyVersion != 0 && bodyVersion != current.getVersion()) {
+            throw new StockVersionConflictException(current.getTicker(), bodyVersion, current.getVersion(), false);
+        }
+    }
+
+    public String getTicker() {
+        return ticker;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * Tells whether the version that did not match came from an {@code If-Match} precondition.
+     *
+     * @return true for a failed precondition, false for a conflicting version in the body
+     */
+    public boolean isPrecondition() {
+        return precondition;
+    }
+}
@@ -0,0 +1,131 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The StorageFormat enum lists the encodings the stock universe can be stored in on disk, selected with
+ * {@code json.storage.format}.
+ *
+ * <p>{@link #JSON} is the default and keeps the files readable. {@link #CBOR} and {@link #SMILE} are binary
+ * encodings of the same data model: the documents are smaller and cheaper to encode and decode, at the cost of
+ * no longer being editable by hand. Every format uses the {@link StockJsonModule} codecs.
+ *
+ * <p>Snapshots are always read with {@link #detectingReader(TypeReference)}, which recognises each of the
+ * formats from the leading bytes. A file written in one format is therefore still loaded after the format has
+ * been changed, and the next save rewrites it in the new one.
+ *
+ * <p>Binary snapshots are named after their format ({@code stocks.cbor}, {@code shard-000.smile}, ...), see
+ * {@link #resolve(Path)}, so a file's name never claims an encoding its contents are not in.
+ */
+public enum StorageFormat {
+    JSON {
+        @Override
+        JsonFactory factory() {
+            return JsonFactory.builder().disable(JsonFactory.Feature.INTERN_FIELD_NAMES).build();
+        }
+    },
+    CBOR {
+        @Override
+        JsonFactory factory() {
+            return CBORFactory.builder().disable(JsonFactory.Feature.INTERN_FIELD_NAMES).build();
+        }
+    },
+    SMILE {
+        @Override
+        JsonFactory factory() {
+            // Back-references to repeated short values such as sectors and currency symbols keep documents small
+            return SmileFactory.builder().disable(JsonFactory.Feature.INTERN_FIELD_NAMES)
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES).build();
+        }
+    };
+
+    /**
+     * Creates the Jackson factory for this format.
+     *
+     * <p>Every ticker is a field name of a stock-map document, and Jackson interns field names by default.
+     * With hundreds of thousands of distinct tickers that fills the JVM string table on every load for names
+     * that are never looked up again, so interning is turned off. Field names are still canonicalized per
+     * parser, so the names inside each stock are shared.
+     *
+     * @return a new factory
+     */
+    abstract JsonFactory factory();
+
+    /**
+     * Creates a mapper for whole stock-map documents in this format, with {@link StockJsonModule} registered.
+     *
+     * @return a new mapper
+     */
+    public ObjectMapper documentMapper() {
+        return new ObjectMapper(factory()).registerModule(new StockJsonModule());
+    }
+
+    /**
+     * Returns the file name extension of snapshots in this format.
+     *
+     * @return "json", "cbor" or "smile"
+     */
+    public String extension() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the path a snapshot in this format is stored at, given the configured JSON file. JSON snapshots
+     * keep the configured path; binary ones replace its {@code .json} extension with their own, or append their
+     * extension if the file has none.
+     *
+     * @param file the configured file, such as {@code stocks.json}
+     * @return the file in this format, such as {@code stocks.cbor}
+     */
+    public Path resolve(Path file) {
+        if (this == JSON) {
+            return file;
+        }
+        String name = file.getFileName().toString();
+        String suffix = "." + JSON.extension();
+        String base = name.toLowerCase(Locale.ROOT).endsWith(suffix)
+                ? name.substring(0, name.length() - suffix.length())
+                : name;
+        return file.resolveSibling(base + "." + extension());
+    }
+
+    /**
+     * Returns the format named by a configuration value.
+     *
+     * @param name "json", "cbor" or "smile", in any case
+     * @return the format
+     * @throws IllegalArgumentException if the name is not a known format
+     */
+    public static StorageFormat of(String name) {
+        for (StorageFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name.trim())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage format: " + name + ", expected json, cbor or smile");
+    }
+
+    /**
+     * Creates a reader that detects which of the formats a document is in and decodes it accordingly.
+     *
+     * @param type the type of the document
+     * @return a reader for documents in any of the formats
+     */
+    public static ObjectReader detectingReader(TypeReference<?> type) {
+        StorageFormat[] formats = values();
+        ObjectReader[] readers = new ObjectReader[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            readers[i] = formats[i].documentMapper().readerFor(type);
+        }
+        return readers[0].withFormatDetection(readers);
+    }
+}
@@ -0,0 +1,103 @@
+package com.cbfacademy.apiassessment.stock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The WriteOperation class is the completion handle of a write accepted with {@code 202 Accepted}.
+ * Clients poll it at {@code /api/stocks/operations/{id}} to learn whether the write was persisted.
+ */
+public class WriteOperation {
+    /**
+     * The state of an accepted write.
+     */
+    public enum State {
+        PENDING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+    private final long submittedAt;
+    private final CompletableFuture<?> future;
+    private final int successStatus;
+
+    WriteOperation(String id, CompletableFuture<?> future, int successStatus) {
+        this.id = id;
+        this.submittedAt = System.currentTimeMillis();
+        this.future = future;
+        this.successStatus = successStatus;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public State getState() {
+        if (!future.isDone()) {
+            return State.PENDING;
+        }
+        return future.isCompletedExceptionally() ? State.FAILED : State.SUCCEEDED;
+    }
+
+    /**
+     * Returns the result of a successful write, such as the saved stock.
+     *
+     * @return the result, or null while pending, after a failure or for a delete
+     */
+    public Object getResult() {
+        return getState() == State.SUCCEEDED ? future.join() : null;
+    }
+
+    /**
+     * Returns the HTTP status the synchronous endpoint would have answered with, such as 201 for a completed
+     * create and 200 for a completed update.
+     *
+     * @return the status code, or null while the write is pending
+     */
+    public Integer getStatus() {
+        switch (getState()) {
+            case PENDING:
+                return null;
+            case SUCCEEDED:
+                return getResult() == null ? 204 : successStatus;
+            default:
+                Throwable cause = failure();
+                if (cause instanceof StockNotFoundException) {
+                    return 404;
+                }
+                if (cause instanceof StockVersionConflictException conflict) {
+                    return conflict.isPrecondition() ? 412 : 409;
+                }
+                return cause instanceof DuplicateStockException || cause instanceof IllegalArgumentException
+                        ? 400
+                        : 500;
+        }
+    }
+
+    /**
+     * Returns the error message of a failed write.
+     *
+     * @return the error message, or null unless the write failed
+     */
+    public String getError() {
+        return getState() == State.FAILED ? failure().getMessage() : null;
+    }
+
+    boolean isDone() {
+        return future.isDone();
+    }
+
+    private Throwable failure() {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
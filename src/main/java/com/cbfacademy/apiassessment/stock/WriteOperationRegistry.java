@@ -0,0 +1,77 @@
+package com.cbfacademy.apiassessment.stock;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The WriteOperationRegistry class keeps the completion handles of writes accepted with
+ * {@code 202 Accepted}. It holds at most {@value #MAX_TRACKED} operations; once the limit is reached the
+ * oldest completed operations are forgotten first. Operations still running are never forgotten, and there are
+ * never more of them than the repository queues for persisting ({@code stock.async.queue-capacity}, at most
+ * {@value #MAX_TRACKED}), since a write that finds the queue full is refused.
+ */
+@Component
+public class WriteOperationRegistry {
+    static final int MAX_TRACKED = 10_000;
+
+    private final Map<String, WriteOperation> operations = new ConcurrentHashMap<>();
+    private final Queue<String> submissionOrder = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Starts tracking an asynchronous write that answers 200 OK once it succeeds with a result.
+     *
+     * @param write the future of the write
+     * @return the handle of the write
+     */
+    public WriteOperation track(CompletableFuture<?> write) {
+        return track(write, 200);
+    }
+
+    /**
+     * Starts tracking an asynchronous write.
+     *
+     * @param write the future of the write
+     * @param successStatus the status the write answers once it succeeds with a result, such as 201 for a create
+     * @return the handle of the write
+     */
+    public WriteOperation track(CompletableFuture<?> write, int successStatus) {
+        WriteOperation operation = new WriteOperation(UUID.randomUUID().toString(), write, successStatus);
+        operations.put(operation.getId(), operation);
+        submissionOrder.add(operation.getId());
+        evictCompleted();
+        return operation;
+    }
+
+    /**
+     * Finds an operation by its id.
+     *
+     * @param id the operation id
+     * @return the operation, or null if it is unknown or has been forgotten
+     */
+    public WriteOperation find(String id) {
+        return operations.get(id);
+    }
+
+    private void evictCompleted() {
+        int attempts = submissionOrder.size();
+        while (operations.size() > MAX_TRACKED && attempts-- > 0) {
+            String oldest = submissionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            WriteOperation operation = operations.get(oldest);
+            if (operation != null && !operation.isDone()) {
+                // Still running; keep it and look further along the queue
+                submissionOrder.add(oldest);
+            } else {
+                operations.remove(oldest);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.cbfacademy.apiassessment.stock;
+
+/**
+ * The WriteQueueFullException class is a custom RuntimeException that is thrown when an asynchronous write is
+ * refused because as many writes as the repository queues are already waiting to be persisted. The write has
+ * not been applied, so the client can send it again later.
+ *
+ * @see RuntimeException
+ */
+public class WriteQueueFullException extends RuntimeException {
+    public WriteQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,269 @@
+package com.cbfacademy.apiassessment.stream;
+
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ChangeSubscriber class is one client of the change stream together with its pending buffer.
+ *
+ * <p>The buffer holds at most one event per ticker: a newer change to a ticker that is still waiting
+ * replaces the older one in place, so a slow client receives the latest state of each stock rather than
+ * every intermediate tick. The buffer is also bounded in size; when it is full the oldest pending change
+ * is dropped and the client is told how many changes it missed. Offering an event never blocks on the
+ * client; delivery happens on the stream's dispatcher threads, at most one drain per subscriber at a time.
+ *
+ * <p>The dispatcher threads are shared, and a send to a client that stopped reading blocks once its socket
+ * buffer is full. A drain therefore sends one batch and then hands the thread back to the other subscribers. A
+ * subscriber whose send has been stuck for longer than the stall timeout is declared stalled, whether its buffer
+ * overflows or the stream's watchdog finds it, however few changes it is waiting for: it is closed, its buffer
+ * dropped, and the {@link StallListener} told, so that the stream can stop offering it changes and replace the
+ * dispatcher thread it holds. The emitter itself cannot be completed while the send holds it, so the stuck
+ * thread completes it once the send returns or fails.
+ */
+class ChangeSubscriber {
+
+    /**
+     * Marks {@link #sendStartedAt} once the send in progress has been declared stalled.
+     */
+    private static final long STALLED = -1;
+
+    /**
+     * Told when a subscriber stalls a dispatcher thread and when it gives the thread back.
+     */
+    interface StallListener {
+
+        /**
+         * Called once when the subscriber is declared stalled, while its send still holds a dispatcher thread.
+         *
+         * @param subscriber the subscriber
+         */
+        void stalled(ChangeSubscriber subscriber);
+
+        /**
+         * Called once the stalled send has returned or failed, and the dispatcher thread is free again.
+         *
+         * @param subscriber the subscriber
+         */
+        void released(ChangeSubscriber subscriber);
+    }
+
+    private static final StallListener IGNORE_STALLS = new StallListener() {
+        @Override
+        public void stalled(ChangeSubscriber subscriber) {
+        }
+
+        @Override
+        public void released(ChangeSubscriber subscriber) {
+        }
+    };
+
+    private final SseEmitter emitter;
+    private final Set<String> tickers;
+    private final String sector;
+    private final int capacity;
+    private final Executor dispatcher;
+    private final long stallNanos;
+    private final StallListener stallListener;
+    private final Map<String, StockChangeEvent> pending = new LinkedHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private int dropped;
+    // The version of a reset not yet sent, or 0; guarded by the buffer's lock like the buffer itself
+    private long resetVersion;
+    private volatile boolean closed;
+    // System.nanoTime() when the send in progress started, 0 while no send is in progress, or STALLED once the
+    // send in progress has been declared stalled
+    private final AtomicLong sendStartedAt = new AtomicLong();
+
+    ChangeSubscriber(SseEmitter emitter, Set<String> tickers, String sector, int capacity, Executor dispatcher,
+                     long stallMillis) {
+        this(emitter, tickers, sector, capacity, dispatcher, stallMillis, IGNORE_STALLS);
+    }
+
+    ChangeSubscriber(SseEmitter emitter, Set<String> tickers, String sector, int capacity, Executor dispatcher,
+                     long stallMillis, StallListener stallListener) {
+        this.emitter = emitter;
+        this.tickers = tickers;
+        this.sector = sector;
+        this.capacity = capacity;
+        this.dispatcher = dispatcher;
+        this.stallNanos = TimeUnit.MILLISECONDS.toNanos(stallMillis);
+        this.stallListener = stallListener;
+    }
+
+    SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Tells whether the subscriber asked for changes to this stock.
+     *
+     * @param event the change
+     * @return true if the change passes the ticker and sector filters
+     */
+    boolean accepts(StockChangeEvent event) {
+        if (!tickers.isEmpty() && !tickers.contains(event.getTicker())) {
+            return false;
+        }
+        return sector == null || (event.getStock() != null && sector.equalsIgnoreCase(event.getStock().getSector()));
+    }
+
+    /**
+     * Buffers a change for delivery, coalescing it with a pending change to the same ticker. When the buffer
+     * overflows while the client is stalled in a send, the subscriber is disconnected instead, without waiting for
+     * the watchdog.
+     *
+     * @param event the change
+     */
+    void offer(StockChangeEvent event) {
+        if (closed) {
+            return;
+        }
+        synchronized (pending) {
+            if (pending.put(event.getTicker(), event) == null && pending.size() > capacity) {
+                if (disconnectIfStalled()) {
+                    return;
+                }
+                Iterator<String> eldest = pending.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                dropped++;
+            }
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Replaces the pending changes with a reset notice, since they describe contents that have been replaced.
+     * Changes offered afterwards are sent after the notice.
+     *
+     * @param version the version of the snapshot that replaced the contents
+     */
+    void reset(long version) {
+        if (closed) {
+            return;
+        }
+        synchronized (pending) {
+            pending.clear();
+            dropped = 0;
+            resetVersion = version;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Disconnects the subscriber if a send has been stuck for at least the stall timeout. The buffer is dropped
+     * and nothing more is sent; the emitter is completed by the stuck thread once its send returns, since it
+     * cannot be completed while the send holds it. Never blocks, so it may be called by a writer or the watchdog.
+     *
+     * @return true if the subscriber was disconnected by this call
+     */
+    boolean disconnectIfStalled() {
+        long startedAt = sendStartedAt.get();
+        if (closed || startedAt <= 0 || System.nanoTime() - startedAt < stallNanos
+                || !sendStartedAt.compareAndSet(startedAt, STALLED)) {
+            return false;
+        }
+        synchronized (pending) {
+            closed = true;
+            pending.clear();
+        }
+        stallListener.stalled(this);
+        return true;
+    }
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            dispatcher.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<StockChangeEvent> batch;
+            int missed;
+            long reset;
+            synchronized (pending) {
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+                missed = dropped;
+                dropped = 0;
+                reset = resetVersion;
+                resetVersion = 0;
+            }
+            if (reset > 0 && !closed) {
+                send(SseEmitter.event().id(Long.toString(reset)).name("reset").data(Map.of("version", reset)));
+            }
+            if (missed > 0 && !closed) {
+                send(SseEmitter.event().name("overflow").data(Map.of("dropped", missed)));
+            }
+            for (StockChangeEvent event : batch) {
+                if (closed) {
+                    break;
+                }
+                send(SseEmitter.event()
+                        .id(Long.toString(event.getVersion()))
+                        .name(event.getType().name().toLowerCase())
+                        .data(event));
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client has gone away or the emitter has completed
+            if (!closed) {
+                closed = true;
+                emitter.completeWithError(e);
+            }
+        } catch (StalledException e) {
+            emitter.completeWithError(new IOException("Subscriber stalled for longer than "
+                    + TimeUnit.NANOSECONDS.toMillis(stallNanos) + " ms in a send"));
+            stallListener.released(this);
+        } finally {
+            draining.set(false);
+        }
+        // Changes offered during the batch are sent by a fresh task, so other subscribers get a turn first
+        synchronized (pending) {
+            if ((pending.isEmpty() && resetVersion == 0) || closed) {
+                return;
+            }
+        }
+        scheduleDrain();
+    }
+
+    private void send(SseEmitter.SseEventBuilder event) throws IOException {
+        sendStartedAt.set(System.nanoTime());
+        try {
+            emitter.send(event);
+        } finally {
+            if (sendStartedAt.getAndSet(0) == STALLED) {
+                // Replaces whatever the send threw: the subscriber is gone either way
+                throw new StalledException();
+            }
+        }
+    }
+
+    /**
+     * Thrown by a send that returned after it was declared stalled, to end the drain.
+     */
+    private static final class StalledException extends RuntimeException {
+        StalledException() {
+            super(null, null, false, false);
+        }
+    }
+}
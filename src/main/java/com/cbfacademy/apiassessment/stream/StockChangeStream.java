@@ -0,0 +1,206 @@
+package com.cbfacademy.apiassessment.stream;
+
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The StockChangeStream class fans repository changes out to Server-Sent Events subscribers.
+ *
+ * <p>On the write path each change is only offered to the matching subscribers' bounded, coalescing
+ * buffers (see {@link ChangeSubscriber}), so a slow or stalled client can neither hold up the writer nor
+ * grow the heap: memory is bounded by {@code stock.stream.max-subscribers} times
+ * {@code stock.stream.buffer-size} events. Delivery runs on a small pool of dispatcher threads.
+ *
+ * <p>A client that stopped reading holds a dispatcher thread for as long as its send is blocked. A watchdog
+ * therefore disconnects every client whose send has been stuck for {@code stock.stream.stall-timeout-ms}, even one
+ * following so few tickers that its buffer never overflows. The stuck thread cannot be taken back until the send
+ * fails, so the pool is given a replacement thread for it in the meantime, up to
+ * {@code stock.stream.max-stalled-sends} replacements, and the other subscribers keep being served.
+ * *
+ * <p>When the repository contents are replaced wholesale, such as by a CSV import, no per-stock changes are
+ * sent. Every subscriber instead drops the changes still pending and receives a {@code reset} event with the
+ * new version, after which it should reload the stocks it follows.
+ */
+@Component
+public class StockChangeStream implements StockChangeListener, ChangeSubscriber.StallListener {
+    private static final Logger log = LoggerFactory.getLogger(StockChangeStream.class);
+
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final long stallMillis;
+    private final int dispatcherThreads;
+    private final int maxStalledSends;
+    private final CopyOnWriteArrayList<ChangeSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor dispatcher;
+    private final ScheduledExecutorService watchdog;
+    // Dispatcher threads held by the sends of disconnected subscribers, guarded by the dispatcher
+    private int stalledSends;
+
+    public StockChangeStream(@Value("${stock.stream.buffer-size:256}") int bufferSize,
+                             @Value("${stock.stream.max-subscribers:10000}") int maxSubscribers,
+                             @Value("${stock.stream.timeout-ms:1800000}") long timeoutMillis,
+                             @Value("${stock.stream.dispatcher-threads:2}") int dispatcherThreads,
+                             @Value("${stock.stream.stall-timeout-ms:5000}") long stallMillis,
+                             @Value("${stock.stream.max-stalled-sends:16}") int maxStalledSends) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeoutMillis;
+        this.stallMillis = stallMillis;
+        this.dispatcherThreads = dispatcherThreads;
+        this.maxStalledSends = maxStalledSends;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.dispatcher = new ThreadPoolExecutor(dispatcherThreads, dispatcherThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "stock-sse-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-sse-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Checked often enough that a client is disconnected well within twice the stall timeout
+        long period = Math.max(10, Math.min(1000, stallMillis / 2));
+        watchdog.scheduleWithFixedDelay(this::disconnectStalled, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers a new subscriber.
+     *
+     * @param tickers the tickers to receive changes for, or an empty set for all tickers
+     * @param sector the sector to receive changes for, or null for all sectors
+     * @return the emitter to return from the controller
+     * @throws IllegalStateException if the subscriber limit has been reached
+     */
+    public SseEmitter subscribe(Set<String> tickers, String sector) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new IllegalStateException("Too many stream subscribers");
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        ChangeSubscriber subscriber = new ChangeSubscriber(emitter, tickers, sector, bufferSize, dispatcher,
+                stallMillis, this);
+        Runnable remove = () -> {
+            subscriber.close();
+            subscribers.remove(subscriber);
+        };
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(error -> remove.run());
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Offers a repository change to every matching subscriber.
+     *
+     * @param event the change
+     */
+    @Override
+    public void onStockChange(StockChangeEvent event) {
+        for (ChangeSubscriber subscriber : subscribers) {
+            if (subscriber.accepts(event)) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /**
+     * Tells every subscriber that the repository contents were replaced wholesale.
+     *
+     * @param snapshot the snapshot that replaced the previous contents
+     */
+    @Override
+    public void onStockReset(StockSnapshot snapshot) {
+        for (ChangeSubscriber subscriber : subscribers) {
+            subscriber.reset(snapshot.getVersion());
+        }
+    }
+
+    /**
+     * Stops offering changes to a subscriber whose send is stuck, and gives the pool a thread in place of the one
+     * the send holds.
+     *
+     * @param subscriber the stalled subscriber
+     */
+    @Override
+    public void stalled(ChangeSubscriber subscriber) {
+        subscribers.remove(subscriber);
+        synchronized (dispatcher) {
+            stalledSends++;
+            resize();
+        }
+        log.warn("Disconnected a stream subscriber stalled for {} ms in a send", stallMillis);
+    }
+
+    /**
+     * Takes back the thread given in place of a stalled send once the send has returned.
+     *
+     * @param subscriber the subscriber whose send returned
+     */
+    @Override
+    public void released(ChangeSubscriber subscriber) {
+        synchronized (dispatcher) {
+            stalledSends--;
+            resize();
+        }
+    }
+
+    private void resize() {
+        int size = dispatcherThreads + Math.min(stalledSends, maxStalledSends);
+        // The maximum may never be below the core size, so the order depends on the direction
+        if (size > dispatcher.getMaximumPoolSize()) {
+            dispatcher.setMaximumPoolSize(size);
+            dispatcher.setCorePoolSize(size);
+        } else if (size < dispatcher.getMaximumPoolSize()) {
+            dispatcher.setCorePoolSize(size);
+            dispatcher.setMaximumPoolSize(size);
+        }
+    }
+
+    private void disconnectStalled() {
+        for (ChangeSubscriber subscriber : subscribers) {
+            subscriber.disconnectIfStalled();
+        }
+    }
+
+    /**
+     * Returns the number of connected subscribers.
+     *
+     * @return the subscriber count
+     */
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Closes every stream and stops the dispatcher and watchdog threads.
+     */
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        for (ChangeSubscriber subscriber : subscribers) {
+            subscriber.close();
+            subscriber.getEmitter().complete();
+        }
+        dispatcher.shutdownNow();
+    }
+}
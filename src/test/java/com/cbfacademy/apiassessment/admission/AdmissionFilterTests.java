@@ -0,0 +1,55 @@
+package com.cbfacademy.apiassessment.admission;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the AdmissionFilter class, checking that requests are charged to the
+ * read or write limit by their route, and that a request over its limit is rejected with a retry hint.
+ */
+class AdmissionFilterTests {
+
+    private static MockHttpServletResponse send(AdmissionFilter filter, String method, String path) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr("10.0.0.1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    @Test
+    void classifiesRequestsByRoute() {
+        assertTrue(AdmissionFilter.isWrite("POST", "/api/stocks"));
+        assertTrue(AdmissionFilter.isWrite("POST", "/api/stocks/import"));
+        assertTrue(AdmissionFilter.isWrite("PATCH", "/api/stocks/AAPL"));
+        assertTrue(AdmissionFilter.isWrite("DELETE", "/api/stocks/lookup"), "Only POST is exempted on a read route");
+        assertFalse(AdmissionFilter.isWrite("POST", "/api/stocks/lookup"));
+        assertFalse(AdmissionFilter.isWrite("POST", "/api/stocks/scenarios"));
+        assertFalse(AdmissionFilter.isWrite("GET", "/api/stocks"));
+    }
+
+    @Test
+    void lookupsAndScenariosDoNotUseUpTheWriteBudget() throws Exception {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("stock.admission.write.rate", "0.001")
+                .withProperty("stock.admission.write.burst", "1")
+                .withProperty("stock.admission.write.client-rate", "0.001")
+                .withProperty("stock.admission.write.client-burst", "1")
+                .withProperty("stock.admission.write.max-wait-ms", "0");
+        AdmissionFilter filter = new AdmissionFilter(environment);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, send(filter, "POST", "/api/stocks/lookup").getStatus());
+            assertEquals(200, send(filter, "POST", "/api/stocks/scenarios").getStatus());
+        }
+        assertEquals(200, send(filter, "POST", "/api/stocks").getStatus());
+        MockHttpServletResponse rejected = send(filter, "PUT", "/api/stocks/AAPL");
+        assertEquals(429, rejected.getStatus());
+        assertNotNull(rejected.getHeader("Retry-After"));
+    }
+}
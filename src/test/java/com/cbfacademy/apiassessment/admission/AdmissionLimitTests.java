@@ -0,0 +1,65 @@
+package com.cbfacademy.apiassessment.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the TokenBucket and AdmissionLimit classes, covering bursts,
+ * reservations, the bounded wait queue and the separation of clients.
+ */
+class AdmissionLimitTests {
+
+    @Test
+    void tokenBucketAdmitsABurstThenReservesAtTheRefillRate() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        long now = System.nanoTime();
+        long second = TimeUnit.SECONDS.toNanos(1);
+
+        assertEquals(0, bucket.reserve(0, now));
+        assertEquals(0, bucket.reserve(0, now));
+        long rejected = bucket.reserve(0, now);
+        assertTrue(rejected < 0);
+        assertEquals(second / 10, -rejected, second / 1000);
+
+        long first = bucket.reserve(second, now);
+        long next = bucket.reserve(second, now);
+        assertEquals(second / 10, first, second / 1000);
+        assertEquals(2 * second / 10, next, second / 1000);
+
+        assertEquals(0, bucket.reserve(0, now + second));
+    }
+
+    @Test
+    void rejectsAClientOverItsLimitWithoutAffectingOthers() {
+        AdmissionLimit limit = new AdmissionLimit(1000, 1000, 1, 2, 0, 4);
+
+        assertTrue(limit.admit("10.0.0.1").admitted());
+        assertTrue(limit.admit("10.0.0.1").admitted());
+        AdmissionLimit.Decision rejected = limit.admit("10.0.0.1");
+        assertFalse(rejected.admitted());
+        assertTrue(rejected.waitNanos() > 0);
+
+        assertTrue(limit.admit("10.0.0.2").admitted());
+    }
+
+    @Test
+    void boundsTheNumberOfWaitingRequests() {
+        AdmissionLimit limit = new AdmissionLimit(1, 1, 1000, 1000, 10_000, 2);
+
+        AdmissionLimit.Decision immediate = limit.admit("a");
+        AdmissionLimit.Decision firstWaiter = limit.admit("b");
+        AdmissionLimit.Decision secondWaiter = limit.admit("c");
+        AdmissionLimit.Decision overflow = limit.admit("d");
+
+        assertEquals(0, immediate.waitNanos());
+        assertTrue(firstWaiter.admitted() && firstWaiter.waitNanos() > 0);
+        assertTrue(secondWaiter.admitted() && secondWaiter.waitNanos() > firstWaiter.waitNanos());
+        assertFalse(overflow.admitted());
+
+        limit.leaveQueue();
+        assertTrue(limit.admit("e").admitted());
+    }
+}
@@ -0,0 +1,182 @@
+package com.cbfacademy.apiassessment.bulk;
+
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for the bulk CSV import and export: an import is parsed in parallel chunks but
+ * keeps the row order, replaces the universe all at once or not at all, refuses a file without rows, runs one
+ * at a time, and reads back what the export wrote.
+ */
+class StockCsvImporterTests {
+
+    @TempDir
+    Path directory;
+
+    private JsonStockRepository repository(int shards) throws Exception {
+        Path file = directory.resolve("shards-" + shards).resolve("stocks.json");
+        Files.createDirectories(file.getParent());
+        if (!Files.exists(file)) {
+            Map<String, Stock> seed = new LinkedHashMap<>();
+            seed.put("AAPL", new Stock("AAPL", "Apple Inc", "$", "Technology", 150.0, 10, 90.0));
+            seed.put("OLD", new Stock("OLD", "Old Corp", "$", "Industrials", 5.0, 1, 4.0));
+            Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(seed));
+        }
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, shards, 1000, "json",
+                "standalone", new DefaultResourceLoader(),
+                new DefaultListableBeanFactory().getBeanProvider(StockChangeListener.class), new WarmUpProgress());
+        repository.startWarmUp();
+        repository.snapshot();
+        return repository;
+    }
+
+    private static ByteArrayInputStream csv(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void importReplacesTheUniverseInRowOrder() throws Exception {
+        for (int shards : new int[] {0, 4}) {
+            JsonStockRepository repository = repository(shards);
+            StockCsvImporter importer = new StockCsvImporter(repository, 7, 4);
+            StringBuilder text = new StringBuilder("ticker,name,currencySymbol,sector,currentPrice,quantity,purchasePrice\n");
+            text.append("AAPL,\"Apple, Inc.\",$,Technology,151.25,12,90\n");
+            for (int i = 0; i < 100; i++) {
+                text.append("T").append(i).append(",Ticker ").append(i).append(",£,Financials,").append(i)
+                        .append(".5,").append(i).append(",1\n");
+            }
+
+            CsvImportResult result = importer.importCsv(csv(text.toString()));
+
+            assertEquals(101, result.getImported());
+            assertNull(repository.findById("OLD"), "Stocks missing from the CSV are removed");
+            Stock apple = repository.findById("AAPL");
+            assertEquals("Apple, Inc.", apple.getName());
+            assertEquals(2, apple.getVersion(), "A replaced stock gets its next version");
+            assertEquals(1, repository.findById("T99").getVersion());
+            assertEquals("T0", repository.snapshot().getStocks().get(1).getTicker());
+            assertEquals("T99", repository.snapshot().getStocks().get(100).getTicker());
+            importer.shutdown();
+            repository.shutdown();
+
+            JsonStockRepository reloaded = repository(shards);
+            assertEquals(101, reloaded.snapshot().size(), "The new universe is persisted");
+            assertNull(reloaded.findById("OLD"));
+            reloaded.shutdown();
+        }
+    }
+
+    @Test
+    void invalidRowsFailTheWholeImport() throws Exception {
+        JsonStockRepository repository = repository(0);
+        StockCsvImporter importer = new StockCsvImporter(repository, 2, 2);
+        String text = "ticker,name,currencySymbol,sector,currentPrice,quantity,purchasePrice\n"
+                + "A,Alpha,$,Tech,1,1,1\n"
+                + "B,Beta,$,Tech,abc,1,1\n"
+                + "C,,$,Tech,1,1,1\n"
+                + "A,Again,$,Tech,1,1,1\n"
+                + "D,Delta,$,Tech,-1,1,1\n";
+
+        CsvImportException failure = assertThrows(CsvImportException.class, () -> importer.importCsv(csv(text)));
+
+        assertEquals(4, failure.getErrors().size(), failure.getErrors().toString());
+        assertTrue(failure.getErrors().get(0).startsWith("Row 3:"));
+        assertTrue(failure.getErrors().get(2).contains("duplicate ticker A"));
+        assertNotNull(repository.findById("OLD"), "Nothing is imported");
+        assertThrows(CsvImportException.class, () -> importer.importCsv(csv("ticker,name\nA,Alpha\n")));
+        importer.shutdown();
+        repository.shutdown();
+    }
+
+    @Test
+    void exportIsReadBackByTheImport() throws Exception {
+        JsonStockRepository repository = repository(0);
+        repository.save(new Stock("Q\"T", "Quote \"and\" comma, co\nline", "€", "Odd, Sector", 0.0001, 0, 1.5));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(3, new StockCsvExporter(repository).export(out));
+
+        StockCsvImporter importer = new StockCsvImporter(repository, 1, 2);
+        importer.importCsv(new ByteArrayInputStream(out.toByteArray()));
+        Stock odd = repository.findById("Q\"T");
+        assertEquals("Quote \"and\" comma, co\nline", odd.getName());
+        assertEquals("Odd, Sector", odd.getSector());
+        assertEquals(0.0001, odd.getCurrentPrice());
+        assertEquals(3, repository.snapshot().size());
+        importer.shutdown();
+        repository.shutdown();
+    }
+
+    @Test
+    void aHeaderWithoutRowsDoesNotEmptyTheUniverse() throws Exception {
+        JsonStockRepository repository = repository(0);
+        StockCsvImporter importer = new StockCsvImporter(repository, 2, 2);
+
+        CsvImportException failure = assertThrows(CsvImportException.class, () -> importer.importCsv(
+                csv("ticker,name,currencySymbol,sector,currentPrice,quantity,purchasePrice\n")));
+
+        assertTrue(failure.getMessage().contains("no stock rows"), failure.getMessage());
+        assertEquals(2, repository.snapshot().size(), "Nothing is imported");
+        importer.shutdown();
+        repository.shutdown();
+    }
+
+    @Test
+    void importsRunOneAtATime() throws Exception {
+        JsonStockRepository repository = repository(0);
+        StockCsvImporter importer = new StockCsvImporter(repository, 2, 2);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream stalled = new InputStream() {
+            private final InputStream body = csv("ticker,name,currencySymbol,sector,currentPrice,quantity,purchasePrice\n"
+                    + "NEW,New Corp,$,Energy,1,1,1\n");
+
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return body.read();
+            }
+        };
+        CompletableFuture<CsvImportResult> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return importer.importCsv(stalled);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+        assertThrows(ImportInProgressException.class, () -> importer.importCsv(csv("ticker\n")));
+        release.countDown();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).getImported());
+        importer.shutdown();
+        repository.shutdown();
+    }
+}
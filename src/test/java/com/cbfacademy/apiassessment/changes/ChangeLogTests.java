@@ -0,0 +1,104 @@
+package com.cbfacademy.apiassessment.changes;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the ChangeLog class, covering reads from memory and from spilled
+ * segments, paging, and the resync signal for aged-out and foreign cursors.
+ */
+class ChangeLogTests {
+
+    @TempDir
+    Path directory;
+
+    private ChangeLog changeLog;
+
+    @AfterEach
+    void tearDown() {
+        if (changeLog != null) {
+            changeLog.shutdown();
+        }
+    }
+
+    private void record(long fromVersion, long toVersion) {
+        for (long version = fromVersion; version <= toVersion; version++) {
+            String ticker = "T" + version;
+            Stock stock = new Stock(ticker, ticker, "$", "Technology", (double) version, 1, 1.0);
+            changeLog.onStockChange(new StockChangeEvent(StockChangeEvent.Type.CREATED, ticker, stock, version, version));
+        }
+    }
+
+    private static List<Long> versions(ChangeBatch batch) {
+        return batch.getChanges().stream().map(StockChangeEvent::getVersion).toList();
+    }
+
+    @Test
+    void returnsOnlyChangesAfterTheCursor() {
+        changeLog = new ChangeLog(null, 10, 10, 0, "");
+        record(2, 6);
+
+        ChangeBatch batch = changeLog.changesSince(4, changeLog.getEpoch(), 100);
+
+        assertFalse(batch.isResyncRequired());
+        assertEquals(List.of(5L, 6L), versions(batch));
+        assertEquals(6, batch.getNext());
+        assertTrue(changeLog.changesSince(6, null, 100).getChanges().isEmpty());
+    }
+
+    @Test
+    void readsSpilledChangesAndPages() {
+        changeLog = new ChangeLog(null, 5, 100, 3, directory.toString());
+        record(2, 301);
+
+        ChangeBatch first = changeLog.changesSince(1, null, 250);
+        assertFalse(first.isResyncRequired());
+        assertEquals(250, first.getChanges().size());
+        assertEquals("T2", first.getChanges().get(0).getStock().getTicker());
+        assertEquals(251, first.getNext());
+        assertTrue(first.isHasMore());
+
+        // The second page runs from the last spilled segment into the memory log
+        ChangeBatch second = changeLog.changesSince(first.getNext(), first.getEpoch(), 250);
+        assertEquals(50, second.getChanges().size());
+        assertEquals(252, second.getChanges().get(0).getVersion());
+        assertEquals(301, second.getNext());
+        assertFalse(second.isHasMore());
+    }
+
+    @Test
+    void signalsResyncWhenTheCursorHasAgedOut() {
+        changeLog = new ChangeLog(null, 5, 100, 2, directory.toString());
+        record(2, 1001);
+
+        ChangeBatch aged = changeLog.changesSince(10, null, 100);
+        assertTrue(aged.isResyncRequired());
+        assertTrue(aged.getChanges().isEmpty());
+        assertEquals(1001, aged.getNext());
+
+        // The two retained segments cover 802..996, and memory holds 997..1001
+        assertTrue(changeLog.changesSince(800, null, 1000).isResyncRequired());
+        ChangeBatch retained = changeLog.changesSince(801, null, 1000);
+        assertFalse(retained.isResyncRequired());
+        assertEquals(200, retained.getChanges().size());
+        assertEquals(802, retained.getChanges().get(0).getVersion());
+        assertEquals(1001, retained.getNext());
+    }
+
+    @Test
+    void signalsResyncForACursorFromAnotherEpoch() {
+        changeLog = new ChangeLog(null, 10, 10, 0, "");
+        record(2, 3);
+
+        assertTrue(changeLog.changesSince(2, "another-run", 100).isResyncRequired());
+        assertTrue(changeLog.changesSince(50, null, 100).isResyncRequired());
+    }
+}
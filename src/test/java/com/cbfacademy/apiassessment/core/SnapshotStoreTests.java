@@ -0,0 +1,137 @@
+package com.cbfacademy.apiassessment.core;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the SnapshotStore class. It checks that snapshots rotate into a
+ * bounded set of checkpoints and that recovery falls back to the newest intact checkpoint when the live
+ * file has been damaged by an unclean shutdown.
+ */
+class SnapshotStoreTests {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void recoversLatestSnapshot() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory.resolve("stocks.json"), 2);
+        store.write(bytes("first"));
+        store.write(bytes("second"));
+
+        assertEquals("second", store.recover(data -> new String(data, StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void keepsOnlyTheRetainedCheckpoints() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory.resolve("stocks.json"), 2);
+        for (String value : Arrays.asList("one", "two", "three", "four")) {
+            store.write(bytes(value));
+        }
+
+        assertEquals("three", Files.readString(directory.resolve("stocks.json.1")));
+        assertEquals("two", Files.readString(directory.resolve("stocks.json.2")));
+        assertFalse(Files.exists(directory.resolve("stocks.json.3")));
+    }
+
+    @Test
+    void fallsBackWhenLiveFileIsTruncated() throws IOException {
+        Path live = directory.resolve("stocks.json");
+        SnapshotStore store = new SnapshotStore(live, 2);
+        store.write(bytes("{\"valid\":1}"));
+        store.write(bytes("{\"valid\":2}"));
+        Files.write(live, bytes("{\"val"));
+
+        Map<String, Integer> recovered = store.recover(data -> objectMapper.readValue(data, new TypeReference<>() {}));
+
+        assertEquals(1, recovered.get("valid"));
+    }
+
+    @Test
+    void recoversTheNewSnapshotAfterACrashBetweenItsRenamesWithoutCheckpoints() throws IOException {
+        Path live = directory.resolve("stocks.json");
+        new SnapshotStore(live, 0).write(bytes("old"));
+        SnapshotStore crashing = new SnapshotStore(live, 0) {
+            private int moves;
+
+            @Override
+            void move(Path source, Path target) throws IOException {
+                if (++moves == 2) {
+                    throw new IOException("Crashed between the renames");
+                }
+                super.move(source, target);
+            }
+        };
+        assertThrows(IOException.class, () -> crashing.write(bytes("new")));
+
+        assertEquals("new", new SnapshotStore(live, 0).recover(data -> new String(data, StandardCharsets.UTF_8)),
+                "The data file is renamed into place before its sidecar");
+    }
+
+    @Test
+    void acceptsSeedFileWithoutChecksum() throws IOException {
+        Path live = directory.resolve("stocks.json");
+        Files.write(live, bytes("seed"));
+
+        assertEquals("seed", new SnapshotStore(live, 2).recover(data -> new String(data, StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void failsWhenNoSnapshotIsValid() throws IOException {
+        Path live = directory.resolve("stocks.json");
+        SnapshotStore store = new SnapshotStore(live, 1);
+        store.write(bytes("only"));
+        Files.write(live, bytes("torn"));
+
+        assertThrows(IOException.class, () -> store.recover(data -> new String(data, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Simulates an unclean shutdown in the middle of a write of a 100,000 stock universe: a stray temporary
+     * file is left behind and the live file is torn. Recovery has to skip the live file and decode the
+     * previous checkpoint, and the time it takes is reported as the restart-to-ready cost.
+     */
+    @Test
+    void recoversQuicklyAfterUncleanShutdown() throws IOException {
+        Map<String, Stock> universe = new LinkedHashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            universe.put("T" + i, new Stock("T" + i, "Company " + i, "$", "Technology", 100.0 + i % 50, i % 100, 90.0));
+        }
+        byte[] data = objectMapper.writeValueAsBytes(universe);
+        Path live = directory.resolve("stocks.json");
+        SnapshotStore store = new SnapshotStore(live, 3);
+        store.write(data);
+        store.write(data);
+        Files.write(directory.resolve("stocks.json.tmp"), Arrays.copyOf(data, data.length / 3));
+        Files.write(live, Arrays.copyOf(data, data.length / 2));
+
+        long start = System.nanoTime();
+        Map<String, Stock> recovered = store.recover(bytes -> objectMapper.readValue(bytes, new TypeReference<>() {}));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("Recovered %,d stocks (%,d bytes) after unclean shutdown in %d ms%n",
+                recovered.size(), data.length, elapsedMillis);
+        assertEquals(universe.size(), recovered.size());
+        assertFalse(Files.exists(directory.resolve("stocks.json.tmp")));
+        assertTrue(elapsedMillis < 10_000, "Recovery took " + elapsedMillis + " ms");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
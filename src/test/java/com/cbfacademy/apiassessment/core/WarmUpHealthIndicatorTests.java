@@ -0,0 +1,45 @@
+package com.cbfacademy.apiassessment.core;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the WarmUpHealthIndicator class, covering the health reported in each
+ * phase of the repository warm-up.
+ */
+class WarmUpHealthIndicatorTests {
+
+    @Test
+    void isOutOfServiceUntilTheWarmUpCompletes() {
+        WarmUpProgress progress = new WarmUpProgress();
+        WarmUpHealthIndicator indicator = new WarmUpHealthIndicator(progress);
+        assertEquals(Status.OUT_OF_SERVICE, indicator.health().getStatus());
+
+        progress.loading();
+        progress.indexing(42);
+        Health indexing = indicator.health();
+        assertEquals(Status.OUT_OF_SERVICE, indexing.getStatus());
+        assertEquals(WarmUpProgress.Phase.INDEXING, indexing.getDetails().get("phase"));
+        assertEquals(42, indexing.getDetails().get("stocks"));
+
+        progress.ready();
+        Health ready = indicator.health();
+        assertEquals(Status.UP, ready.getStatus());
+        assertTrue(ready.getDetails().containsKey("indexMillis"));
+    }
+
+    @Test
+    void isDownWhenTheWarmUpFails() {
+        WarmUpProgress progress = new WarmUpProgress();
+        progress.loading();
+        progress.failed(new PersistenceException("JSON file not found: stocks.json"));
+
+        Health health = new WarmUpHealthIndicator(progress).health();
+
+        assertEquals(Status.DOWN, health.getStatus());
+        assertEquals("JSON file not found: stocks.json", health.getDetails().get("error"));
+    }
+}
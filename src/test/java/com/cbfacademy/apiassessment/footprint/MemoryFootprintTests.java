@@ -0,0 +1,105 @@
+package com.cbfacademy.apiassessment.footprint;
+
+import com.cbfacademy.apiassessment.core.HeapEstimate;
+import com.cbfacademy.apiassessment.core.HeapFootprintSource;
+import com.cbfacademy.apiassessment.core.HeapStructure;
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import com.cbfacademy.apiassessment.history.PriceHistory;
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for the memory footprint report: every source contributes its structures, the
+ * estimates grow with the data, and the persistence figures and gauges follow the writes.
+ */
+class MemoryFootprintTests {
+
+    @TempDir
+    Path directory;
+
+    private static HeapStructure structure(MemoryFootprintReport report, String name) {
+        return report.getStructures().stream()
+                .filter(candidate -> candidate.getStructure().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No structure " + name));
+    }
+
+    private static long bytes(MemoryFootprintReport report, String name) {
+        return structure(report, name).getBytes();
+    }
+
+    @Test
+    void heapEstimatesFollowTheJvmLayout() {
+        assertEquals(24 + 24, HeapEstimate.string("AAPL"), "Four Latin-1 characters pad to 24 array bytes");
+        assertEquals(24 + 24, HeapEstimate.string("€€€€"), "Other characters take two bytes each");
+        assertEquals(0, HeapEstimate.string(null));
+        assertEquals(16 + 16 * 4, HeapEstimate.referenceArray(16));
+        // 13 entries exceed 0.75 of a 16 slot table, so the table doubles
+        assertEquals(48 + HeapEstimate.referenceArray(32) + 13 * 32, HeapEstimate.hashMap(13));
+        assertEquals(48 + HeapEstimate.referenceArray(16) + 12 * 32, HeapEstimate.hashMap(12));
+        assertEquals(48, HeapEstimate.hashMap(0), "An empty map has no table yet");
+    }
+
+    @Test
+    void reportCoversEverySourceAndFollowsTheWrites() throws Exception {
+        Path file = directory.resolve("stocks.json");
+        Map<String, Stock> seed = new LinkedHashMap<>();
+        seed.put("AAPL", new Stock("AAPL", "Apple Inc", "$", "Technology", 150.0, 10, 90.0));
+        Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(seed));
+
+        PriceHistory history = new PriceHistory(16, 100);
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("priceHistory", history);
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, 0, 1000, "json",
+                "standalone", new DefaultResourceLoader(), beans.getBeanProvider(StockChangeListener.class),
+                new WarmUpProgress());
+        beans.registerSingleton("repository", repository);
+        repository.startWarmUp();
+        repository.snapshot();
+        MemoryFootprint footprint = new MemoryFootprint(repository, beans.getBeanProvider(HeapFootprintSource.class));
+
+        MemoryFootprintReport before = footprint.report();
+        assertEquals(1, before.getStocks());
+        assertEquals(0, structure(before, "price-history").getEntries(), "No price has been recorded yet");
+        assertTrue(before.getPersistence().getLastSnapshotBytes() > 0, "The loaded snapshot size is known");
+        assertEquals(0, before.getPersistence().getPersists());
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        footprint.bindTo(registry);
+        for (int i = 0; i < 50; i++) {
+            repository.save(new Stock("T" + i, "Ticker number " + i, "$", "Financials", 10.0 + i, i, 5.0));
+        }
+        MemoryFootprintReport after = footprint.report();
+
+        assertEquals(51, after.getStocks());
+        assertEquals(after.getVersion(), after.getPersistence().getPersistedVersion());
+        assertEquals(50, after.getPersistence().getPersists());
+        assertTrue(after.getPersistence().getLastSnapshotBytes() > before.getPersistence().getLastSnapshotBytes());
+        assertTrue(bytes(after, "stocks") > 50 * 56, "Every stock is counted with its strings");
+        assertTrue(bytes(after, "database") > bytes(before, "database"));
+        assertEquals(50 * (40 + 2 * HeapEstimate.longArray(16)) + HeapEstimate.hashMap(50),
+                bytes(after, "price-history"), "A ring is allocated at full capacity for each ticker priced");
+        assertEquals(after.getStructures().stream().mapToLong(HeapStructure::getBytes).sum(),
+                after.getEstimatedBytes());
+
+        assertEquals(51, registry.get("stock.memory.stocks").gauge().value());
+        assertEquals(bytes(after, "stocks"),
+                registry.get("stock.memory.estimated").tag("structure", "stocks").gauge().value());
+        assertTrue(registry.get("stock.persistence.snapshot.size").gauge().value() > 0);
+        repository.shutdown();
+    }
+}
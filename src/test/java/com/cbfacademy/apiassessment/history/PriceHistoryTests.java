@@ -0,0 +1,91 @@
+package com.cbfacademy.apiassessment.history;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This class contains unit tests for the PriceHistory class, covering OHLC downsampling,
+ * the per-ticker retention limit, the recycling of rings once the ticker limit is reached and the
+ * handling of a wholesale replacement of the stocks.
+ */
+class PriceHistoryTests {
+
+    @Test
+    void downsamplesTicksIntoBars() {
+        PriceHistory history = new PriceHistory(16, 10);
+        history.record("AAPL", 60_000, Stock.toUnits(100.0));
+        history.record("AAPL", 70_000, Stock.toUnits(105.5));
+        history.record("AAPL", 80_000, Stock.toUnits(99.0));
+        history.record("AAPL", 125_000, Stock.toUnits(101.0));
+
+        List<OhlcBar> bars = history.bars("AAPL", PriceHistory.parseInterval("1m"));
+
+        assertEquals(2, bars.size());
+        OhlcBar first = bars.get(0);
+        assertEquals(60_000, first.getStart());
+        assertEquals(100.0, first.getOpen());
+        assertEquals(105.5, first.getHigh());
+        assertEquals(99.0, first.getLow());
+        assertEquals(99.0, first.getClose());
+        assertEquals(3, first.getTicks());
+        assertEquals(120_000, bars.get(1).getStart());
+    }
+
+    @Test
+    void keepsOnlyTheMostRecentTicks() {
+        PriceHistory history = new PriceHistory(3, 10);
+        for (int i = 1; i <= 5; i++) {
+            history.record("AAPL", i * 1_000L, Stock.toUnits(i));
+        }
+
+        List<OhlcBar> bars = history.bars("AAPL", PriceHistory.parseInterval("1h"));
+
+        assertEquals(1, bars.size());
+        assertEquals(3, bars.get(0).getTicks());
+        assertEquals(3.0, bars.get(0).getOpen());
+        assertEquals(5.0, bars.get(0).getClose());
+    }
+
+    @Test
+    void evictsLeastRecentlyUpdatedTicker() {
+        PriceHistory history = new PriceHistory(4, 2);
+        history.record("AAPL", 1_000, 1);
+        history.record("MSFT", 2_000, 1);
+        history.record("AAPL", 3_000, 1);
+        history.record("TSLA", 4_000, 1);
+
+        assertEquals(2, history.trackedTickers());
+        assertTrue(history.bars("MSFT", 1_000).isEmpty());
+        assertEquals(1, history.bars("TSLA", 1_000).size());
+    }
+
+    @Test
+    void rejectsInvalidIntervals() {
+        assertThrows(IllegalArgumentException.class, () -> PriceHistory.parseInterval("1w"));
+        assertThrows(IllegalArgumentException.class, () -> PriceHistory.parseInterval("0m"));
+        assertThrows(IllegalArgumentException.class, () -> PriceHistory.parseInterval(null));
+    }
+
+    @Test
+    void aResetDropsTheTickersThatAreGoneAndRecordsTheOthers() {
+        PriceHistory history = new PriceHistory(16, 10);
+        history.record("AAPL", 1_000, Stock.toUnits(100.0));
+        history.record("OLD", 1_000, Stock.toUnits(5.0));
+        StockSnapshot replaced = mock(StockSnapshot.class);
+        when(replaced.get("AAPL")).thenReturn(new Stock("AAPL", "Apple Inc", "$", "Technology", 120.0, 10, 90.0));
+
+        history.onStockReset(replaced);
+
+        assertEquals(1, history.trackedTickers());
+        assertTrue(history.bars("OLD", 1_000).isEmpty(), "A ticker missing from the new universe loses its history");
+        List<OhlcBar> bars = history.bars("AAPL", PriceHistory.parseInterval("1d"));
+        assertEquals(120.0, bars.get(bars.size() - 1).getClose(), "The price in the new universe is recorded");
+    }
+}
@@ -0,0 +1,324 @@
+package com.cbfacademy.apiassessment.loadtest;
+
+import com.cbfacademy.apiassessment.StockApplication;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the stock API with an open-loop mix of reads and writes and reports latency percentiles and
+ * throughput per endpoint.
+ *
+ * <p>The application is started on a random localhost port with a synthetic universe of stocks. Requests are
+ * issued at a fixed arrival rate whether or not earlier ones have completed, and each latency is measured from
+ * the time the request was due to be sent rather than when it actually was, so a stalled server shows up in the
+ * percentiles instead of silently lowering the offered load. Requests due during the warm-up period are not
+ * recorded.
+ *
+ * <p>This test is tagged {@code loadtest} and is excluded from the normal build. Run it with
+ * {@code mvn test -Ploadtest}, tuned with these system properties:
+ * <ul>
+ *     <li>{@code loadtest.rate} - requests per second (default 500)</li>
+ *     <li>{@code loadtest.duration} - measured seconds (default 30)</li>
+ *     <li>{@code loadtest.warmup} - unmeasured seconds before that (default 5)</li>
+ *     <li>{@code loadtest.stocks} - size of the synthetic universe (default 10000)</li>
+ *     <li>{@code loadtest.mix} - operation weights (default
+ *     {@code get=40,list=2,sort=3,search=10,sector=10,create=10,update=20,delete=5})</li>
+ *     <li>{@code loadtest.admission} - whether admission control is enabled (default false)</li>
+ *     <li>{@code loadtest.max-error-rate} - the largest tolerated share of 5xx and transport errors (default 0.001)</li>
+ * </ul>
+ * The report is printed and written to {@code target/loadtest-report.txt}.
+ */
+@Tag("loadtest")
+@SpringBootTest(classes = StockApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class StockApiLoadTest {
+
+    private static final String[] SECTORS = {"Technology", "Energy", "Healthcare", "Financials", "Industrials"};
+    private static final String[] SORT_ATTRIBUTES = {"name", "currentPrice", "purchasePrice", "quantity"};
+    private static final String DEFAULT_MIX = "get=40,list=2,sort=3,search=10,sector=10,create=10,update=20,delete=5";
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final int MAX_IN_FLIGHT = 20_000;
+
+    private static final int STOCKS = Integer.getInteger("loadtest.stocks", 10_000);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(32))
+            .build();
+
+    /**
+     * Tickers created by the test that are available to be deleted.
+     */
+    private final ConcurrentLinkedQueue<String> created = new ConcurrentLinkedQueue<>();
+    private final AtomicLong createSequence = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @LocalServerPort
+    private int port;
+
+    /**
+     * A request to send, and the ticker it creates if it is a create.
+     */
+    private record Call(HttpRequest request, String createdTicker) {
+    }
+
+    /**
+     * The latencies and outcomes of one kind of request.
+     */
+    private static final class OperationStats {
+        private final Histogram latency = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        private final AtomicLong ok = new AtomicLong();
+        private final AtomicLong clientErrors = new AtomicLong();
+        private final AtomicLong serverErrors = new AtomicLong();
+    }
+
+    @DynamicPropertySource
+    static void syntheticUniverse(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("stock-loadtest");
+        Path file = directory.resolve("stocks.json");
+        Map<String, Stock> universe = new LinkedHashMap<>();
+        for (int i = 0; i < STOCKS; i++) {
+            universe.put(ticker(i), synthetic(ticker(i), i));
+        }
+        new ObjectMapper().writeValue(file.toFile(), universe);
+        registry.add("json.file.path", () -> "file:" + file);
+        registry.add("json.snapshot.retained", () -> "0");
+        registry.add("logging.level.com.cbfacademy.apiassessment.stock", () -> "INFO");
+        // Every request comes from localhost, so per-client limits would cap the whole test
+        registry.add("stock.admission.enabled", () -> System.getProperty("loadtest.admission", "false"));
+    }
+
+    private static String ticker(int index) {
+        return "S" + index;
+    }
+
+    private static Stock synthetic(String ticker, long seed) {
+        return new Stock(ticker, "Company " + ticker, "$", SECTORS[(int) (seed % SECTORS.length)],
+                10.0 + seed % 990, (int) (seed % 1000), 5.0 + seed % 500);
+    }
+
+    @Test
+    void reportsLatencyUnderAnOpenLoopMix() throws Exception {
+        int rate = Integer.getInteger("loadtest.rate", 500);
+        int duration = Integer.getInteger("loadtest.duration", 30);
+        int warmup = Integer.getInteger("loadtest.warmup", 5);
+        double maxErrorRate = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.001"));
+        Map<String, Integer> mix = parseMix(System.getProperty("loadtest.mix", DEFAULT_MIX));
+
+        awaitReady();
+
+        Map<String, OperationStats> stats = new LinkedHashMap<>();
+        mix.keySet().forEach(operation -> stats.put(operation, new OperationStats()));
+        List<String> schedule = weightedSchedule(mix);
+        AtomicLong transportErrors = new AtomicLong();
+        AtomicLong dropped = new AtomicLong();
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+        for (long i = 0; ; i++) {
+            long due = start + i * intervalNanos;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = due >= measureFrom;
+            String operation = schedule.get(ThreadLocalRandom.current().nextInt(schedule.size()));
+            if (inFlight.get() >= MAX_IN_FLIGHT) {
+                if (measured) {
+                    dropped.incrementAndGet();
+                }
+                continue;
+            }
+            inFlight.incrementAndGet();
+            Call call = call(operation);
+            client.sendAsync(call.request(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        inFlight.decrementAndGet();
+                        if (call.createdTicker() != null && response != null && response.statusCode() == 201) {
+                            created.add(call.createdTicker());
+                        }
+                        if (!measured) {
+                            return;
+                        }
+                        OperationStats operationStats = stats.get(operation);
+                        operationStats.latency.recordValue(Math.min(System.nanoTime() - due, MAX_LATENCY_NANOS));
+                        if (error != null) {
+                            transportErrors.incrementAndGet();
+                        } else if (response.statusCode() >= 500) {
+                            operationStats.serverErrors.incrementAndGet();
+                        } else if (response.statusCode() >= 400) {
+                            operationStats.clientErrors.incrementAndGet();
+                        } else {
+                            operationStats.ok.incrementAndGet();
+                        }
+                    });
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        double elapsedSeconds = (System.nanoTime() - measureFrom) / 1e9;
+
+        String report = report(stats, rate, duration, elapsedSeconds, transportErrors.get(), dropped.get());
+        System.out.println(report);
+        Files.writeString(Path.of("target", "loadtest-report.txt"), report);
+        ((ExecutorService) client.executor().orElseThrow()).shutdownNow();
+
+        long total = stats.values().stream().mapToLong(s -> s.latency.getTotalCount()).sum() + dropped.get();
+        long failures = stats.values().stream().mapToLong(s -> s.serverErrors.get()).sum()
+                + transportErrors.get() + dropped.get();
+        assertTrue(total > 0, "No requests were measured");
+        assertTrue((double) failures / total <= maxErrorRate,
+                "Error rate " + failures + "/" + total + " exceeds " + maxErrorRate);
+    }
+
+    private Call call(String operation) {
+        String ticker = operation.equals("create") ? "L" + createSequence.incrementAndGet() : null;
+        return new Call(request(operation, ticker), ticker);
+    }
+
+    private HttpRequest request(String operation, String newTicker) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String existing = ticker(random.nextInt(STOCKS));
+        return switch (operation) {
+            case "get" -> get("/api/stocks/" + existing);
+            case "list" -> get("/api/stocks");
+            case "sort" -> get("/api/stocks/sort?attribute=" + SORT_ATTRIBUTES[random.nextInt(SORT_ATTRIBUTES.length)]);
+            case "search" -> get("/api/stocks/search/Company%20" + existing);
+            case "sector" -> get("/api/stocks/searchBySector/" + SECTORS[random.nextInt(SECTORS.length)]);
+            case "create" -> send("POST", "/api/stocks", synthetic(newTicker, random.nextInt(1000)));
+            case "update" -> send("PUT", "/api/stocks/" + existing, synthetic(existing, random.nextInt(1000)));
+            case "delete" -> {
+                // Only stocks the test has created are deleted, so the read mix keeps hitting existing tickers
+                String ticker = created.poll();
+                yield ticker == null
+                        ? get("/api/stocks/" + existing)
+                        : HttpRequest.newBuilder(uri("/api/stocks/" + ticker)).DELETE().build();
+            }
+            default -> throw new IllegalArgumentException("Unknown operation in load mix: " + operation);
+        };
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private HttpRequest send(String method, String path, Stock stock) {
+        try {
+            return HttpRequest.newBuilder(uri(path))
+                    .header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(stock)))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private void awaitReady() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (System.nanoTime() < deadline) {
+            HttpResponse<Void> response = client.send(get("/actuator/health/readiness"),
+                    HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() == 200) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Application did not become ready");
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(parts[0].trim(), weight);
+            }
+        }
+        return weights;
+    }
+
+    private static List<String> weightedSchedule(Map<String, Integer> mix) {
+        List<String> schedule = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                schedule.add(operation);
+            }
+        });
+        return schedule;
+    }
+
+    private static String report(Map<String, OperationStats> stats, int rate, int duration, double elapsedSeconds,
+                                 long transportErrors, long dropped) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Open-loop load test: target %d req/s for %d s, %d stocks%n", rate, duration, STOCKS));
+        report.append(String.format("%-8s %9s %8s %6s %6s %9s %9s %9s %9s %9s%n",
+                "op", "count", "req/s", "4xx", "5xx", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        Histogram all = new Histogram(MAX_LATENCY_NANOS, 3);
+        stats.forEach((operation, operationStats) -> {
+            Histogram latency = operationStats.latency;
+            all.add(latency);
+            report.append(row(operation, latency, elapsedSeconds,
+                    operationStats.clientErrors.get(), operationStats.serverErrors.get()));
+        });
+        long clientErrors = stats.values().stream().mapToLong(s -> s.clientErrors.get()).sum();
+        long serverErrors = stats.values().stream().mapToLong(s -> s.serverErrors.get()).sum();
+        report.append(row("all", all, elapsedSeconds, clientErrors, serverErrors));
+        report.append(String.format("transport errors: %d, dropped (over %d in flight): %d%n",
+                transportErrors, MAX_IN_FLIGHT, dropped));
+        return report.toString();
+    }
+
+    private static String row(String operation, Histogram latency, double elapsedSeconds, long clientErrors,
+                              long serverErrors) {
+        return String.format("%-8s %9d %8.1f %6d %6d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                operation, latency.getTotalCount(), latency.getTotalCount() / elapsedSeconds, clientErrors, serverErrors,
+                millis(latency, 50), millis(latency, 90), millis(latency, 99), millis(latency, 99.9),
+                latency.getMaxValue() / 1e6);
+    }
+
+    private static double millis(Histogram latency, double percentile) {
+        return latency.getValueAtPercentile(percentile) / 1e6;
+    }
+}
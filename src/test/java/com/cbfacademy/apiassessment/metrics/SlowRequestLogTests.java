@@ -0,0 +1,97 @@
+package com.cbfacademy.apiassessment.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the SlowRequestLog class, covering the bounded selection of the
+ * slowest requests, the expiry of old windows, and the time source requests are stamped with.
+ */
+class SlowRequestLogTests {
+
+    /**
+     * A clock that only moves when the test advances it.
+     */
+    private static final class ManualClock extends Clock {
+        private long millis = 1_700_000_000_000L;
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static SlowRequest request(long timestamp, String route, long millis) {
+        long nanos = millis * 1_000_000;
+        return new SlowRequest(timestamp, "GET", route, route, null, 200, nanos, nanos, 0, 0);
+    }
+
+    @Test
+    void keepsOnlyTheSlowestRequests() {
+        SlowRequestLog log = new SlowRequestLog(3, 60_000);
+        long now = System.currentTimeMillis();
+        for (int millis : new int[]{5, 80, 12, 300, 1, 45, 7}) {
+            log.offer(request(now, "/api/stocks/sort", millis));
+        }
+
+        List<Double> kept = log.slowest().stream().map(SlowRequest::getTotalMillis).toList();
+
+        assertEquals(List.of(300.0, 80.0, 45.0), kept);
+    }
+
+    @Test
+    void forgetsRequestsOlderThanTwoWindows() {
+        ManualClock clock = new ManualClock();
+        SlowRequestLog log = new SlowRequestLog(3, 200, clock);
+        log.offer(request(clock.millis(), "/api/stocks", 500));
+        clock.advance(250);
+        log.offer(request(clock.millis(), "/api/stocks/search/{name}", 10));
+
+        assertEquals(2, log.slowest().size(), "The previous window is still reported");
+
+        clock.advance(199);
+        assertEquals(1, log.slowest().size(), "The first request ages out with its window");
+        clock.advance(251);
+        assertTrue(log.slowest().isEmpty());
+    }
+
+    @Test
+    void requestsStampedWithTheLogsClockStayInItsWindow() {
+        // The log's clock runs years behind the system clock, as a test clock or a corrected one may
+        ManualClock clock = new ManualClock();
+        SlowRequestLog log = new SlowRequestLog(1, 200, clock);
+        log.offer(request(log.now(), "/api/stocks", 500));
+        clock.advance(50);
+        log.offer(request(log.now(), "/api/stocks/search/{name}", 10));
+
+        List<Double> kept = log.slowest().stream().map(SlowRequest::getTotalMillis).toList();
+
+        assertEquals(List.of(500.0), kept, "A faster request in the same window does not roll it over");
+    }
+}
@@ -0,0 +1,70 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the HashRing class, checking that tickers are spread evenly over the
+ * members, that a join or a leave only moves the tickers of the arcs that changed hands, and that every node
+ * computes the same owners from the same ring.
+ */
+class HashRingTests {
+
+    private static final int TICKERS = 100_000;
+    private static final List<String> NODES = List.of("http://a:8080", "http://b:8080", "http://c:8080");
+
+    @Test
+    void spreadsTickersEvenlyOverMembers() {
+        HashRing ring = new HashRing(1, 128, NODES);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < TICKERS; i++) {
+            counts.merge(ring.ownerOf("T" + i), 1, Integer::sum);
+        }
+
+        assertEquals(NODES.size(), counts.size());
+        double fair = (double) TICKERS / NODES.size();
+        counts.values().forEach(count -> assertTrue(Math.abs(count - fair) < fair * 0.15, counts.toString()));
+    }
+
+    @Test
+    void joinAndLeaveOnlyMoveTheirOwnArcs() {
+        HashRing ring = new HashRing(1, 128, NODES);
+        HashRing joined = ring.with("http://d:8080");
+        HashRing left = joined.without("http://d:8080");
+        int moved = 0;
+        for (int i = 0; i < TICKERS; i++) {
+            String before = ring.ownerOf("T" + i);
+            String after = joined.ownerOf("T" + i);
+            if (!before.equals(after)) {
+                assertEquals("http://d:8080", after, "A join must only move tickers to the new member");
+                moved++;
+            }
+            assertEquals(before, left.ownerOf("T" + i));
+        }
+
+        assertEquals(2, joined.getVersion());
+        assertTrue(moved > TICKERS * 0.15 && moved < TICKERS * 0.35, "moved " + moved);
+    }
+
+    @Test
+    void ownersDependOnlyOnTheMembership() throws Exception {
+        HashRing ring = new HashRing(3, 64, List.of("http://c:8080", "http://a:8080", "http://b:8080"));
+        byte[] sent = StorageFormat.JSON.documentMapper().writeValueAsBytes(ring);
+
+        HashRing received = StorageFormat.JSON.documentMapper().readValue(sent, HashRing.class);
+
+        assertEquals(NODES, received.getMembers());
+        assertEquals(3, received.getVersion());
+        HashRing reordered = new HashRing(3, 64, NODES);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(reordered.ownerOf("T" + i), received.ownerOf("T" + i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new HashRing(1, 64, List.of()));
+    }
+}
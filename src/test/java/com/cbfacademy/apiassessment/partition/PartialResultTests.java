@@ -0,0 +1,97 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the PartialResult class, checking that sorted parts streamed from other
+ * nodes are merged into one sorted result, that stocks a part does not own are skipped, and that a body that
+ * is not a list counts as an empty part.
+ */
+class PartialResultTests {
+
+    private static final ObjectMapper SMILE = StorageFormat.SMILE.documentMapper();
+    private static final ObjectMapper JSON = StorageFormat.JSON.documentMapper();
+    private static final ObjectReader READER = SMILE.readerFor(Stock.class);
+
+    private static Stock stock(String ticker, double price) {
+        return new Stock(ticker, ticker + " Inc", "$", "Technology", price, 10, 90.0);
+    }
+
+    private static String merged(List<PartialResult> parts, Comparator<Stock> order) throws Exception {
+        List<Stock> out = new ArrayList<>();
+        if (order == null) {
+            PartialResult.concat(parts, out);
+        } else {
+            PartialResult.merge(parts, order, out);
+        }
+        return JSON.writerFor(new TypeReference<List<Stock>>() {}).writeValueAsString(out);
+    }
+
+    @Test
+    void mergesSortedPartsIntoOneSortedResult() throws Exception {
+        Comparator<Stock> order = StockSnapshot.sortOrder("currentPrice");
+        Random random = new Random(7);
+        List<Stock> all = new ArrayList<>();
+        List<List<Stock>> partitions = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        for (int i = 0; i < 300; i++) {
+            Stock stock = stock("T" + i, random.nextInt(1000) / 4.0);
+            all.add(stock);
+            partitions.get(i % 3).add(stock);
+        }
+        partitions.forEach(partition -> partition.sort(order));
+        all.sort(order);
+
+        List<PartialResult> parts = List.of(
+                PartialResult.of(partitions.get(0), stock -> true),
+                PartialResult.read(READER, new ByteArrayInputStream(SMILE.writeValueAsBytes(partitions.get(1))),
+                        stock -> true),
+                PartialResult.read(READER, new ByteArrayInputStream(SMILE.writeValueAsBytes(partitions.get(2))),
+                        stock -> true));
+
+        List<Stock> result = List.of(JSON.readValue(merged(parts, order), Stock[].class));
+
+        assertEquals(all.size(), result.size());
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(order.compare(result.get(i - 1), result.get(i)) <= 0, "out of order at " + i);
+        }
+    }
+
+    @Test
+    void skipsStocksThePartDoesNotOwn() throws Exception {
+        List<Stock> held = List.of(stock("A", 1), stock("MOVED", 2), stock("B", 3));
+        Set<String> owned = Set.of("A", "B");
+
+        PartialResult local = PartialResult.of(held, stock -> owned.contains(stock.getTicker()));
+        PartialResult remote = PartialResult.read(READER, new ByteArrayInputStream(SMILE.writeValueAsBytes(held)),
+                stock -> stock.getTicker().equals("MOVED"));
+
+        assertEquals(JSON.writeValueAsString(List.of(held.get(0), held.get(2), held.get(1))),
+                merged(List.of(local, remote), null));
+    }
+
+    @Test
+    void bodyThatIsNotAListIsAnEmptyPart() throws Exception {
+        byte[] message = SMILE.writeValueAsBytes(Map.of("message", "No stocks found for sector: Mining"));
+
+        PartialResult part = PartialResult.read(READER, new ByteArrayInputStream(message), stock -> true);
+
+        assertNull(part.peek());
+        assertEquals("[]", merged(List.of(part), null));
+    }
+}
@@ -0,0 +1,312 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import com.cbfacademy.apiassessment.search.LinearSearch;
+import com.cbfacademy.apiassessment.stock.DefaultStockService;
+import com.cbfacademy.apiassessment.stock.DuplicateStockException;
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StockNotFoundException;
+import com.cbfacademy.apiassessment.stock.StockResultCache;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains an integration test of a rebalance between two nodes of a partitioned deployment, run in
+ * one JVM with the calls between the nodes made directly rather than over HTTP. A node joins a node that holds
+ * every stock while clients keep writing to whichever node holds each stock and reading through the joining
+ * node, and the test checks that no write is lost, that no read misses a stock, and that every stock ends up on
+ * its owner alone. Writes sent to the new owner of stocks that are still on their former owner are checked too.
+ */
+class PartitionRebalanceTests {
+
+    private static final String FIRST = "http://first";
+    private static final String SECOND = "http://second";
+    private static final int STOCKS = 400;
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Holds back every handoff until it is opened, so that stocks stay on their former owner meanwhile.
+     */
+    private volatile CountDownLatch handoffs = new CountDownLatch(0);
+
+    private static Stock stock(String ticker, double price) {
+        return new Stock(ticker, ticker + " Inc", "$", "Technology", price, 10, 90.0);
+    }
+
+    /**
+     * One node: its repository, membership and the services the controllers would use.
+     */
+    private record Node(JsonStockRepository repository, PartitionMembership membership,
+                        PartitionController controller, PartitionedStockService service) {
+    }
+
+    /**
+     * Makes the calls between nodes on the other node's objects, copying every stock as it would be on the wire.
+     */
+    private final class InProcessClient extends PartitionClient {
+
+        InProcessClient() {
+            super(1000);
+        }
+
+        @Override
+        public HashRing fetchRing(String node) {
+            return nodes.get(node).membership().ring();
+        }
+
+        @Override
+        public HashRing join(String seed, String self) {
+            return nodes.get(seed).membership().admit(self);
+        }
+
+        @Override
+        public void pushRing(String node, HashRing ring) {
+            nodes.get(node).membership().install(ring);
+        }
+
+        @Override
+        public Map<String, Long> handoff(String node, List<Stock> stocks) throws IOException {
+            try {
+                handoffs.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted before the handoff", e);
+            }
+            List<Stock> copies = stocks.stream().map(Stock::new).toList();
+            return nodes.get(node).controller().handoff(copies).getBody().get("acknowledged");
+        }
+
+        @Override
+        public void handedOver(String node, String member, long ringVersion) {
+            nodes.get(node).controller().handedOver(Map.of("node", member, "version", ringVersion));
+        }
+
+        @Override
+        public Stock fetchStock(String node, String path, long ringVersion) {
+            String ticker = path.substring(path.lastIndexOf('/') + 1);
+            Stock stock = nodes.get(node).repository().findById(ticker);
+            return stock == null ? null : new Stock(stock);
+        }
+    }
+
+    private Node start(String self, String join, Map<String, Stock> seed) throws Exception {
+        Path file = directory.resolve(self.substring("http://".length()) + ".json");
+        Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(seed));
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, 0, 1000, "json", "standalone",
+                new DefaultResourceLoader(), new DefaultListableBeanFactory().getBeanProvider(StockChangeListener.class),
+                new WarmUpProgress());
+        repository.startWarmUp();
+        repository.snapshot();
+        PartitionClient client = new InProcessClient();
+        PartitionMembership membership = new PartitionMembership(repository, client, self, join, 16, 10, 10);
+        PartitionedStockService service = new PartitionedStockService(membership, client,
+                new DefaultStockService(repository, new LinearSearch(), new StockResultCache(1000)), "");
+        Node node = new Node(repository, membership, new PartitionController(membership), service);
+        nodes.put(self, node);
+        membership.start();
+        return node;
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting until " + description);
+            Thread.sleep(5);
+        }
+    }
+
+    @AfterEach
+    void shutDown() throws InterruptedException {
+        handoffs.countDown();
+        for (Node node : nodes.values()) {
+            node.repository().shutdown();
+        }
+    }
+
+    @Test
+    void aRebalanceUnderWritesLosesNoWriteAndMissesNoRead() throws Exception {
+        Map<String, Stock> seed = new LinkedHashMap<>();
+        Map<String, Double> written = new ConcurrentHashMap<>();
+        for (int i = 0; i < STOCKS; i++) {
+            seed.put("T" + i, stock("T" + i, 100));
+            written.put("T" + i, 100.0);
+        }
+        Node first = start(FIRST, "", seed);
+        await(() -> first.membership().ring().getVersion() == 1, "the first node has formed the cluster");
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger misses = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        List<Future<?>> running = new ArrayList<>();
+        for (int writer = 0; writer < 2; writer++) {
+            int offset = writer;
+            running.add(clients.submit(() -> {
+                Random random = new Random(offset);
+                int round = 0;
+                while (writing.get()) {
+                    // Each writer owns half of the tickers, so the last price it wrote is the expected one
+                    String ticker = "T" + (random.nextInt(STOCKS / 2) * 2 + offset);
+                    double price = 100 + ++round;
+                    // Write where the stock is held, on the first node while it still holds it, as a client
+                    // routed by the old ring would
+                    for (String holder : List.of(FIRST, SECOND)) {
+                        Node node = nodes.get(holder);
+                        if (node != null && node.repository().findById(ticker) != null) {
+                            try {
+                                node.repository().update(stock(ticker, price));
+                                written.put(ticker, price);
+                                break;
+                            } catch (StockNotFoundException e) {
+                                // Handed over and removed since it was looked up; write to the next holder
+                            }
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        Node second = start(SECOND, FIRST, Map.of());
+        await(() -> second.membership().ring().getVersion() == 2, "the second node has joined");
+        running.add(clients.submit(() -> {
+            Random random = new Random(7);
+            while (writing.get()) {
+                if (second.service().getStockByTicker("T" + random.nextInt(STOCKS)) == null) {
+                    misses.incrementAndGet();
+                }
+            }
+            return null;
+        }));
+
+        await(() -> !first.membership().isHandingOff() && !second.membership().isHandingOff(),
+                "both nodes have completed the handoff");
+        writing.set(false);
+        for (Future<?> client : running) {
+            client.get(30, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+
+        assertEquals(0, misses.get(), "A stock was missing everywhere during the rebalance");
+        HashRing ring = second.membership().ring();
+        int moved = 0;
+        for (int i = 0; i < STOCKS; i++) {
+            String ticker = "T" + i;
+            String owner = ring.ownerOf(ticker);
+            Stock held = nodes.get(owner).repository().findById(ticker);
+            assertNotNull(held, ticker + " is missing from its owner");
+            assertEquals(written.get(ticker), held.getCurrentPrice(), ticker + " lost a write");
+            String other = owner.equals(FIRST) ? SECOND : FIRST;
+            assertNull(nodes.get(other).repository().findById(ticker), ticker + " was left on " + other);
+            if (owner.equals(SECOND)) {
+                moved++;
+            }
+        }
+        assertTrue(moved > 0, "The joining node took over part of the universe");
+    }
+
+    @Test
+    void writesToTheNewOwnerApplyToTheStocksItsFormerOwnerStillHolds() throws Exception {
+        Map<String, Stock> seed = new LinkedHashMap<>();
+        for (int i = 0; i < 40; i++) {
+            seed.put("T" + i, stock("T" + i, 100));
+        }
+        Node first = start(FIRST, "", seed);
+        await(() -> first.membership().ring().getVersion() == 1, "the first node has formed the cluster");
+        handoffs = new CountDownLatch(1);
+        Node second = start(SECOND, FIRST, Map.of());
+        await(() -> second.membership().ring().getVersion() == 2 && second.membership().isHandingOff(),
+                "the second node has joined");
+        List<String> moving = seed.keySet().stream()
+                .filter(ticker -> second.membership().ring().ownerOf(ticker).equals(SECOND)).toList();
+        assertTrue(moving.size() >= 3, "The joining node takes over part of the universe");
+        String updated = moving.get(0);
+        String created = moving.get(1);
+        String deleted = moving.get(2);
+        // Written on the former owner, so the copy it hands over is newer than any the new owner would create
+        first.repository().update(stock(created, 150));
+        first.repository().update(stock(created, 175));
+
+        assertEquals(200.0, second.service().updateStock(stock(updated, 200)).getCurrentPrice());
+        assertThrows(DuplicateStockException.class, () -> second.service().saveStock(stock(created, 1)),
+                "A ticker its former owner still holds already exists");
+        second.service().deleteStock(deleted);
+        assertThrows(StockNotFoundException.class, () -> second.service().deleteStock(deleted),
+                "The former owner's copy is not taken over again");
+
+        handoffs.countDown();
+        await(() -> !first.membership().isHandingOff() && !second.membership().isHandingOff(),
+                "both nodes have completed the handoff");
+        assertEquals(200.0, second.repository().findById(updated).getCurrentPrice(), "The update holds");
+        assertEquals(175.0, second.repository().findById(created).getCurrentPrice(), "No write is lost");
+        assertNull(second.repository().findById(deleted), "The delete holds");
+        for (String ticker : List.of(updated, created, deleted)) {
+            assertNull(first.repository().findById(ticker), ticker + " was left on the former owner");
+        }
+    }
+
+    @Test
+    void theNewOwnerKeepsTheHigherVersionAndTheOldOneDeletesOnlyWhatWasAcknowledged() throws Exception {
+        Path file = directory.resolve("versions.json");
+        Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(Map.of()));
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, 0, 1000, "json",
+                "standalone", new DefaultResourceLoader(),
+                new DefaultListableBeanFactory().getBeanProvider(StockChangeListener.class), new WarmUpProgress());
+        repository.startWarmUp();
+        try {
+            repository.save(stock("HELD", 1));
+            repository.update(stock("HELD", 2));
+            Stock older = stock("HELD", 50);
+            older.setVersion(1);
+            Stock newer = stock("NEW", 3);
+            newer.setVersion(4);
+
+            Map<String, Long> acknowledged = repository.saveNewer(List.of(older, newer));
+
+            assertEquals(Map.of("HELD", 1L, "NEW", 4L), acknowledged);
+            assertEquals(2.0, repository.findById("HELD").getCurrentPrice(), "The newer copy held here wins");
+            assertEquals(4, repository.findById("NEW").getVersion());
+
+            Stock handedBack = stock("NEW", 9);
+            handedBack.setVersion(5);
+            repository.saveNewer(List.of(handedBack));
+            assertEquals(9.0, repository.findById("NEW").getCurrentPrice(), "A later version replaces the copy");
+
+            assertEquals(0, repository.deleteAcknowledged(Map.of("NEW", 4L)), "Rewritten since it was acknowledged");
+            assertEquals(1, repository.deleteAcknowledged(Map.of("NEW", 5L, "HELD", 1L)));
+            assertNull(repository.findById("NEW"));
+            assertNotNull(repository.findById("HELD"));
+        } finally {
+            repository.shutdown();
+        }
+    }
+}
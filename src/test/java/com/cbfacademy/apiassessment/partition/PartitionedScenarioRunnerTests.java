@@ -0,0 +1,50 @@
+package com.cbfacademy.apiassessment.partition;
+
+import com.cbfacademy.apiassessment.scenario.ScenarioEngine;
+import com.cbfacademy.apiassessment.scenario.ScenarioImpact;
+import com.cbfacademy.apiassessment.scenario.ScenarioReport;
+import com.cbfacademy.apiassessment.scenario.StressScenario;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockRepository;
+import com.cbfacademy.apiassessment.stock.StockSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class contains unit tests for the PartitionedScenarioRunner class, checking that while a handoff is under
+ * way a stock held by both its former and its new owner is only valued once.
+ */
+class PartitionedScenarioRunnerTests {
+
+    private final PartitionMembership membership = mock(PartitionMembership.class);
+    private final PartitionClient client = mock(PartitionClient.class);
+    private final PartitionedStockService stocks = mock(PartitionedStockService.class);
+    private final StockRepository repository = mock(StockRepository.class);
+
+    @Test
+    void duringAHandoffTheScenariosAreRunOnceAgainstOneCopyOfEachStock() {
+        when(membership.isHandingOff()).thenReturn(true);
+        when(repository.snapshot()).thenReturn(new StockSnapshot(12, Map.of()));
+        // One copy of each ticker, as gathered from the old and the new owner
+        when(stocks.getAllStocks()).thenReturn(List.of(
+                new Stock("AAPL", "Apple Inc", "$", "Technology", 150.0, 10, 90.0),
+                new Stock("XOM", "Exxon Mobil", "$", "Energy", 50.0, 100, 40.0)));
+        PartitionedScenarioRunner runner = new PartitionedScenarioRunner(membership, client,
+                new ScenarioEngine(repository, false, 8, 100_000), stocks, "");
+
+        ScenarioReport report = runner.run(List.of(
+                new StressScenario("Crash", Map.of("Technology", -10.0), Map.of())));
+
+        assertEquals(2, report.getStocks());
+        assertEquals(12, report.getVersion());
+        ScenarioImpact dollars = report.getResults().get(0).getTotals().get(0);
+        assertEquals(6500, dollars.getMarketValue(), 1e-6);
+        assertEquals(-150, dollars.getPnlDelta(), 1e-6);
+        verifyNoInteractions(client);
+    }
+}
@@ -0,0 +1,168 @@
+package com.cbfacademy.apiassessment.replication;
+
+import com.cbfacademy.apiassessment.changes.ChangeLog;
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for leader/follower replication over a real TCP connection: a follower is seeded
+ * with a snapshot, then applies the leader's writes in order, is caught up from the change log when its queue
+ * overflows, and refuses writes of its own. The leader closes connections that never say hello and those beyond
+ * its follower limit.
+ */
+class ReplicationTests {
+
+    @TempDir
+    Path directory;
+
+    private JsonStockRepository leader;
+    private JsonStockRepository follower;
+    private ChangeLog changeLog;
+    private ReplicationServer server;
+    private ReplicationClient client;
+
+    private static Stock stock(String ticker, double price) {
+        return new Stock(ticker, ticker + " Inc", "$", "Technology", price, 10, 90.0);
+    }
+
+    private static JsonStockRepository repository(Path file, String role, DefaultListableBeanFactory listeners) {
+        return new JsonStockRepository("file:" + file, 0, 0, 1000, "json", role, new DefaultResourceLoader(),
+                listeners.getBeanProvider(StockChangeListener.class), new WarmUpProgress());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the follower");
+            Thread.sleep(10);
+        }
+    }
+
+    private static String contents(JsonStockRepository repository) throws Exception {
+        return StorageFormat.JSON.documentMapper().writeValueAsString(repository.snapshot().getStocks());
+    }
+
+    @BeforeEach
+    void startLeaderAndFollower() throws Exception {
+        Path file = directory.resolve("stocks.json");
+        Map<String, Stock> seed = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            seed.put("S" + i, stock("S" + i, 100 + i));
+        }
+        Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(seed));
+
+        DefaultListableBeanFactory leaderListeners = new DefaultListableBeanFactory();
+        leaderListeners.setDependencyComparator(AnnotationAwareOrderComparator.INSTANCE);
+        leader = repository(file, "leader", leaderListeners);
+        changeLog = new ChangeLog(leader, 1000, 1000, 0, "");
+        server = new ReplicationServer(leader, changeLog, 0, 4, 50, 4);
+        leaderListeners.registerSingleton("replicationServer", server);
+        leaderListeners.registerSingleton("changeLog", changeLog);
+        leader.startWarmUp();
+        leader.snapshot();
+        server.start();
+
+        follower = repository(directory.resolve("unused.json"), "follower", new DefaultListableBeanFactory());
+        follower.startWarmUp();
+        client = new ReplicationClient(follower, "localhost", server.getPort(), 50, 50);
+        client.start();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.stop();
+        server.stop();
+        changeLog.shutdown();
+        leader.shutdown();
+        follower.shutdown();
+    }
+
+    @Test
+    void followerAppliesSnapshotAndThenEveryWriteInOrder() throws Exception {
+        follower.snapshot();
+        assertEquals(contents(leader), contents(follower));
+
+        leader.save(stock("NEW", 5));
+        leader.update(stock("S1", 250));
+        leader.delete("S0");
+
+        await(() -> client.getAppliedVersion() == leader.version());
+        assertEquals(leader.version(), follower.version());
+        assertEquals(contents(leader), contents(follower));
+        assertNull(follower.findById("S0"));
+        assertEquals(250.0, follower.findById("S1").getCurrentPrice());
+        await(() -> client.lagVersions() == 0 && client.lagSeconds() == 0);
+    }
+
+    @Test
+    void followerOverflowingItsQueueIsCaughtUpFromTheChangeLog() throws Exception {
+        follower.snapshot();
+        await(() -> server.followerCount() == 1);
+
+        for (int i = 0; i < 200; i++) {
+            leader.save(stock("B" + i, i));
+        }
+
+        await(() -> client.getAppliedVersion() == leader.version());
+        assertEquals(contents(leader), contents(follower));
+    }
+
+    @Test
+    void followerRefusesWritesAndOutOfOrderChanges() throws Exception {
+        follower.snapshot();
+        long version = follower.version();
+
+        assertThrows(IllegalStateException.class, () -> follower.save(stock("X", 1)));
+        assertThrows(IllegalStateException.class, () -> follower.applyReplicated(new StockChangeEvent(
+                StockChangeEvent.Type.CREATED, "X", stock("X", 1), version + 2, 0)));
+        assertEquals(version, follower.version());
+    }
+
+    @Test
+    void aConnectionThatNeverSaysHelloIsClosed() throws Exception {
+        try (Socket silent = new Socket("localhost", server.getPort())) {
+            silent.setSoTimeout(5000);
+
+            assertEquals(-1, silent.getInputStream().read(), "Closed after three heartbeats without a hello");
+        }
+    }
+
+    @Test
+    void connectionsBeyondTheFollowerLimitAreRefused() throws Exception {
+        ReplicationServer limited = new ReplicationServer(leader, changeLog, 0, 4, 60_000, 1);
+        limited.start();
+        try (Socket first = new Socket("localhost", limited.getPort());
+             Socket second = new Socket("localhost", limited.getPort())) {
+            second.setSoTimeout(5000);
+            assertEquals(-1, second.getInputStream().read(), "The second connection is closed at once");
+
+            first.setSoTimeout(200);
+            InputStream in = first.getInputStream();
+            assertThrows(SocketTimeoutException.class, in::read, "The first is still waited on for its hello");
+        } finally {
+            limited.stop();
+        }
+    }
+}
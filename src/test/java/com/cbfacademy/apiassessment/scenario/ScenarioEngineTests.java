@@ -0,0 +1,293 @@
+package com.cbfacademy.apiassessment.scenario;
+
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import com.cbfacademy.apiassessment.stock.JsonStockRepository;
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeListener;
+import com.cbfacademy.apiassessment.stock.StorageFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for stress scenarios: both kernels value positions alike, sector and ticker shocks
+ * change the value of the right holdings in each currency, names that match nothing are reported, writes keep
+ * the segment sums up to date without valuing every stock again and without drifting from a full valuation, and
+ * the results of several partitions add up.
+ */
+class ScenarioEngineTests {
+
+    private static final double DELTA = 1e-6;
+
+    @TempDir
+    Path directory;
+
+    private JsonStockRepository repository() throws Exception {
+        return repository(new DefaultListableBeanFactory());
+    }
+
+    private JsonStockRepository repository(DefaultListableBeanFactory listeners) throws Exception {
+        Path file = directory.resolve("stocks.json");
+        Map<String, Stock> seed = new LinkedHashMap<>();
+        seed.put("AAPL", new Stock("AAPL", "Apple Inc", "$", "Technology", 150.0, 10, 90.0));
+        seed.put("MSFT", new Stock("MSFT", "Microsoft", "$", "Technology", 300.0, 5, 200.0));
+        seed.put("SAP", new Stock("SAP", "SAP SE", "€", "Technology", 100.0, 20, 120.0));
+        seed.put("XOM", new Stock("XOM", "Exxon Mobil", "$", "Energy", 50.0, 100, 40.0));
+        Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(seed));
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, 0, 1000, "json",
+                "standalone", new DefaultResourceLoader(),
+                listeners.getBeanProvider(StockChangeListener.class), new WarmUpProgress());
+        repository.startWarmUp();
+        repository.snapshot();
+        return repository;
+    }
+
+    private static ScenarioImpact impact(List<ScenarioImpact> impacts, String sector, String currency) {
+        return impacts.stream()
+                .filter(candidate -> currency.equals(candidate.getCurrency())
+                        && (sector == null ? candidate.getSector() == null : sector.equals(candidate.getSector())))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No impact for " + sector + " in " + currency));
+    }
+
+    @Test
+    void vectorAndScalarKernelsAgree() {
+        Random random = new Random(42);
+        // An odd length leaves a tail after the last full vector
+        int size = 10_007;
+        double[] prices = new double[size];
+        double[] purchasePrices = new double[size];
+        double[] quantities = new double[size];
+        for (int i = 0; i < size; i++) {
+            prices[i] = 1 + random.nextInt(100_000) / 100.0;
+            purchasePrices[i] = 1 + random.nextInt(100_000) / 100.0;
+            quantities[i] = random.nextInt(1000);
+        }
+        double[] scalar = new double[2];
+        double[] vector = new double[2];
+        for (int[] range : new int[][] {{0, size}, {3, 11}, {17, size - 1}}) {
+            new ScalarKernel().sum(prices, purchasePrices, quantities, range[0], range[1], scalar);
+            new VectorKernel().sum(prices, purchasePrices, quantities, range[0], range[1], vector);
+            assertEquals(scalar[0], vector[0], Math.abs(scalar[0]) * 1e-12, "Market values agree");
+            assertEquals(scalar[1], vector[1], Math.abs(scalar[1]) * 1e-12, "Cost bases agree");
+        }
+        new VectorKernel().sum(prices, purchasePrices, quantities, 5, 5, vector);
+        assertEquals(0, vector[0], "An empty run is worth nothing");
+    }
+
+    @Test
+    void sectorAndTickerShocksChangeTheValueOfEachCurrency() throws Exception {
+        JsonStockRepository repository = repository();
+        for (ValuationKernel kernel : List.of(new ScalarKernel(), new VectorKernel())) {
+            ScenarioEngine engine = new ScenarioEngine(repository, kernel, 2);
+            StressScenario crash = new StressScenario("Tech crash", Map.of("technology", -10.0, "Energy", 5.0),
+                    Map.of("MSFT", -20.0));
+            ScenarioReport report = engine.run(List.of(crash));
+
+            assertEquals(4, report.getStocks());
+            assertEquals(kernel.name(), report.getKernel());
+            ScenarioResult result = report.getResults().get(0);
+            assertEquals("Tech crash", result.getName());
+
+            ScenarioImpact dollarTech = impact(result.getSectors(), "Technology", "$");
+            assertEquals(1500 + 1500, dollarTech.getMarketValue(), DELTA);
+            assertEquals(900 + 1000, dollarTech.getCostBasis(), DELTA);
+            // AAPL falls 10% with its sector, MSFT 20% on its own shock
+            assertEquals(-150 - 300, dollarTech.getPnlDelta(), DELTA);
+            assertEquals(-15, dollarTech.getPnlDeltaPercent(), DELTA);
+            assertEquals(3000 - 450 - 1900, dollarTech.getShockedUnrealizedPnl(), DELTA);
+            assertEquals(-200, impact(result.getSectors(), "Technology", "€").getPnlDelta(), DELTA);
+            assertEquals(250, impact(result.getSectors(), "Energy", "$").getPnlDelta(), DELTA);
+
+            ScenarioImpact dollars = impact(result.getTotals(), null, "$");
+            assertEquals(8000, dollars.getMarketValue(), DELTA);
+            assertEquals(-200, dollars.getPnlDelta(), DELTA);
+            assertEquals(7800, dollars.getShockedValue(), DELTA);
+            assertEquals(2000, impact(result.getTotals(), null, "€").getMarketValue(), DELTA,
+                    "Amounts in different currencies are never added up");
+            assertEquals(2, result.getTotals().size());
+        }
+        repository.shutdown();
+    }
+
+    @Test
+    void manyScenariosSeeTheLatestSnapshotAndReportUnmatchedNames() throws Exception {
+        JsonStockRepository repository = repository();
+        ScenarioEngine engine = new ScenarioEngine(repository, new ScalarKernel(), 2);
+        List<StressScenario> scenarios = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            scenarios.add(new StressScenario("Energy " + i, Map.of("Energy", (double) -i), null));
+        }
+        scenarios.add(new StressScenario("Typos", Map.of("Tech", -50.0), Map.of("GOOG", -50.0, "XOM", 10.0)));
+
+        ScenarioReport first = engine.run(scenarios);
+        assertEquals(21, first.getResults().size());
+        for (int i = 0; i < 20; i++) {
+            ScenarioResult result = first.getResults().get(i);
+            assertEquals("Energy " + i, result.getName(), "Results keep the order of the scenarios");
+            assertEquals(-50.0 * i, impact(result.getSectors(), "Energy", "$").getPnlDelta(), DELTA);
+        }
+        ScenarioResult typos = first.getResults().get(20);
+        assertEquals(List.of("Tech"), typos.getUnmatchedSectors());
+        assertEquals(List.of("GOOG"), typos.getUnmatchedTickers());
+        assertEquals(500, impact(typos.getTotals(), null, "$").getPnlDelta(), DELTA);
+
+        repository.save(new Stock("BP", "BP plc", "$", "Energy", 5.0, 1000, 4.0));
+        ScenarioReport second = engine.run(scenarios.subList(1, 2));
+        assertTrue(second.getVersion() > first.getVersion(), "A write publishes a new snapshot to value");
+        assertEquals(5, second.getStocks());
+        assertEquals(-100, impact(second.getResults().get(0).getSectors(), "Energy", "$").getPnlDelta(), DELTA);
+        repository.shutdown();
+    }
+
+    /**
+     * Counts the runs of positions valued, so that a test can tell a full valuation from segment sums kept up to
+     * date.
+     */
+    private static final class CountingKernel implements ValuationKernel {
+        private final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public void sum(double[] prices, double[] purchasePrices, double[] quantities, int from, int to,
+                        double[] sums) {
+            runs.incrementAndGet();
+            new ScalarKernel().sum(prices, purchasePrices, quantities, from, to, sums);
+        }
+
+        @Override
+        public String name() {
+            return "counting";
+        }
+    }
+
+    @Test
+    void writesKeepTheSegmentSumsUpToDateUntilTheContentsAreReplaced() throws Exception {
+        DefaultListableBeanFactory listeners = new DefaultListableBeanFactory();
+        JsonStockRepository repository = repository(listeners);
+        CountingKernel kernel = new CountingKernel();
+        ScenarioEngine engine = new ScenarioEngine(repository, kernel, 2);
+        listeners.registerSingleton("scenarioEngine", engine);
+        StressScenario crash = new StressScenario("Crash", Map.of("Technology", -10.0, "Energy", -50.0),
+                Map.of("BP", 100.0));
+
+        engine.run(List.of(crash));
+        int valued = kernel.runs.get();
+        assertTrue(valued > 0, "The first run values the holdings");
+
+        repository.save(new Stock("BP", "BP plc", "$", "Energy", 5.0, 1000, 4.0));
+        repository.update(new Stock("AAPL", "Apple Inc", "$", "Technology", 160.0, 10, 90.0));
+        repository.update(new Stock("SAP", "SAP SE", "€", "Energy", 100.0, 20, 120.0));
+        repository.delete("MSFT");
+        ScenarioReport kept = engine.run(List.of(crash));
+        assertEquals(valued, kernel.runs.get(), "The writes were applied to the segment sums");
+
+        ScenarioReport valuedInFull = new ScenarioEngine(repository, new ScalarKernel(), 2).run(List.of(crash));
+        assertEquals(repository.snapshot().getVersion(), kept.getVersion());
+        assertEquals(4, kept.getStocks());
+        ScenarioResult result = kept.getResults().get(0);
+        ScenarioResult expected = valuedInFull.getResults().get(0);
+        assertEquals(expected.getSectors().size(), result.getSectors().size());
+        for (int i = 0; i < expected.getSectors().size(); i++) {
+            ScenarioImpact want = expected.getSectors().get(i);
+            ScenarioImpact got = result.getSectors().get(i);
+            assertEquals(want.getSector(), got.getSector(), "Segments keep the order of a full valuation");
+            assertEquals(want.getCurrency(), got.getCurrency());
+            assertEquals(want.getMarketValue(), got.getMarketValue(), DELTA);
+            assertEquals(want.getCostBasis(), got.getCostBasis(), DELTA);
+            assertEquals(want.getPnlDelta(), got.getPnlDelta(), DELTA);
+        }
+        assertThrows(AssertionError.class, () -> impact(result.getSectors(), "Technology", "€"),
+                "A segment left without stocks is dropped");
+        // AAPL 1600 falls 10%; XOM 5000 and SAP 2000 fall 50%; BP 5000 rises 100%
+        assertEquals(-160 - 2500 + 5000, impact(result.getTotals(), null, "$").getPnlDelta(), DELTA);
+        assertEquals(-1000, impact(result.getTotals(), null, "€").getPnlDelta(), DELTA);
+
+        Map<String, Stock> replacement = new LinkedHashMap<>();
+        replacement.put("XOM", new Stock("XOM", "Exxon Mobil", "$", "Energy", 60.0, 100, 40.0));
+        repository.replaceAll(replacement);
+        ScenarioReport replaced = engine.run(List.of(crash));
+        assertTrue(kernel.runs.get() > valued, "Replaced contents are valued in full");
+        assertEquals(1, replaced.getStocks());
+        assertEquals(6000, impact(replaced.getResults().get(0).getTotals(), null, "$").getMarketValue(), DELTA);
+        repository.shutdown();
+    }
+
+    @Test
+    void segmentSumsMatchAFullValuationAfterManyWritesAndAreRevaluedPeriodically() throws Exception {
+        DefaultListableBeanFactory listeners = new DefaultListableBeanFactory();
+        JsonStockRepository repository = repository(listeners);
+        CountingKernel kernel = new CountingKernel();
+        ScenarioEngine engine = new ScenarioEngine(repository, kernel, 2, 1000);
+        listeners.registerSingleton("scenarioEngine", engine);
+        StressScenario slump = new StressScenario("Slump", Map.of("Energy", -10.0), Map.of());
+        // A small position that shares its segment with one that keeps moving in and out of it
+        repository.save(new Stock("BP", "BP plc", "$", "Energy", 0.3, 7, 0.2));
+        engine.run(List.of(slump));
+        int valued = kernel.runs.get();
+
+        Random random = new Random(3);
+        for (int i = 0; i < 1500; i++) {
+            // Every other price leaves rounding error in a plain running sum far larger than the small positions
+            double price = i % 2 == 0 ? 1e12 + random.nextInt(1000) / 7.0 : 0.1 + random.nextInt(1000) / 1000.0;
+            repository.update(new Stock("XOM", "Exxon Mobil", "$", "Energy", price, 100, 40.0));
+            engine.run(List.of(slump));
+        }
+
+        assertEquals(2 * valued, kernel.runs.get(), "The holdings were valued in full once more after 1000 writes");
+        ScenarioImpact kept = impact(engine.run(List.of(slump)).getResults().get(0).getSectors(), "Energy", "$");
+        ScenarioImpact valuedInFull = impact(new ScenarioEngine(repository, new ScalarKernel(), 2)
+                .run(List.of(slump)).getResults().get(0).getSectors(), "Energy", "$");
+        assertEquals(valuedInFull.getMarketValue(), kept.getMarketValue(), DELTA);
+        assertEquals(valuedInFull.getCostBasis(), kept.getCostBasis(), DELTA);
+        assertEquals(valuedInFull.getPnlDelta(), kept.getPnlDelta(), DELTA);
+        repository.shutdown();
+    }
+
+    @Test
+    void invalidScenariosAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> StressScenario.requireValid(List.of()));
+        List<StressScenario> nulls = new ArrayList<>();
+        nulls.add(null);
+        assertThrows(IllegalArgumentException.class, () -> StressScenario.requireValid(nulls));
+        assertThrows(IllegalArgumentException.class, () -> StressScenario.requireValid(
+                List.of(new StressScenario("Wipe out", Map.of("Energy", -101.0), null))));
+        assertThrows(IllegalArgumentException.class, () -> StressScenario.requireValid(
+                List.of(new StressScenario("Not a number", null, Map.of("AAPL", Double.NaN)))));
+        assertThrows(IllegalArgumentException.class, () -> StressScenario.requireValid(
+                List.of(new StressScenario("Blank", Map.of(" ", 1.0), null))));
+        StressScenario.requireValid(List.of(new StressScenario("Default", Map.of("Energy", -100.0), null)));
+    }
+
+    @Test
+    void partitionReportsAddUpSectorBySector() {
+        ScenarioReport left = new ScenarioReport(7, 2, "vector", List.of(ScenarioResult.of("Crash",
+                List.of(new ScenarioImpact("Technology", "$", 1000, 800, -100)), List.of("Energy"),
+                List.of("XOM"))));
+        ScenarioReport right = new ScenarioReport(9, 3, "vector", List.of(ScenarioResult.of("Crash",
+                List.of(new ScenarioImpact("Technology", "$", 500, 600, -50),
+                        new ScenarioImpact("Energy", "$", 200, 100, 20)), List.of(), List.of("XOM"))));
+
+        ScenarioReport merged = ScenarioReport.merge(List.of(left, right));
+        assertEquals(9, merged.getVersion());
+        assertEquals(5, merged.getStocks());
+        ScenarioResult result = merged.getResults().get(0);
+        assertEquals(-150, impact(result.getSectors(), "Technology", "$").getPnlDelta(), DELTA);
+        assertEquals(1400, impact(result.getSectors(), "Technology", "$").getCostBasis(), DELTA);
+        assertEquals(1700, impact(result.getTotals(), null, "$").getMarketValue(), DELTA);
+        assertEquals(-130, impact(result.getTotals(), null, "$").getPnlDelta(), DELTA);
+        assertEquals(List.of(), result.getUnmatchedSectors(), "Another partition holds Energy");
+        assertEquals(List.of("XOM"), result.getUnmatchedTickers());
+    }
+}
@@ -0,0 +1,57 @@
+package com.cbfacademy.apiassessment.search;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the FilterParser class, checking that filter expressions
+ * are parsed into the expected tree and that the compiled predicates match the right stocks.
+ */
+class FilterParserTests {
+
+    private final Stock apple = new Stock("AAPL", "Apple Inc.", "$", "Technology", 130.75, 10, 120.50);
+    private final Stock exxon = new Stock("XOM", "Exxon Mobil", "$", "Energy", 95.0, 40, 80.0);
+
+    @Test
+    void parsesConjunctionIntoFlatAnd() {
+        FilterExpression expression = FilterParser.parse(
+                "sector == \"Technology\" && currentPrice > 100 && quantity >= 10");
+
+        assertInstanceOf(FilterExpression.And.class, expression);
+        assertEquals(3, ((FilterExpression.And) expression).operands().size());
+
+        Predicate<Stock> predicate = expression.compile();
+        assertTrue(predicate.test(apple));
+        assertFalse(predicate.test(exxon));
+    }
+
+    @Test
+    void supportsDisjunctionNegationAndParentheses() {
+        Predicate<Stock> predicate = FilterParser.parse(
+                "!(sector == \"Technology\") && (quantity > 30 || currentPrice <= 50)").compile();
+
+        assertTrue(predicate.test(exxon));
+        assertFalse(predicate.test(apple));
+    }
+
+    @Test
+    void fieldNamesAreCaseInsensitive() {
+        Predicate<Stock> predicate = FilterParser.parse("CURRENTPRICE != 95").compile();
+
+        assertTrue(predicate.test(apple));
+        assertFalse(predicate.test(exxon));
+    }
+
+    @Test
+    void rejectsUnknownFieldsAndMismatchedLiterals() {
+        assertThrows(FilterSyntaxException.class, () -> FilterParser.parse("price > 10"));
+        assertThrows(FilterSyntaxException.class, () -> FilterParser.parse("sector == 10"));
+        assertThrows(FilterSyntaxException.class, () -> FilterParser.parse("quantity > \"ten\""));
+        assertThrows(FilterSyntaxException.class, () -> FilterParser.parse("(quantity > 1"));
+        assertThrows(FilterSyntaxException.class, () -> FilterParser.parse(""));
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,7 +20,7 @@ import static org.mockito.Mockito.*;
 /**
  * This class contains unit tests for the DefaultStockService class,
  * ensuring that the stock management functionalities work as expected.
- * It uses Mockito to mock the StockRepository and Search dependencies,
+ * It uses Mockito to mock the StockRepository and Search dependencies, and a real result cache,
  * allowing us to test the service layer in isolation from the actual data layer.
  */
 class DefaultStockServiceTests {
@@ -29,6 +30,9 @@ class DefaultStockServiceTests {
     @Mock
     private Search search;
 
+    @Spy
+    private StockResultCache resultCache = new StockResultCache(1000);
+
     @InjectMocks
     private DefaultStockService stockService;
 
@@ -73,6 +77,25 @@ class DefaultStockServiceTests {
         verify(stockRepository).update(updatedStock);
     }
 
+    @Test
+    void lookupStocksKeepsTheRequestOrderAndReportsMisses() {
+        List<String> tickers = Arrays.asList("MSFT", "NOPE", "AAPL");
+        when(stockRepository.findAllById(tickers)).thenReturn(
+                Arrays.asList(createStockWithTicker("MSFT"), null, createStockWithTicker("AAPL")));
+
+        StockLookup lookup = stockService.lookupStocks(tickers);
+
+        assertEquals(3, lookup.getStocks().size());
+        assertEquals("MSFT", lookup.getStocks().get(0).getTicker());
+        assertNull(lookup.getStocks().get(1));
+        assertEquals("AAPL", lookup.getStocks().get(2).getTicker());
+        assertEquals(List.of("NOPE"), lookup.getMissing());
+        verify(stockRepository, times(1)).findAllById(tickers);
+
+        assertThrows(IllegalArgumentException.class, () -> stockService.lookupStocks(List.of()));
+        assertThrows(IllegalArgumentException.class,
+                () -> stockService.lookupStocks(StockLookup.parseTickers("AAPL,,MSFT")));
+    }
 
     /**
      * This method tests the deleteStock method in the StockService class.
@@ -319,4 +342,26 @@ class DefaultStockServiceTests {
         assertTrue(result.isEmpty(), "Expected an empty list for a nonexistent sector");
     }
 
-}
\ No newline at end of file
+    /**
+     * A write that lands between reading the sector version and reading the stocks must leave the result
+     * stamped with the older version, so the next search recomputes it rather than serving the stale list.
+     */
+    @Test
+    void searchBySectorStampsResultsWithTheVersionReadBeforeTheStocks() {
+        Stock before = createStockWithTicker("AAPL");
+        Stock after = new Stock("AAPL", "Some Company", "$", "Technology", 120.0, 50, 95.0);
+        when(search.searchBySector(anyList(), eq("Technology"))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(stockRepository.retrieveAll())
+                .thenAnswer(invocation -> {
+                    // The write is published after the service has read the data it is about to cache
+                    resultCache.onStockChange(new StockChangeEvent(StockChangeEvent.Type.UPDATED, "AAPL", after,
+                            before, 2, 0));
+                    return List.of(before);
+                })
+                .thenReturn(List.of(after));
+
+        assertEquals(List.of(before), stockService.searchBySector("Technology"));
+        assertSame(after, stockService.searchBySector("Technology").get(0), "The stale result must not be served");
+        verify(stockRepository, times(2)).retrieveAll();
+    }
+}
@@ -0,0 +1,105 @@
+package com.cbfacademy.apiassessment.stock;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the ShardedJsonStorage class. It checks that the universe is
+ * seeded from the single JSON file, that a single-ticker write only rewrites the owning shard, that
+ * changing the shard count redistributes the stocks, and that changing the format renames the shard files.
+ */
+class ShardedJsonStorageTests {
+
+    @TempDir
+    Path directory;
+
+    private Map<String, Stock> universe(int size) {
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            stocks.put("T" + i, new Stock("T" + i, "Company " + i, "$", "Technology", 10.0 + i, i, 9.0));
+        }
+        return stocks;
+    }
+
+    @Test
+    void seedsShardsFromSingleFileAndReloadsThem() {
+        Path file = directory.resolve("stocks.json");
+        Map<String, Stock> seed = universe(200);
+
+        Map<String, Stock> first = new ShardedJsonStorage(file, 8, 1, StorageFormat.JSON).load(() -> new HashMap<>(seed));
+        Map<String, Stock> reloaded = new ShardedJsonStorage(file, 8, 1, StorageFormat.JSON).load(() -> {
+            throw new AssertionError("Seed must not be read once shards exist");
+        });
+
+        assertEquals(200, first.size());
+        assertEquals(seed.keySet(), reloaded.keySet());
+        assertTrue(Files.exists(directory.resolve("stocks.json.shards/shard-007.json")));
+    }
+
+    @Test
+    void singleUpdateRewritesOnlyTheOwningShard() throws IOException {
+        Path file = directory.resolve("stocks.json");
+        ShardedJsonStorage storage = new ShardedJsonStorage(file, 8, 1, StorageFormat.JSON);
+        storage.load(() -> universe(200));
+        Path shards = storage.getDirectory();
+        FileTime epoch = FileTime.fromMillis(0);
+        for (int i = 0; i < 8; i++) {
+            Files.setLastModifiedTime(shards.resolve(String.format("shard-%03d.json", i)), epoch);
+        }
+
+        Stock changed = new Stock("T42", "Company 42", "$", "Technology", 99.0, 1, 9.0);
+        storage.stage("T42", changed);
+        storage.flush();
+
+        int owner = storage.shardOf("T42");
+        for (int i = 0; i < 8; i++) {
+            FileTime modified = Files.getLastModifiedTime(shards.resolve(String.format("shard-%03d.json", i)));
+            assertEquals(i != owner, modified.equals(epoch), "shard " + i);
+        }
+    }
+
+    @Test
+    void redistributesWhenShardCountChanges() {
+        Path file = directory.resolve("stocks.json");
+        new ShardedJsonStorage(file, 8, 1, StorageFormat.JSON).load(() -> universe(100));
+
+        ShardedJsonStorage resized = new ShardedJsonStorage(file, 3, 1, StorageFormat.JSON);
+        Map<String, Stock> loaded = resized.load(HashMap::new);
+        Map<String, Stock> reloaded = new ShardedJsonStorage(file, 3, 1, StorageFormat.JSON).load(HashMap::new);
+
+        assertEquals(100, loaded.size());
+        assertEquals(100, reloaded.size());
+        assertFalse(Files.exists(resized.getDirectory().resolve("shard-005.json")));
+    }
+
+    @Test
+    void rewritesShardsUnderTheExtensionOfANewFormat() throws IOException {
+        Path file = directory.resolve("stocks.json");
+        new ShardedJsonStorage(file, 4, 1, StorageFormat.JSON).load(() -> universe(100));
+
+        ShardedJsonStorage binary = new ShardedJsonStorage(file, 4, 1, StorageFormat.CBOR);
+        Map<String, Stock> loaded = binary.load(() -> {
+            throw new AssertionError("The shards of the previous format must be read instead of the seed");
+        });
+        Map<String, Stock> reloaded = new ShardedJsonStorage(file, 4, 1, StorageFormat.CBOR).load(HashMap::new);
+
+        assertEquals(universe(100).keySet(), loaded.keySet());
+        assertEquals(100, reloaded.size());
+        try (var files = Files.list(binary.getDirectory())) {
+            assertTrue(files.map(path -> path.getFileName().toString())
+                    .allMatch(name -> name.startsWith("shard-") && name.contains(".cbor")), "No JSON shards are left");
+        }
+        assertTrue(Files.readAllBytes(binary.getDirectory().resolve("shard-000.cbor"))[0] != '{',
+                "The shard holds CBOR rather than JSON");
+    }
+}
@@ -0,0 +1,96 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for the asynchronous writes of the JsonStockRepository class: they are applied in
+ * the order they are submitted, the writes queued behind a persist are made durable together, and a write that
+ * finds the queue full is refused without being applied.
+ */
+class StockAsyncWriteTests {
+
+    @TempDir
+    Path directory;
+
+    private JsonStockRepository repository(Path file, int queueCapacity) {
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, 0, 1000, "json",
+                "standalone", queueCapacity, new DefaultResourceLoader(),
+                new DefaultListableBeanFactory().getBeanProvider(StockChangeListener.class), new WarmUpProgress());
+        repository.startWarmUp();
+        repository.snapshot();
+        return repository;
+    }
+
+    private static Stock stock(String ticker) {
+        return new Stock(ticker, ticker + " Inc", "$", "Technology", 10.0, 1, 5.0);
+    }
+
+    @Test
+    void queuedWritesArePersistedTogetherAndAFullQueueRefusesTheRest() throws Exception {
+        Path file = directory.resolve("stocks.json");
+        Files.writeString(file, "{}");
+        JsonStockRepository repository = repository(file, 4);
+        long persists = repository.persistenceStats().getPersists();
+
+        List<CompletableFuture<Stock>> accepted = new ArrayList<>();
+        List<String> refused = new ArrayList<>();
+        // Holding the repository lock keeps the I/O thread from persisting, so the queue fills up
+        synchronized (repository) {
+            for (int i = 0; i < 10; i++) {
+                try {
+                    accepted.add(repository.saveAsync(stock("T" + i)));
+                } catch (WriteQueueFullException e) {
+                    refused.add("T" + i);
+                }
+            }
+            assertEquals(5, repository.snapshot().size(), "Accepted writes are published before they persist");
+        }
+        // One write is taken by the I/O thread and four wait in the queue
+        assertEquals(5, accepted.size());
+        assertEquals(List.of("T5", "T6", "T7", "T8", "T9"), refused);
+        for (CompletableFuture<Stock> write : accepted) {
+            write.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(persists + 1, repository.persistenceStats().getPersists(),
+                "The writes queued behind the first persist were written with it");
+        for (String ticker : refused) {
+            assertNull(repository.findById(ticker), ticker + " was refused and not applied");
+        }
+        repository.shutdown();
+
+        JsonStockRepository reopened = repository(file, 4);
+        assertEquals(5, reopened.snapshot().size(), "Every accepted write is durable");
+        reopened.shutdown();
+    }
+
+    @Test
+    void aFailedAsyncWriteFailsItsFutureWithoutTakingARoomInTheQueue() throws Exception {
+        Path file = directory.resolve("stocks.json");
+        Files.writeString(file, "{}");
+        JsonStockRepository repository = repository(file, 1);
+        repository.save(stock("HELD"));
+
+        CompletableFuture<Stock> duplicate = repository.saveAsync(stock("HELD"));
+        CompletableFuture<Void> missing = repository.deleteAsync("NONE");
+
+        Throwable duplicateError = assertThrows(Exception.class, () -> duplicate.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(DuplicateStockException.class, duplicateError.getCause());
+        Throwable missingError = assertThrows(Exception.class, () -> missing.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(StockNotFoundException.class, missingError.getCause());
+        assertEquals(1, repository.findById("HELD").getVersion(), "The refused writes changed nothing");
+        repository.shutdown();
+    }
+}
@@ -0,0 +1,84 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares the time to write and read the whole stock map with Jackson's reflective bean codecs and with the
+ * streaming codecs of {@link StockJsonModule}, both through reused {@link ObjectReader} and {@link ObjectWriter}
+ * instances as the repository uses them. Both are also run with field-name interning turned off, as in
+ * {@link StorageFormat#JSON}, since every ticker key of the map is a distinct field name.
+ *
+ * <p>This is not a unit test and is not run by the build. Run it from the IDE or with
+ * {@code java -cp target/classes:target/test-classes:<dependencies> ...StockCodecBenchmark [stocks] [rounds]}.
+ */
+public class StockCodecBenchmark {
+
+    private static final TypeReference<Map<String, Stock>> STOCK_MAP = new TypeReference<>() {};
+    private static final String[] SECTORS = {"Technology", "Energy", "Healthcare", "Financials", "Consumer Discretionary"};
+    private static final String[] CURRENCIES = {"$", "£", "€"};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String ticker = "T" + i;
+            stocks.put(ticker, new Stock(ticker, "Company " + i, CURRENCIES[i % CURRENCIES.length],
+                    SECTORS[i % SECTORS.length], 100.0 + i % 500 / 4.0, i % 1000, 90.0 + i % 400 / 8.0));
+        }
+
+        ObjectMapper reflective = new ObjectMapper();
+        ObjectMapper streaming = new ObjectMapper().registerModule(new StockJsonModule());
+        ObjectMapper reflectiveNoIntern = new ObjectMapper(JsonFactory.builder()
+                .disable(JsonFactory.Feature.INTERN_FIELD_NAMES).build());
+        ObjectMapper persistence = StorageFormat.JSON.documentMapper();
+        byte[] json = reflective.writerFor(STOCK_MAP).writeValueAsBytes(stocks);
+
+        System.out.printf("stocks: %,d, document: %,d bytes, rounds: %d%n", count, json.length, rounds);
+        run("reflective", reflective, stocks, json, count, rounds);
+        run("streaming", streaming, stocks, json, count, rounds);
+        run("reflective, keys not interned", reflectiveNoIntern, stocks, json, count, rounds);
+        run("streaming, keys not interned", persistence, stocks, json, count, rounds);
+    }
+
+    private static void run(String label, ObjectMapper mapper, Map<String, Stock> stocks,
+                            byte[] json, int count, int rounds) throws Exception {
+        ObjectWriter writer = mapper.writerFor(STOCK_MAP);
+        ObjectReader reader = mapper.readerFor(STOCK_MAP);
+        long sink = 0;
+        // Warm up both directions before timing
+        for (int i = 0; i < rounds; i++) {
+            sink += writer.writeValueAsBytes(stocks).length;
+            sink += ((Map<?, ?>) reader.readValue(json)).size();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += writer.writeValueAsBytes(stocks).length;
+        }
+        long writeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += ((Map<?, ?>) reader.readValue(json)).size();
+        }
+        long readNanos = System.nanoTime() - start;
+
+        long perRound = (long) count * rounds;
+        System.out.printf("%-30s write: %6.1f ns/stock (%5.0f MB/s)   read: %6.1f ns/stock (%5.0f MB/s)   [%d]%n",
+                label, (double) writeNanos / perRound, mbPerSecond(json.length, rounds, writeNanos),
+                (double) readNanos / perRound, mbPerSecond(json.length, rounds, readNanos), sink % 10);
+    }
+
+    private static double mbPerSecond(long bytes, int rounds, long nanos) {
+        return bytes * (double) rounds / (1 << 20) / (nanos / 1e9);
+    }
+}
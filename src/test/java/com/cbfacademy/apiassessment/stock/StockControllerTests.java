@@ -0,0 +1,209 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.changes.ChangeLog;
+import com.cbfacademy.apiassessment.core.BinaryFormatConfig;
+import com.cbfacademy.apiassessment.history.PriceHistory;
+import com.cbfacademy.apiassessment.search.FilterSyntaxException;
+import com.cbfacademy.apiassessment.stream.StockChangeStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * This class contains tests for the StockController class through the web layer, with the service and the
+ * other collaborators mocked, checking the status codes, headers and bodies the endpoints answer with, in JSON
+ * and in the binary encodings negotiated with the converters of {@link BinaryFormatConfig}.
+ */
+class StockControllerTests {
+
+    private final StockService stockService = mock(StockService.class);
+    private final MockMvc mvc = MockMvcBuilders.standaloneSetup(new StockController(stockService,
+            mock(PriceHistory.class), new WriteOperationRegistry(), mock(StockChangeStream.class),
+            mock(ChangeLog.class))).build();
+
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    private static Jackson2ObjectMapperBuilder builder() {
+        return Jackson2ObjectMapperBuilder.json().modules(new StockJsonModule());
+    }
+
+    /**
+     * The controller with the converters the application registers: JSON first, then CBOR and Smile.
+     */
+    private final MockMvc binaryMvc = MockMvcBuilders.standaloneSetup(new StockController(stockService,
+                    mock(PriceHistory.class), new WriteOperationRegistry(), mock(StockChangeStream.class),
+                    mock(ChangeLog.class)))
+            .setMessageConverters(new MappingJackson2HttpMessageConverter(builder().build()),
+                    new BinaryFormatConfig().cborHttpMessageConverter(builder()),
+                    new BinaryFormatConfig().smileHttpMessageConverter(builder()))
+            .build();
+
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory()).registerModule(new StockJsonModule());
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory()).registerModule(new StockJsonModule());
+
+    @Test
+    void queryAnswersTheMatchesWithThePlan() throws Exception {
+        Stock apple = new Stock("AAPL", "Apple Inc.", "$", "Technology", 130.75, 10, 120.50);
+        String filter = "sector == \"Technology\" && currentPrice > 100";
+        when(stockService.queryStocks(filter)).thenReturn(new QueryResult(List.of(apple),
+                "IndexLookup(sector == \"Technology\") -> Filter(currentPrice > 100.0) rows=1"));
+
+        mvc.perform(get("/api/stocks/query").param("filter", filter))
+                .andExpect(status().isOk())
+                .andExpect(header().string(StockController.QUERY_PLAN_HEADER,
+                        "IndexLookup(sector == \"Technology\") -> Filter(currentPrice > 100.0) rows=1"))
+                .andExpect(jsonPath("$[0].ticker").value("AAPL"))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    void queryRejectsMalformedFilters() throws Exception {
+        when(stockService.queryStocks(anyString())).thenThrow(new FilterSyntaxException("Unknown field price", 0));
+
+        mvc.perform(get("/api/stocks/query").param("filter", "price > 10"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Unknown field price at position 0"));
+        mvc.perform(get("/api/stocks/query"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static final String APPLE_JSON = "{\"ticker\":\"AAPL\",\"name\":\"Apple Inc.\",\"currencySymbol\":\"$\"," +
+            "\"sector\":\"Technology\",\"currentPrice\":130.75,\"quantity\":10,\"purchasePrice\":120.5}";
+
+    private ResultActions operation(ResultActions accepted) throws Exception {
+        String id = JsonPath.read(accepted.andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andReturn().getResponse().getContentAsString(), "$.id");
+        return mvc.perform(get("/api/stocks/operations/{id}", id)).andExpect(status().isOk());
+    }
+
+    @Test
+    void asyncCreateReportsCreatedOnceItCompletes() throws Exception {
+        Stock apple = new Stock("AAPL", "Apple Inc.", "$", "Technology", 130.75, 10, 120.50);
+        CompletableFuture<Stock> write = new CompletableFuture<>();
+        when(stockService.saveStockAsync(any(Stock.class))).thenReturn(write);
+
+        ResultActions accepted = mvc.perform(post("/api/stocks").header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON).content(APPLE_JSON));
+        String id = JsonPath.read(accepted.andExpect(status().isAccepted())
+                .andReturn().getResponse().getContentAsString(), "$.id");
+        mvc.perform(get("/api/stocks/operations/{id}", id))
+                .andExpect(jsonPath("$.state").value("PENDING"))
+                .andExpect(jsonPath("$.status").doesNotExist());
+
+        write.complete(apple);
+        mvc.perform(get("/api/stocks/operations/{id}", id))
+                .andExpect(jsonPath("$.state").value("SUCCEEDED"))
+                .andExpect(jsonPath("$.status").value(201))
+                .andExpect(jsonPath("$.result.ticker").value("AAPL"));
+    }
+
+    @Test
+    void asyncUpdateReportsOkOnceItCompletes() throws Exception {
+        Stock apple = new Stock("AAPL", "Apple Inc.", "$", "Technology", 130.75, 10, 120.50);
+        when(stockService.updateStockAsync(any(Stock.class), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(apple));
+
+        operation(mvc.perform(put("/api/stocks/AAPL").header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON).content(APPLE_JSON)))
+                .andExpect(jsonPath("$.state").value("SUCCEEDED"))
+                .andExpect(jsonPath("$.status").value(200));
+    }
+
+    @Test
+    void asyncFailuresReportTheStatusOfTheError() throws Exception {
+        when(stockService.saveStockAsync(any(Stock.class))).thenReturn(CompletableFuture.failedFuture(
+                new DuplicateStockException("Stock with ticker AAPL already exists.")));
+        when(stockService.updateStockAsync(any(Stock.class), anyLong())).thenReturn(CompletableFuture.failedFuture(
+                new StockNotFoundException("Stock with ticker AAPL not found")));
+
+        operation(mvc.perform(post("/api/stocks").header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON).content(APPLE_JSON)))
+                .andExpect(jsonPath("$.state").value("FAILED"))
+                .andExpect(jsonPath("$.status").value(400))
+                .andExpect(jsonPath("$.error").value("Stock with ticker AAPL already exists."));
+        operation(mvc.perform(put("/api/stocks/AAPL").header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON).content(APPLE_JSON)))
+                .andExpect(jsonPath("$.state").value("FAILED"))
+                .andExpect(jsonPath("$.status").value(404));
+        mvc.perform(get("/api/stocks/operations/unknown")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void anAsyncWriteRefusedByAFullQueueIsAnsweredWithRetryAfter() throws Exception {
+        when(stockService.saveStockAsync(any(Stock.class))).thenThrow(
+                new WriteQueueFullException("Too many writes are waiting to be persisted; try again shortly"));
+
+        mvc.perform(post("/api/stocks").header("Prefer", "respond-async")
+                        .contentType(MediaType.APPLICATION_JSON).content(APPLE_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.error").value("Too many writes are waiting to be persisted; try again shortly"));
+    }
+
+    @Test
+    void stocksAreListedInTheEncodingTheClientAccepts() throws Exception {
+        Stock apple = new Stock("AAPL", "Apple Inc.", "$", "Technology", 130.75, 10, 120.50);
+        when(stockService.getAllStocks()).thenReturn(List.of(apple));
+
+        for (Map.Entry<MediaType, ObjectMapper> encoding : Map.of(MediaType.APPLICATION_CBOR, CBOR_MAPPER,
+                SMILE, SMILE_MAPPER).entrySet()) {
+            byte[] body = binaryMvc.perform(get("/api/stocks").accept(encoding.getKey()))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(encoding.getKey()))
+                    .andReturn().getResponse().getContentAsByteArray();
+
+            Stock[] decoded = encoding.getValue().readValue(body, Stock[].class);
+            assertEquals(1, decoded.length, encoding.getKey().toString());
+            assertEquals("AAPL", decoded[0].getTicker());
+            assertEquals(130.75, decoded[0].getCurrentPrice());
+            assertEquals("Technology", decoded[0].getSector());
+        }
+        binaryMvc.perform(get("/api/stocks"))
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].ticker").value("AAPL"));
+    }
+
+    @Test
+    void stocksAreCreatedFromBinaryBodies() throws Exception {
+        Stock apple = new Stock("AAPL", "Apple Inc.", "$", "Technology", 130.75, 10, 120.50);
+        when(stockService.saveStock(any(Stock.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        byte[] cbor = binaryMvc.perform(post("/api/stocks").contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR).content(CBOR_MAPPER.writeValueAsBytes(apple)))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals("AAPL", CBOR_MAPPER.readValue(cbor, Stock.class).getTicker());
+
+        binaryMvc.perform(post("/api/stocks").contentType(SMILE).accept(MediaType.APPLICATION_JSON)
+                        .content(SMILE_MAPPER.writeValueAsBytes(apple)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.ticker").value("AAPL"))
+                .andExpect(jsonPath("$.purchasePrice").value(120.5));
+        verify(stockService, times(2)).saveStock(argThat(stock -> "AAPL".equals(stock.getTicker())
+                && stock.getQuantity() == 10 && "$".equals(stock.getCurrencySymbol())));
+    }
+}
@@ -0,0 +1,106 @@
+package com.cbfacademy.apiassessment.stock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for the dictionary encoding of sectors and currency symbols: strings and ids round
+ * trip, concurrent registrations agree on one id per value, the table grows past its initial size and stops at
+ * its limit, and a stock reads back the strings it was built with.
+ */
+class StockDictionaryTests {
+
+    @Test
+    void valuesAndIdsRoundTrip() {
+        StockDictionary dictionary = new StockDictionary("test", 1000);
+
+        assertEquals(0, dictionary.encode(null), "Id 0 stands for null");
+        assertNull(dictionary.decode(0));
+        int technology = dictionary.encode("Technology");
+        int energy = dictionary.encode("Energy");
+        assertNotEquals(technology, energy);
+        assertEquals(technology, dictionary.encode("Technology"), "A value keeps its id");
+        assertEquals(technology, dictionary.encode(new String("Technology")), "Values are compared by content");
+        assertEquals("Technology", dictionary.decode(technology));
+        assertEquals("Energy", dictionary.decode(energy));
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    void tableGrowsUpToItsLimit() {
+        StockDictionary dictionary = new StockDictionary("test", 100);
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(i, dictionary.encode("Value " + i), "Ids are handed out densely");
+        }
+        for (int i = 1; i <= 100; i++) {
+            assertEquals("Value " + i, dictionary.decode(i));
+        }
+        assertEquals(100, dictionary.size());
+
+        IllegalArgumentException full = assertThrows(IllegalArgumentException.class,
+                () -> dictionary.encode("Value 101"));
+        assertTrue(full.getMessage().contains("test"), full.getMessage());
+        assertEquals(42, dictionary.encode("Value 42"), "Known values still encode once the dictionary is full");
+        assertEquals(100, dictionary.size());
+    }
+
+    @Test
+    void concurrentRegistrationsAgreeOnOneIdPerValue() throws Exception {
+        StockDictionary dictionary = new StockDictionary("test", 10_000);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Integer>>> results = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                Map<String, Integer> seen = new ConcurrentHashMap<>();
+                for (int i = 0; i < 500; i++) {
+                    String value = "Sector " + i;
+                    int id = dictionary.encode(value);
+                    assertEquals(value, dictionary.decode(id), "An id decodes as soon as it is handed out");
+                    seen.put(value, id);
+                }
+                return seen;
+            }));
+        }
+        start.countDown();
+        Map<String, Integer> first = results.get(0).get();
+        for (Future<Map<String, Integer>> result : results) {
+            assertEquals(first, result.get());
+        }
+        pool.shutdown();
+        assertEquals(500, dictionary.size());
+    }
+
+    @Test
+    void stocksStoreIdsAndReadBackTheirStrings() {
+        Stock stock = new Stock("SAP", "SAP SE", "€", "Enterprise Software", 100.0, 20, 120.0);
+
+        assertEquals("Enterprise Software", stock.getSector());
+        assertEquals("€", stock.getCurrencySymbol());
+        assertEquals(StockDictionary.SECTORS.encode("Enterprise Software"), stock.getSectorId());
+        assertEquals(StockDictionary.CURRENCIES.encode("€"), stock.getCurrencyId());
+
+        Stock other = new Stock("BMW", "BMW AG", "€", "Automotive", 90.0, 5, 80.0);
+        assertEquals(stock.getCurrencyId(), other.getCurrencyId(), "Stocks share the id of a common value");
+
+        Stock copy = new Stock(stock);
+        copy.setSector("Automotive");
+        assertEquals(other.getSectorId(), copy.getSectorId());
+        assertEquals("Automotive", copy.getSector());
+        assertEquals("Enterprise Software", stock.getSector(), "A copy's setter leaves the original alone");
+        copy.setCurrencySymbol(null);
+        assertEquals(0, copy.getCurrencyId());
+        assertNull(copy.getCurrencySymbol());
+    }
+}
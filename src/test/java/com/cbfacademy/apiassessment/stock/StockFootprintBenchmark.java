@@ -0,0 +1,100 @@
+package com.cbfacademy.apiassessment.stock;
+
+/**
+ * Measures the heap retained per stock for the previous {@link Stock} layout (a String per sector and
+ * currency symbol, double prices) and for the compact layout (dictionary ids, fixed-point prices).
+ *
+ * <p>Each stock is given freshly allocated strings, as Jackson does when it reads {@code stocks.json}.
+ * This is not a unit test and is not run by the build. Run it from the IDE or with
+ * {@code java -Xmx4g -cp target/classes:target/test-classes:<dependencies> ...StockFootprintBenchmark [count]}.
+ */
+public class StockFootprintBenchmark {
+
+    private static final String[] SECTORS = {"Technology", "Energy", "Healthcare", "Financials", "Consumer Discretionary"};
+    private static final String[] CURRENCIES = {"$", "£", "€"};
+
+    /**
+     * The layout of {@link Stock} before the compact representation was introduced.
+     */
+    @SuppressWarnings("unused")
+    private static final class LegacyStock {
+        private final String ticker;
+        private final String name;
+        private final String currencySymbol;
+        private final String sector;
+        private final double currentPrice;
+        private final int quantity;
+        private final double purchasePrice;
+
+        LegacyStock(String ticker, String name, String currencySymbol, String sector,
+                    double currentPrice, int quantity, double purchasePrice) {
+            this.ticker = ticker;
+            this.name = name;
+            this.currencySymbol = currencySymbol;
+            this.sector = sector;
+            this.currentPrice = currentPrice;
+            this.quantity = quantity;
+            this.purchasePrice = purchasePrice;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        // Ticker and name strings are identical in both layouts, so they are shared and excluded
+        String[] tickers = new String[count];
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            tickers[i] = "T" + i;
+            names[i] = "Company " + i;
+        }
+
+        long baseline = usedHeap();
+        Object[] legacy = new Object[count];
+        for (int i = 0; i < count; i++) {
+            legacy[i] = new LegacyStock(tickers[i], names[i],
+                    copy(CURRENCIES[i % CURRENCIES.length]), copy(SECTORS[i % SECTORS.length]),
+                    100.0 + i % 500, i % 1000, 90.0 + i % 400);
+        }
+        long legacyBytes = usedHeap() - baseline;
+        legacy = null;
+
+        baseline = usedHeap();
+        Object[] compact = new Object[count];
+        for (int i = 0; i < count; i++) {
+            compact[i] = new Stock(tickers[i], names[i],
+                    copy(CURRENCIES[i % CURRENCIES.length]), copy(SECTORS[i % SECTORS.length]),
+                    100.0 + i % 500, i % 1000, 90.0 + i % 400);
+        }
+        long compactBytes = usedHeap() - baseline;
+
+        System.out.printf("stocks:                %,d%n", count);
+        System.out.printf("legacy bytes/stock:    %.1f%n", (double) legacyBytes / count);
+        System.out.printf("compact bytes/stock:   %.1f%n", (double) compactBytes / count);
+        System.out.printf("saving:                %.1f%%%n", 100.0 * (legacyBytes - compactBytes) / legacyBytes);
+        // Keep the arrays reachable until after the measurement
+        if (compact.length + tickers.length + names.length == 0) {
+            System.out.println(legacy);
+        }
+    }
+
+    /**
+     * Returns a copy of the string with its own character data, as a JSON parser would produce.
+     */
+    private static String copy(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
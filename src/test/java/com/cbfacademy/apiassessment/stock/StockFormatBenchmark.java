@@ -0,0 +1,91 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares payload size and encode/decode throughput of JSON, CBOR and Smile for the two shapes the service
+ * moves around: the stock map stored on disk and the stock list returned by {@code GET /api/stocks}.
+ *
+ * <p>Every format goes through the {@link StockJsonModule} codecs and reused readers and writers, so the
+ * difference is the encoding alone. Gzipped sizes are shown too, since HTTP responses may be compressed.
+ * This is not a unit test and is not run by the build. Run it from the IDE or with
+ * {@code java -cp target/classes:target/test-classes:<dependencies> ...StockFormatBenchmark [stocks] [rounds]}.
+ */
+public class StockFormatBenchmark {
+
+    private static final TypeReference<Map<String, Stock>> STOCK_MAP = new TypeReference<>() {};
+    private static final TypeReference<List<Stock>> STOCK_LIST = new TypeReference<>() {};
+    private static final String[] SECTORS = {"Technology", "Energy", "Healthcare", "Financials", "Consumer Discretionary"};
+    private static final String[] CURRENCIES = {"$", "£", "€"};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String ticker = "T" + i;
+            stocks.put(ticker, new Stock(ticker, "Company " + i, CURRENCIES[i % CURRENCIES.length],
+                    SECTORS[i % SECTORS.length], 100.0 + i % 500 / 4.0, i % 1000, 90.0 + i % 400 / 8.0));
+        }
+        List<Stock> list = new ArrayList<>(stocks.values());
+
+        System.out.printf("stocks: %,d, rounds: %d%n", count, rounds);
+        for (StorageFormat format : StorageFormat.values()) {
+            run(format + " map", format.documentMapper().writerFor(STOCK_MAP),
+                    format.documentMapper().readerFor(STOCK_MAP), stocks, count, rounds);
+        }
+        for (StorageFormat format : StorageFormat.values()) {
+            run(format + " list", format.documentMapper().writerFor(STOCK_LIST),
+                    format.documentMapper().readerFor(STOCK_LIST), list, count, rounds);
+        }
+    }
+
+    private static void run(String label, ObjectWriter writer, ObjectReader reader, Object value,
+                            int count, int rounds) throws Exception {
+        byte[] encoded = writer.writeValueAsBytes(value);
+        long sink = 0;
+        for (int i = 0; i < rounds; i++) {
+            sink += writer.writeValueAsBytes(value).length;
+            sink += size(reader.readValue(encoded));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += writer.writeValueAsBytes(value).length;
+        }
+        long writeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sink += size(reader.readValue(encoded));
+        }
+        long readNanos = System.nanoTime() - start;
+
+        long perRound = (long) count * rounds;
+        System.out.printf("%-10s %,12d bytes (%5.1f/stock, gzip %,11d)   write: %6.1f ns/stock   read: %6.1f ns/stock   [%d]%n",
+                label, encoded.length, (double) encoded.length / count, gzipped(encoded),
+                (double) writeNanos / perRound, (double) readNanos / perRound, sink % 10);
+    }
+
+    private static int size(Object decoded) {
+        return decoded instanceof Map<?, ?> map ? map.size() : ((List<?>) decoded).size();
+    }
+
+    private static int gzipped(byte[] data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,65 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the StockJsonModule class, checking that the streaming codecs read and
+ * write exactly the same JSON as Jackson's reflective bean codecs.
+ */
+class StockJsonModuleTests {
+
+    private static final TypeReference<Map<String, Stock>> STOCK_MAP = new TypeReference<>() {};
+
+    private final ObjectMapper reflective = new ObjectMapper();
+    private final ObjectMapper streaming = new ObjectMapper().registerModule(new StockJsonModule());
+
+    @Test
+    void writesTheSameJsonAsTheReflectiveSerializer() throws Exception {
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        stocks.put("AAPL", new Stock("AAPL", "Apple \"Inc\"", "$", "Technology", 173.5, 10, 150.1234));
+        stocks.put("BP", new Stock("BP", "BP p.l.c.", "£", "Energy", 0.0, 0, 4.25));
+        stocks.put("EMPTY", new Stock());
+
+        assertEquals(reflective.writeValueAsString(stocks), streaming.writeValueAsString(stocks));
+    }
+
+    @Test
+    void readsFieldsInAnyOrderAndRoundTrips() throws Exception {
+        String json = "{\"X\":{\"currencySymbol\":\"€\",\"purchasePrice\":\"12.5\",\"quantity\":3,"
+                + "\"sector\":\"Healthcare\",\"ticker\":\"X\",\"currentPrice\":20,\"name\":null}}";
+
+        Map<String, Stock> read = streaming.readValue(json, STOCK_MAP);
+
+        Stock stock = read.get("X");
+        assertEquals("X", stock.getTicker());
+        assertNull(stock.getName());
+        assertEquals("€", stock.getCurrencySymbol());
+        assertEquals("Healthcare", stock.getSector());
+        assertEquals(20.0, stock.getCurrentPrice());
+        assertEquals(3, stock.getQuantity());
+        assertEquals(12.5, stock.getPurchasePrice());
+        assertEquals(reflective.writeValueAsString(reflective.readValue(json, STOCK_MAP)),
+                streaming.writeValueAsString(read));
+    }
+
+    @Test
+    void unknownFieldsFollowTheMapperConfiguration() throws Exception {
+        String json = "{\"ticker\":\"X\",\"notes\":{\"a\":[1,2]},\"quantity\":5}";
+
+        assertThrows(UnrecognizedPropertyException.class, () -> streaming.readValue(json, Stock.class));
+
+        Stock stock = streaming.copy().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .readValue(json, Stock.class);
+        assertEquals("X", stock.getTicker());
+        assertEquals(5, stock.getQuantity());
+    }
+}
@@ -0,0 +1,137 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for partial updates: merge patches and increments change only the fields they
+ * name, concurrent increments are all counted, and a patch is persisted as a delta in the journal that is
+ * replayed after a restart.
+ */
+class StockPatchTests {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private static StockPatch patch(String document) throws Exception {
+        JsonNode node = JSON.readTree(document);
+        return StockPatch.parse(node);
+    }
+
+    private JsonStockRepository repository(int compactAfter) throws Exception {
+        Path file = directory.resolve("stocks.json");
+        if (!Files.exists(file)) {
+            Map<String, Stock> seed = new LinkedHashMap<>();
+            seed.put("AAPL", new Stock("AAPL", "Apple Inc", "$", "Technology", 150.0, 10, 90.0));
+            Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(seed));
+        }
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, 0, compactAfter, "json",
+                "standalone", new DefaultResourceLoader(),
+                new DefaultListableBeanFactory().getBeanProvider(StockChangeListener.class), new WarmUpProgress());
+        repository.startWarmUp();
+        repository.snapshot();
+        return repository;
+    }
+
+    @Test
+    void patchSetsAndIncrementsOnlyTheNamedFields() throws Exception {
+        Stock stock = new Stock("AAPL", "Apple Inc", "$", "Technology", 150.0, 10, 90.0);
+        StockPatch patch = patch("{\"sector\": \"Hardware\", \"quantity\": {\"$inc\": 5},"
+                + " \"currentPrice\": {\"$inc\": -0.5}}");
+
+        Stock patched = patch.applyTo(stock);
+        assertEquals("Hardware", patched.getSector());
+        assertEquals(15, patched.getQuantity());
+        assertEquals(149.5, patched.getCurrentPrice());
+        assertEquals("Apple Inc", patched.getName());
+        assertEquals(90.0, patched.getPurchasePrice());
+        assertEquals("Technology", stock.getSector(), "The stock itself is left alone");
+        assertEquals(10, stock.getQuantity());
+
+        JsonNode delta = patch.delta(patched);
+        assertEquals(15, delta.get("quantity").asInt(), "Increments are recorded as the value they produced");
+        assertFalse(delta.has("name"));
+
+        assertThrows(IllegalArgumentException.class, () -> patch("{\"name\": null}"));
+        assertThrows(IllegalArgumentException.class, () -> patch("{\"colour\": \"red\"}"));
+        assertThrows(IllegalArgumentException.class, () -> patch("{\"quantity\": {\"$inc\": 1.5}}"));
+        assertThrows(IllegalArgumentException.class, () -> patch("[]"));
+        assertThrows(IllegalArgumentException.class,
+                () -> patch("{\"quantity\": {\"$inc\": -11}}").applyTo(stock));
+    }
+
+    @Test
+    void concurrentIncrementsAreAllCounted() throws Exception {
+        JsonStockRepository repository = repository(1000);
+        StockPatch increment = patch("{\"quantity\": {\"$inc\": 1}}");
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<Stock>> patches = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            patches.add(CompletableFuture.supplyAsync(
+                    () -> repository.patch("AAPL", increment, StockRepository.ANY_VERSION), threads));
+        }
+        CompletableFuture.allOf(patches.toArray(CompletableFuture[]::new)).join();
+        threads.shutdown();
+
+        Stock stock = repository.findById("AAPL");
+        assertEquals(210, stock.getQuantity());
+        assertEquals(201, stock.getVersion());
+        assertThrows(StockVersionConflictException.class,
+                () -> repository.patch("AAPL", increment, 1));
+        repository.shutdown();
+    }
+
+    @Test
+    void patchesAreJournaledAndReplayedAfterARestart() throws Exception {
+        JsonStockRepository repository = repository(3);
+        Path file = directory.resolve("stocks.json");
+        byte[] snapshot = Files.readAllBytes(file);
+        Path journal = directory.resolve("stocks.json.journal");
+
+        repository.patch("AAPL", patch("{\"quantity\": {\"$inc\": 5}}"), StockRepository.ANY_VERSION);
+        repository.patch("AAPL", patch("{\"name\": \"Apple\"}"), StockRepository.ANY_VERSION);
+        assertArrayEquals(snapshot, Files.readAllBytes(file), "A patch does not rewrite the snapshot");
+        assertEquals(2, Files.readAllLines(journal).size());
+        repository.shutdown();
+
+        JsonStockRepository reloaded = repository(3);
+        Stock stock = reloaded.findById("AAPL");
+        assertEquals(15, stock.getQuantity());
+        assertEquals("Apple", stock.getName());
+        assertEquals(3, stock.getVersion());
+        assertEquals(0, Files.size(journal), "The journal is folded into the snapshot at startup");
+
+        for (int i = 0; i < 4; i++) {
+            reloaded.patch("AAPL", patch("{\"quantity\": {\"$inc\": 1}}"), StockRepository.ANY_VERSION);
+        }
+        assertEquals(0, Files.size(journal), "A full journal is compacted into the snapshot");
+        reloaded.patch("AAPL", patch("{\"quantity\": {\"$inc\": 1}}"), StockRepository.ANY_VERSION);
+        reloaded.save(new Stock("MSFT", "Microsoft", "$", "Technology", 300.0, 1, 250.0));
+        assertEquals(0, Files.size(journal), "Any other write rewrites the snapshot and empties the journal");
+        reloaded.shutdown();
+
+        JsonStockRepository restarted = repository(3);
+        assertEquals(20, restarted.findById("AAPL").getQuantity());
+        assertNotNull(restarted.findById("MSFT"));
+        restarted.shutdown();
+    }
+}
@@ -0,0 +1,100 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.search.FilterParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * This class contains unit tests for the StockQueryPlanner class, checking which access path it picks for an
+ * expression and that the residual filter still applies to the stocks the access path returns.
+ */
+class StockQueryPlannerTests {
+
+    private final Stock apple = new Stock("AAPL", "Apple Inc.", "$", "Technology", 130.75, 10, 120.50);
+    private final Stock microsoft = new Stock("MSFT", "Microsoft", "$", "Technology", 95.0, 5, 80.0);
+    private final Stock exxon = new Stock("XOM", "Exxon Mobil", "$", "Energy", 95.0, 40, 80.0);
+
+    private final StockRepository repository = mock(StockRepository.class);
+    private final StockQueryPlanner planner = new StockQueryPlanner(repository);
+
+    @Test
+    void tickerEqualityIsAPointLookup() {
+        when(repository.findById("AAPL")).thenReturn(apple);
+
+        QueryResult result = planner.execute(FilterParser.parse(
+                "sector == \"Technology\" && ticker == \"AAPL\""));
+
+        assertEquals(List.of(apple), result.getStocks());
+        assertTrue(result.getPlan().startsWith("PointLookup("), result.getPlan());
+        assertTrue(result.getPlan().contains("-> Filter("), "The sector is checked on the looked up stock");
+        verify(repository).findById("AAPL");
+        verify(repository, never()).searchBySector(anyString());
+        verify(repository, never()).retrieveAll();
+    }
+
+    @Test
+    void missingTickerMatchesNothing() {
+        QueryResult result = planner.execute(FilterParser.parse("ticker == \"NOPE\""));
+
+        assertEquals(List.of(), result.getStocks());
+        assertTrue(result.getPlan().endsWith("rows=0"), result.getPlan());
+    }
+
+    @Test
+    void sectorEqualityUsesTheSectorIndexWithAResidualFilter() {
+        when(repository.searchBySector("Technology")).thenReturn(List.of(apple, microsoft));
+
+        QueryResult result = planner.execute(FilterParser.parse(
+                "currentPrice > 100 && sector == \"Technology\""));
+
+        assertEquals(List.of(apple), result.getStocks());
+        assertTrue(result.getPlan().startsWith("IndexLookup("), result.getPlan());
+        assertTrue(result.getPlan().endsWith("rows=1"), result.getPlan());
+        verify(repository, never()).retrieveAll();
+    }
+
+    @Test
+    void sectorEqualityAloneNeedsNoFilter() {
+        when(repository.searchBySector("Energy")).thenReturn(List.of(exxon));
+
+        QueryResult result = planner.execute(FilterParser.parse("sector == \"Energy\""));
+
+        assertEquals(List.of(exxon), result.getStocks());
+        assertFalse(result.getPlan().contains("Filter("), result.getPlan());
+    }
+
+    @Test
+    void otherExpressionsScanTheUniverse() {
+        when(repository.retrieveAll()).thenReturn(List.of(apple, microsoft, exxon));
+
+        // A disjunction cannot be answered from one sector or ticker
+        QueryResult result = planner.execute(FilterParser.parse(
+                "sector == \"Energy\" || ticker == \"AAPL\""));
+
+        assertEquals(List.of(apple, exxon), result.getStocks());
+        assertTrue(result.getPlan().startsWith("Scan(universe=3)"), result.getPlan());
+        verify(repository, never()).searchBySector(anyString());
+        verify(repository, never()).findById(anyString());
+    }
+
+    @Test
+    void largeUniversesAreScannedInParallelInOrder() {
+        List<Stock> universe = new ArrayList<>();
+        for (int i = 0; i < StockQueryPlanner.PARALLEL_SCAN_THRESHOLD; i++) {
+            universe.add(new Stock("T" + i, "Ticker " + i, "$", "Energy", 1.0 + i % 100, i, 1.0));
+        }
+        when(repository.retrieveAll()).thenReturn(universe);
+
+        QueryResult result = planner.execute(FilterParser.parse("currentPrice >= 100"));
+
+        assertTrue(result.getPlan().startsWith("ParallelScan("), result.getPlan());
+        assertEquals(StockQueryPlanner.PARALLEL_SCAN_THRESHOLD / 100, result.getStocks().size());
+        assertEquals("T99", result.getStocks().get(0).getTicker(), "The parallel scan keeps the universe order");
+    }
+}
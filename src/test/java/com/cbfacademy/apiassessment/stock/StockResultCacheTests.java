@@ -0,0 +1,92 @@
+package com.cbfacademy.apiassessment.stock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the StockResultCache class, covering version stamps, per-sector
+ * invalidation from change events, the reset epoch and weight-bounded LRU eviction.
+ */
+class StockResultCacheTests {
+
+    private static Stock stock(String ticker, String sector) {
+        return new Stock(ticker, ticker + " Inc", "$", sector, 100.0, 10, 90.0);
+    }
+
+    private static StockChangeEvent update(Stock stock, Stock previous, long version) {
+        return new StockChangeEvent(StockChangeEvent.Type.UPDATED, stock.getTicker(), stock, previous, version, 0);
+    }
+
+    @Test
+    void hitsOnlyWhileTheStampIsCurrent() {
+        StockResultCache cache = new StockResultCache(100);
+        StockResultCache.CacheKey key = new StockResultCache.CacheKey("sort", "name");
+        List<Stock> sorted = List.of(stock("AAPL", "Technology"));
+
+        cache.put(key, 7, sorted);
+
+        assertSame(sorted, cache.get(key, 7));
+        assertNull(cache.get(key, 8));
+        assertNull(cache.get(key, 7));
+    }
+
+    @Test
+    void writesOnlyAdvanceTheSectorsTheyTouch() {
+        StockResultCache cache = new StockResultCache(100);
+        long technology = cache.sectorVersion("Technology");
+        long energy = cache.sectorVersion("Energy");
+
+        cache.onStockChange(update(stock("XOM", "Energy"), stock("XOM", "Energy"), 2));
+        assertEquals(technology, cache.sectorVersion("technology"));
+        assertNotEquals(energy, cache.sectorVersion("Energy"));
+
+        // Moving a stock between sectors advances both
+        long utilities = cache.sectorVersion("Utilities");
+        energy = cache.sectorVersion("Energy");
+        cache.onStockChange(update(stock("XOM", "Utilities"), stock("XOM", "Energy"), 3));
+        assertNotEquals(energy, cache.sectorVersion("Energy"));
+        assertNotEquals(utilities, cache.sectorVersion("Utilities"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedResultsByWeight() {
+        StockResultCache cache = new StockResultCache(10);
+        StockResultCache.CacheKey first = new StockResultCache.CacheKey("sector", "energy");
+        StockResultCache.CacheKey second = new StockResultCache.CacheKey("sector", "technology");
+        StockResultCache.CacheKey third = new StockResultCache.CacheKey("sort", "name");
+        List<Stock> four = List.of(stock("A", "Energy"), stock("B", "Energy"), stock("C", "Energy"), stock("D", "Energy"));
+
+        cache.put(first, 1, four);
+        cache.put(second, 1, four);
+        assertNotNull(cache.get(first, 1));
+        cache.put(third, 1, four);
+
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.weight());
+        assertNotNull(cache.get(first, 1));
+        assertNull(cache.get(second, 1));
+        assertNotNull(cache.get(third, 1));
+    }
+
+    @Test
+    void resetsInvalidateEveryStampIncludingUnseenSectors() {
+        StockResultCache cache = new StockResultCache(100);
+        StockResultCache.CacheKey key = new StockResultCache.CacheKey("sector", "utilities");
+        long utilities = cache.sectorVersion("Utilities");
+        long sorted = cache.stamp(() -> 5);
+        List<Stock> stale = List.of(stock("NEE", "Utilities"));
+
+        cache.onStockReset(new StockSnapshot(5, Map.of()));
+        // A search that read its stamp before the reset caches its result afterwards
+        cache.put(key, utilities, stale);
+
+        assertNotEquals(utilities, cache.sectorVersion("Utilities"), "A sector never seen still moves on");
+        assertNull(cache.get(key, cache.sectorVersion("Utilities")));
+        assertNotEquals(sorted, cache.stamp(() -> 5), "A repeated repository version gets a new stamp");
+        assertEquals(cache.stamp(() -> 5), cache.stamp(() -> 5));
+    }
+}
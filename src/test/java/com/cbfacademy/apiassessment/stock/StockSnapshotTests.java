@@ -0,0 +1,127 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for the immutable snapshots: every write publishes the next version, a snapshot
+ * never sees a later write, and a snapshot built from its predecessor's overlay has the same contents, in the
+ * same order, as a copy of the repository's map.
+ */
+class StockSnapshotTests {
+
+    @TempDir
+    Path directory;
+
+    private static Stock stock(String ticker, double price) {
+        return new Stock(ticker, "Company " + ticker, "$", "Technology", price, 10, 1.0);
+    }
+
+    private static void assertSameContents(Map<String, Stock> expected, StockSnapshot snapshot) {
+        assertEquals(expected.size(), snapshot.size());
+        assertEquals(new ArrayList<>(expected.values()), snapshot.getStocks(), "Same stocks in insertion order");
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(snapshot.asMap().keySet()));
+        for (Map.Entry<String, Stock> entry : expected.entrySet()) {
+            assertSame(entry.getValue(), snapshot.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void overlaysMatchACopyOfTheMapThroughManyWrites() {
+        Random random = new Random(7);
+        Map<String, Stock> contents = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            contents.put("T" + i, stock("T" + i, i));
+        }
+        StockSnapshot snapshot = new StockSnapshot(1, contents);
+        List<StockSnapshot> history = new ArrayList<>();
+        List<Map<String, Stock>> expected = new ArrayList<>();
+        for (int write = 0; write < 2000; write++) {
+            // Creates, updates and deletes over a range a little wider than the universe, so tickers come and go
+            String ticker = "T" + random.nextInt(600);
+            if (random.nextInt(3) == 0) {
+                contents.remove(ticker);
+            } else {
+                contents.put(ticker, stock(ticker, write));
+            }
+            snapshot = snapshot.withChanges(snapshot.getVersion() + 1, contents, List.of(ticker));
+            assertEquals(write + 2, snapshot.getVersion());
+            if (write % 97 == 0) {
+                history.add(snapshot);
+                expected.add(new LinkedHashMap<>(contents));
+            }
+        }
+        assertSameContents(contents, snapshot);
+        assertNull(snapshot.get("T600"));
+        for (int i = 0; i < history.size(); i++) {
+            assertSameContents(expected.get(i), history.get(i));
+        }
+    }
+
+    @Test
+    void batchesOfChangesBeyondTheOverlayLimitAreCopied() {
+        Map<String, Stock> contents = new LinkedHashMap<>();
+        StockSnapshot snapshot = new StockSnapshot(1, contents);
+        List<String> tickers = new ArrayList<>();
+        for (int i = 0; i <= StockSnapshot.maxOverlay(0); i++) {
+            contents.put("T" + i, stock("T" + i, i));
+            tickers.add("T" + i);
+        }
+        StockSnapshot next = snapshot.withChanges(1 + tickers.size(), contents, tickers);
+
+        assertSameContents(contents, next);
+        assertEquals(0, snapshot.size(), "The previous snapshot is left alone");
+        assertEquals(StockSnapshot.MIN_OVERLAY, StockSnapshot.maxOverlay(100));
+        assertEquals(1414, StockSnapshot.maxOverlay(2_000_000), "The overlay grows with the square root");
+    }
+
+    @Test
+    void writesPublishTheNextVersionWithoutChangingEarlierSnapshots() throws Exception {
+        Path file = directory.resolve("stocks.json");
+        Map<String, Stock> seed = new LinkedHashMap<>();
+        seed.put("AAPL", new Stock("AAPL", "Apple Inc", "$", "Technology", 150.0, 10, 90.0));
+        Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(seed));
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, 0, 1000, "json",
+                "standalone", new DefaultResourceLoader(),
+                new DefaultListableBeanFactory().getBeanProvider(StockChangeListener.class), new WarmUpProgress());
+        repository.startWarmUp();
+
+        StockSnapshot before = repository.snapshot();
+        List<Stock> stocksBefore = before.getStocks();
+        repository.save(new Stock("MSFT", "Microsoft", "$", "Technology", 300.0, 5, 200.0));
+        StockSnapshot afterSave = repository.snapshot();
+        repository.update(new Stock("AAPL", "Apple Inc", "$", "Technology", 160.0, 10, 90.0));
+        repository.delete("MSFT");
+        StockSnapshot latest = repository.snapshot();
+
+        assertEquals(before.getVersion() + 1, afterSave.getVersion());
+        assertEquals(before.getVersion() + 3, latest.getVersion(), "Every write is one version");
+        assertEquals(latest.getVersion(), repository.version());
+
+        assertEquals(1, before.size());
+        assertEquals(150.0, before.get("AAPL").getCurrentPrice(), "An update is not visible in earlier snapshots");
+        assertNull(before.get("MSFT"));
+        assertSame(stocksBefore, before.getStocks());
+        assertEquals(List.of("AAPL", "MSFT"), afterSave.getStocks().stream().map(Stock::getTicker).toList());
+        assertEquals(150.0, afterSave.get("AAPL").getCurrentPrice());
+        assertEquals(1, latest.size());
+        assertEquals(160.0, latest.get("AAPL").getCurrentPrice());
+        assertNull(latest.get("MSFT"));
+        assertEquals(List.of(latest.get("AAPL")), latest.bySector("Technology"));
+        assertThrows(UnsupportedOperationException.class, () -> latest.getStocks().clear());
+        repository.shutdown();
+    }
+}
@@ -0,0 +1,158 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains tests for optimistic concurrency in the JsonStockRepository class: versions are assigned
+ * and compared atomically, so of several writers that read the same version exactly one succeeds, and writes
+ * persisted together by one file write are all on disk when they return.
+ */
+class StockVersioningTests {
+
+    private static final int WRITERS = 8;
+
+    @TempDir
+    Path directory;
+
+    private static Stock stock(String ticker, double price) {
+        return new Stock(ticker, ticker + " Inc", "$", "Technology", price, 10, 90.0);
+    }
+
+    private JsonStockRepository repository(int shards) throws Exception {
+        Path file = directory.resolve("stocks.json");
+        if (!Files.exists(file)) {
+            Map<String, Stock> seed = new LinkedHashMap<>();
+            seed.put("AAPL", stock("AAPL", 150));
+            Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(seed));
+        }
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, shards, 1000, "json", "standalone",
+                new DefaultResourceLoader(), new DefaultListableBeanFactory().getBeanProvider(StockChangeListener.class),
+                new WarmUpProgress());
+        repository.startWarmUp();
+        repository.snapshot();
+        return repository;
+    }
+
+    /**
+     * Runs the same number of tasks on as many threads, released together, and returns their outcomes.
+     */
+    private static <T> List<Future<T>> race(List<Callable<T>> tasks) throws InterruptedException {
+        ExecutorService threads = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> outcomes = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            outcomes.add(threads.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        threads.shutdown();
+        return outcomes;
+    }
+
+    @Test
+    void versionsAreAssignedAndCheckedOnEveryWrite() throws Exception {
+        JsonStockRepository repository = repository(0);
+        assertEquals(1, repository.findById("AAPL").getVersion(), "A stock loaded without a version starts at 1");
+
+        Stock created = repository.save(stock("MSFT", 300));
+        assertEquals(1, created.getVersion());
+        assertThrows(DuplicateStockException.class, () -> repository.save(stock("MSFT", 301)));
+
+        Stock read = stock("MSFT", 310);
+        read.setVersion(1);
+        assertEquals(2, repository.update(read).getVersion());
+        Stock stale = stock("MSFT", 311);
+        stale.setVersion(1);
+        StockVersionConflictException conflict = assertThrows(StockVersionConflictException.class,
+                () -> repository.update(stale));
+        assertFalse(conflict.isPrecondition());
+        assertEquals(2, conflict.getCurrentVersion());
+
+        conflict = assertThrows(StockVersionConflictException.class,
+                () -> repository.update(stock("MSFT", 320), 1));
+        assertTrue(conflict.isPrecondition());
+        assertEquals(3, repository.update(stock("MSFT", 320), 2).getVersion());
+
+        assertThrows(StockVersionConflictException.class, () -> repository.delete("MSFT", 2));
+        repository.delete("MSFT", 3);
+        assertNull(repository.findById("MSFT"));
+        assertThrows(StockNotFoundException.class, () -> repository.update(stock("MSFT", 330)));
+        repository.shutdown();
+    }
+
+    @Test
+    void exactlyOneOfSeveralWritersAtTheSameVersionSucceeds() throws Exception {
+        JsonStockRepository repository = repository(0);
+        List<Callable<Stock>> updates = new ArrayList<>();
+        List<Callable<Stock>> creates = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            double price = 200 + i;
+            updates.add(() -> repository.update(stock("AAPL", price), 1));
+            creates.add(() -> repository.save(stock("NEW", price)));
+        }
+
+        assertEquals(1, succeeded(race(updates), StockVersionConflictException.class));
+        assertEquals(1, succeeded(race(creates), DuplicateStockException.class));
+        assertEquals(2, repository.findById("AAPL").getVersion());
+        repository.shutdown();
+    }
+
+    @Test
+    void concurrentWritesToDifferentTickersAreAllPersisted() throws Exception {
+        for (int shards : new int[] {0, 4}) {
+            JsonStockRepository repository = repository(shards);
+            List<Callable<Stock>> creates = new ArrayList<>();
+            for (int i = 0; i < WRITERS * 4; i++) {
+                String ticker = "S" + shards + "-" + i;
+                creates.add(() -> repository.save(stock(ticker, 10)));
+            }
+            assertEquals(creates.size(), succeeded(race(creates), null));
+            repository.shutdown();
+
+            JsonStockRepository reloaded = repository(shards);
+            for (int i = 0; i < WRITERS * 4; i++) {
+                assertNotNull(reloaded.findById("S" + shards + "-" + i), "Every acknowledged write is on disk");
+            }
+            reloaded.shutdown();
+        }
+    }
+
+    /**
+     * Counts the tasks that succeeded, checking that every other one failed with the expected exception.
+     */
+    private static int succeeded(List<Future<Stock>> outcomes, Class<? extends Exception> expectedFailure)
+            throws InterruptedException {
+        int succeeded = 0;
+        for (Future<Stock> outcome : outcomes) {
+            try {
+                outcome.get();
+                succeeded++;
+            } catch (ExecutionException e) {
+                assertNotNull(expectedFailure, "Unexpected failure: " + e.getCause());
+                assertInstanceOf(expectedFailure, e.getCause());
+            }
+        }
+        return succeeded;
+    }
+}
@@ -0,0 +1,109 @@
+package com.cbfacademy.apiassessment.stock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.cbfacademy.apiassessment.core.WarmUpProgress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the StorageFormat enum, checking that a document written in any format
+ * is read back by the detecting reader, that the binary formats are more compact than JSON, and that binary
+ * snapshots are stored under the extension of their format.
+ */
+class StorageFormatTests {
+
+    @TempDir
+    Path directory;
+
+    private static final TypeReference<Map<String, Stock>> STOCK_MAP = new TypeReference<>() {};
+
+    private static Map<String, Stock> universe(int size) {
+        Map<String, Stock> stocks = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            stocks.put("T" + i, new Stock("T" + i, "Company " + i, i % 2 == 0 ? "$" : "£",
+                    i % 3 == 0 ? "Energy" : "Technology", 10.25 + i, i, 9.5));
+        }
+        return stocks;
+    }
+
+    @Test
+    void detectingReaderReadsEveryFormat() throws Exception {
+        Map<String, Stock> stocks = universe(50);
+        String expected = StorageFormat.JSON.documentMapper().writeValueAsString(stocks);
+        ObjectReader reader = StorageFormat.detectingReader(STOCK_MAP);
+
+        for (StorageFormat format : StorageFormat.values()) {
+            byte[] encoded = format.documentMapper().writerFor(STOCK_MAP).writeValueAsBytes(stocks);
+
+            Map<String, Stock> decoded = reader.readValue(encoded);
+
+            assertEquals(expected, StorageFormat.JSON.documentMapper().writeValueAsString(decoded), format.name());
+        }
+    }
+
+    @Test
+    void binaryFormatsAreSmallerThanJson() throws Exception {
+        Map<String, Stock> stocks = universe(200);
+        int json = StorageFormat.JSON.documentMapper().writeValueAsBytes(stocks).length;
+
+        assertTrue(StorageFormat.CBOR.documentMapper().writeValueAsBytes(stocks).length < json);
+        assertTrue(StorageFormat.SMILE.documentMapper().writeValueAsBytes(stocks).length < json);
+    }
+
+    @Test
+    void parsesConfiguredNames() {
+        assertEquals(StorageFormat.CBOR, StorageFormat.of(" Cbor "));
+        assertEquals(StorageFormat.JSON, StorageFormat.of("json"));
+        assertThrows(IllegalArgumentException.class, () -> StorageFormat.of("xml"));
+    }
+
+    @Test
+    void binarySnapshotsAreNamedAfterTheirFormat() {
+        Path file = directory.resolve("stocks.json");
+
+        assertEquals(file, StorageFormat.JSON.resolve(file));
+        assertEquals(directory.resolve("stocks.cbor"), StorageFormat.CBOR.resolve(file));
+        assertEquals(directory.resolve("stocks.smile"), StorageFormat.SMILE.resolve(directory.resolve("stocks.JSON")));
+        assertEquals(directory.resolve("data.smile"), StorageFormat.SMILE.resolve(directory.resolve("data")));
+    }
+
+    @Test
+    void changingTheFormatMovesTheSnapshotToItsOwnFile() throws Exception {
+        Path file = directory.resolve("stocks.json");
+        Files.write(file, StorageFormat.JSON.documentMapper().writeValueAsBytes(universe(20)));
+
+        JsonStockRepository binary = repository(file, "smile");
+        binary.save(new Stock("NEW", "New Company", "$", "Energy", 1.0, 1, 1.0));
+        binary.shutdown();
+
+        Path smile = directory.resolve("stocks.smile");
+        assertTrue(Files.exists(smile));
+        assertFalse(Files.exists(file), "The JSON snapshot is removed once the Smile one is written");
+        assertNotEquals('{', Files.readAllBytes(smile)[0]);
+
+        JsonStockRepository back = repository(file, "json");
+        assertEquals(21, back.retrieveAll().size(), "Switching back reads the Smile snapshot");
+        back.shutdown();
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(smile));
+    }
+
+    private static JsonStockRepository repository(Path file, String format) {
+        JsonStockRepository repository = new JsonStockRepository("file:" + file, 1, 0, 1000, format, "standalone",
+                new DefaultResourceLoader(), new DefaultListableBeanFactory().getBeanProvider(StockChangeListener.class),
+                new WarmUpProgress());
+        repository.startWarmUp();
+        repository.snapshot();
+        return repository;
+    }
+}
@@ -0,0 +1,233 @@
+package com.cbfacademy.apiassessment.stream;
+
+import com.cbfacademy.apiassessment.stock.Stock;
+import com.cbfacademy.apiassessment.stock.StockChangeEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains unit tests for the ChangeSubscriber class, covering filtering, coalescing of
+ * changes to the same ticker, the overflow notice sent when a slow client falls behind, the reset notice that
+ * replaces pending changes, and the disconnect of a client that stalls a dispatcher thread, with or without
+ * overflowing its buffer.
+ */
+class ChangeSubscriberTests {
+
+    /**
+     * An emitter that records the names of the events sent to it instead of writing to a response.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> sent = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            String event = builder.build().stream()
+                    .map(part -> String.valueOf(part.getData()))
+                    .reduce("", String::concat);
+            sent.add(event);
+        }
+    }
+
+    private static StockChangeEvent event(String ticker, String sector, long version) {
+        Stock stock = new Stock(ticker, ticker + " Inc", "$", sector, 100.0 + version, 10, 90.0);
+        return new StockChangeEvent(StockChangeEvent.Type.UPDATED, ticker, stock, version, version);
+    }
+
+    @Test
+    void filtersByTickerAndSector() {
+        ChangeSubscriber byTicker = new ChangeSubscriber(new RecordingEmitter(), Set.of("AAPL"), null, 8, Runnable::run, 0);
+        ChangeSubscriber bySector = new ChangeSubscriber(new RecordingEmitter(), Set.of(), "energy", 8, Runnable::run, 0);
+
+        assertTrue(byTicker.accepts(event("AAPL", "Technology", 1)));
+        assertFalse(byTicker.accepts(event("XOM", "Energy", 2)));
+        assertTrue(bySector.accepts(event("XOM", "Energy", 3)));
+        assertFalse(bySector.accepts(event("AAPL", "Technology", 4)));
+    }
+
+    @Test
+    void coalescesPendingChangesToTheSameTicker() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        List<Runnable> scheduled = new ArrayList<>();
+        ChangeSubscriber subscriber = new ChangeSubscriber(emitter, Set.of(), null, 8, scheduled::add, 0);
+
+        subscriber.offer(event("AAPL", "Technology", 1));
+        subscriber.offer(event("AAPL", "Technology", 2));
+        subscriber.offer(event("MSFT", "Technology", 3));
+        assertEquals(1, scheduled.size());
+        scheduled.get(0).run();
+
+        assertEquals(2, emitter.sent.size());
+        assertTrue(emitter.sent.get(0).contains("id:2\n"));
+        assertTrue(emitter.sent.get(1).contains("id:3\n"));
+    }
+
+    @Test
+    void dropsTheOldestChangeWhenTheBufferIsFull() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        List<Runnable> scheduled = new ArrayList<>();
+        ChangeSubscriber subscriber = new ChangeSubscriber(emitter, Set.of(), null, 2, scheduled::add, 0);
+
+        subscriber.offer(event("A", "Technology", 1));
+        subscriber.offer(event("B", "Technology", 2));
+        subscriber.offer(event("C", "Technology", 3));
+        scheduled.get(0).run();
+
+        assertEquals(3, emitter.sent.size());
+        assertTrue(emitter.sent.get(0).contains("event:overflow\n"));
+        assertTrue(emitter.sent.get(1).contains("id:2\n"));
+        assertTrue(emitter.sent.get(2).contains("id:3\n"));
+    }
+
+    @Test
+    void yieldsTheDispatcherAfterEachBatch() {
+        List<Runnable> scheduled = new ArrayList<>();
+        ChangeSubscriber[] self = new ChangeSubscriber[1];
+        RecordingEmitter emitter = new RecordingEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                super.send(builder);
+                self[0].offer(ChangeSubscriberTests.event("Z", "Technology", 9));
+            }
+        };
+        self[0] = new ChangeSubscriber(emitter, Set.of(), null, 8, scheduled::add, 0);
+
+        self[0].offer(event("A", "Technology", 1));
+        self[0].offer(event("B", "Technology", 2));
+        scheduled.remove(0).run();
+
+        assertEquals(2, emitter.sent.size(), "A drain sends the batch it took");
+        assertEquals(1, scheduled.size(), "Changes offered meanwhile wait behind the other subscribers");
+        scheduled.remove(0).run();
+        assertEquals(3, emitter.sent.size());
+    }
+
+    @Test
+    void disconnectsAClientThatStallsWhileItsBufferOverflows() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Throwable> errors = new ArrayList<>();
+        RecordingEmitter stalled = new RecordingEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(builder);
+            }
+
+            @Override
+            public void completeWithError(Throwable error) {
+                errors.add(error);
+            }
+        };
+        ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+        ChangeSubscriber subscriber = new ChangeSubscriber(stalled, Set.of(), null, 2, dispatcher, 0);
+
+        subscriber.offer(event("A", "Technology", 1));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        subscriber.offer(event("B", "Technology", 2));
+        subscriber.offer(event("C", "Technology", 3));
+        assertFalse(subscriber.isClosed(), "A full buffer alone is not an overflow");
+        subscriber.offer(event("D", "Technology", 4));
+
+        assertTrue(subscriber.isClosed(), "Overflowing while a send is stuck disconnects the client");
+        assertTrue(errors.isEmpty(), "The emitter is completed once the stuck send lets go of it");
+        release.countDown();
+        dispatcher.shutdown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, stalled.sent.size(), "Nothing is sent after the disconnect");
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    void disconnectsAFilteredClientThatStallsWithoutOverflowing() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        List<String> notices = new CopyOnWriteArrayList<>();
+        RecordingEmitter stalled = new RecordingEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(builder);
+            }
+
+            @Override
+            public void completeWithError(Throwable error) {
+                errors.add(error);
+            }
+        };
+        ChangeSubscriber.StallListener listener = new ChangeSubscriber.StallListener() {
+            @Override
+            public void stalled(ChangeSubscriber subscriber) {
+                notices.add("stalled");
+            }
+
+            @Override
+            public void released(ChangeSubscriber subscriber) {
+                notices.add("released");
+            }
+        };
+        ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+        ChangeSubscriber subscriber = new ChangeSubscriber(stalled, Set.of("AAPL"), null, 256, dispatcher, 100,
+                listener);
+
+        // The client follows one ticker and never reads, so its buffer can never overflow
+        subscriber.offer(event("AAPL", "Technology", 1));
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+        subscriber.offer(event("AAPL", "Technology", 2));
+        assertFalse(subscriber.disconnectIfStalled(), "A send is only stalled once the timeout has passed");
+
+        Thread.sleep(150);
+        assertTrue(subscriber.disconnectIfStalled());
+        assertFalse(subscriber.disconnectIfStalled(), "A subscriber is only disconnected once");
+        assertTrue(subscriber.isClosed());
+        assertEquals(List.of("stalled"), notices);
+        assertTrue(errors.isEmpty(), "The emitter is not touched while the stuck send holds it");
+
+        release.countDown();
+        dispatcher.shutdown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(List.of("stalled", "released"), notices);
+        assertEquals(1, errors.size());
+        assertEquals(1, stalled.sent.size(), "Nothing is sent after the disconnect");
+    }
+
+    @Test
+    void aResetReplacesThePendingChanges() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        List<Runnable> scheduled = new ArrayList<>();
+        ChangeSubscriber subscriber = new ChangeSubscriber(emitter, Set.of(), null, 8, scheduled::add, 0);
+
+        subscriber.offer(event("A", "Technology", 1));
+        subscriber.offer(event("B", "Technology", 2));
+        subscriber.reset(3);
+        subscriber.offer(event("C", "Technology", 4));
+        scheduled.remove(0).run();
+
+        assertEquals(2, emitter.sent.size(), emitter.sent.toString());
+        assertTrue(emitter.sent.get(0).contains("event:reset\n"));
+        assertTrue(emitter.sent.get(0).contains("id:3\n"));
+        assertTrue(emitter.sent.get(1).contains("id:4\n"), "Changes after the reset follow it");
+        assertTrue(scheduled.isEmpty());
+    }
+}